@@ -23,6 +23,7 @@ import net.openhft.chronicle.set.ChronicleSet;
 
 import java.io.Closeable;
 import java.io.File;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 
@@ -81,6 +82,25 @@ public interface ChronicleHash<K, C extends KeyContext<K>> extends Closeable {
      */
     void forEachEntry(Consumer<? super C> action);
 
+    /**
+     * Performs the given action for each entry in this {@code ChronicleHash} in parallel, using
+     * the given pool, until all entries have been processed or the action throws an {@code
+     * Exception}. Exceptions thrown by the action are relayed to the caller.
+     *
+     * <p>Off-heap implementations split the iteration on segment boundaries (and a single large
+     * segment on ranges of its hash lookup), and process each part under the segment's read lock
+     * only, so the action shouldn't update or remove entries. The action is called concurrently
+     * from different threads, with different contexts.
+     *
+     * <p>The default implementation just calls {@link #forEachEntry(Consumer)}.
+     *
+     * @param pool   the pool to run the iteration in
+     * @param action the action to be performed for each entry
+     */
+    default void forEachEntryParallel(ForkJoinPool pool, Consumer<? super C> action) {
+        forEachEntry(action);
+    }
+
     /**
      * Releases the off-heap memory, used by this hash container and resources, used by replication,
      * if any. However, if hash container (hence off-heap memory, used by it) is mapped to the file
@@ -18,6 +18,7 @@
 
 package net.openhft.chronicle.hash;
 
+import net.openhft.chronicle.hash.locks.SegmentLocking;
 import net.openhft.chronicle.hash.replication.SingleChronicleHashReplication;
 import net.openhft.chronicle.hash.replication.TcpTransportAndNetworkConfig;
 import net.openhft.chronicle.hash.replication.TimeProvider;
@@ -240,6 +241,62 @@ public interface ChronicleHashBuilder<K, H extends ChronicleHash<K, ?>,
      */
     B actualChunksPerSegment(long actualChunksPerSegment);
 
+    /**
+     * Configures how much the hash containers, created by this builder, could grow beyond the
+     * configured {@linkplain #entries(long) number of entries}, when some segments become full
+     * earlier than others, because of unlucky key distribution or entry sizes variance.
+     *
+     * <p>When the entry space of some segment is exhausted, the segment takes an <i>extra
+     * tier</i> (another hash lookup, free list and entry space of the same sizes, as in a
+     * segment) from the pool, shared by all segments, and chains it to itself. The pool is
+     * reserved in the end of the mapped memory of the container and consists of {@code
+     * ceil((maxBloatFactor - 1) * actualSegments)} tiers. With persisted containers the unused
+     * extra tiers are just sparse regions of the file, so they don't occupy disk space and
+     * physical memory until taken by some segment.
+     *
+     * <p>Default max bloat factor is 1.0, i. e. there are no extra tiers, and an attempt to put an
+     * entry into a full segment fails with {@code IllegalStateException}.
+     *
+     * <p>Replicated hash containers don't support extra tiers yet.
+     *
+     * @param maxBloatFactor the max factor of the container memory growth, beyond the configured
+     *                       number of entries
+     * @return this builder back
+     * @throws IllegalArgumentException if the given {@code maxBloatFactor} is NaN, less than 1.0
+     *         or greater than 1000.0
+     * @see #entries(long)
+     */
+    B maxBloatFactor(double maxBloatFactor);
+
+    /**
+     * Configures the implementation of the segment locks in the hash containers, created by this
+     * builder. See {@link SegmentLocking} constants for the details of each implementation.
+     *
+     * <p>The implementation is stored along with the persisted container, so when an existing
+     * persisted container is opened, this configuration is ignored.
+     *
+     * <p>Default segment locking is {@link SegmentLocking#WRITE_PREFERRING}.
+     *
+     * @param segmentLocking the implementation of segment locks
+     * @return this builder back
+     */
+    B segmentLocking(@NotNull SegmentLocking segmentLocking);
+
+    /**
+     * Configures the strategy of allocation of the chunks for entries in the segments of the hash
+     * containers, created by this builder. See {@link EntryAllocation} constants for the details
+     * of each strategy.
+     *
+     * <p>The strategy is stored along with the persisted container, so when an existing persisted
+     * container is opened, this configuration is ignored.
+     *
+     * <p>Default entry allocation is {@link EntryAllocation#FIRST_FIT}.
+     *
+     * @param entryAllocation the strategy of allocation of entries
+     * @return this builder back
+     */
+    B entryAllocation(@NotNull EntryAllocation entryAllocation);
+
     /**
      * Configures the actual number of segments in the hash containers, created by this builder.
      * With {@linkplain #entriesPerSegment(long) actual number of segments}, this
@@ -258,7 +315,9 @@ public interface ChronicleHashBuilder<K, H extends ChronicleHash<K, ?>,
 
     /**
      * Configures a time provider, used by hash containers, created by this builder, for needs of
-     * replication consensus protocol (conflicting data updates resolution).
+     * replication consensus protocol (conflicting data updates resolution), and for the expiry of
+     * entries, see {@link ChronicleMapBuilder#timeToLive(long, TimeUnit)}. The expiry assumes the
+     * time provider counts microseconds, as {@link TimeProvider#SYSTEM} does.
      *
      * <p>Default time provider is {@link TimeProvider#SYSTEM}.
      *
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.hash;
+
+/**
+ * Strategies of allocation of the chunks for entries in the segments of hash containers, see
+ * {@link ChronicleHashBuilder#entryAllocation(EntryAllocation)}. With any strategy, the bit set
+ * of the allocated chunks of each segment is the authoritative state of the entry space. The
+ * strategy is chosen when the container is created and stored along with it, all processes,
+ * accessing a persisted container, use the same strategy.
+ */
+public enum EntryAllocation {
+    /**
+     * The bit set of the chunks is scanned for the first run of free chunks, long enough for the
+     * entry, from the position, where the previous allocation ended. This strategy has no memory
+     * overhead, and allocation is cheap while the segment is filled for the first time, but it
+     * degrades to a near linear scan of the bit set, when the segment is mostly full and the
+     * entries of different sizes are removed and inserted. This is the default.
+     */
+    FIRST_FIT,
+
+    /**
+     * The runs of chunks, freed on removal or relocation of entries, joined with the adjacent
+     * free chunks, are additionally pushed to the per-size-class free lists, stored off-heap next
+     * to the bit set of each segment (and each extra tier). Size classes are powers of 2: 1, 2,
+     * 3-4, 5-8, ... chunks. Allocation takes the run from the smallest size class, which runs fit
+     * the entry, checks the run against the bit set, and returns the rest of the run to the free
+     * lists, so allocation is O(1) for the sizes, that were recently freed. If the free lists have no suitable run, the
+     * bit set is scanned as by {@link #FIRST_FIT}.
+     *
+     * <p>The free lists have bounded capacity (31 runs per size class), when a free list is full,
+     * freed runs are left to the bit set scan. The free lists take 256 bytes per size class in
+     * each segment.
+     */
+    SIZE_CLASSES
+}
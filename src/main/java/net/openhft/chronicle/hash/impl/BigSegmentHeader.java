@@ -17,6 +17,7 @@
 package net.openhft.chronicle.hash.impl;
 
 import net.openhft.chronicle.hash.locks.IllegalInterProcessLockStateException;
+import net.openhft.chronicle.hash.locks.SegmentLocking;
 
 import java.util.concurrent.TimeUnit;
 
@@ -25,8 +26,16 @@ import static java.nio.ByteOrder.nativeOrder;
 import static net.openhft.lang.io.AbstractBytes.UNSIGNED_INT_MASK;
 import static net.openhft.lang.io.NativeBytes.UNSAFE;
 
-public final class BigSegmentHeader implements SegmentHeader {
-    public static final BigSegmentHeader INSTANCE = new BigSegmentHeader();
+/**
+ * The {@link SegmentLocking#WRITE_PREFERRING} segment lock implementation, and the base for other
+ * implementations, which share the same layout of the lock word.
+ */
+public class BigSegmentHeader implements SegmentHeader {
+    public static final BigSegmentHeader INSTANCE = new BigSegmentHeader(false);
+    /**
+     * Additionally maintains the segment's version stamp, requires 64-byte segment headers.
+     */
+    public static final BigSegmentHeader VERSIONED_INSTANCE = new BigSegmentHeader(true);
 
     static final long LOCK_OFFSET = 0L; // 64-bit
     static final long COUNT_WORD_OFFSET = LOCK_OFFSET;
@@ -56,7 +65,22 @@ public final class BigSegmentHeader implements SegmentHeader {
 
     static final long DELETED_OFFSET = EXCLUSIVE_LOCK_HOLDER_THREAD_ID_OFFSET + 8L;
 
-    private BigSegmentHeader() {}
+    /**
+     * 1-based index of the first extra tier, chained to the segment, 0 if there are no extra tiers
+     */
+    static final long NEXT_TIER_INDEX_OFFSET = DELETED_OFFSET + 4L; // 32-bit
+
+    /**
+     * Incremented on each write lock acquisition and release, i. e. odd while the segment is
+     * write-locked. Present only in versioned headers.
+     */
+    static final long VERSION_OFFSET = NEXT_TIER_INDEX_OFFSET + 4L; // 64-bit
+
+    private final boolean versioned;
+
+    BigSegmentHeader(boolean versioned) {
+        this.versioned = versioned;
+    }
     
     @Override
     public long size(long address) {
@@ -88,6 +112,45 @@ public final class BigSegmentHeader implements SegmentHeader {
         UNSAFE.putInt(address + NEXT_POS_TO_SEARCH_FROM_OFFSET, (int) nextPosToSearchFrom);
     }
 
+    @Override
+    public long nextTierIndex(long address) {
+        return UNSAFE.getIntVolatile(null, address + NEXT_TIER_INDEX_OFFSET) & UNSIGNED_INT_MASK;
+    }
+
+    @Override
+    public void nextTierIndex(long address, long nextTierIndex) {
+        UNSAFE.putOrderedInt(null, address + NEXT_TIER_INDEX_OFFSET, (int) nextTierIndex);
+    }
+
+    @Override
+    public long version(long address) {
+        if (!versioned)
+            throw new UnsupportedOperationException("Segment header is not versioned");
+        return UNSAFE.getLongVolatile(null, address + VERSION_OFFSET);
+    }
+
+    /**
+     * Called just after the write lock is acquired, makes the version odd.
+     */
+    final void beginWrite(long address) {
+        if (versioned) {
+            UNSAFE.putLongVolatile(null, address + VERSION_OFFSET,
+                    UNSAFE.getLong(address + VERSION_OFFSET) + 1L);
+            // don't let the writes under the lock go ahead of the version update
+            UNSAFE.storeFence();
+        }
+    }
+
+    /**
+     * Called just before the write lock is released or downgraded, makes the version even.
+     */
+    private void endWrite(long address) {
+        if (versioned) {
+            UNSAFE.putOrderedLong(null, address + VERSION_OFFSET,
+                    UNSAFE.getLong(address + VERSION_OFFSET) + 1L);
+        }
+    }
+
     private static long getLockWord(long address) {
         return UNSAFE.getLongVolatile(null, address + LOCK_OFFSET);
     }
@@ -210,7 +273,7 @@ public final class BigSegmentHeader implements SegmentHeader {
     }
 
     @Override
-    public void readLockInterruptibly(long address) {
+    public void readLockInterruptibly(long address) throws InterruptedException {
         readLock(address);
     }
 
@@ -244,16 +307,24 @@ public final class BigSegmentHeader implements SegmentHeader {
     public boolean tryUpgradeReadToUpdateLock(long address) {
         int countWord = getCountWord(address);
         checkReadLocked(countWord);
-        return !updateLocked(countWord) &&
-                casCountWord(address, countWord, countWord - READ_PARTY + UPDATE_PARTY);
+        if (!updateLocked(countWord) &&
+                casCountWord(address, countWord, countWord - READ_PARTY + UPDATE_PARTY)) {
+            writeExclusiveLockHolder(address);
+            return true;
+        }
+        return false;
     }
 
     @Override
     public boolean tryUpgradeReadToWriteLock(long address) {
         int countWord = getCountWord(address);
         checkReadLocked(countWord);
-        return countWord == READ_PARTY &&
-                casCountWord(address, READ_PARTY, WRITE_LOCKED_COUNT_WORD);
+        if (countWord == READ_PARTY &&
+                casCountWord(address, READ_PARTY, WRITE_LOCKED_COUNT_WORD)) {
+            beginWrite(address);
+            return true;
+        }
+        return false;
     }
 
     @Override
@@ -264,7 +335,7 @@ public final class BigSegmentHeader implements SegmentHeader {
     }
 
     @Override
-    public void updateLockInterruptibly(long address) {
+    public void updateLockInterruptibly(long address) throws InterruptedException {
         updateLock(address);
     }
 
@@ -304,7 +375,7 @@ public final class BigSegmentHeader implements SegmentHeader {
     }
 
     @Override
-    public void writeLockInterruptibly(long address) {
+    public void writeLockInterruptibly(long address) throws InterruptedException {
         writeLock(address);
     }
 
@@ -312,6 +383,7 @@ public final class BigSegmentHeader implements SegmentHeader {
     public boolean tryWriteLock(long address) {
         if (getCountWord(address) == 0 && casCountWord(address, 0, WRITE_LOCKED_COUNT_WORD)) {
             writeExclusiveLockHolder(address);
+            beginWrite(address);
             return true;
         } else {
             return false;
@@ -323,7 +395,7 @@ public final class BigSegmentHeader implements SegmentHeader {
         return tryWriteLock(address) || tryWriteLock0(address, time, unit);
     }
 
-    private boolean tryWriteLock0(long address, long time, TimeUnit unit) {
+    boolean tryWriteLock0(long address, long time, TimeUnit unit) {
         long end = System.nanoTime() + unit.toNanos(time);
         registerWait(address);
         do {
@@ -335,6 +407,7 @@ public final class BigSegmentHeader implements SegmentHeader {
                 if (casLockWord(address, lockWord,
                         lockWord(WRITE_LOCKED_COUNT_WORD, waitWord - WAIT_PARTY))) {
                     writeExclusiveLockHolder(address);
+                    beginWrite(address);
                     return true;
                 }
             }
@@ -369,15 +442,19 @@ public final class BigSegmentHeader implements SegmentHeader {
     }
 
     @Override
-    public void upgradeUpdateToWriteLockInterruptibly(long address) {
+    public void upgradeUpdateToWriteLockInterruptibly(long address) throws InterruptedException {
         upgradeUpdateToWriteLock(address);
     }
 
     @Override
     public boolean tryUpgradeUpdateToWriteLock(long address) {
         int countWord = getCountWord(address);
-        return checkExclusiveUpdateLocked(countWord) &&
-                casCountWord(address, countWord, WRITE_LOCKED_COUNT_WORD);
+        if (checkExclusiveUpdateLocked(countWord) &&
+                casCountWord(address, countWord, WRITE_LOCKED_COUNT_WORD)) {
+            beginWrite(address);
+            return true;
+        }
+        return false;
     }
 
     private static boolean checkExclusiveUpdateLocked(int countWord) {
@@ -391,7 +468,7 @@ public final class BigSegmentHeader implements SegmentHeader {
                 tryUpgradeUpdateToWriteLock0(address, time, unit);
     }
 
-    private boolean tryUpgradeUpdateToWriteLock0(long address, long time, TimeUnit unit) {
+    boolean tryUpgradeUpdateToWriteLock0(long address, long time, TimeUnit unit) {
         long end = System.nanoTime() + unit.toNanos(time);
         registerWait(address);
         do {
@@ -402,6 +479,7 @@ public final class BigSegmentHeader implements SegmentHeader {
                 checkWaitWordForDecrement(waitWord);
                 if (casLockWord(address, lockWord,
                         lockWord(WRITE_LOCKED_COUNT_WORD, waitWord - WAIT_PARTY))) {
+                    beginWrite(address);
                     return true;
                 }
             }
@@ -447,6 +525,7 @@ public final class BigSegmentHeader implements SegmentHeader {
     @Override
     public void writeUnlock(long address) {
         checkWriteLocked(getCountWord(address));
+        endWrite(address);
         clearExclusiveLockHolder(address);
         putCountWord(address, 0);
     }
@@ -454,12 +533,14 @@ public final class BigSegmentHeader implements SegmentHeader {
     @Override
     public void downgradeWriteToUpdateLock(long address) {
         checkWriteLocked(getCountWord(address));
+        endWrite(address);
         putCountWord(address, UPDATE_PARTY);
     }
 
     @Override
     public void downgradeWriteToReadLock(long address) {
         checkWriteLocked(getCountWord(address));
+        endWrite(address);
         clearExclusiveLockHolder(address);
         putCountWord(address, READ_PARTY);
     }
@@ -19,6 +19,9 @@ package net.openhft.chronicle.hash.impl;
 
 import net.openhft.chronicle.hash.ChronicleHash;
 import net.openhft.chronicle.hash.ChronicleHashBuilder;
+import net.openhft.chronicle.hash.EntryAllocation;
+import net.openhft.chronicle.hash.locks.SegmentLocking;
+import net.openhft.chronicle.hash.replication.TimeProvider;
 import net.openhft.chronicle.hash.serialization.internal.SerializationBuilder;
 
 //TODO remove this temporary interface
@@ -40,4 +43,23 @@ public interface ChronicleHashBuilderImpl<K, H extends ChronicleHash<K, ?>,
     int maxChunksPerEntry();
 
     int segmentEntrySpaceInnerOffset(boolean replicated);
+
+    long extraTiers(boolean replicated);
+
+    SegmentLocking segmentLocking();
+
+    EntryAllocation entryAllocation();
+
+    /**
+     * @return the default time to live of entries, in {@link #timeProvider()} units, {@code
+     * Long.MAX_VALUE} if entries expire only if the time to live is given on put, or {@code 0} if
+     * the expiry of entries is not configured
+     */
+    long timeToLive(boolean replicated);
+
+    TimeProvider timeProvider();
+
+    boolean useEviction(boolean replicated);
+
+    boolean useOptimisticReads(boolean replicated);
 }
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.hash.impl;
+
+import net.openhft.chronicle.hash.locks.SegmentLocking;
+
+import java.util.concurrent.TimeUnit;
+
+import static net.openhft.lang.io.NativeBytes.UNSAFE;
+
+/**
+ * The {@link SegmentLocking#FAIR} segment lock implementation. Read, update and write lock
+ * acquisitions take tickets from the counter in the segment header and wait for their turn, then
+ * acquire the lock word in the same way as {@link BigSegmentHeader} does, and pass the turn to the
+ * next ticket, whether the acquisition succeeded or timed out. Parties, waiting for the turn,
+ * yield after spinning for a while. Upgrades and unlocks are not queued.
+ *
+ * <p>A party holds the turn for at most {@link #TURN_TIMEOUT_NANOS}, if it couldn't acquire the
+ * lock word by then, but its own timeout is longer, it passes the turn and takes a new ticket.
+ * So if the turn is not passed for {@link #DEAD_TURN_TIMEOUT_NANOS} (the same as the timeout of
+ * the blocking lock methods), the party, holding it, is considered dead (e. g. the process,
+ * sharing the file, is killed), and the turn is passed forcibly by the parties waiting for it.
+ * A ticket can't be returned, so the timed acquisitions wait for the turn even if their timeout
+ * is already expired, and then make a single attempt. Interruptible acquisitions, interrupted
+ * while waiting for the turn, pass the turn as soon as they get it, so that the queue is not
+ * broken.
+ */
+final class FairSegmentHeader extends BigSegmentHeader {
+
+    static final long NEXT_TICKET_OFFSET = VERSION_OFFSET + 8L; // 32-bit
+    static final long NOW_SERVING_OFFSET = NEXT_TICKET_OFFSET + 4L; // 32-bit
+
+    static final int MAX_SPINS_BEFORE_YIELD = 1 << 10;
+    static final long TURN_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(1L);
+    static final long DEAD_TURN_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(2L);
+
+    private static final int READ = 0, UPDATE = 1, WRITE = 2;
+
+    FairSegmentHeader(boolean versioned) {
+        super(versioned);
+    }
+
+    private static int nowServing(long address) {
+        return UNSAFE.getIntVolatile(null, address + NOW_SERVING_OFFSET);
+    }
+
+    /**
+     * Takes the turn, only if no one is waiting for it.
+     *
+     * @return the ticket, or {@code -1}, if someone holds or waits for the turn
+     */
+    private static long tryTakeTurn(long address) {
+        int nowServing = nowServing(address);
+        return UNSAFE.compareAndSwapInt(null, address + NEXT_TICKET_OFFSET,
+                nowServing, nowServing + 1) ? nowServing : -1L;
+    }
+
+    /**
+     * Takes a ticket and waits for its turn, or for the turn to be passed beyond the ticket,
+     * forcibly.
+     *
+     * @return the ticket
+     */
+    private static int takeTurn(long address, boolean interruptible)
+            throws InterruptedException {
+        int ticket = UNSAFE.getAndAddInt(null, address + NEXT_TICKET_OFFSET, 1);
+        boolean interrupted = false;
+        int lastServing = nowServing(address);
+        long lastServingSince = 0L;
+        for (int spins = 0; ; spins++) {
+            int nowServing = nowServing(address);
+            // compared with overflow, as the tickets wrap around
+            if (nowServing - ticket >= 0)
+                break;
+            if (interruptible && Thread.interrupted())
+                interrupted = true;
+            if (spins < MAX_SPINS_BEFORE_YIELD)
+                continue;
+            // the turn is passed to a particular party, if there are more spinning parties than
+            // cores, the spinning could prevent it from running
+            Thread.yield();
+            long now = System.nanoTime();
+            if (nowServing != lastServing || lastServingSince == 0L) {
+                lastServing = nowServing;
+                lastServingSince = now;
+            } else if (now - lastServingSince > DEAD_TURN_TIMEOUT_NANOS) {
+                // the party, holding the turn, is dead
+                UNSAFE.compareAndSwapInt(null, address + NOW_SERVING_OFFSET,
+                        nowServing, nowServing + 1);
+                lastServingSince = now;
+            }
+        }
+        if (interrupted) {
+            passTurn(address, ticket);
+            throw new InterruptedException();
+        }
+        return ticket;
+    }
+
+    private static void passTurn(long address, long ticket) {
+        // fails, if the turn is already passed forcibly beyond the ticket
+        UNSAFE.compareAndSwapInt(null, address + NOW_SERVING_OFFSET,
+                (int) ticket, (int) ticket + 1);
+    }
+
+    private boolean tryLockWord(long address, int kind) {
+        switch (kind) {
+            case READ:
+                return super.tryReadLock(address);
+            case UPDATE:
+                return super.tryUpdateLock(address);
+            case WRITE:
+                // new readers and updaters are held in the queue behind, so there is no need
+                // to register as a waiting writer
+                return super.tryWriteLock(address);
+            default:
+                throw new AssertionError();
+        }
+    }
+
+    private boolean tryLockNow(long address, int kind) {
+        long ticket = tryTakeTurn(address);
+        if (ticket < 0L)
+            return false;
+        try {
+            return tryLockWord(address, kind);
+        } finally {
+            passTurn(address, ticket);
+        }
+    }
+
+    private boolean tryLock(long address, long time, TimeUnit unit, int kind,
+                            boolean interruptible) throws InterruptedException {
+        long end = System.nanoTime() + unit.toNanos(time);
+        while (true) {
+            int ticket = takeTurn(address, interruptible);
+            try {
+                long turnEnd = Math.min(end, System.nanoTime() + TURN_TIMEOUT_NANOS);
+                int spins = 0;
+                do {
+                    if (tryLockWord(address, kind))
+                        return true;
+                    if (interruptible && Thread.interrupted())
+                        throw new InterruptedException();
+                    if (++spins >= MAX_SPINS_BEFORE_YIELD)
+                        Thread.yield();
+                } while (System.nanoTime() - turnEnd <= 0L);
+            } finally {
+                passTurn(address, ticket);
+            }
+            if (System.nanoTime() - end > 0L)
+                return false;
+        }
+    }
+
+    private boolean tryLockUninterruptibly(long address, long time, TimeUnit unit, int kind) {
+        try {
+            return tryLock(address, time, unit, kind, false);
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private void lockInterruptibly(long address, int kind) throws InterruptedException {
+        if (!tryLock(address, 2, TimeUnit.SECONDS, kind, true))
+            throw new RuntimeException("Dead lock");
+    }
+
+    @Override
+    public boolean tryReadLock(long address) {
+        return tryLockNow(address, READ);
+    }
+
+    @Override
+    public boolean tryReadLock(long address, long time, TimeUnit unit) {
+        return tryLockUninterruptibly(address, time, unit, READ);
+    }
+
+    @Override
+    public void readLockInterruptibly(long address) throws InterruptedException {
+        lockInterruptibly(address, READ);
+    }
+
+    @Override
+    public boolean tryUpdateLock(long address) {
+        return tryLockNow(address, UPDATE);
+    }
+
+    @Override
+    public boolean tryUpdateLock(long address, long time, TimeUnit unit) {
+        return tryLockUninterruptibly(address, time, unit, UPDATE);
+    }
+
+    @Override
+    public void updateLockInterruptibly(long address) throws InterruptedException {
+        lockInterruptibly(address, UPDATE);
+    }
+
+    @Override
+    public boolean tryWriteLock(long address) {
+        return tryLockNow(address, WRITE);
+    }
+
+    @Override
+    public boolean tryWriteLock(long address, long time, TimeUnit unit) {
+        return tryLockUninterruptibly(address, time, unit, WRITE);
+    }
+
+    @Override
+    public void writeLockInterruptibly(long address) throws InterruptedException {
+        lockInterruptibly(address, WRITE);
+    }
+}
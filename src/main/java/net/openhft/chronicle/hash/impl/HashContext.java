@@ -20,6 +20,7 @@ import net.openhft.chronicle.hash.ChronicleHash;
 import net.openhft.chronicle.hash.KeyContext;
 import net.openhft.chronicle.hash.hashing.LongHashFunction;
 import net.openhft.chronicle.hash.impl.hashlookup.HashLookup;
+import net.openhft.chronicle.hash.impl.hashlookup.HashLookupIteration;
 import net.openhft.chronicle.hash.locks.IllegalInterProcessLockStateException;
 import net.openhft.chronicle.hash.locks.InterProcessLock;
 import net.openhft.chronicle.hash.serialization.BytesReader;
@@ -39,13 +40,21 @@ import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.ConcurrentModificationException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
+import java.util.function.LongConsumer;
 
 import static net.openhft.chronicle.hash.impl.HashContext.SearchState.ABSENT;
 import static net.openhft.chronicle.hash.impl.HashContext.SearchState.DELETED;
 import static net.openhft.chronicle.hash.impl.HashContext.SearchState.PRESENT;
+import static net.openhft.chronicle.hash.impl.VanillaChronicleHash.CLOCK_HAND_OFFSET;
+import static net.openhft.chronicle.hash.impl.VanillaChronicleHash.EVICTIONS_OFFSET;
+import static net.openhft.chronicle.hash.impl.VanillaChronicleHash.SIZE_CLASS_CAPACITY;
+import static net.openhft.chronicle.hash.impl.VanillaChronicleHash.SIZE_CLASS_SIZE;
+import static net.openhft.chronicle.hash.impl.VanillaChronicleHash.sizeClass;
+import static net.openhft.lang.io.NativeBytes.UNSAFE;
 
 public abstract class HashContext<K, KI, MKI extends MetaBytesInterop<K, ? super KI>>
         implements KeyContext<K> {
@@ -483,6 +492,10 @@ public abstract class HashContext<K, KI, MKI extends MetaBytesInterop<K, ? super
         hash = metaKeyInterop.hash(keyInterop, LongHashFunction.city_1_1(), key);
     }
 
+    public long hash0() {
+        return hash;
+    }
+
     public void closeKeyHash() {
         // don't skip closing if hash = 0 because this is a valid hash also
         closeKeyHashDependants();
@@ -559,7 +572,15 @@ public abstract class HashContext<K, KI, MKI extends MetaBytesInterop<K, ? super
 
     void initSegmentHeader0() {
         segmentHeaderAddress = h.ms.address() + h.segmentHeaderOffset(segmentIndex);
-        segmentHeader = BigSegmentHeader.INSTANCE;
+        segmentHeader = h.segmentHeader;
+    }
+
+    /**
+     * Returns the version stamp of the current segment, see {@link SegmentHeader#version(long)}.
+     */
+    public long segmentVersion() {
+        initSegmentHeader();
+        return segmentHeader.version(segmentHeaderAddress);
     }
 
     public void closeSegmentHeader() {
@@ -683,7 +704,7 @@ public abstract class HashContext<K, KI, MKI extends MetaBytesInterop<K, ? super
             }
         } else {
             if (writeLockCount > 0 &&
-                    rootContextOnThisSegment.totalReadLockCount == writeLockCount) {
+                    rootContextOnThisSegment.totalWriteLockCount == writeLockCount) {
                 if (shouldUpdateUnlock()) {
                     if (shouldReadUnlock()) {
                         segmentHeader.writeUnlock(segmentHeaderAddress);
@@ -727,7 +748,7 @@ public abstract class HashContext<K, KI, MKI extends MetaBytesInterop<K, ? super
 
     public void upgradeToWriteLock() {
         if (!isWriteLocked())
-            writeLock();
+            writeLock().lock();
     }
 
     boolean shouldReadUnlock() {
@@ -777,7 +798,7 @@ public abstract class HashContext<K, KI, MKI extends MetaBytesInterop<K, ? super
     abstract class AbstractLock implements InterProcessLock {
         abstract boolean fastLock();
         abstract void doLock();
-        abstract void doLockInterruptibly();
+        abstract void doLockInterruptibly() throws InterruptedException;
         abstract boolean doTryLock(long time, TimeUnit unit);
         abstract void incrementCounts();
 
@@ -832,7 +853,7 @@ public abstract class HashContext<K, KI, MKI extends MetaBytesInterop<K, ? super
         }
 
         @Override
-        void doLockInterruptibly() {
+        void doLockInterruptibly() throws InterruptedException {
             segmentHeader.readLockInterruptibly(segmentHeaderAddress);
         }
 
@@ -894,7 +915,7 @@ public abstract class HashContext<K, KI, MKI extends MetaBytesInterop<K, ? super
         }
 
         @Override
-        void doLockInterruptibly() {
+        void doLockInterruptibly() throws InterruptedException {
             segmentHeader.updateLockInterruptibly(segmentHeaderAddress);
         }
 
@@ -977,7 +998,7 @@ public abstract class HashContext<K, KI, MKI extends MetaBytesInterop<K, ? super
         }
 
         @Override
-        void doLockInterruptibly() {
+        void doLockInterruptibly() throws InterruptedException {
             if (rootContextOnThisSegment.totalUpdateLockCount > 0) {
                 segmentHeader.upgradeUpdateToWriteLockInterruptibly(segmentHeaderAddress);
             } else {
@@ -1075,8 +1096,21 @@ public abstract class HashContext<K, KI, MKI extends MetaBytesInterop<K, ? super
     public final HashLookup hashLookup = new HashLookup();
     final MultiStoreBytes freeListBytes = new MultiStoreBytes();
     public final SingleThreadedDirectBitSet freeList = new SingleThreadedDirectBitSet();
+    // free lists of size classes, see EntryAllocation.SIZE_CLASSES, follow the freeList bit set
+    final MultiStoreBytes sizeClassesBytes = new MultiStoreBytes();
     long entrySpaceOffset;
 
+    // Segment tiers. Tier 0 is the segment itself, the rest are extra tiers, chained to the segment
+    // when its entry space is exhausted. hashLookup, freeList and entrySpaceOffset point to
+    // the current tier. Positions of entries (pos), held by contexts, are segment-global, i. e.
+    // tier * actualChunksPerSegment + position within the tier. Hash lookups of the tiers
+    // store positions within the tiers.
+    public int tier = -1;
+    long tierBasePos;
+    int freeListTier = -1;
+    long[] tierOffsets = new long[4];
+    int knownTiers;
+
     public void initSegment() {
         if (segmentInit())
             return;
@@ -1093,15 +1127,95 @@ public abstract class HashContext<K, KI, MKI extends MetaBytesInterop<K, ? super
     }
 
     void initSegment0() {
-        long hashLookupOffset = h.segmentOffset(segmentIndex);
+        tierOffsets[0] = h.segmentOffset(segmentIndex);
+        knownTiers = 1;
+        initTier0(0);
+    }
+
+    void initTier0(int tier) {
+        long hashLookupOffset = tierOffsets[tier];
         hashLookup.reuse(h.ms.address() + hashLookupOffset,
                 h.segmentHashLookupCapacity, h.segmentHashLookupEntrySize,
                 h.segmentHashLookupKeyBits, h.segmentHashLookupValueBits);
         long freeListOffset = hashLookupOffset + h.segmentHashLookupOuterSize;
-        freeListBytes.storePositionAndSize(h.ms, freeListOffset, h.segmentFreeListInnerSize);
-        freeList.reuse(freeListBytes);
+        bindFreeList0(tier, freeListOffset);
         entrySpaceOffset = freeListOffset + h.segmentFreeListOuterSize +
                 h.segmentEntrySpaceInnerOffset;
+        this.tier = tier;
+        tierBasePos = tier * h.actualChunksPerSegment;
+    }
+
+    /**
+     * Switches hashLookup, freeList and entry space of this context to the given tier of the
+     * current segment, that should exist, see {@link #hasTier(int)}.
+     */
+    public void initTier(int tier) {
+        initSegment();
+        if (this.tier != tier) {
+            if (!hasTier(tier))
+                throw new IllegalStateException("Segment " + segmentIndex + " has no tier " + tier);
+            initTier0(tier);
+        }
+    }
+
+    public boolean hasTier(int tier) {
+        if (tier < knownTiers)
+            return true;
+        if (h.extraTiers == 0L)
+            return false;
+        while (tier >= knownTiers) {
+            long nextTierIndex = knownTiers == 1 ?
+                    segmentHeader.nextTierIndex(segmentHeaderAddress) :
+                    h.nextTierIndex(tierOffsets[knownTiers - 1]);
+            if (nextTierIndex == 0L)
+                return false;
+            addKnownTier(h.extraTierOffset(nextTierIndex - 1L));
+        }
+        return true;
+    }
+
+    private void addKnownTier(long tierOffset) {
+        if (knownTiers == tierOffsets.length)
+            tierOffsets = Arrays.copyOf(tierOffsets, knownTiers * 2);
+        tierOffsets[knownTiers++] = tierOffset;
+    }
+
+    /**
+     * Takes an extra tier from the pool and chains it to the end of the current segment's chain
+     * of tiers. Should be called under update lock.
+     *
+     * @return the new tier, or -1 if there are no free extra tiers in the pool
+     */
+    int allocateTier() {
+        // find the end of the chain
+        int lastTier = knownTiers - 1;
+        while (hasTier(lastTier + 1)) {
+            lastTier++;
+        }
+        long tierIndex = h.allocateExtraTier();
+        if (tierIndex < 0L)
+            return -1;
+        if (lastTier == 0) {
+            segmentHeader.nextTierIndex(segmentHeaderAddress, tierIndex + 1L);
+        } else {
+            h.nextTierIndex(tierOffsets[lastTier], tierIndex + 1L);
+        }
+        addKnownTier(h.extraTierOffset(tierIndex));
+        return lastTier + 1;
+    }
+
+    public int tierOf(long pos) {
+        if (h.extraTiers == 0L)
+            return 0;
+        return (int) (pos / h.actualChunksPerSegment);
+    }
+
+    /**
+     * Converts the position within the current tier, e. g. a value, read from the hash lookup
+     * during iteration, to the segment-global position.
+     */
+    public long globalPos(long posInTier) {
+        return tierBasePos + posInTier;
     }
 
     public void closeSegment() {
@@ -1117,6 +1231,9 @@ public abstract class HashContext<K, KI, MKI extends MetaBytesInterop<K, ? super
 
     void closeSegment0() {
         entrySpaceOffset = 0L;
+        tier = -1;
+        freeListTier = -1;
+        knownTiers = 0;
     }
 
     
@@ -1155,8 +1272,18 @@ public abstract class HashContext<K, KI, MKI extends MetaBytesInterop<K, ? super
     public MultiStoreBytes entry;
     
     final MultiStoreBytes reuse(MultiStoreBytes entry, long pos) {
+        long tierEntrySpaceOffset = entrySpaceOffset;
+        if (h.extraTiers > 0L) {
+            int posTier = tierOf(pos);
+            if (posTier != tier) {
+                hasTier(posTier);
+                tierEntrySpaceOffset = tierOffsets[posTier] + h.segmentHashLookupOuterSize +
+                        h.segmentFreeListOuterSize + h.segmentEntrySpaceInnerOffset;
+            }
+            pos -= posTier * h.actualChunksPerSegment;
+        }
         long offsetWithinEntrySpace = pos * h.chunkSize;
-        entry.setBytesOffset(h.bytes, entrySpaceOffset + offsetWithinEntrySpace);
+        entry.setBytesOffset(h.bytes, tierEntrySpaceOffset + offsetWithinEntrySpace);
         entry.limit(h.segmentEntrySpaceInnerSize - offsetWithinEntrySpace);
         return entry;
     }
@@ -1177,6 +1304,8 @@ public abstract class HashContext<K, KI, MKI extends MetaBytesInterop<K, ? super
     SearchState searchState;
     public long pos;
     long keyOffset;
+    // if the entry found has expired, it is treated as absent
+    boolean expired;
 
     public void initKeySearch() {
         if (keySearchInit())
@@ -1196,22 +1325,37 @@ public abstract class HashContext<K, KI, MKI extends MetaBytesInterop<K, ? super
             readLock().lock();
     }
 
-    void initKeySearch0() {
-        hashLookup.initSearch0();
-        while ((pos = hashLookup.nextPos()) >= 0L) {
-            reuse(pos);
-            if (!keyEquals())
-                continue;
-            hashLookup.found();
-            initKeyOffset0();
-            keyFound();
-            return;
+    public void initKeySearch0() {
+        if (tier != 0)
+            initTier0(0);
+        while (true) {
+            hashLookup.initSearch0();
+            while ((pos = hashLookup.nextPos()) >= 0L) {
+                pos += tierBasePos;
+                reuse(pos);
+                if (!keyEquals())
+                    continue;
+                hashLookup.found();
+                initKeyOffset0();
+                keyFound();
+                if (expired && isUpdateLocked() && !forEachEntry) {
+                    removeExpiredEntry();
+                } else if (h.eviction && isReadLocked()) {
+                    // optimistic reads don't write to the entry, that could be freed
+                    markAccessed();
+                }
+                return;
+            }
+            if (!hasTier(tier + 1))
+                break;
+            initTier0(tier + 1);
         }
         searchState = ABSENT;
     }
 
     boolean keyEquals() {
-        return keySize == h.keySizeMarshaller.readSize(entry) &&
+        // the remaining check guards optimistic reads from torn key sizes
+        return keySize == h.keySizeMarshaller.readSize(entry) && keySize <= entry.remaining() &&
                 metaKeyInterop.startsWith(keyInterop, entry, key);
     }
 
@@ -1221,6 +1365,7 @@ public abstract class HashContext<K, KI, MKI extends MetaBytesInterop<K, ? super
 
     public void keyFound() {
         searchState = PRESENT;
+        expired = h.entryExpiry && expiryTime() <= h.expiryTimeProvider.currentTime();
     }
 
     public void closeKeySearch() {
@@ -1235,6 +1380,7 @@ public abstract class HashContext<K, KI, MKI extends MetaBytesInterop<K, ? super
 
     void closeKeySearch0() {
         searchState = null;
+        expired = false;
         pos = -1;
         entry = null;
         hashLookup.closeSearch0();
@@ -1248,7 +1394,7 @@ public abstract class HashContext<K, KI, MKI extends MetaBytesInterop<K, ? super
     }
 
     public boolean containsKey0() {
-        return searchStatePresent();
+        return searchStatePresent() && !expired;
     }
 
     public SearchState searchState0() {
@@ -1338,6 +1484,10 @@ public abstract class HashContext<K, KI, MKI extends MetaBytesInterop<K, ? super
         h.keySizeMarshaller.writeSize(entry, keySize);
         initKeyOffset0();
         metaKeyInterop.write(keyInterop, entry, key);
+        if (h.entryExpiry)
+            writeExpiryTime();
+        if (h.eviction)
+            entry.writeByte(accessByteOffset(keyOffset0(), keySize0()), (byte) 1);
 
         if (!searchStatePresent()) {
             // update the size before the store fence
@@ -1348,18 +1498,79 @@ public abstract class HashContext<K, KI, MKI extends MetaBytesInterop<K, ? super
     }
 
     public void commitEntryAllocation() {
+        int allocatedTier = tierOf(pos);
+        if (allocatedTier != tier) {
+            // the entry is allocated in another tier than the key search ended in,
+            // move the hash lookup slot to the allocated tier
+            upgradeToWriteLock();
+            if (searchStatePresent())
+                hashLookup.remove();
+            initTier0(allocatedTier);
+            hashLookup.initSearch0();
+            // the key is absent in this tier, find the free slot in the hash lookup
+            while (hashLookup.nextPos() >= 0L) {}
+        }
         searchState = PRESENT;
         // put + store fence, guarantees if concurrent readers see the new entry
         // in the hashLookup => they will also see written entry bytes
-        hashLookup.putVolatile(pos);
+        hashLookup.putVolatile(pos - tierBasePos);
     }
 
-    //TODO refactor/optimize
     public final long alloc(int chunks) {
         if (chunks > h.maxChunksPerEntry)
             throw new IllegalArgumentException("Entry is too large: requires " + chunks +
                     " entry size chucks, " + h.maxChunksPerEntry + " is maximum.");
-        long ret = freeList.setNextNContinuousClearBits(nextPosToSearchFrom(), chunks);
+        // try the current tier first, the tier where the key is found or should be inserted,
+        // to avoid moving entries between tiers
+        int startTier = tier;
+        long ret = allocInTier(startTier, chunks);
+        if (ret >= 0L)
+            return ret;
+        if (h.extraTiers > 0L) {
+            if (forEachEntry) {
+                // moving the entry to another tier would break the iteration over
+                // the hash lookup of the current tier
+                throw new IllegalStateException("Segment tier is full, entries couldn't " +
+                        "be moved between segment tiers during forEachEntry iteration");
+            }
+            for (int t = 0; hasTier(t); t++) {
+                if (t != startTier && (ret = allocInTier(t, chunks)) >= 0L)
+                    return ret;
+            }
+            int newTier = allocateTier();
+            if (newTier >= 0 && (ret = allocInTier(newTier, chunks)) >= 0L)
+                return ret;
+        }
+        if (h.eviction && (ret = evictAndAlloc(chunks)) >= 0L)
+            return ret;
+        if (chunks == 1) {
+            throw new IllegalStateException(
+                    "Segment is full, no free entries found");
+        } else {
+            throw new IllegalStateException(
+                    "Segment is full or has no ranges of " + chunks
+                            + " continuous free chunks"
+            );
+        }
+    }
+
+    /**
+     * @return allocated segment-global position, or -1 if the given tier has no ranges of
+     * the given number of continuous free chunks
+     */
+    //TODO refactor/optimize
+    long allocInTier(int tier, int chunks) {
+        bindFreeList(tier);
+        long tierBasePos = tier * h.actualChunksPerSegment;
+        if (h.sizeClasses > 0) {
+            long ret = allocFromSizeClasses(chunks);
+            if (ret >= 0L)
+                return tierBasePos + ret;
+        }
+        long nextPosToSearchFrom = nextPosToSearchFrom() - tierBasePos;
+        if (nextPosToSearchFrom < 0L || nextPosToSearchFrom >= h.actualChunksPerSegment)
+            nextPosToSearchFrom = 0L;
+        long ret = freeList.setNextNContinuousClearBits(nextPosToSearchFrom, chunks);
         if (ret == DirectBitSet.NOT_FOUND || ret + chunks > h.actualChunksPerSegment) {
             if (ret != DirectBitSet.NOT_FOUND &&
                     ret + chunks > h.actualChunksPerSegment && ret < h.actualChunksPerSegment)
@@ -1370,39 +1581,445 @@ public abstract class HashContext<K, KI, MKI extends MetaBytesInterop<K, ? super
                         ret + chunks > h.actualChunksPerSegment &&
                         ret < h.actualChunksPerSegment)
                     freeList.clear(ret, h.actualChunksPerSegment);
-                if (chunks == 1) {
-                    throw new IllegalStateException(
-                            "Segment is full, no free entries found");
-                } else {
-                    throw new IllegalStateException(
-                            "Segment is full or has no ranges of " + chunks
-                                    + " continuous free chunks"
-                    );
-                }
+                return -1L;
             }
-            updateNextPosToSearchFrom(ret, chunks);
+            updateNextPosToSearchFrom(tierBasePos, ret, chunks);
         } else {
             // if bit at nextPosToSearchFrom is clear, it was skipped because
             // more than 1 chunk was requested. Don't move nextPosToSearchFrom
             // in this case. chunks == 1 clause is just a fast path.
-            if (chunks == 1 || freeList.isSet(nextPosToSearchFrom())) {
-                updateNextPosToSearchFrom(ret, chunks);
+            if (chunks == 1 || freeList.isSet(nextPosToSearchFrom)) {
+                updateNextPosToSearchFrom(tierBasePos, ret, chunks);
             }
         }
-        return ret;
+        return tierBasePos + ret;
+    }
+
+    /**
+     * Points {@link #freeList} to the given tier of the current segment. Unlike {@link
+     * #initTier(int)}, doesn't switch the hash lookup and entry space.
+     */
+    void bindFreeList(int tier) {
+        if (tier != freeListTier)
+            bindFreeList0(tier, tierOffsets[tier] + h.segmentHashLookupOuterSize);
+    }
+
+    private void bindFreeList0(int tier, long freeListOffset) {
+        freeListBytes.storePositionAndSize(h.ms, freeListOffset, h.segmentFreeListInnerSize);
+        freeList.reuse(freeListBytes);
+        if (h.sizeClasses > 0) {
+            sizeClassesBytes.storePositionAndSize(h.ms,
+                    freeListOffset + h.segmentFreeListInnerSize, h.sizeClasses * SIZE_CLASS_SIZE);
+        }
+        freeListTier = tier;
+    }
+
+    public boolean freeListAllClear(long fromPos, long toPos) {
+        int fromTier = tierOf(fromPos);
+        long tierBasePos = fromTier * h.actualChunksPerSegment;
+        if (toPos - tierBasePos > h.actualChunksPerSegment)
+            return false;
+        bindFreeList(fromTier);
+        return freeList.allClear(fromPos - tierBasePos, toPos - tierBasePos);
+    }
+
+    public void freeListSet(long fromPos, long toPos) {
+        int fromTier = tierOf(fromPos);
+        long tierBasePos = fromTier * h.actualChunksPerSegment;
+        bindFreeList(fromTier);
+        freeList.set(fromPos - tierBasePos, toPos - tierBasePos);
+    }
+
+    public void freeListClear(long fromPos, long toPos) {
+        int fromTier = tierOf(fromPos);
+        long tierBasePos = fromTier * h.actualChunksPerSegment;
+        bindFreeList(fromTier);
+        freeList.clear(fromPos - tierBasePos, toPos - tierBasePos);
     }
 
     public void free(long fromPos, int chunks) {
-        freeList.clear(fromPos, fromPos + chunks);
-        if (fromPos < nextPosToSearchFrom())
+        int fromTier = tierOf(fromPos);
+        long tierBasePos = fromTier * h.actualChunksPerSegment;
+        bindFreeList(fromTier);
+        freeList.clear(fromPos - tierBasePos, fromPos - tierBasePos + chunks);
+        // the run, pushed to the free list of its size class, is found without the scan
+        if ((h.sizeClasses == 0 || !pushCoalescedFreeRun(fromPos - tierBasePos, chunks)) &&
+                fromPos < nextPosToSearchFrom())
             nextPosToSearchFrom(fromPos);
     }
 
-    void updateNextPosToSearchFrom(long allocated, int chunks) {
+    void updateNextPosToSearchFrom(long tierBasePos, long allocated, int chunks) {
         long nextPosToSearchFrom = allocated + chunks;
         if (nextPosToSearchFrom >= h.actualChunksPerSegment)
             nextPosToSearchFrom = 0L;
-        nextPosToSearchFrom(nextPosToSearchFrom);
+        nextPosToSearchFrom(tierBasePos + nextPosToSearchFrom);
+    }
+
+    /**
+     * Takes a run of free chunks from the free lists of size classes of the tier, {@link
+     * #freeList} is bound to, starting from the smallest size class, which could have a run of
+     * the given number of chunks. The runs in the free lists are hints, the freeList bit set is
+     * authoritative: the chunks could be taken by the bit set scan, or by an entry, growing in
+     * place, since the run was freed, such stale runs are dropped. The rest of the taken run is
+     * pushed back to the free list of its size class.
+     *
+     * @return allocated position within the tier, or -1 if the free lists have no suitable run
+     */
+    long allocFromSizeClasses(int chunks) {
+        long chunksPerTier = h.actualChunksPerSegment;
+        for (int sizeClass = Math.min(sizeClass(chunks), h.sizeClasses - 1);
+             sizeClass < h.sizeClasses; sizeClass++) {
+            long sizeClassOffset = sizeClass * SIZE_CLASS_SIZE;
+            long runs = sizeClassesBytes.readLong(sizeClassOffset);
+            // the last freed runs are taken first, they are more likely in the CPU cache
+            for (long i = runs - 1L; i >= 0L; i--) {
+                long runOffset = sizeClassOffset + 8L * (i + 1L);
+                long run = sizeClassesBytes.readLong(runOffset);
+                long runChunks = run >>> 32;
+                if (runChunks < chunks)
+                    continue;
+                // remove the run from the free list, the last run takes its place
+                runs--;
+                sizeClassesBytes.writeLong(runOffset,
+                        sizeClassesBytes.readLong(sizeClassOffset + 8L * (runs + 1L)));
+                sizeClassesBytes.writeLong(sizeClassOffset, runs);
+                long pos = run & 0xFFFFFFFFL;
+                if (pos + chunks <= chunksPerTier && freeList.allClear(pos, pos + chunks)) {
+                    freeList.set(pos, pos + chunks);
+                    if (runChunks > chunks)
+                        pushFreeRun(pos + chunks, runChunks - chunks);
+                    return pos;
+                }
+            }
+        }
+        return -1L;
+    }
+
+    /**
+     * Pushes the freed run of chunks, joined with the adjacent free chunks, to the free list of
+     * its size class, so that the free lists of larger size classes are refilled by the runs,
+     * freed next to each other.
+     */
+    boolean pushCoalescedFreeRun(long pos, long chunks) {
+        long from = freeRunStart(pos);
+        return pushFreeRun(from, freeRunEnd(pos + chunks) - from);
+    }
+
+    /**
+     * @return the first chunk of the run of free chunks, which ends at the given position
+     */
+    long freeRunStart(long pos) {
+        return pos > 0L ? freeList.previousSetBit(pos - 1L) + 1L : 0L;
+    }
+
+    /**
+     * @return the end (exclusive) of the run of free chunks, which starts at the given position
+     */
+    long freeRunEnd(long pos) {
+        long to = freeList.nextSetBit(pos);
+        if (to == DirectBitSet.NOT_FOUND || to > h.actualChunksPerSegment)
+            to = h.actualChunksPerSegment;
+        return to;
+    }
+
+    /**
+     * Pushes the run of free chunks of the tier, {@link #freeList} is bound to, to the free list
+     * of its size class, if the free list is not full.
+     *
+     * @return {@code true} if the run is pushed, {@code false} if the free list is full
+     */
+    boolean pushFreeRun(long pos, long chunks) {
+        int sizeClass = Math.min(sizeClass(chunks), h.sizeClasses - 1);
+        long sizeClassOffset = sizeClass * SIZE_CLASS_SIZE;
+        long runs = sizeClassesBytes.readLong(sizeClassOffset);
+        if (runs == SIZE_CLASS_CAPACITY)
+            return false;
+        sizeClassesBytes.writeLong(sizeClassOffset + 8L * (runs + 1L), (chunks << 32) | pos);
+        sizeClassesBytes.writeLong(sizeClassOffset, runs + 1L);
+        return true;
+    }
+
+    void clearSizeClasses() {
+        for (int sizeClass = 0; sizeClass < h.sizeClasses; sizeClass++) {
+            sizeClassesBytes.writeLong(sizeClass * SIZE_CLASS_SIZE, 0L);
+        }
+    }
+
+
+    /////////////////////////////////////////////////
+    // Compaction
+    // the entries of the tier, being compacted, (pos << 32) | hash lookup slot index
+    private long[] tierEntries = new long[16];
+
+    /**
+     * Slides the entries of the current tier toward the start of its entry space, closing the
+     * gaps between them, rewrites their positions in the hash lookup and rebuilds the free list.
+     * Each entry keeps the chunks, allocated for it. Should be called under the write lock of the
+     * segment.
+     *
+     * @param posAlignment the entries are moved by the multiples of this number of chunks, to
+     *                     keep the alignment of the values
+     * @return the number of moved entries
+     */
+    public int compactTier(int posAlignment) {
+        long chunks = h.actualChunksPerSegment;
+        int n = 0;
+        for (long slot = 0L; (slot = hashLookup.nextNonEmptyIndex(slot)) >= 0L; slot++) {
+            if (n == tierEntries.length)
+                tierEntries = Arrays.copyOf(tierEntries, n * 2);
+            tierEntries[n++] = (hashLookup.valueAt(slot) << 32) | slot;
+        }
+        Arrays.sort(tierEntries, 0, n);
+        bindFreeList(tier);
+        // sizes are taken from the free list before it is modified: an entry occupies the run
+        // of allocated chunks from its position, up to the next entry
+        int[] sizes = new int[n];
+        for (int i = 0; i < n; i++) {
+            long pos = tierEntries[i] >>> 32;
+            long next = i + 1 < n ? tierEntries[i + 1] >>> 32 : chunks;
+            long end = freeList.nextClearBit(pos);
+            if (end == DirectBitSet.NOT_FOUND || end > next)
+                end = next;
+            sizes[i] = (int) Math.max(end - pos, 1L);
+        }
+        long entrySpaceAddress = h.ms.address() + entrySpaceOffset;
+        freeList.clear();
+        if (h.sizeClasses > 0)
+            clearSizeClasses();
+        int moved = 0;
+        long target = 0L;
+        for (int i = 0; i < n; i++) {
+            long pos = tierEntries[i] >>> 32;
+            long newPos = target + (pos - target) % posAlignment;
+            if (newPos != pos) {
+                UNSAFE.copyMemory(entrySpaceAddress + pos * h.chunkSize,
+                        entrySpaceAddress + newPos * h.chunkSize, sizes[i] * h.chunkSize);
+                hashLookup.replaceValueAt(tierEntries[i] & 0xFFFFFFFFL, newPos);
+                onEntryMoved(tierBasePos + pos, tierBasePos + newPos);
+                moved++;
+            }
+            freeList.set(newPos, newPos + sizes[i]);
+            target = newPos + sizes[i];
+        }
+        nextPosToSearchFrom(target < chunks ? tierBasePos + target : 0L);
+        return moved;
+    }
+
+    /**
+     * Called for each entry, moved by {@link #compactTier(int)}, with segment-global positions.
+     */
+    public void onEntryMoved(long oldPos, long newPos) {
+    }
+
+    /**
+     * Calls the action with the length of each run of free chunks in the current tier.
+     */
+    public void forEachFreeRun(LongConsumer action) {
+        long chunks = h.actualChunksPerSegment;
+        bindFreeList(tier);
+        long from = freeList.nextClearBit(0L);
+        while (from != DirectBitSet.NOT_FOUND && from < chunks) {
+            long to = freeList.nextSetBit(from);
+            if (to == DirectBitSet.NOT_FOUND || to > chunks)
+                to = chunks;
+            action.accept(to - from);
+            if (to == chunks)
+                return;
+            from = freeList.nextClearBit(to);
+        }
+    }
+
+
+    /////////////////////////////////////////////////
+    // Expiry
+    /**
+     * The time to live of the entry being put, in {@link VanillaChronicleHash#expiryTimeProvider}
+     * units, {@code 0} for the default time to live of the hash
+     */
+    public long timeToLive;
+
+    public long expiryTime() {
+        return entry.readLong(keyOffset0() + keySize0());
+    }
+
+    /**
+     * Writes the expiry time of the entry, which key is just written or found, to the current
+     * time plus the time to live.
+     */
+    public void writeExpiryTime() {
+        long ttl = timeToLive > 0L ? timeToLive : h.timeToLive;
+        long now = h.expiryTimeProvider.currentTime();
+        entry.writeLong(keyOffset0() + keySize0(),
+                ttl > Long.MAX_VALUE - now ? Long.MAX_VALUE : now + ttl);
+    }
+
+    /**
+     * Removes the expired entry, just found by the key search, so that the search ends as if the
+     * key is absent, and the key could be put into the hash lookup slot, freed by the removal.
+     */
+    void removeExpiredEntry() {
+        initEntrySizeInChunks();
+        upgradeToWriteLock();
+        hashLookup.remove();
+        free(pos, entrySizeInChunks);
+        entries(entries() - 1L);
+        closeKeySearchDependants();
+        expired = false;
+        searchState = ABSENT;
+    }
+
+    private final ExpiredEntriesRemoval expiredEntriesRemoval = new ExpiredEntriesRemoval();
+
+    /**
+     * Removes the expired entries from the current tier. Should be called under the update lock
+     * of the segment, which is upgraded to the write lock, if any entry has expired.
+     *
+     * @return the number of removed entries
+     */
+    public int removeExpiredEntries() {
+        expiredEntriesRemoval.removed = 0;
+        hashLookup.forEachRemoving(expiredEntriesRemoval);
+        return expiredEntriesRemoval.removed;
+    }
+
+    private class ExpiredEntriesRemoval implements HashLookupIteration {
+        int removed;
+        boolean remove;
+
+        @Override
+        public void accept(long hash, long posInTier) {
+            pos = globalPos(posInTier);
+            initKeyFromPos();
+            try {
+                remove = expired;
+                if (remove) {
+                    initEntrySizeInChunks();
+                    upgradeToWriteLock();
+                    free(pos, entrySizeInChunks);
+                    entries(entries() - 1L);
+                    removed++;
+                }
+            } finally {
+                closeKeySearch();
+            }
+        }
+
+        @Override
+        public boolean remove() {
+            return remove;
+        }
+
+        @Override
+        public boolean continueIteration() {
+            return true;
+        }
+    }
+
+
+    /////////////////////////////////////////////////
+    // Eviction
+    private final MultiStoreBytes evictedEntry = new MultiStoreBytes();
+
+    long accessByteOffset(long keyOffset, long keySize) {
+        return keyOffset + keySize + (h.entryExpiry ? 8L : 0L);
+    }
+
+    /**
+     * Sets the access byte of the entry, which key is just found, unless it is already set, to
+     * avoid dirtying the cache line by each read. Should be called under the read lock.
+     */
+    void markAccessed() {
+        long offset = accessByteOffset(keyOffset0(), keySize0());
+        if (entry.readByte(offset) == 0)
+            entry.writeByte(offset, (byte) 1);
+    }
+
+    public void countLookup(boolean hit) {
+        h.countLookup(segmentIndex, hit);
+    }
+
+    /**
+     * Evicts the entries of the current tier by the CLOCK algorithm, until a run of the given
+     * number of free chunks could be allocated. The hand goes round the slots of the hash lookup,
+     * starting from where it stopped last time. An entry, accessed since the hand passed it
+     * last time, is spared, and its access byte is cleared, otherwise it is evicted. Expired
+     * entries are evicted regardless of the access byte. The entry of the key being put, if
+     * present, is never evicted. Upgrades the update lock to the write lock.
+     *
+     * @return allocated segment-global position, or -1 if the chunks couldn't be freed
+     */
+    long evictAndAlloc(int chunks) {
+        if (forEachEntry) {
+            throw new IllegalStateException("Segment is full, entries couldn't be evicted " +
+                    "during forEachEntry iteration");
+        }
+        upgradeToWriteLock();
+        // if the key is present, its entry is being relocated and is already freed
+        long keyPosInTier = searchStatePresent() ? pos - tierBasePos : -1L;
+        long now = h.entryExpiry ? h.expiryTimeProvider.currentTime() : 0L;
+        long capacity = hashLookup.capacity();
+        long stateAddress = h.evictionStateAddress(segmentIndex);
+        long hand = UNSAFE.getLong(stateAddress + CLOCK_HAND_OFFSET);
+        if (hand < 0L || hand >= capacity)
+            hand = 0L;
+        long evictions = 0L;
+        long ret = -1L;
+        // after one round all access bytes are cleared, so two rounds evict all entries
+        for (long steps = 0L; steps < 2L * capacity; ) {
+            if (hashLookup.emptyAt(hand) || hashLookup.valueAt(hand) == keyPosInTier) {
+                hand = hand + 1L == capacity ? 0L : hand + 1L;
+                steps++;
+                continue;
+            }
+            long posInTier = hashLookup.valueAt(hand);
+            Bytes e = reuse(evictedEntry, tierBasePos + posInTier);
+            long keySize = h.keySizeMarshaller.readSize(e);
+            long keyOffset = e.position();
+            long accessByteOffset = accessByteOffset(keyOffset, keySize);
+            if ((!h.entryExpiry || e.readLong(keyOffset + keySize) > now) &&
+                    e.readByte(accessByteOffset) != 0) {
+                e.writeByte(accessByteOffset, (byte) 0);
+                hand = hand + 1L == capacity ? 0L : hand + 1L;
+                steps++;
+                continue;
+            }
+            int entryChunks = evictedEntrySizeInChunks(e, keyOffset, keySize);
+            onEvicted(e, keyOffset, keySize);
+            // the entry from the next slot could be shifted to this slot, the hand stays
+            hashLookup.removeAt(hand);
+            free(tierBasePos + posInTier, entryChunks);
+            entries(entries() - 1L);
+            evictions++;
+            // allocation is tried, only if the freed chunks are joined into a long enough run
+            bindFreeList(tier);
+            if (freeRunEnd(posInTier + entryChunks) - freeRunStart(posInTier) >= chunks &&
+                    (ret = allocInTier(tier, chunks)) >= 0L) {
+                break;
+            }
+        }
+        UNSAFE.putLong(stateAddress + CLOCK_HAND_OFFSET, hand);
+        UNSAFE.putLong(stateAddress + EVICTIONS_OFFSET,
+                UNSAFE.getLong(stateAddress + EVICTIONS_OFFSET) + evictions);
+        if (evictions > 0L) {
+            // the slot of the key being put could be shifted by the removals, find it again
+            hashLookup.initSearch0();
+            long p;
+            while ((p = hashLookup.nextPos()) >= 0L && p != keyPosInTier) {}
+            if (p >= 0L)
+                hashLookup.found();
+        }
+        return ret;
+    }
+
+    /**
+     * @return the number of chunks, taken by the entry, which key is at the given offset
+     */
+    public abstract int evictedEntrySizeInChunks(Bytes entry, long keyOffset, long keySize);
+
+    /**
+     * Called for each evicted entry, before it is freed, under the write lock of the segment.
+     */
+    public void onEvicted(Bytes entry, long keyOffset, long keySize) {
     }
 
 
@@ -1433,6 +2050,9 @@ public abstract class HashContext<K, KI, MKI extends MetaBytesInterop<K, ? super
         }
     }
 
+    /**
+     * {@code true} while forEachEntry() iterates the segment under update lock
+     */
     public boolean forEachEntry;
 
     public void hashLookupRemove() {
@@ -1451,10 +2071,15 @@ public abstract class HashContext<K, KI, MKI extends MetaBytesInterop<K, ? super
 
 
     public void clear() {
-        writeLock();
+        writeLock().lock();
         initSegment();
-        hashLookup.clear();
-        freeList.clear();
+        for (int t = 0; hasTier(t); t++) {
+            initTier0(t);
+            hashLookup.clear();
+            freeList.clear();
+            if (h.sizeClasses > 0)
+                clearSizeClasses();
+        }
         nextPosToSearchFrom(0L);
         entries(0L);
     }
@@ -1483,6 +2108,35 @@ public abstract class HashContext<K, KI, MKI extends MetaBytesInterop<K, ? super
     }
 
 
+    /////////////////////////////////////////////////
+    // Batched operations within a segment
+
+    /**
+     * Inits the key with the hash, computed before, when the segment index is already set and
+     * the segment is possibly locked. Should be paired with {@link #closeKeyWithinSegment()}.
+     */
+    public void initKeyWithHash(K key, long hash) {
+        initKey(key);
+        this.hash = hash;
+    }
+
+    /**
+     * Closes the key and the key search, but unlike {@link #closeKey()} doesn't close segment
+     * index, i. e. doesn't release the segment locks.
+     */
+    public void closeKeyWithinSegment() {
+        closeHashLookup();
+        closeKeyHash0();
+        closeKey0();
+    }
+
+    long prefetchSink;
+
+    public void prefetchHashLookupSlot(long hash) {
+        prefetchSink += hashLookup.prefetch(h.hashSplitting.segmentHash(hash));
+    }
+
+
     /////////////////////////////////////////////////
     // Iteration
     public void initKeyFromPos() {
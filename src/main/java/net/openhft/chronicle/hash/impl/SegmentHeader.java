@@ -28,18 +28,27 @@ public interface SegmentHeader {
     long nextPosToSearchFrom(long address);
     void nextPosToSearchFrom(long address, long nextPosToSearchFrom);
 
+    long nextTierIndex(long address);
+    void nextTierIndex(long address, long nextTierIndex);
+
+    /**
+     * Returns the version stamp of the segment, which is odd while the segment is write-locked
+     * and changes on each write lock acquisition and release, for optimistic reads.
+     */
+    long version(long address);
+
     void readLock(long address);
-    void readLockInterruptibly(long address);
+    void readLockInterruptibly(long address) throws InterruptedException;
     boolean tryReadLock(long address);
     boolean tryReadLock(long address, long time, TimeUnit unit);
 
     void updateLock(long address);
-    void updateLockInterruptibly(long address);
+    void updateLockInterruptibly(long address) throws InterruptedException;
     boolean tryUpdateLock(long address);
     boolean tryUpdateLock(long address, long time, TimeUnit unit);
 
     void writeLock(long address);
-    void writeLockInterruptibly(long address);
+    void writeLockInterruptibly(long address) throws InterruptedException;
     boolean tryWriteLock(long address);
     boolean tryWriteLock(long address, long time, TimeUnit unit);
 
@@ -47,7 +56,7 @@ public interface SegmentHeader {
     boolean tryUpgradeReadToWriteLock(long address);
 
     void upgradeUpdateToWriteLock(long address);
-    void upgradeUpdateToWriteLockInterruptibly(long address);
+    void upgradeUpdateToWriteLockInterruptibly(long address) throws InterruptedException;
     boolean tryUpgradeUpdateToWriteLock(long address);
     boolean tryUpgradeUpdateToWriteLock(long address, long time, TimeUnit unit);
 
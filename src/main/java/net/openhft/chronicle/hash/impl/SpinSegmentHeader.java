@@ -0,0 +1,52 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.hash.impl;
+
+import net.openhft.chronicle.hash.locks.SegmentLocking;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link SegmentLocking#SPIN} segment lock implementation: writers spin on the lock word without
+ * registering themselves as waiting.
+ */
+final class SpinSegmentHeader extends BigSegmentHeader {
+
+    SpinSegmentHeader(boolean versioned) {
+        super(versioned);
+    }
+
+    @Override
+    boolean tryWriteLock0(long address, long time, TimeUnit unit) {
+        long end = System.nanoTime() + unit.toNanos(time);
+        do {
+            if (tryWriteLock(address))
+                return true;
+        } while (System.nanoTime() <= end);
+        return false;
+    }
+
+    @Override
+    boolean tryUpgradeUpdateToWriteLock0(long address, long time, TimeUnit unit) {
+        long end = System.nanoTime() + unit.toNanos(time);
+        do {
+            if (tryUpgradeUpdateToWriteLock(address))
+                return true;
+        } while (System.nanoTime() <= end);
+        return false;
+    }
+}
@@ -17,8 +17,11 @@
 package net.openhft.chronicle.hash.impl;
 
 import net.openhft.chronicle.hash.ChronicleHash;
+import net.openhft.chronicle.hash.EntryAllocation;
 import net.openhft.chronicle.hash.KeyContext;
 import net.openhft.chronicle.hash.impl.hashlookup.HashLookup;
+import net.openhft.chronicle.hash.locks.SegmentLocking;
+import net.openhft.chronicle.hash.replication.TimeProvider;
 import net.openhft.chronicle.hash.serialization.BytesReader;
 import net.openhft.chronicle.hash.serialization.SizeMarshaller;
 import net.openhft.chronicle.hash.serialization.internal.MetaBytesInterop;
@@ -41,6 +44,8 @@ import java.nio.channels.FileChannel;
 
 import static java.lang.Long.numberOfTrailingZeros;
 import static java.lang.Math.max;
+import static net.openhft.lang.io.AbstractBytes.UNSIGNED_INT_MASK;
+import static net.openhft.lang.io.NativeBytes.UNSAFE;
 import static net.openhft.lang.MemoryUnit.*;
 
 public abstract class VanillaChronicleHash<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
@@ -87,6 +92,12 @@ public abstract class VanillaChronicleHash<K, KI, MKI extends MetaBytesInterop<K
     final long segmentHashLookupOuterSize;
 
     final long segmentFreeListInnerSize;
+    // with EntryAllocation.SIZE_CLASSES, the free lists of size classes follow the bit set,
+    // each is the number of runs and SIZE_CLASS_CAPACITY (len << 32 | pos) runs
+    static final int SIZE_CLASS_CAPACITY = 31;
+    static final long SIZE_CLASS_SIZE = 8L * (1 + SIZE_CLASS_CAPACITY);
+    public final EntryAllocation entryAllocation;
+    final int sizeClasses;
     final long segmentFreeListOuterSize;
 
     final long segmentEntrySpaceInnerSize;
@@ -95,6 +106,42 @@ public abstract class VanillaChronicleHash<K, KI, MKI extends MetaBytesInterop<K
 
     final long segmentSize;
 
+    /////////////////////////////////////////////////
+    // Extra tiers, shared by all segments, to let full segments grow
+    static final long TIER_HEADER_SIZE = 64L;
+    static final long TIER_NEXT_TIER_INDEX_OFFSET = 0L;
+    static final long GLOBAL_MUTABLE_STATE_SIZE = 64L;
+    static final long ALLOCATED_EXTRA_TIERS_OFFSET = 0L;
+
+    public final long extraTiers;
+    final long tierSize;
+
+    /////////////////////////////////////////////////
+    // Locking
+    public final SegmentLocking segmentLocking;
+    public final boolean optimisticReads;
+    transient SegmentHeader segmentHeader;
+
+    /////////////////////////////////////////////////
+    // Expiry, each entry stores the expiry time, in expiryTimeProvider units, after the key
+    public final boolean entryExpiry;
+    // Long.MAX_VALUE if entries expire only if the time to live is given on put
+    public final long timeToLive;
+    public final TimeProvider expiryTimeProvider;
+
+    /////////////////////////////////////////////////
+    // Eviction, each entry stores the access byte after the key (and the expiry time), the state
+    // of each segment is a cache line in the map header: hits, misses, evictions and CLOCK hand
+    static final long EVICTION_STATE_SIZE = 64L;
+    static final long HITS_OFFSET = 0L;
+    static final long MISSES_OFFSET = 8L;
+    static final long EVICTIONS_OFFSET = 16L;
+    static final long CLOCK_HAND_OFFSET = 24L;
+    public final boolean eviction;
+
+    // the expiry time and the access byte, between the key and the value
+    public final int extraBytesAfterKey;
+
     /////////////////////////////////////////////////
     // Bytes Store (essentially, the base address) and serialization-dependent offsets
     public transient BytesStore ms;
@@ -103,6 +150,7 @@ public abstract class VanillaChronicleHash<K, KI, MKI extends MetaBytesInterop<K
     public transient long headerSize;
     transient long segmentHeadersOffset;
     transient long segmentsOffset;
+    transient long extraTiersOffset;
     
     public VanillaChronicleHash(ChronicleHashBuilderImpl<K, ?, ?> builder, boolean replicated) {
         // Version
@@ -140,7 +188,11 @@ public abstract class VanillaChronicleHash<K, KI, MKI extends MetaBytesInterop<K
 
         segmentFreeListInnerSize = LONGS.align(
                 BYTES.alignAndConvert(actualChunksPerSegment, BITS), BYTES);
-        segmentFreeListOuterSize = CACHE_LINES.align(segmentFreeListInnerSize, BYTES);
+        entryAllocation = builder.entryAllocation();
+        sizeClasses = entryAllocation == EntryAllocation.SIZE_CLASSES ?
+                sizeClass(Math.min(maxChunksPerEntry, actualChunksPerSegment)) + 1 : 0;
+        segmentFreeListOuterSize = CACHE_LINES.align(
+                segmentFreeListInnerSize + sizeClasses * SIZE_CLASS_SIZE, BYTES);
 
         segmentEntrySpaceInnerSize = chunkSize * actualChunksPerSegment;
         segmentEntrySpaceInnerOffset = builder.segmentEntrySpaceInnerOffset(replicated);
@@ -148,6 +200,48 @@ public abstract class VanillaChronicleHash<K, KI, MKI extends MetaBytesInterop<K
                 segmentEntrySpaceInnerOffset + segmentEntrySpaceInnerSize, BYTES);
 
         segmentSize = segmentSize();
+
+        // Extra tiers
+        extraTiers = builder.extraTiers(replicated);
+        if (actualChunksPerSegment * (extraTiers + 1L) > UNSIGNED_INT_MASK) {
+            throw new IllegalStateException("Max chunks per segment, including extra tiers, is " +
+                    UNSIGNED_INT_MASK + ", " + actualChunksPerSegment + " chunks per segment and " +
+                    extraTiers + " extra tiers are configured");
+        }
+        tierSize = TIER_HEADER_SIZE + segmentHashLookupOuterSize + segmentFreeListOuterSize +
+                segmentEntrySpaceOuterSize;
+
+        // Locking
+        segmentLocking = builder.segmentLocking();
+        if (segmentLocking == SegmentLocking.FAIR && segmentHeaderSize < 64) {
+            throw new IllegalStateException("Fair segment locks require 64-byte segment headers, " +
+                    segmentHeaderSize + "-byte headers are configured");
+        }
+        optimisticReads = builder.useOptimisticReads(replicated);
+        if (optimisticReads && segmentHeaderSize < 64) {
+            throw new IllegalStateException("Optimistic reads require 64-byte segment headers, " +
+                    segmentHeaderSize + "-byte headers are configured");
+        }
+
+        // Expiry
+        timeToLive = builder.timeToLive(replicated);
+        entryExpiry = timeToLive > 0L;
+        expiryTimeProvider = builder.timeProvider();
+
+        // Eviction
+        eviction = builder.useEviction(replicated);
+        if (eviction && extraTiers > 0L) {
+            throw new IllegalStateException("Eviction is not supported by maps with extra " +
+                    "tiers, " + extraTiers + " extra tiers are configured");
+        }
+        extraBytesAfterKey = (entryExpiry ? 8 : 0) + (eviction ? 1 : 0);
+    }
+
+    /**
+     * Size classes are powers of 2: 1, 2, 3-4, 5-8, ... chunks.
+     */
+    static int sizeClass(long chunks) {
+        return 64 - Long.numberOfLeadingZeros(chunks - 1L);
     }
 
     private long segmentSize() {
@@ -178,6 +272,18 @@ public abstract class VanillaChronicleHash<K, KI, MKI extends MetaBytesInterop<K
     private void ownInitTransients() {
         keyReaderProvider = Provider.of((Class) originalKeyReader.getClass());
         keyInteropProvider = Provider.of((Class) originalKeyInterop.getClass());
+        segmentHeader = segmentHeader(segmentLocking, optimisticReads);
+    }
+
+    private static SegmentHeader segmentHeader(SegmentLocking segmentLocking, boolean versioned) {
+        switch (segmentLocking) {
+            case FAIR:
+                return new FairSegmentHeader(versioned);
+            case SPIN:
+                return new SpinSegmentHeader(versioned);
+            default:
+                return versioned ? BigSegmentHeader.VERSIONED_INSTANCE : BigSegmentHeader.INSTANCE;
+        }
     }
 
     public final void createMappedStoreAndSegments(BytesStore bytesStore) throws IOException {
@@ -189,6 +295,7 @@ public abstract class VanillaChronicleHash<K, KI, MKI extends MetaBytesInterop<K
         segmentHeadersOffset = mapHeaderOuterSize();
         long segmentHeadersSize = actualSegments * segmentHeaderSize;
         segmentsOffset = segmentHeadersOffset + segmentHeadersSize;
+        extraTiersOffset = segmentsOffset + actualSegments * segmentSize;
     }
 
     public void warnOnWindows() {
@@ -257,7 +364,49 @@ public abstract class VanillaChronicleHash<K, KI, MKI extends MetaBytesInterop<K
     }
 
     public long mapHeaderInnerSize() {
-        return headerSize;
+        return evictionStatesOffset() + (eviction ? actualSegments * EVICTION_STATE_SIZE : 0L);
+    }
+
+    private long evictionStatesOffset() {
+        return headerSize + (extraTiers > 0L ? GLOBAL_MUTABLE_STATE_SIZE : 0L);
+    }
+
+    final long evictionStateAddress(int segmentIndex) {
+        return ms.address() + evictionStatesOffset() + segmentIndex * EVICTION_STATE_SIZE;
+    }
+
+    /**
+     * Lookups are counted on each get, often by concurrent readers of the same segment, so the
+     * counter is incremented plainly rather than atomically, some concurrent increments could be
+     * lost.
+     */
+    final void countLookup(int segmentIndex, boolean hit) {
+        long address = evictionStateAddress(segmentIndex) + (hit ? HITS_OFFSET : MISSES_OFFSET);
+        UNSAFE.putLong(address, UNSAFE.getLong(address) + 1L);
+    }
+
+    /**
+     * @return the approximate number of successful lookups in the segment, if eviction is
+     * configured
+     */
+    public final long segmentHits(int segmentIndex) {
+        return UNSAFE.getLongVolatile(null, evictionStateAddress(segmentIndex) + HITS_OFFSET);
+    }
+
+    /**
+     * @return the approximate number of lookups of absent keys in the segment, if eviction is
+     * configured
+     */
+    public final long segmentMisses(int segmentIndex) {
+        return UNSAFE.getLongVolatile(null, evictionStateAddress(segmentIndex) + MISSES_OFFSET);
+    }
+
+    /**
+     * @return the number of entries, evicted from the segment, if eviction is configured
+     */
+    public final long segmentEvictions(int segmentIndex) {
+        return UNSAFE.getLongVolatile(null,
+                evictionStateAddress(segmentIndex) + EVICTIONS_OFFSET);
     }
 
     @Override
@@ -266,7 +415,8 @@ public abstract class VanillaChronicleHash<K, KI, MKI extends MetaBytesInterop<K
     }
 
     public final long sizeInBytes() {
-        return mapHeaderOuterSize() + actualSegments * (segmentHeaderSize + segmentSize);
+        return mapHeaderOuterSize() + actualSegments * (segmentHeaderSize + segmentSize) +
+                extraTiers * tierSize;
     }
 
     @Override
@@ -293,7 +443,7 @@ public abstract class VanillaChronicleHash<K, KI, MKI extends MetaBytesInterop<K
     public final long[] segmentSizes() {
         long[] sizes = new long[actualSegments];
         for (int i = 0; i < actualSegments; i++) {
-            sizes[i] = BigSegmentHeader.INSTANCE.size(ms.address() + segmentHeaderOffset(i));
+            sizes[i] = segmentHeader.size(ms.address() + segmentHeaderOffset(i));
         }
         return sizes;
     }
@@ -306,6 +456,73 @@ public abstract class VanillaChronicleHash<K, KI, MKI extends MetaBytesInterop<K
         return segmentsOffset + ((long) segmentIndex) * segmentSize;
     }
 
+    /**
+     * @param tierIndex 0-based index of the extra tier in the shared pool
+     * @return offset of the hash lookup of the extra tier, i. e. the segment-like part of the
+     * tier, which follows the tier header
+     */
+    public final long extraTierOffset(long tierIndex) {
+        return extraTiersOffset + tierIndex * tierSize + TIER_HEADER_SIZE;
+    }
+
+    final long tierHeaderAddress(long tierOffset) {
+        return ms.address() + tierOffset - TIER_HEADER_SIZE;
+    }
+
+    /**
+     * @return 1-based index of the extra tier, chained to the tier at the given offset,
+     * 0 if the tier is the last one in the chain
+     */
+    final long nextTierIndex(long tierOffset) {
+        return UNSAFE.getLongVolatile(null,
+                tierHeaderAddress(tierOffset) + TIER_NEXT_TIER_INDEX_OFFSET);
+    }
+
+    final void nextTierIndex(long tierOffset, long nextTierIndex) {
+        UNSAFE.putOrderedLong(null,
+                tierHeaderAddress(tierOffset) + TIER_NEXT_TIER_INDEX_OFFSET, nextTierIndex);
+    }
+
+    private long allocatedExtraTiersAddress() {
+        return ms.address() + headerSize + ALLOCATED_EXTRA_TIERS_OFFSET;
+    }
+
+    /**
+     * Takes the next free extra tier from the pool, shared by all segments (and all processes,
+     * accessing the same map).
+     *
+     * @return 0-based index of the allocated extra tier, or -1 if all extra tiers are already
+     * allocated
+     */
+    final long allocateExtraTier() {
+        if (extraTiers == 0L)
+            return -1L;
+        long address = allocatedExtraTiersAddress();
+        while (true) {
+            long allocated = UNSAFE.getLongVolatile(null, address);
+            if (allocated >= extraTiers)
+                return -1L;
+            if (UNSAFE.compareAndSwapLong(null, address, allocated, allocated + 1L))
+                return allocated;
+        }
+    }
+
+    /**
+     * @return the number of slots in the hash lookup of each segment tier
+     */
+    public final long segmentHashLookupCapacity() {
+        return segmentHashLookupCapacity;
+    }
+
+    /**
+     * @return the number of extra tiers, already taken by segments from the shared pool
+     */
+    public final long allocatedExtraTiers() {
+        if (extraTiers == 0L)
+            return 0L;
+        return UNSAFE.getLongVolatile(null, allocatedExtraTiersAddress());
+    }
+
     public final int inChunks(long sizeInBytes) {
         // TODO optimize for the case when chunkSize is power of 2, that is default (and often) now
         if (sizeInBytes <= chunkSize)
@@ -322,8 +539,8 @@ public abstract class VanillaChronicleHash<K, KI, MKI extends MetaBytesInterop<K
         long result = 0L;
         for (int i = 0; i < actualSegments; i++) {
             long segmentHeaderAddress = ms.address() + segmentHeaderOffset(i);
-            result += BigSegmentHeader.INSTANCE.size(segmentHeaderAddress) -
-                    BigSegmentHeader.INSTANCE.deleted(segmentHeaderAddress);
+            result += segmentHeader.size(segmentHeaderAddress) -
+                    segmentHeader.deleted(segmentHeaderAddress);
         }
         return result;
     }
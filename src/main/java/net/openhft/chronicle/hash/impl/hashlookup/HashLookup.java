@@ -208,6 +208,14 @@ public class HashLookup {
                 "expected");
     }
 
+    /**
+     * Reads the first slot of the search chain for the given key, to bring it into the CPU cache
+     * in advance, when many keys are going to be looked up in a batch.
+     */
+    public long prefetch(long key) {
+        return readEntry(pos(maskUnsetKey(key)));
+    }
+
     public void found() {
         searchPos = stepBack(searchPos);
     }
@@ -280,6 +288,76 @@ public class HashLookup {
         }
     }
 
+    public long capacity() {
+        return capacityMask + 1L;
+    }
+
+    /**
+     * Calls the action for each entry, which search starts from a slot with index within the
+     * given range. Entries, which were shifted from their home slot, stay in the same range, so
+     * iterating a lookup by disjoint ranges, e. g. under separate lock acquisitions, yields each
+     * entry exactly once.
+     *
+     * @param fromIndex the lower bound of the range of home slot indexes, inclusive
+     * @param toIndex the upper bound of the range of home slot indexes, exclusive, not greater
+     *                than the {@link #capacity()}
+     */
+    public void forEachInRange(long fromIndex, long toIndex, EntryConsumer action) {
+        long capacity = capacityMask + 1L;
+        for (long index = fromIndex; index < fromIndex + capacity; index++) {
+            long entry = readEntry(indexToPos(index & capacityMask));
+            if (empty(entry)) {
+                if (index >= toIndex)
+                    return;
+                continue;
+            }
+            long key = key(entry);
+            long homeIndex = key & capacityMask;
+            if (homeIndex >= fromIndex && homeIndex < toIndex)
+                action.accept(key, value(entry));
+        }
+    }
+
+    /**
+     * @return the index of the first non-empty slot, starting from the given index, or -1 if all
+     * slots from the given index to the end of the lookup are empty
+     */
+    public long nextNonEmptyIndex(long fromIndex) {
+        for (long pos = indexToPos(fromIndex); pos <= capacityMask2; pos += entrySize) {
+            if (!empty(readEntry(pos)))
+                return pos / entrySize;
+        }
+        return -1L;
+    }
+
+    public boolean emptyAt(long index) {
+        return empty(readEntry(indexToPos(index)));
+    }
+
+    public long valueAt(long index) {
+        return value(readEntry(indexToPos(index)));
+    }
+
+    /**
+     * Removes the entry from the non-empty slot with the given index, the entries from the
+     * following slots could be shifted back to the slot.
+     */
+    public void removeAt(long index) {
+        remove00(indexToPos(index));
+    }
+
+    /**
+     * Replaces the value of the non-empty slot with the given index, keeping the key, e. g. when
+     * the entry is moved within the entry space.
+     */
+    public void replaceValueAt(long index, long value) {
+        checkValueForPut(value);
+        long pos = indexToPos(index);
+        long entry = readEntry(pos);
+        assert !empty(entry);
+        writeEntryVolatile(pos, entry, key(entry), value);
+    }
+
     public void forEachRemoving(HashLookupIteration iteration) {
         long pos = 0L;
         while (!empty(readEntry(pos))) {
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.hash.locks;
+
+import net.openhft.chronicle.hash.ChronicleHashBuilder;
+
+/**
+ * Implementations of the segment read-write-update locks of hash containers, see {@link
+ * ChronicleHashBuilder#segmentLocking(SegmentLocking)}. All of them are spin locks, living in the
+ * segment headers in off-heap memory, so they work across processes, accessing the same persisted
+ * container. The implementation is chosen when the container is created and stored along with it,
+ * all processes, accessing a persisted container, use the same implementation.
+ */
+public enum SegmentLocking {
+    /**
+     * Writers, spinning to acquire the write lock or to upgrade the update lock to the write lock,
+     * register themselves in the lock word and prevent new readers and updaters from acquiring
+     * the lock, so writers are not starved by a stream of readers. This is the default.
+     */
+    WRITE_PREFERRING,
+
+    /**
+     * Lock acquisitions are admitted to the lock word one at a time, in the order of tickets,
+     * taken from a counter in the segment header, so the waiting time is bounded by the number
+     * of the threads (or processes) ahead, that removes tail latency spikes under heavy write
+     * contention. Consecutive readers still hold the lock concurrently. Lock upgrades are not
+     * queued, because the upgrading party already holds the lock. {@code tryLock()} without
+     * timeout fails if anyone is queued. Requires 64-byte segment headers, that are always used
+     * with this implementation.
+     *
+     * <p>The lock is passed to a particular waiting party, that should be running to take it, so
+     * this implementation performs poorly, if more threads contend for a segment, than there are
+     * available cores.
+     */
+    FAIR,
+
+    /**
+     * Writers just spin on the lock word without registering themselves, that saves two CAS
+     * operations on the lock word per contended write lock acquisition. Readers and updaters are
+     * not held by waiting writers, so writers could be starved under continuous read load. Suits
+     * containers, accessed by threads, pinned to dedicated cores.
+     */
+    SPIN
+}
@@ -36,6 +36,8 @@ public abstract class AbstractReplication implements Serializable {
     @Nullable
     transient RemoteNodeValidator remoteNodeValidator;
     private final boolean bootstrapOnlyLocalEntries;
+    private final boolean deltaReplication;
+    private final long deltaReplicationCacheSize;
     private final String name;
 
     // package-private to forbid subclassing from outside of the package
@@ -45,6 +47,8 @@ public abstract class AbstractReplication implements Serializable {
         udpConfig = builder.udpConfig;
         remoteNodeValidator = builder.remoteNodeValidator;
         bootstrapOnlyLocalEntries = builder.bootstrapOnlyLocalEntries;
+        deltaReplication = builder.deltaReplication;
+        deltaReplicationCacheSize = builder.deltaReplicationCacheSize;
         name = builder.name;
     }
 
@@ -55,6 +59,8 @@ public abstract class AbstractReplication implements Serializable {
                 ", udpConfig=" + udpConfig +
                 ", remoteNodeValidator=" + remoteNodeValidator +
                 ", bootstrapOnlyLocalEntries=" + bootstrapOnlyLocalEntries +
+                ", deltaReplication=" + deltaReplication +
+                ", deltaReplicationCacheSize=" + deltaReplicationCacheSize +
                 ", name=" + name;
     }
 
@@ -80,6 +86,14 @@ public abstract class AbstractReplication implements Serializable {
     public boolean bootstrapOnlyLocalEntries() {
         return bootstrapOnlyLocalEntries;
     }
+
+    public boolean deltaReplication() {
+        return deltaReplication;
+    }
+
+    public long deltaReplicationCacheSize() {
+        return deltaReplicationCacheSize;
+    }
     
     public String name() {
         return name;
@@ -100,6 +114,8 @@ public abstract class AbstractReplication implements Serializable {
         private UdpTransportConfig udpConfig = null;
         private RemoteNodeValidator remoteNodeValidator = null;
         private boolean bootstrapOnlyLocalEntries = false;
+        private boolean deltaReplication = false;
+        private long deltaReplicationCacheSize = 16L << 20;
         private String name = "(unknown)";
 
         // package-private to forbid subclassing from outside of the package
@@ -154,6 +170,46 @@ public abstract class AbstractReplication implements Serializable {
             return (B) this;
         }
 
+        /**
+         * Configures if the node, provided with replication, created by this builder, should send
+         * only the changed byte ranges of the updated values, rather than the whole entries, to
+         * the remote nodes which hold the previous version of the entry. The values last sent to
+         * each remote node are cached on heap, see {@link #deltaReplicationCacheSize(long)}.
+         *
+         * <p>Default configuration is {@code false}. Delta replication pays off for large values
+         * with small in-place changes, for small values the entries are always sent whole.
+         *
+         * @param deltaReplication if a node provided with this replication should replicate
+         *                         deltas of the updated values
+         * @return this builder back
+         * @see AbstractReplication#deltaReplication()
+         */
+        @NotNull
+        public B deltaReplication(boolean deltaReplication) {
+            this.deltaReplication = deltaReplication;
+            return (B) this;
+        }
+
+        /**
+         * Configures the maximum size in bytes of the values, cached per remote node to send the
+         * deltas against, when {@link #deltaReplication(boolean)} is on. The least recently sent
+         * values are evicted first, entries without cached value are sent whole. Default is 16
+         * MB.
+         *
+         * @param deltaReplicationCacheSize the maximum size of the cached values per remote node
+         * @return this builder back
+         * @throws IllegalArgumentException if the given size is not positive
+         * @see AbstractReplication#deltaReplicationCacheSize()
+         */
+        @NotNull
+        public B deltaReplicationCacheSize(long deltaReplicationCacheSize) {
+            if (deltaReplicationCacheSize <= 0L)
+                throw new IllegalArgumentException("Delta replication cache size must be " +
+                        "positive, " + deltaReplicationCacheSize + " given");
+            this.deltaReplicationCacheSize = deltaReplicationCacheSize;
+            return (B) this;
+        }
+
         /**
          * Configures replication "name", which could appear in log messages and replication
          * thread names. Default is {@code "(unknown)"}.
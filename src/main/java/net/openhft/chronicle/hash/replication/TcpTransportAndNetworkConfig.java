@@ -42,12 +42,13 @@ public final class TcpTransportAndNetworkConfig implements Serializable {
     private final ThrottlingConfig throttlingConfig;
     private final long heartBeatInterval;
     private final TimeUnit heartBeatIntervalUnit;
+    private final boolean compression;
 
     private TcpTransportAndNetworkConfig(int serverPort, Set<InetSocketAddress> endpoints,
                                          int tcpBufferSize,
                                          boolean autoReconnectedUponDroppedConnection,
                                          ThrottlingConfig throttlingConfig, long heartBeatInterval,
-                                         TimeUnit heartBeatIntervalUnit) {
+                                         TimeUnit heartBeatIntervalUnit, boolean compression) {
         this.serverPort = serverPort;
         this.endpoints = endpoints;
         this.tcpBufferSize = tcpBufferSize;
@@ -55,6 +56,7 @@ public final class TcpTransportAndNetworkConfig implements Serializable {
         this.throttlingConfig = throttlingConfig;
         this.heartBeatInterval = heartBeatInterval;
         this.heartBeatIntervalUnit = heartBeatIntervalUnit;
+        this.compression = compression;
     }
 
     public static TcpTransportAndNetworkConfig of(int serverPort,
@@ -79,7 +81,8 @@ public final class TcpTransportAndNetworkConfig implements Serializable {
                 true, // autoReconnectedUponDroppedConnection
                 ThrottlingConfig.noThrottling(),
                 DEFAULT_HEART_BEAT_INTERVAL,
-                DEFAULT_HEART_BEAT_INTERVAL_UNIT);
+                DEFAULT_HEART_BEAT_INTERVAL_UNIT,
+                false); // compression
     }
 
     public boolean autoReconnectedUponDroppedConnection() {
@@ -90,7 +93,7 @@ public final class TcpTransportAndNetworkConfig implements Serializable {
             boolean autoReconnectedUponDroppedConnection) {
         return new TcpTransportAndNetworkConfig(serverPort, endpoints, tcpBufferSize,
                 autoReconnectedUponDroppedConnection, throttlingConfig, heartBeatInterval,
-                heartBeatIntervalUnit);
+                heartBeatIntervalUnit, compression);
     }
 
     public ThrottlingConfig throttlingConfig() {
@@ -101,7 +104,7 @@ public final class TcpTransportAndNetworkConfig implements Serializable {
         ThrottlingConfig.checkMillisecondBucketInterval(throttlingConfig, "TCP");
         return new TcpTransportAndNetworkConfig(serverPort, endpoints, tcpBufferSize,
                 autoReconnectedUponDroppedConnection, throttlingConfig, heartBeatInterval,
-                heartBeatIntervalUnit);
+                heartBeatIntervalUnit, compression);
     }
 
     public long heartBeatInterval(TimeUnit unit) {
@@ -115,7 +118,7 @@ public final class TcpTransportAndNetworkConfig implements Serializable {
     public TcpTransportAndNetworkConfig serverPort(int serverPort) {
         return new TcpTransportAndNetworkConfig(serverPort, endpoints, tcpBufferSize,
                 autoReconnectedUponDroppedConnection, throttlingConfig, heartBeatInterval,
-                heartBeatIntervalUnit);
+                heartBeatIntervalUnit, compression);
     }
 
     public Set<InetSocketAddress> endpoints() {
@@ -130,7 +133,7 @@ public final class TcpTransportAndNetworkConfig implements Serializable {
         }
         return new TcpTransportAndNetworkConfig(serverPort, endpoints, tcpBufferSize,
                 autoReconnectedUponDroppedConnection, throttlingConfig, heartBeatInterval,
-                heartBeatIntervalUnit);
+                heartBeatIntervalUnit, compression);
     }
 
     public int tcpBufferSize() {
@@ -142,14 +145,33 @@ public final class TcpTransportAndNetworkConfig implements Serializable {
             throw new IllegalArgumentException();
         return new TcpTransportAndNetworkConfig(serverPort, endpoints, tcpBufferSize,
                 autoReconnectedUponDroppedConnection, throttlingConfig, heartBeatInterval,
-                heartBeatIntervalUnit);
+                heartBeatIntervalUnit, compression);
     }
 
     public TcpTransportAndNetworkConfig heartBeatInterval(long heartBeatInterval,
                                                           TimeUnit heartBeatIntervalUnit) {
         return new TcpTransportAndNetworkConfig(serverPort, endpoints, tcpBufferSize,
                 autoReconnectedUponDroppedConnection, throttlingConfig, heartBeatInterval,
-                heartBeatIntervalUnit);
+                heartBeatIntervalUnit, compression);
+    }
+
+    public boolean compression() {
+        return compression;
+    }
+
+    /**
+     * Configures whether the replication stream is compressed. Batches of replicated entries are
+     * sent as LZ4 compressed blocks, only if both nodes of the connection have the compression
+     * enabled, that is agreed during the handshake. Stateless clients are not affected. Disabled
+     * by default.
+     *
+     * @param compression {@code true} to compress the replication stream
+     * @return a copy of this config with the given compression setting
+     */
+    public TcpTransportAndNetworkConfig compression(boolean compression) {
+        return new TcpTransportAndNetworkConfig(serverPort, endpoints, tcpBufferSize,
+                autoReconnectedUponDroppedConnection, throttlingConfig, heartBeatInterval,
+                heartBeatIntervalUnit, compression);
     }
 
     @Override
@@ -162,6 +184,7 @@ public final class TcpTransportAndNetworkConfig implements Serializable {
         if (autoReconnectedUponDroppedConnection != that.autoReconnectedUponDroppedConnection)
             return false;
         if (heartBeatInterval != that.heartBeatInterval) return false;
+        if (compression != that.compression) return false;
         if (tcpBufferSize != that.tcpBufferSize) return false;
         if (serverPort != that.serverPort) return false;
         if (endpoints != null ? !endpoints.equals(that.endpoints) : that.endpoints != null)
@@ -183,6 +206,7 @@ public final class TcpTransportAndNetworkConfig implements Serializable {
         result = 31 * result + (throttlingConfig != null ? throttlingConfig.hashCode() : 0);
         result = 31 * result + (int) (heartBeatInterval ^ (heartBeatInterval >>> 32));
         result = 31 * result + (heartBeatIntervalUnit != null ? heartBeatIntervalUnit.hashCode() : 0);
+        result = 31 * result + (compression ? 1 : 0);
         return result;
     }
 
@@ -196,6 +220,7 @@ public final class TcpTransportAndNetworkConfig implements Serializable {
                 ", throttlingConfig=" + throttlingConfig +
                 ", heartBeatInterval=" + heartBeatInterval +
                 ", heartBeatIntervalUnit=" + heartBeatIntervalUnit +
+                ", compression=" + compression +
                 '}';
     }
 }
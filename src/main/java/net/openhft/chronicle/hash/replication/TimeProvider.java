@@ -44,6 +44,14 @@ public abstract class TimeProvider implements Serializable {
      */
     public static final TimeProvider SYSTEM = new System();
 
+    /**
+     * Returns the current time in microseconds. Times to live of entries are converted to
+     * microseconds, before they are added to the current time, see {@link
+     * ChronicleHashBuilder#timeProvider(TimeProvider)}, so implementations shouldn't use other
+     * units.
+     *
+     * @return the current time in microseconds
+     */
     public abstract long currentTime();
 
     private static class System extends TimeProvider {
@@ -314,6 +314,13 @@ abstract class AbstractChannelReplicator implements Closeable {
             throttler.add(channel);
     }
 
+    /**
+     * @return the total time the writes were suspended by the throttling, in milliseconds
+     */
+    long throttleWaitMillis() {
+        return throttler != null ? throttler.throttledMillis() : 0L;
+    }
+
     /**
      * throttles 'writes' to ensure the network is not swamped, this is achieved by periodically
      * de-registering the write selector during periods of high volume.
@@ -327,6 +334,9 @@ abstract class AbstractChannelReplicator implements Closeable {
 
         private long lastTime = System.currentTimeMillis();
         private long bytesWritten;
+        // the time the writes were suspended at, 0 if they are not suspended
+        private long throttledSince = 0L;
+        private volatile long throttledMillis = 0L;
 
         Throttler(@NotNull Selector selector,
                   long throttleIntervalInMillis,
@@ -358,6 +368,10 @@ abstract class AbstractChannelReplicator implements Closeable {
 
             lastTime = time;
             bytesWritten = 0;
+            if (throttledSince != 0L) {
+                throttledMillis += time - throttledSince;
+                throttledSince = 0L;
+            }
 
             if (LOG.isDebugEnabled())
                 LOG.debug("Restoring OP_WRITE on all channels");
@@ -380,6 +394,8 @@ abstract class AbstractChannelReplicator implements Closeable {
                 throws ClosedChannelException {
             bytesWritten += bytesJustWritten;
             if (bytesWritten > maxBytesInInterval) {
+                if (throttledSince == 0L)
+                    throttledSince = System.currentTimeMillis();
                 for (SelectableChannel channel : channels) {
                     final SelectionKey selectionKey = channel.keyFor(selector);
                     if (selectionKey != null) {
@@ -390,6 +406,13 @@ abstract class AbstractChannelReplicator implements Closeable {
                 }
             }
         }
+
+        /**
+         * @return the total time the writes were suspended, not counting the current suspension
+         */
+        long throttledMillis() {
+            return throttledMillis;
+        }
     }
 
     /**
@@ -432,6 +455,9 @@ abstract class AbstractChannelReplicator implements Closeable {
         @NotNull
         private ByteBuffer out;
 
+        // the node the entries are sent to, if known, and 0 otherwise
+        byte remoteIdentifier = 0;
+
         EntryCallback(@NotNull final Replica.EntryExternalizable externalizable,
                       final int tcpBufferSize) {
             this.externalizable = externalizable;
@@ -502,7 +528,7 @@ abstract class AbstractChannelReplicator implements Closeable {
 
                 start = in.position();
 
-                externalizable.writeExternalEntry(entry, in, chronicleId);
+                externalizable.writeExternalEntry(entry, in, chronicleId, remoteIdentifier);
 
                 if (in.position() == start) {
                     in.position(pos0);
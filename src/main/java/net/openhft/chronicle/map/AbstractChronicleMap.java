@@ -28,8 +28,12 @@ import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
 import java.util.function.Predicate;
 
 import static java.util.Collections.emptyList;
@@ -104,8 +108,12 @@ interface AbstractChronicleMap<K, V> extends ChronicleMap<K, V>, Serializable {
 
     @Override
     default V getUsing(K key, V usingValue) {
-        try (MapKeyContext<K, V> c = context(key)) {
-            return c.getUsing(usingValue);
+        try (VanillaContext<K, ?, ?, V, ?, ?> c = context(key)) {
+            V value = c.h.optimisticReads && c.optimisticGetUsing(usingValue) ?
+                    c.value : c.getUsing(usingValue);
+            if (c.h.eviction)
+                c.countLookup(value != null);
+            return value;
         }
     }
 
@@ -135,6 +143,196 @@ interface AbstractChronicleMap<K, V> extends ChronicleMap<K, V>, Serializable {
         }
     }
 
+    @Override
+    @SuppressWarnings("unchecked")
+    default void getAll(Collection<K> keys, Map<K, V> out) {
+        int n = keys.size();
+        if (n == 0)
+            return;
+        K[] keyArray = (K[]) keys.toArray();
+        try (VanillaContext<K, ?, ?, V, ?, ?> c = mapContext()) {
+            forEachKeyInSegmentOrder(c, n, i -> keyArray[i], i -> {
+                V value = c.getUsing(null);
+                if (value != null)
+                    out.put(keyArray[i], value);
+            });
+        }
+    }
+
+    /**
+     * Hashes all the keys once, groups them by segments and calls the action for each key, with
+     * the key initialized in the context, under the read lock of the key's segment. The read lock
+     * of each segment is acquired once. The action could upgrade the lock.
+     *
+     * @param c     the context to use
+     * @param n     the number of keys
+     * @param key   returns the key by its index, could be called several times for each index
+     * @param action is called with the key index
+     */
+    static <K> void forEachKeyInSegmentOrder(VanillaContext<K, ?, ?, ?, ?, ?> c, int n,
+                                             IntFunction<K> key, IntConsumer action) {
+        long[] hashes = new long[n];
+        long[] order = segmentOrder(c, n, key, hashes);
+        for (int from = 0, to; from < n; from = to) {
+            to = segmentGroupEnd(order, from);
+            forEachKeyInSegmentGroup(c, order, from, to, hashes, key, false, action);
+        }
+    }
+
+    /**
+     * Hashes the keys and sorts them by segments.
+     *
+     * @param hashes the array to store the hashes of the keys to
+     * @return the array of the segment index in the higher half and the key index in the lower
+     * half of each element, sorted
+     */
+    static <K> long[] segmentOrder(VanillaContext<K, ?, ?, ?, ?, ?> c, int n,
+                                   IntFunction<K> key, long[] hashes) {
+        long[] order = new long[n];
+        for (int i = 0; i < n; i++) {
+            c.initKey(key.apply(i));
+            c.initSegmentIndex();
+            hashes[i] = c.hash0();
+            order[i] = (((long) c.segmentIndex) << 32) | i;
+            c.closeKey();
+        }
+        Arrays.sort(order);
+        return order;
+    }
+
+    static int segmentIndex(long[] order, int orderIndex) {
+        return (int) (order[orderIndex] >>> 32);
+    }
+
+    static int segmentGroupEnd(long[] order, int from) {
+        int segmentIndex = segmentIndex(order, from);
+        int to = from + 1;
+        while (to < order.length && segmentIndex(order, to) == segmentIndex) {
+            to++;
+        }
+        return to;
+    }
+
+    /**
+     * Calls the action for each key of the group, falling into the same segment, under the single
+     * read, or write, if {@code writeLock} is {@code true}, lock of the segment.
+     */
+    static <K> void forEachKeyInSegmentGroup(
+            VanillaContext<K, ?, ?, ?, ?, ?> c, long[] order, int from, int to, long[] hashes,
+            IntFunction<K> key, boolean writeLock, IntConsumer action) {
+        c.segmentIndex = segmentIndex(order, from);
+        try {
+            if (writeLock) {
+                c.writeLock().lock();
+            } else {
+                c.readLock().lock();
+            }
+            c.initSegment();
+            for (int j = from; j < to; j++) {
+                c.prefetchHashLookupSlot(hashes[(int) order[j]]);
+            }
+            for (int j = from; j < to; j++) {
+                int i = (int) order[j];
+                c.initKeyWithHash(key.apply(i), hashes[i]);
+                try {
+                    action.accept(i);
+                } finally {
+                    c.closeKeyWithinSegment();
+                }
+            }
+        } finally {
+            c.closeSegmentIndex();
+        }
+    }
+
+    @Override
+    default void putAll(Map<? extends K, ? extends V> m) {
+        putAll(m, 1);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    default BulkLoadStats putAll(Map<? extends K, ? extends V> m, int parallelism) {
+        int n = m.size();
+        K[] keys = (K[]) new Object[n];
+        V[] values = (V[]) new Object[n];
+        int index = 0;
+        for (Entry<? extends K, ? extends V> e : m.entrySet()) {
+            keys[index] = e.getKey();
+            values[index++] = e.getValue();
+        }
+        return putAll(keys, values, index, parallelism);
+    }
+
+    /**
+     * Puts the first {@code n} keys and values from the given arrays, grouped by segments, each
+     * group under a single segment write lock. If {@code parallelism} is greater than 1, each group
+     * is put in a separate fork-join task.
+     */
+    default BulkLoadStats putAll(K[] keys, V[] values, int n, int parallelism) {
+        if (parallelism <= 0)
+            throw new IllegalArgumentException("parallelism should be positive, " +
+                    parallelism + " given");
+        BulkLoadStats stats = new BulkLoadStats(actualSegments());
+        int threads = Math.min(parallelism, Math.min(n, actualSegments()));
+        if (threads <= 1) {
+            putAll(keys, values, n, null, stats);
+            return stats;
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            putAll(keys, values, n, pool, stats);
+        } finally {
+            pool.shutdown();
+        }
+        return stats;
+    }
+
+    /**
+     * Puts the first {@code n} keys and values from the given arrays, grouped by segments, each
+     * group under a single segment write lock, adds the segment stats to the given {@code stats}.
+     * If the {@code pool} is not {@code null}, each group is put in a separate task in the pool,
+     * otherwise all groups are put in the calling thread.
+     */
+    default void putAll(K[] keys, V[] values, int n, ForkJoinPool pool, BulkLoadStats stats) {
+        if (n == 0)
+            return;
+        long[] hashes = new long[n];
+        long[] order;
+        try (VanillaContext<K, ?, ?, V, ?, ?> c = mapContext()) {
+            order = segmentOrder(c, n, i -> keys[i], hashes);
+        }
+        int[] groupStarts = new int[Math.min(n, actualSegments()) + 1];
+        int groups = 0;
+        for (int from = 0; from < n; from = segmentGroupEnd(order, from)) {
+            groupStarts[groups++] = from;
+        }
+        groupStarts[groups] = n;
+
+        IntConsumer loadGroup = group -> {
+            int from = groupStarts[group], to = groupStarts[group + 1];
+            try (VanillaContext<K, ?, ?, V, ?, ?> c = mapContext()) {
+                long start = System.nanoTime();
+                forEachKeyInSegmentGroup(c, order, from, to, hashes, i -> keys[i], true,
+                        i -> c.put(values[i]));
+                stats.addSegment(segmentIndex(order, from), to - from,
+                        System.nanoTime() - start);
+            }
+        };
+        if (pool == null || groups == 1) {
+            for (int group = 0; group < groups; group++) {
+                loadGroup.accept(group);
+            }
+            return;
+        }
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(groups);
+        for (int group = 0; group < groups; group++) {
+            int g = group;
+            tasks.add(ForkJoinTask.adapt(() -> loadGroup.accept(g)));
+        }
+        pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+    }
+
     default void upgradeReadToUpdateLockWithUnlockingIfNeeded(KeyContext c) {
         if (!c.updateLock().tryLock()) {
             c.readLock().unlock();
@@ -254,6 +452,8 @@ interface AbstractChronicleMap<K, V> extends ChronicleMap<K, V>, Serializable {
 
     VanillaContext<K, ?, ?, V, ?, ?> mapContext();
 
+    long segmentHashLookupCapacity();
+
     @Override
     default boolean containsValue(Object value) {
         return !forEachEntryWhile(c -> !c.valueEqualTo((V) value));
@@ -269,10 +469,6 @@ interface AbstractChronicleMap<K, V> extends ChronicleMap<K, V>, Serializable {
         forEachEntry(c -> action.accept(c.key(), c.get()));
     }
 
-    @Override
-    default void putAll(Map<? extends K, ? extends V> m) {
-        m.forEach(this::put);
-    }
 
     @NotNull
     @Override
@@ -325,6 +521,11 @@ interface AbstractChronicleMap<K, V> extends ChronicleMap<K, V>, Serializable {
             public void forEach(java.util.function.Consumer<? super V> action) {
                 AbstractChronicleMap.this.forEachEntry(c -> action.accept(c.get()));
             }
+
+            @Override
+            public Spliterator<V> spliterator() {
+                return ChronicleMapSpliterator.ofValues(AbstractChronicleMap.this);
+            }
         };
     }
 
@@ -359,6 +560,11 @@ interface AbstractChronicleMap<K, V> extends ChronicleMap<K, V>, Serializable {
             public void forEach(java.util.function.Consumer<? super K> action) {
                 AbstractChronicleMap.this.forEachEntry(c -> action.accept(c.key()));
             }
+
+            @Override
+            public Spliterator<K> spliterator() {
+                return ChronicleMapSpliterator.ofKeys(AbstractChronicleMap.this);
+            }
         };
     }
 
@@ -430,33 +636,60 @@ interface AbstractChronicleMap<K, V> extends ChronicleMap<K, V>, Serializable {
         });
     }
 
+    @NotNull
+    @Override
+    default MapEntryCursor<K, V> entryCursor() {
+        return new ChronicleMapEntryCursor<>(this);
+    }
+
+    @Override
+    default void forEachEntryParallel(
+            ForkJoinPool pool, Consumer<? super MapKeyContext<K, V>> action) {
+        pool.invoke(new ChronicleMapSpliterator.ParallelForEach<>(
+                new ChronicleMapSpliterator<>(this, c -> null), action));
+    }
+
     @Override
     default boolean forEachEntryWhile(final Predicate<? super MapKeyContext<K, V>> predicate) {
-        boolean interrupt = false;
-        iteration:
         try (VanillaContext<K, ?, ?, V, ?, ?> c = mapContext()) {
             ForEachWhilePredicate<K, V> hashLookupPredicate =
                     new ForEachWhilePredicate<>(c, predicate);
             for (int segmentIndex = actualSegments() - 1; segmentIndex >= 0; segmentIndex--) {
-                c.segmentIndex = segmentIndex;
-                c.forEachEntry = true;
-                try {
-                    c.updateLock().lock();
-                    if (c.size() == 0)
-                        continue;
-                    c.initSegment();
-                    c.hashLookup.forEachRemoving(hashLookupPredicate);
-                    if (hashLookupPredicate.shouldBreak) {
-                        interrupt = true;
-                        break iteration;
-                    }
-                } finally {
-                    c.forEachEntry = false;
-                    c.closeSegmentIndex();
-                }
+                if (!forEachSegmentEntryWhile(c, segmentIndex, hashLookupPredicate))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Iterates entries of a single segment under the segment's update lock. The predicate might
+     * update or remove entries, and upgrading a shared read lock in place would dead lock with
+     * concurrent updaters of the segment, waiting for readers to drain.
+     *
+     * @return {@code false} if the iteration is interrupted by the predicate
+     */
+    static <K, V> boolean forEachSegmentEntryWhile(
+            VanillaContext<K, ?, ?, V, ?, ?> c, int segmentIndex,
+            ForEachWhilePredicate<K, V> hashLookupPredicate) {
+        c.segmentIndex = segmentIndex;
+        c.forEachEntry = true;
+        try {
+            c.updateLock().lock();
+            if (c.size() == 0)
+                return true;
+            c.initSegment();
+            for (int tier = 0; c.hasTier(tier); tier++) {
+                c.initTier(tier);
+                c.hashLookup.forEachRemoving(hashLookupPredicate);
+                if (hashLookupPredicate.shouldBreak)
+                    return false;
             }
+            return true;
+        } finally {
+            c.forEachEntry = false;
+            c.closeSegmentIndex();
         }
-        return !interrupt;
     }
 
 
@@ -475,7 +708,13 @@ interface AbstractChronicleMap<K, V> extends ChronicleMap<K, V>, Serializable {
 
         @Override
         public void accept(long hash, long pos) {
-            c.pos = pos;
+            // release all exclusive locks: possibly if context.remove() is performed in the
+            // callback for the previous entry (then the hash lookup slot is removed under the
+            // write lock), or acquired manually
+            while (c.writeLockCount > 0) {
+                c.writeLock().unlock();
+            }
+            c.pos = c.globalPos(pos);
             c.initKeyFromPos();
             try {
                 if (!c.containsKey()) { // for replicated map
@@ -484,11 +723,6 @@ interface AbstractChronicleMap<K, V> extends ChronicleMap<K, V>, Serializable {
                 }
                 shouldBreak = !predicate.test(c);
                 c.closeKey0();
-                // release all exclusive locks: possibly if context.remove() is performed
-                // in the callback, or acquired manually
-                while (c.writeLockCount > 0) {
-                    c.writeLock().unlock();
-                }
                 if (!c.isUpdateLocked()) {
                     throw new IllegalStateException("Shouldn't release update lock " +
                             "inside forEachEntry() callback");
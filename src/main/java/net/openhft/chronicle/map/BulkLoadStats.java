@@ -0,0 +1,116 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+/**
+ * Per-segment statistics of a bulk load into a {@link ChronicleMap}: how many entries were put
+ * into each segment and how much time was spent holding the segment's lock.
+ *
+ * @see ChronicleMap#putAll(java.util.Map, int)
+ */
+public final class BulkLoadStats {
+
+    private final long[] segmentEntries;
+    private final long[] segmentNanos;
+
+    BulkLoadStats(int segments) {
+        segmentEntries = new long[segments];
+        segmentNanos = new long[segments];
+    }
+
+    /**
+     * Each segment is expected to be loaded by a single thread, the stats should be read only
+     * after all loading threads are joined.
+     */
+    void addSegment(int segmentIndex, long entries, long nanos) {
+        segmentEntries[segmentIndex] += entries;
+        segmentNanos[segmentIndex] += nanos;
+    }
+
+    /**
+     * Returns the number of segments, the statistics is collected for.
+     */
+    public int segments() {
+        return segmentEntries.length;
+    }
+
+    /**
+     * Returns the number of entries put into the segment with the given index.
+     */
+    public long entries(int segmentIndex) {
+        return segmentEntries[segmentIndex];
+    }
+
+    /**
+     * Returns the time spent loading the segment with the given index, in nanoseconds.
+     */
+    public long nanos(int segmentIndex) {
+        return segmentNanos[segmentIndex];
+    }
+
+    /**
+     * Returns the throughput of loading the segment with the given index, in entries per second,
+     * or {@code 0.0}, if no entries were put into the segment.
+     */
+    public double entriesPerSecond(int segmentIndex) {
+        long nanos = segmentNanos[segmentIndex];
+        return nanos > 0 ? segmentEntries[segmentIndex] * 1e9 / nanos : 0.0;
+    }
+
+    /**
+     * Returns the total number of entries put into all segments.
+     */
+    public long totalEntries() {
+        long total = 0;
+        for (long entries : segmentEntries) {
+            total += entries;
+        }
+        return total;
+    }
+
+    /**
+     * Returns the total time spent loading all segments, in nanoseconds. If segments were loaded
+     * in parallel, this is greater than the elapsed time.
+     */
+    public long totalNanos() {
+        long total = 0;
+        for (long nanos : segmentNanos) {
+            total += nanos;
+        }
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("BulkLoadStats{totalEntries=")
+                .append(totalEntries()).append(", totalNanos=").append(totalNanos())
+                .append(", segments=[");
+        for (int i = 0; i < segments(); i++) {
+            if (segmentEntries[i] == 0)
+                continue;
+            sb.append("{segment=").append(i)
+                    .append(", entries=").append(segmentEntries[i])
+                    .append(", entriesPerSecond=").append((long) entriesPerSecond(i))
+                    .append("}, ");
+        }
+        if (sb.charAt(sb.length() - 2) == ',')
+            sb.setLength(sb.length() - 2);
+        return sb.append("]}").toString();
+    }
+}
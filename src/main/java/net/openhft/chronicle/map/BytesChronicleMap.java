@@ -23,6 +23,8 @@ import org.jetbrains.annotations.NotNull;
 import java.io.File;
 import java.util.Set;
 
+import static net.openhft.chronicle.map.AbstractChronicleMap.forEachKeyInSegmentOrder;
+
 public class BytesChronicleMap implements AbstractChronicleMap<Bytes, Bytes> {
 
     private final VanillaChronicleMap<?, ?, ?, ?, ?, ?> delegate;
@@ -49,6 +51,11 @@ public class BytesChronicleMap implements AbstractChronicleMap<Bytes, Bytes> {
         return context;
     }
 
+    @Override
+    public long segmentHashLookupCapacity() {
+        return delegate.segmentHashLookupCapacity();
+    }
+
     @Override
     public File file() {
         return delegate.file();
@@ -120,6 +127,39 @@ public class BytesChronicleMap implements AbstractChronicleMap<Bytes, Bytes> {
         }
     }
 
+    /**
+     * Looks up the values for the given keys, batched by segments, see {@link
+     * #getAll(java.util.Collection, java.util.Map)}. {@code keys} should contain the number of
+     * keys, encoded as stop bit, followed by the keys with their sizes. For each key, the index of
+     * the key in the given batch, encoded as stop bit, and then the same output as for a single
+     * {@code get()} is written to the {@link #output}. Results are written in the segment order,
+     * not in the order of the given keys.
+     */
+    final void getAll(Bytes keys) {
+        int numberOfKeys = (int) keys.readStopBit();
+        long[] keyPositions = new long[numberOfKeys];
+        for (int i = 0; i < numberOfKeys; i++) {
+            keyPositions[i] = keys.position();
+            long keySize = delegate.keySizeMarshaller.readSize(keys);
+            keys.skip(keySize);
+        }
+        long keysEnd = keys.position();
+        try (VanillaContext<Bytes, ?, ?, Bytes, ?, ?> c = mapContext()) {
+            forEachKeyInSegmentOrder(c, numberOfKeys, i -> {
+                keys.clear(); // because used as key, altering position and limit
+                keys.position(keyPositions[i]);
+                return keys;
+            }, i -> {
+                output.ensureBufferSize(5L);
+                output.in().writeStopBit(i);
+                c.output = output;
+                c.getUsing(null);
+            });
+        }
+        keys.clear();
+        keys.position(keysEnd);
+    }
+
     @Override
     public int size() {
         return delegate.size();
@@ -133,6 +133,19 @@ final class ChannelProvider implements Closeable {
             }
         }
 
+        @Override
+        public void writeExternalEntry(@NotNull Bytes entry, @NotNull Bytes destination,
+                                       int chronicleChannel, byte remoteIdentifier) {
+            channelDataLock.readLock().lock();
+            try {
+                destination.writeStopBit(chronicleChannel);
+                channelEntryExternalizables[chronicleChannel].writeExternalEntry(
+                        entry, destination, chronicleChannel, remoteIdentifier);
+            } finally {
+                channelDataLock.readLock().unlock();
+            }
+        }
+
         @Override
         public void readExternalEntry(
                 @NotNull ReplicatedChronicleMap.BytesReplicatedContext context, @NotNull Bytes source) {
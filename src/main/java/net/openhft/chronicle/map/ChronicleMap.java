@@ -25,14 +25,20 @@ import net.openhft.lang.io.Bytes;
 import net.openhft.lang.io.serialization.BytesMarshaller;
 import net.openhft.lang.model.Byteable;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
 import java.lang.Object;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Extension of {@link ConcurrentMap} interface, stores the data off-heap.
@@ -141,6 +147,21 @@ public interface ChronicleMap<K, V>
     @NotNull
     MapKeyContext<K, V> acquireContext(@NotNull K key, @NotNull V usingValue);
 
+    /**
+     * Returns a new cursor over the entries of this map, that doesn't copy entries on-heap and
+     * holds only the read lock of the segment, it is currently positioned in. Full scans via the
+     * cursor don't allocate objects, if the entries are accessed via the context flyweight, see
+     * {@link MapEntryCursor}.
+     *
+     * @return a new cursor, positioned before the first entry
+     * @throws UnsupportedOperationException if this map doesn't support cursors, e. g. is a
+     * stateless client
+     */
+    @NotNull
+    default MapEntryCursor<K, V> entryCursor() {
+        throw new UnsupportedOperationException();
+    }
+
     /**
      * Apply a mapping to the value returned by a key and return a result. A read lock is assumed.
      *
@@ -161,6 +182,263 @@ public interface ChronicleMap<K, V>
      */
     V putMapped(K key, @NotNull UnaryOperator<V> unaryOperator);
 
+    /**
+     * Looks up the values for all the given keys and puts the found mappings into the given
+     * {@code out} map. Keys, absent in this map, are skipped.
+     *
+     * <p>Off-heap {@code ChronicleMap} implementation hashes all the keys once, groups them by
+     * segments, and looks up each group under a single segment read lock, that is considerably
+     * cheaper than a series of {@link #get(Object)} calls, when many keys are looked up at once.
+     * Note that each group is read atomically with respect to the writes to the same segment,
+     * but there is no atomicity across segments.
+     *
+     * @param keys the keys to look up
+     * @param out  the map to put the found mappings to
+     */
+    default void getAll(Collection<K> keys, Map<K, V> out) {
+        for (K key : keys) {
+            V value = get(key);
+            if (value != null)
+                out.put(key, value);
+        }
+    }
+
+    /**
+     * Copies all of the mappings from the specified map to this map, like {@link #putAll(Map)},
+     * and returns the statistics of the load.
+     *
+     * <p>Off-heap {@code ChronicleMap} implementation hashes all the keys once, groups them by
+     * segments, and puts each group under a single segment write lock, reusing the same context
+     * for all entries of the group. Up to {@code parallelism} threads (including the calling
+     * thread) load different segments concurrently. Each segment group is put atomically with
+     * respect to the other operations with the same segment, but there is no atomicity across
+     * segments.
+     *
+     * @param m           mappings to be stored in this map
+     * @param parallelism the maximum number of threads to load the segments, {@code 1} means
+     *                    loading in the calling thread only
+     * @return the number of entries put and the time spent, per segment
+     * @throws IllegalArgumentException if {@code parallelism} is not positive
+     */
+    default BulkLoadStats putAll(Map<? extends K, ? extends V> m, int parallelism) {
+        if (parallelism <= 0)
+            throw new IllegalArgumentException("parallelism should be positive, " +
+                    parallelism + " given");
+        BulkLoadStats stats = new BulkLoadStats(1);
+        long start = System.nanoTime();
+        m.forEach(this::put);
+        stats.addSegment(0, m.size(), System.nanoTime() - start);
+        return stats;
+    }
+
+    /**
+     * Asynchronous version of {@link #get(Object)}.
+     *
+     * <p>Stateless clients send the request and return immediately, many requests could be in
+     * flight over the same connection at once, the returned future is completed by the thread
+     * which receives the responses from the server, so dependent actions, attached to the future
+     * without an executor, should not block. Other {@code ChronicleMap} implementations perform
+     * the lookup in the calling thread and return an already completed future.
+     *
+     * @param key the key whose associated value is to be returned
+     * @return the future of the value to which the specified key is mapped, or {@code null}
+     */
+    default CompletableFuture<V> getAsync(K key) {
+        return CompletableFuture.supplyAsync(() -> get(key), Runnable::run);
+    }
+
+    /**
+     * Asynchronous version of {@link #put(Object, Object)}, see {@link #getAsync(Object)} for
+     * the details.
+     *
+     * @return the future of the previous value associated with the key, or {@code null}
+     */
+    default CompletableFuture<V> putAsync(K key, V value) {
+        return CompletableFuture.supplyAsync(() -> put(key, value), Runnable::run);
+    }
+
+    /**
+     * Asynchronous version of {@link #remove(Object)}, see {@link #getAsync(Object)} for the
+     * details.
+     *
+     * @return the future of the previous value associated with the key, or {@code null}
+     */
+    default CompletableFuture<V> removeAsync(K key) {
+        return CompletableFuture.supplyAsync(() -> remove(key), Runnable::run);
+    }
+
+    /**
+     * Asynchronous version of {@link #containsKey(Object)}, see {@link #getAsync(Object)} for the
+     * details.
+     *
+     * @return the future of {@code true} if this map contains a mapping for the key
+     */
+    default CompletableFuture<Boolean> containsKeyAsync(K key) {
+        return CompletableFuture.supplyAsync(() -> containsKey(key), Runnable::run);
+    }
+
+    /**
+     * Sends the writes, buffered by a stateless client configured to {@linkplain
+     * ChronicleMapStatelessClientBuilder#coalesceWrites(int, long, java.util.concurrent.TimeUnit)
+     * coalesce writes}, to the server. Doesn't wait for the server to apply them. Other {@code
+     * ChronicleMap} implementations apply the writes immediately, so this method does nothing.
+     */
+    default void flush() {
+    }
+
+    /**
+     * Returns the statistics of the replication of this map to the remote nodes, or {@code null},
+     * if this map is not replicated.
+     *
+     * @return the view of how far behind each remote node is, or {@code null}
+     */
+    @Nullable
+    default ReplicationStats replicationStats() {
+        return null;
+    }
+
+    /**
+     * Returns the fragmentation of the entry space of each segment of this map. Maps without
+     * off-heap segments, e. g. stateless clients, return an empty list.
+     *
+     * @return the fragmentation snapshots, in the order of segment indexes
+     * @see #compact()
+     */
+    default List<SegmentFragmentation> fragmentation() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Compacts the entry space of the segments of this map, one segment at a time under its
+     * write lock: slides the entries toward the start of the entry space, so that all free chunks
+     * of a segment tier form a single run, and new entries of any size fit, while there are
+     * enough free chunks in total. Maps without off-heap segments do nothing.
+     *
+     * <p>Compaction of a segment blocks all operations with the segment, it takes time,
+     * proportional to the number of entries and the size of the entry space of the segment.
+     *
+     * @return the number of moved entries
+     * @see ChronicleMapBuilder#compaction(double, long, java.util.concurrent.TimeUnit)
+     */
+    default long compact() {
+        return 0L;
+    }
+
+    /**
+     * Associates the specified value with the specified key, the entry expires after the given
+     * time to live, instead of the {@linkplain ChronicleMapBuilder#timeToLive(long, TimeUnit)
+     * default time to live} of the map.
+     *
+     * @param key        key with which the specified value is to be associated
+     * @param value      value to be associated with the specified key
+     * @param timeToLive the time to live of the entry
+     * @param unit       the unit of {@code timeToLive}
+     * @return the previous value associated with {@code key}, or {@code null} if there was no
+     * mapping for {@code key}, or the previous entry has expired
+     * @throws IllegalStateException         if the expiry of entries is not configured for this
+     *                                       map
+     * @throws IllegalArgumentException      if {@code timeToLive} is not positive
+     * @throws UnsupportedOperationException if this map doesn't support the expiry of entries,
+     *                                       e. g. stateless clients
+     */
+    default V put(K key, V value, long timeToLive, TimeUnit unit) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Removes the expired entries from the segments of this map, one segment at a time under its
+     * update lock, see {@link ChronicleMapBuilder#timeToLive(long, TimeUnit)}. Maps without the
+     * expiry of entries do nothing.
+     *
+     * @return the number of removed entries
+     * @see ChronicleMapBuilder#expirySweep(long, TimeUnit)
+     */
+    default long removeExpiredEntries() {
+        return 0L;
+    }
+
+    /**
+     * Returns the cache statistics of each segment of this map, if {@linkplain
+     * ChronicleMapBuilder#eviction(boolean) eviction} is configured, otherwise an empty list.
+     *
+     * @return the statistics snapshots, in the order of segment indexes
+     */
+    default List<SegmentCacheStats> cacheStats() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Atomically adds the given delta to the {@code long} field at the given offset within the
+     * serialized value bytes, mapped to the given key, without deserialization of the value. If
+     * the key is absent, the {@linkplain ChronicleMapBuilder#defaultValue(Object) default value}
+     * is put first. The field is updated by the CPU atomic instruction under the read lock of
+     * the segment, so concurrent atomic updates of values in the same segment don't block each
+     * other.
+     *
+     * <p>The address of the field should be 8-byte aligned, e. g. the field is at the offset,
+     * which is a multiple of 8, and values are {@linkplain
+     * ChronicleMapBuilder#entryAndValueAlignment(Alignment) aligned} by 8 bytes, as they are by
+     * default for {@link net.openhft.lang.model.DataValueClasses data value} interfaces, which
+     * first field is {@code long}. The update doesn't change the expiry time of the entry.
+     *
+     * @param key    the key of the value to update
+     * @param offset the offset of the field within the value bytes
+     * @param delta  the value to add
+     * @return the updated value of the field
+     * @throws IllegalArgumentException      if the field at {@code offset} is out of the value
+     *                                       bytes
+     * @throws IllegalStateException         if the field is not aligned, or the key is absent
+     *                                       and the default value is not configured
+     * @throws UnsupportedOperationException if this map doesn't support in-place updates, e.
+     *                                       g. replicated maps and stateless clients
+     */
+    default long addAndGetLong(K key, long offset, long delta) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Same as {@link #addAndGetLong(Object, long, long)}, but returns the previous value of the
+     * field.
+     */
+    default long getAndAddLong(K key, long offset, long delta) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Atomically sets the {@code long} field at the given offset within the serialized value
+     * bytes, mapped to the given key, to {@code x}, if the current value of the field is {@code
+     * expected}, see {@link #addAndGetLong(Object, long, long)} for details.
+     *
+     * @return {@code true} if the field is updated
+     */
+    default boolean compareAndSwapLong(K key, long offset, long expected, long x) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Same as {@link #addAndGetLong(Object, long, long)}, but updates the {@code int} field, the
+     * address of the field should be 4-byte aligned.
+     */
+    default int addAndGetInt(K key, long offset, int delta) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Same as {@link #addAndGetInt(Object, long, int)}, but returns the previous value of the
+     * field.
+     */
+    default int getAndAddInt(K key, long offset, int delta) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Same as {@link #compareAndSwapLong(Object, long, long, long)}, but updates the {@code int}
+     * field, the address of the field should be 4-byte aligned.
+     */
+    default boolean compareAndSwapInt(K key, long offset, int expected, int x) {
+        throw new UnsupportedOperationException();
+    }
+
     /**
      * Exports all the entries to a {@link File} storing them in JSON format, an attempt is
      * made where possible to use standard java serialisation and keep the data human readable, data
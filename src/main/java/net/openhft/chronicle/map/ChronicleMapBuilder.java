@@ -20,7 +20,9 @@ package net.openhft.chronicle.map;
 
 import net.openhft.chronicle.hash.ChronicleHashBuilder;
 import net.openhft.chronicle.hash.ChronicleHashInstanceBuilder;
+import net.openhft.chronicle.hash.EntryAllocation;
 import net.openhft.chronicle.hash.impl.ChronicleHashBuilderImpl;
+import net.openhft.chronicle.hash.locks.SegmentLocking;
 import net.openhft.chronicle.hash.impl.hashlookup.HashLookup;
 import net.openhft.chronicle.hash.serialization.internal.SerializationBuilder;
 import net.openhft.chronicle.hash.replication.*;
@@ -50,8 +52,10 @@ import java.io.*;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.InetSocketAddress;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -147,11 +151,21 @@ public final class ChronicleMapBuilder<K, V> implements
     private int maxChunksPerEntry = -1;
     private Alignment alignment = null;
     private long entries = -1L;
+    private double maxBloatFactor = 1.0;
+    private SegmentLocking segmentLocking = SegmentLocking.WRITE_PREFERRING;
+    private EntryAllocation entryAllocation = EntryAllocation.FIRST_FIT;
     private long lockTimeOut = 20000L;
     private TimeUnit lockTimeOutUnit = TimeUnit.MILLISECONDS;
     private int metaDataBytes = 0;
     private boolean putReturnsNull = false;
     private boolean removeReturnsNull = false;
+    private boolean optimisticReads = false;
+    private double compactionThreshold = 0.0;
+    private long compactionIntervalNanos = 0L;
+    private long timeToLiveMicros = 0L;
+    private long expirySweepIntervalNanos = 0L;
+    private boolean eviction = false;
+    private EvictionListener<K, V> evictionListener = null;
 
     // replication
     private TimeProvider timeProvider = TimeProvider.SYSTEM;
@@ -417,6 +431,10 @@ public final class ChronicleMapBuilder<K, V> implements
         size += keySize;
         if (replicated)
             size += ReplicatedChronicleMap.ADDITIONAL_ENTRY_BYTES;
+        if (timeToLiveMicros > 0L)
+            size += 8L; // expiry time
+        if (eviction)
+            size += 1L; // access byte
         double valueSize = averageValueSize();
         size += averageSizeEncodingSize(valueBuilder, valueSize);
         Alignment alignment = valueAlignment();
@@ -672,6 +690,49 @@ public final class ChronicleMapBuilder<K, V> implements
         return this;
     }
 
+    @Override
+    public ChronicleMapBuilder<K, V> maxBloatFactor(double maxBloatFactor) {
+        if (Double.isNaN(maxBloatFactor) || maxBloatFactor < 1.0 || maxBloatFactor > 1000.0) {
+            throw new IllegalArgumentException("maxBloatFactor should be in [1.0, 1000.0] " +
+                    "bounds, " + maxBloatFactor + " given");
+        }
+        this.maxBloatFactor = maxBloatFactor;
+        return this;
+    }
+
+    @Override
+    public long extraTiers(boolean replicated) {
+        if (maxBloatFactor == 1.0)
+            return 0L;
+        if (replicated) {
+            throw new IllegalStateException("maxBloatFactor > 1.0 is not supported by " +
+                    "replicated maps, " + maxBloatFactor + " is configured");
+        }
+        return (long) Math.ceil((maxBloatFactor - 1.0) * actualSegments(replicated));
+    }
+
+    @Override
+    public ChronicleMapBuilder<K, V> segmentLocking(@NotNull SegmentLocking segmentLocking) {
+        this.segmentLocking = segmentLocking;
+        return this;
+    }
+
+    @Override
+    public SegmentLocking segmentLocking() {
+        return segmentLocking;
+    }
+
+    @Override
+    public ChronicleMapBuilder<K, V> entryAllocation(@NotNull EntryAllocation entryAllocation) {
+        this.entryAllocation = entryAllocation;
+        return this;
+    }
+
+    @Override
+    public EntryAllocation entryAllocation() {
+        return entryAllocation;
+    }
+
     private void checkActualChunksPerSegmentIsConfiguredOnlyIfOtherLowLevelConfigsAreManual() {
         if (actualChunksPerSegment > 0) {
             if (entriesPerSegment <= 0 || (actualChunkSize <= 0 && !constantlySizedEntries()) ||
@@ -875,7 +936,9 @@ public final class ChronicleMapBuilder<K, V> implements
     public int segmentHeaderSize(boolean replicated) {
         int segments = actualSegments(replicated);
         // reduce false sharing unless we have a lot of segments.
-        return segments <= 16 * 1024 ? 64 : 32;
+        // the version stamp of optimistic reads and fair lock tickets don't fit 32-byte headers
+        return segments <= 16 * 1024 || optimisticReads ||
+                segmentLocking == SegmentLocking.FAIR ? 64 : 32;
     }
 
     @Override
@@ -898,6 +961,194 @@ public final class ChronicleMapBuilder<K, V> implements
         return removeReturnsNull;
     }
 
+    /**
+     * Configures if {@link ChronicleMap#get(Object) get()} and {@link ChronicleMap#getUsing(Object,
+     * Object) getUsing()} calls on the map, created by this builder, should first try to read the
+     * value without acquiring the segment lock. Writers, holding the write lock, maintain a version
+     * stamp in the segment header, readers copy the value and then validate that the stamp hasn't
+     * changed, falling back to the ordinary read lock if it has. The stamp is stored off-heap, so
+     * this works across processes, accessing the same persisted map.
+     *
+     * <p>Optimistic reads give the same consistency guarantees as reads under read lock. They
+     * avoid CAS operations on the shared lock word and don't block writers, that pays off for
+     * read-mostly maps with a small number of hot segments. By default optimistic reads are
+     * disabled. Not supported by replicated maps.
+     *
+     * @param optimisticReads {@code true} if the map should read values optimistically
+     * @return this builder back
+     */
+    public ChronicleMapBuilder<K, V> optimisticReads(boolean optimisticReads) {
+        this.optimisticReads = optimisticReads;
+        return this;
+    }
+
+    @Override
+    public boolean useOptimisticReads(boolean replicated) {
+        if (optimisticReads && replicated)
+            throw new IllegalStateException("Optimistic reads are not supported by replicated maps");
+        return optimisticReads;
+    }
+
+    /**
+     * Configures the background compaction of the segments of the map, created by this builder.
+     * Every {@code interval} a daemon thread checks the {@linkplain
+     * SegmentFragmentation#fragmentation() fragmentation} of each segment, and if it is equal to
+     * or greater than {@code fragmentationThreshold}, {@linkplain ChronicleMap#compact()
+     * compacts} the segment under its write lock. The thread is stopped when the map is closed.
+     *
+     * <p>Values, which size changes, leave gaps in the entry space, when the entries are
+     * relocated, so that eventually a large entry couldn't be allocated in a segment, despite
+     * there are enough free chunks in total. By default the background compaction is off, the
+     * segments could be compacted explicitly via {@link ChronicleMap#compact()}.
+     *
+     * @param fragmentationThreshold the fragmentation of a segment, from which it is compacted,
+     *                               in the {@code [0.0, 1.0]} bounds
+     * @param interval               the interval between the checks of the fragmentation
+     * @param unit                   the unit of {@code interval}
+     * @return this builder back
+     * @throws IllegalArgumentException if {@code fragmentationThreshold} is out of bounds, or
+     * {@code interval} is not positive
+     */
+    public ChronicleMapBuilder<K, V> compaction(
+            double fragmentationThreshold, long interval, TimeUnit unit) {
+        if (Double.isNaN(fragmentationThreshold) || fragmentationThreshold < 0.0 ||
+                fragmentationThreshold > 1.0) {
+            throw new IllegalArgumentException("fragmentationThreshold should be in [0.0, 1.0] " +
+                    "bounds, " + fragmentationThreshold + " given");
+        }
+        if (interval <= 0L)
+            throw new IllegalArgumentException("interval should be positive, " + interval +
+                    " given");
+        this.compactionThreshold = fragmentationThreshold;
+        this.compactionIntervalNanos = unit.toNanos(interval);
+        return this;
+    }
+
+    private void startCompaction(VanillaChronicleMap<K, ?, ?, V, ?, ?> map) {
+        if (compactionIntervalNanos > 0L)
+            map.startCompaction(compactionThreshold, compactionIntervalNanos);
+    }
+
+    /**
+     * Configures the default time to live of the entries of the map, created by this builder.
+     * Each entry stores the time, when it expires, right after the key. The expiry time is set
+     * to the current time of the {@linkplain #timeProvider(TimeProvider) time provider} plus the
+     * time to live on each put or value update, or plus the time to live, given to {@link
+     * ChronicleMap#put(Object, Object, long, TimeUnit)}. Expired entries are treated as absent by
+     * all queries and iteration. Their chunks are reclaimed lazily, when the expired entry is
+     * found by a key search under the update lock, e. g. on put or remove of the same key, and by
+     * the {@linkplain #expirySweep(long, TimeUnit) background sweep}, if configured. Until then
+     * {@link ChronicleMap#size()} counts expired entries.
+     *
+     * <p>{@code Long.MAX_VALUE} means entries never expire by default, but the expiry time is
+     * stored with each entry, so that a time to live could be given on put. By default entries
+     * have no expiry time. Replicated maps don't support expiry of entries.
+     *
+     * @param timeToLive the default time to live of entries
+     * @param unit       the unit of {@code timeToLive}
+     * @return this builder back
+     * @throws IllegalArgumentException if {@code timeToLive} is not positive
+     */
+    public ChronicleMapBuilder<K, V> timeToLive(long timeToLive, TimeUnit unit) {
+        if (timeToLive <= 0L)
+            throw new IllegalArgumentException("timeToLive should be positive, " + timeToLive +
+                    " given");
+        this.timeToLiveMicros = timeToLive == Long.MAX_VALUE ? Long.MAX_VALUE :
+                Math.max(unit.toMicros(timeToLive), 1L);
+        return this;
+    }
+
+    @Override
+    public long timeToLive(boolean replicated) {
+        if (timeToLiveMicros > 0L && replicated) {
+            throw new IllegalStateException("Expiry of entries is not supported by replicated " +
+                    "maps, timeToLive=" + timeToLiveMicros + " us is configured");
+        }
+        return timeToLiveMicros;
+    }
+
+    /**
+     * Configures the background sweep of the expired entries of the map, created by this
+     * builder, see {@link #timeToLive(long, TimeUnit)}. A daemon thread removes the expired
+     * entries from a single segment at a time, under the update lock of the segment, so that
+     * concurrent reads of the segment aren't blocked, and visits every segment once per {@code
+     * interval}. The thread is stopped when the map is closed. By default the background sweep
+     * is off, the expired entries could be removed explicitly via {@link
+     * ChronicleMap#removeExpiredEntries()}.
+     *
+     * @param interval the interval, in which all segments are swept
+     * @param unit     the unit of {@code interval}
+     * @return this builder back
+     * @throws IllegalArgumentException if {@code interval} is not positive
+     */
+    public ChronicleMapBuilder<K, V> expirySweep(long interval, TimeUnit unit) {
+        if (interval <= 0L)
+            throw new IllegalArgumentException("interval should be positive, " + interval +
+                    " given");
+        this.expirySweepIntervalNanos = unit.toNanos(interval);
+        return this;
+    }
+
+    private void startExpirySweep(VanillaChronicleMap<K, ?, ?, V, ?, ?> map) {
+        if (expirySweepIntervalNanos > 0L && map.entryExpiry)
+            map.startExpirySweep(expirySweepIntervalNanos);
+    }
+
+    /**
+     * Configures if the map, created by this builder, has bounded capacity, i. e. evicts entries,
+     * when a segment is full, instead of throwing {@code IllegalStateException} from the put.
+     * Each entry stores the access byte, set when the entry is put or its key is found under a
+     * segment lock. When a new entry doesn't fit the segment, the CLOCK algorithm, an
+     * approximation of LRU, evicts cold entries: the hand goes round the slots of the hash lookup
+     * of the segment, clears the access byte of the entries, accessed since the hand passed them
+     * last time, and evicts the entries, which access byte is already clear, until the new entry
+     * fits. The entries, found by {@linkplain #optimisticReads(boolean) optimistic reads}
+     * without locking, are not marked as accessed.
+     *
+     * <p>The numbers of hits, misses and evictions are counted per segment, see {@link
+     * ChronicleMap#cacheStats()}. By default eviction is off. Eviction is not supported by
+     * replicated maps and maps with {@linkplain #maxBloatFactor(double) extra tiers}.
+     *
+     * @param eviction if the map should evict entries, when a segment is full
+     * @return this builder back
+     * @see #evictionListener(EvictionListener)
+     */
+    public ChronicleMapBuilder<K, V> eviction(boolean eviction) {
+        this.eviction = eviction;
+        return this;
+    }
+
+    @Override
+    public boolean useEviction(boolean replicated) {
+        if (eviction && replicated)
+            throw new IllegalStateException("Eviction is not supported by replicated maps");
+        return eviction;
+    }
+
+    /**
+     * Configures the listener, notified of the entries, evicted from the map, created by this
+     * builder, if {@linkplain #eviction(boolean) eviction} is configured. The listener is not
+     * persisted with the map, each process, accessing a persisted map, is notified of the
+     * evictions, caused by own puts, by the listener, configured in the builder, which opened
+     * the map.
+     *
+     * @param evictionListener the listener of evicted entries, or {@code null} for no listener
+     * @return this builder back
+     */
+    public ChronicleMapBuilder<K, V> evictionListener(EvictionListener<K, V> evictionListener) {
+        this.evictionListener = evictionListener;
+        return this;
+    }
+
+    /**
+     * Starts the background tasks of the created map and sets its process-local configurations.
+     */
+    private void onMapCreated(VanillaChronicleMap<K, ?, ?, V, ?, ?> map) {
+        map.evictionListener = evictionListener;
+        startCompaction(map);
+        startExpirySweep(map);
+    }
+
     // hidden for initial release.
     ChronicleMapBuilder<K, V> metaDataBytes(int metaDataBytes) {
         if (metaDataBytes < 0 || metaDataBytes > 255)
@@ -925,10 +1176,20 @@ public final class ChronicleMapBuilder<K, V> implements
                 ", actualChunkSize=" + pretty(actualChunkSize) +
                 ", valueAlignment=" + valueAlignment() +
                 ", entries=" + entries() +
+                ", maxBloatFactor=" + maxBloatFactor +
+                ", segmentLocking=" + segmentLocking +
+                ", entryAllocation=" + entryAllocation +
                 ", lockTimeOut=" + lockTimeOut + " " + lockTimeOutUnit +
                 ", metaDataBytes=" + metaDataBytes() +
                 ", putReturnsNull=" + putReturnsNull() +
                 ", removeReturnsNull=" + removeReturnsNull() +
+                ", optimisticReads=" + optimisticReads +
+                ", compactionThreshold=" + compactionThreshold +
+                ", compactionIntervalNanos=" + compactionIntervalNanos +
+                ", timeToLiveMicros=" + timeToLiveMicros +
+                ", expirySweepIntervalNanos=" + expirySweepIntervalNanos +
+                ", eviction=" + eviction +
+                ", evictionListener=" + pretty(evictionListener) +
                 ", timeProvider=" + timeProvider() +
                 ", bytesMarshallerFactory=" + pretty(bytesMarshallerFactory) +
                 ", objectSerializer=" + pretty(objectSerializer) +
@@ -956,7 +1217,8 @@ public final class ChronicleMapBuilder<K, V> implements
         return this;
     }
 
-    TimeProvider timeProvider() {
+    @Override
+    public TimeProvider timeProvider() {
         return timeProvider;
     }
 
@@ -1239,6 +1501,137 @@ public final class ChronicleMapBuilder<K, V> implements
         return clone().createWithoutFile(singleHashReplication, null);
     }
 
+    /**
+     * Creates a new in-memory map with the configuration of this builder, typically with more
+     * segments than the given {@code source} map has, and starts the migration of all entries from
+     * the source map to the new one, segment by segment, in a background thread. The returned
+     * map could be used for reads and writes while the migration is in progress.
+     *
+     * @param source the map to migrate entries from, shouldn't be used directly after this call
+     * @return the map, that is being resized
+     * @see ResizingChronicleMap
+     */
+    public ResizingChronicleMap<K, V> createResizing(ChronicleMap<K, V> source) {
+        return new ResizingChronicleMap<>(source, create());
+    }
+
+    /**
+     * Creates a new map with the configuration of this builder, persisted to the given file, and
+     * starts the migration of all entries from the given {@code source} map to the new one,
+     * segment by segment, in a background thread. The returned map could be used for reads and
+     * writes while the migration is in progress.
+     *
+     * @param source the map to migrate entries from, shouldn't be used directly after this call
+     * @param file the file to persist the new map to
+     * @return the map, that is being resized
+     * @throws IOException if the file couldn't be mapped
+     * @see ResizingChronicleMap
+     */
+    public ResizingChronicleMap<K, V> createResizingPersistedTo(
+            ChronicleMap<K, V> source, File file) throws IOException {
+        return new ResizingChronicleMap<>(source, createPersistedTo(file));
+    }
+
+    /**
+     * Builds a new map, persisted to the given file, offline from the given entries, and then
+     * maps the file as if by {@link #createPersistedTo(File)}. This is much faster than putting
+     * the entries one by one into a persisted map on a cold start.
+     *
+     * <p>The entries are streamed from the iterator in batches of {@value #BULK_LOAD_BATCH}
+     * entries, so only a single batch is held on the heap. Each batch is partitioned by segments,
+     * and then each segment is filled in a separate fork-join task, under a single uncontended
+     * segment lock. Because nobody else could access the map while it is being built, each
+     * segment (a contiguous region of the file) is written by a single thread, and new entries
+     * are allocated one after another in the segment's entry space, so the pages of the file are
+     * written mostly sequentially. The map is built in a new temporary file in the same
+     * directory, which is renamed to the given file only when the build is completed, so the
+     * given file never contains a partially built map.
+     *
+     * <p>The iterator shouldn't reuse key and value objects between entries. Entries with the
+     * same keys override previous ones, as with a series of {@link Map#put} calls.
+     *
+     * @param file        the file to persist the map to, shouldn't exist
+     * @param entries     the entries to put into the map
+     * @param parallelism the maximum number of threads to build segments in parallel
+     * @return the map, mapped to the built file
+     * @throws IOException              if the file couldn't be written or mapped
+     * @throws IllegalArgumentException if the file already exists, or {@code parallelism} is not
+     *                                  positive
+     * @throws IllegalStateException    if replication is configured for this builder
+     */
+    public ChronicleMap<K, V> createBulkLoadedPersistedTo(
+            File file, Iterator<? extends Map.Entry<? extends K, ? extends V>> entries,
+            int parallelism) throws IOException {
+        return createBulkLoadedPersistedTo(file,
+                Spliterators.spliteratorUnknownSize(entries, Spliterator.ORDERED), parallelism);
+    }
+
+    /**
+     * Builds a new map, persisted to the given file, offline from the given entries, see {@link
+     * #createBulkLoadedPersistedTo(File, Iterator, int)}.
+     */
+    public ChronicleMap<K, V> createBulkLoadedPersistedTo(
+            File file, Spliterator<? extends Map.Entry<? extends K, ? extends V>> entries,
+            int parallelism) throws IOException {
+        if (parallelism <= 0)
+            throw new IllegalArgumentException("parallelism should be positive, " +
+                    parallelism + " given");
+        if (singleHashReplication != null)
+            throw new IllegalStateException("Bulk loading of replicated maps is not supported");
+        if (file.exists())
+            throw new IllegalArgumentException(file + " already exists");
+
+        file = file.getAbsoluteFile();
+        // a unique, empty staging file, entries left in the staging file of a crashed build
+        // are never merged into this map
+        File tempFile = Files.createTempFile(
+                file.getParentFile().toPath(), file.getName() + ".", ".bulk").toFile();
+        boolean built = false;
+        try {
+            BulkLoadStats stats;
+            try (ChronicleMap<K, V> map = clone().createWithFile(tempFile, null, null)) {
+                stats = bulkLoad((AbstractChronicleMap<K, V>) map, entries, parallelism);
+            }
+            LOG.debug("Bulk loaded {}: {}", file, stats);
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            built = true;
+        } finally {
+            if (!built)
+                tempFile.delete();
+        }
+        return createPersistedTo(file);
+    }
+
+    static final int BULK_LOAD_BATCH = 1 << 16;
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> BulkLoadStats bulkLoad(
+            AbstractChronicleMap<K, V> map,
+            Spliterator<? extends Map.Entry<? extends K, ? extends V>> entries, int parallelism) {
+        BulkLoadStats stats = new BulkLoadStats(map.actualSegments());
+        K[] keys = (K[]) new Object[BULK_LOAD_BATCH];
+        V[] values = (V[]) new Object[BULK_LOAD_BATCH];
+        int[] n = new int[1];
+        int threads = Math.min(parallelism, map.actualSegments());
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        try {
+            while (entries.tryAdvance(e -> {
+                keys[n[0]] = e.getKey();
+                values[n[0]++] = e.getValue();
+            })) {
+                if (n[0] == BULK_LOAD_BATCH) {
+                    map.putAll(keys, values, n[0], pool, stats);
+                    n[0] = 0;
+                }
+            }
+            map.putAll(keys, values, n[0], pool, stats);
+        } finally {
+            if (pool != null)
+                pool.shutdown();
+        }
+        return stats;
+    }
+
     ChronicleMap<K, V> create(MapInstanceBuilder<K, V> ib) throws IOException {
         if (ib.file != null) {
             return createWithFile(ib.file, ib.singleHashReplication, ib.channel);
@@ -1277,7 +1670,10 @@ public final class ChronicleMapBuilder<K, V> implements
                     // TODO don't use SerializationBuilders in replication, extract marshallers
                     // needed to transmit to stateless clients directly from map instance
                     preMapConstruction(singleHashReplication != null || channel != null);
-                    return establishReplication(map, singleHashReplication, channel);
+                    ChronicleMap<K, V> result =
+                            establishReplication(map, singleHashReplication, channel);
+                    onMapCreated(map);
+                    return result;
                 }
             }
             if (file.createNewFile() || file.length() == 0) {
@@ -1306,7 +1702,9 @@ public final class ChronicleMapBuilder<K, V> implements
             map.createMappedStoreAndSegments(file);
         }
 
-        return establishReplication(map, singleHashReplication, channel);
+        ChronicleMap<K, V> result = establishReplication(map, singleHashReplication, channel);
+        onMapCreated(map);
+        return result;
     }
 
     private static <K, V> boolean trySerializeHeaderViaXStream(
@@ -1354,7 +1752,10 @@ public final class ChronicleMapBuilder<K, V> implements
             BytesStore bytesStore = new DirectStore(JDKObjectSerializer.INSTANCE,
                     map.sizeInBytes(), true);
             map.createMappedStoreAndSegments(bytesStore);
-            return establishReplication(map, singleHashReplication, channel);
+            ChronicleMap<K, V> result =
+                    establishReplication(map, singleHashReplication, channel);
+            onMapCreated(map);
+            return result;
         } catch (IOException e) {
             // file-less version should never trigger an IOException.
             throw new AssertionError(e);
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.hash.impl.hashlookup.HashLookup;
+
+class ChronicleMapEntryCursor<K, V> implements MapEntryCursor<K, V> {
+
+    private final Thread ownerThread = Thread.currentThread();
+    private final int actualSegments;
+    private VanillaContext<K, ?, ?, V, ?, ?> context;
+    private int segmentIndex = 0;
+    private boolean segmentLocked = false;
+    private int tier;
+    private long nextSlot;
+    private boolean positioned = false;
+
+    ChronicleMapEntryCursor(AbstractChronicleMap<K, V> map) {
+        actualSegments = map.actualSegments();
+        context = map.mapContext();
+    }
+
+    private void checkSingleThreaded() {
+        if (ownerThread != Thread.currentThread()) {
+            throw new IllegalStateException(
+                    "Cursor should be accessed only from a single thread");
+        }
+    }
+
+    @Override
+    public boolean next() {
+        checkSingleThreaded();
+        if (context == null)
+            throw new IllegalStateException("Cursor is closed");
+        VanillaContext<K, ?, ?, V, ?, ?> c = context;
+        closeEntry();
+        while (true) {
+            if (!segmentLocked) {
+                if (segmentIndex >= actualSegments)
+                    return false;
+                c.segmentIndex = segmentIndex;
+                c.readLock().lock();
+                segmentLocked = true;
+                if (c.size() == 0) {
+                    releaseSegment();
+                    continue;
+                }
+                c.initSegment();
+                c.initTier(tier = 0);
+                nextSlot = 0L;
+            }
+            HashLookup hashLookup = c.hashLookup;
+            long slot = hashLookup.nextNonEmptyIndex(nextSlot);
+            if (slot < 0L) {
+                if (c.hasTier(tier + 1)) {
+                    c.initTier(++tier);
+                    nextSlot = 0L;
+                } else {
+                    releaseSegment();
+                }
+                continue;
+            }
+            nextSlot = slot + 1L;
+            c.pos = c.globalPos(hashLookup.valueAt(slot));
+            c.initKeyFromPos();
+            if (!c.containsKey()) { // for replicated map
+                c.closeKeySearch();
+                continue;
+            }
+            positioned = true;
+            return true;
+        }
+    }
+
+    private void closeEntry() {
+        if (positioned) {
+            context.closeKey0();
+            context.closeKeySearch();
+            positioned = false;
+        }
+    }
+
+    private void releaseSegment() {
+        context.closeSegmentIndex();
+        segmentLocked = false;
+        segmentIndex++;
+    }
+
+    @Override
+    public MapKeyContext<K, V> context() {
+        checkSingleThreaded();
+        if (!positioned)
+            throw new IllegalStateException("Cursor is not positioned on an entry");
+        return context;
+    }
+
+    @Override
+    public void close() {
+        checkSingleThreaded();
+        if (context == null)
+            return;
+        try {
+            closeEntry();
+            if (segmentLocked) {
+                context.closeSegmentIndex();
+                segmentLocked = false;
+            }
+        } finally {
+            segmentIndex = actualSegments;
+            context.close();
+            context = null;
+        }
+    }
+}
@@ -21,7 +21,9 @@ import net.openhft.chronicle.hash.impl.hashlookup.EntryConsumer;
 import java.util.*;
 
 /**
- * Very inefficient (esp. if segments are large), but CORRECT implementation
+ * Very inefficient (esp. if segments are large), but CORRECT implementation. Entries of each
+ * segment are copied under the segment's read lock, {@link #remove()} removes the returned entry
+ * via the map, after the lock is released.
  */
 abstract class ChronicleMapIterator<K, V, E> implements Iterator<E>, EntryConsumer {
 
@@ -56,9 +58,12 @@ abstract class ChronicleMapIterator<K, V, E> implements Iterator<E>, EntryConsum
                 segmentIndex--;
                 if (c.size() == 0)
                     continue;
-                c.updateLock().lock();
+                c.readLock().lock();
                 c.initSegment();
-                c.hashLookup.forEach(this);
+                for (int tier = 0; c.hasTier(tier); tier++) {
+                    c.initTier(tier);
+                    c.hashLookup.forEach(this);
+                }
                 return;
             } finally {
                 context = null;
@@ -68,7 +73,7 @@ abstract class ChronicleMapIterator<K, V, E> implements Iterator<E>, EntryConsum
 
     @Override
     public void accept(long hash, long pos) {
-        context.pos = pos;
+        context.pos = context.globalPos(pos);
         context.initKeyFromPos();
         try {
             if (!context.containsKey()) // for replicated map
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import java.util.*;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Splits on segment boundaries, and a single segment with a large hash lookup - on ranges of hash
+ * lookup slots. Entries of each segment (or a part of a segment) are copied under the segment's
+ * read lock, and then passed to the action after the lock is released, like {@link
+ * ChronicleMapIterator} does.
+ */
+class ChronicleMapSpliterator<K, V, E> implements Spliterator<E> {
+
+    /**
+     * A single segment is not split into ranges, smaller than this number of hash lookup slots.
+     */
+    static final long MIN_SPLIT_SLOTS = 1L << 12;
+
+    final AbstractChronicleMap<K, V> map;
+    private final Function<? super VanillaContext<K, ?, ?, V, ?, ?>, ? extends E> read;
+    private final long capacity;
+    private int fromSegment;
+    private final int toSegment;
+    /**
+     * The range of hash lookup slots of the {@code fromSegment} to visit. Could be narrower than
+     * {@code [0, capacity)} only if this spliterator covers a single segment.
+     */
+    private long fromSlot;
+    private long toSlot;
+    private final Queue<E> entryBuffer = new ArrayDeque<>();
+
+    ChronicleMapSpliterator(AbstractChronicleMap<K, V> map,
+                            Function<? super VanillaContext<K, ?, ?, V, ?, ?>, ? extends E> read) {
+        this(map, read, map.segmentHashLookupCapacity(), 0, map.actualSegments(),
+                0L, map.segmentHashLookupCapacity());
+    }
+
+    private ChronicleMapSpliterator(
+            AbstractChronicleMap<K, V> map,
+            Function<? super VanillaContext<K, ?, ?, V, ?, ?>, ? extends E> read,
+            long capacity, int fromSegment, int toSegment, long fromSlot, long toSlot) {
+        this.map = map;
+        this.read = read;
+        this.capacity = capacity;
+        this.fromSegment = fromSegment;
+        this.toSegment = toSegment;
+        this.fromSlot = fromSlot;
+        this.toSlot = toSlot;
+    }
+
+    static <K, V> ChronicleMapSpliterator<K, V, Map.Entry<K, V>> ofEntries(
+            AbstractChronicleMap<K, V> map) {
+        return new ChronicleMapSpliterator<>(map,
+                c -> new WriteThroughEntry<>(map, c.immutableKey(), c.getUsing(null)));
+    }
+
+    static <K, V> ChronicleMapSpliterator<K, V, K> ofKeys(AbstractChronicleMap<K, V> map) {
+        return new ChronicleMapSpliterator<>(map, VanillaContext::immutableKey);
+    }
+
+    static <K, V> ChronicleMapSpliterator<K, V, V> ofValues(AbstractChronicleMap<K, V> map) {
+        return new ChronicleMapSpliterator<>(map, c -> c.getUsing(null));
+    }
+
+    /**
+     * Iterates entries of a single segment, which hash lookup home slots are within the given
+     * range, under the segment's read lock.
+     */
+    static <K, V> void forEachSegmentEntryInRange(
+            VanillaContext<K, ?, ?, V, ?, ?> c, int segmentIndex, long fromSlot, long toSlot,
+            Consumer<? super VanillaContext<K, ?, ?, V, ?, ?>> action) {
+        c.segmentIndex = segmentIndex;
+        try {
+            c.readLock().lock();
+            if (c.size() == 0)
+                return;
+            c.initSegment();
+            for (int tier = 0; c.hasTier(tier); tier++) {
+                c.initTier(tier);
+                c.hashLookup.forEachInRange(fromSlot, toSlot, (hash, pos) -> {
+                    c.pos = c.globalPos(pos);
+                    c.initKeyFromPos();
+                    try {
+                        if (c.containsKey()) // for replicated map
+                            action.accept(c);
+                    } finally {
+                        c.closeKeySearch();
+                    }
+                });
+            }
+        } finally {
+            c.closeSegmentIndex();
+        }
+    }
+
+    /**
+     * Calls the action for each remaining entry of this spliterator, with the context, locked for
+     * reading, without copying the entries.
+     */
+    void forEachRemainingEntry(Consumer<? super VanillaContext<K, ?, ?, V, ?, ?>> action) {
+        try (VanillaContext<K, ?, ?, V, ?, ?> c = map.mapContext()) {
+            for (; fromSegment < toSegment; fromSegment++, fromSlot = 0L, toSlot = capacity) {
+                forEachSegmentEntryInRange(c, fromSegment, fromSlot, toSlot, action);
+            }
+        }
+    }
+
+    private boolean fillEntryBuffer() {
+        while (entryBuffer.isEmpty()) {
+            if (fromSegment >= toSegment)
+                return false;
+            try (VanillaContext<K, ?, ?, V, ?, ?> c = map.mapContext()) {
+                forEachSegmentEntryInRange(c, fromSegment, fromSlot, toSlot,
+                        context -> entryBuffer.add(read.apply(context)));
+            }
+            fromSegment++;
+            fromSlot = 0L;
+            toSlot = capacity;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super E> action) {
+        if (!fillEntryBuffer())
+            return false;
+        action.accept(entryBuffer.poll());
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super E> action) {
+        while (fillEntryBuffer()) {
+            E e;
+            while ((e = entryBuffer.poll()) != null) {
+                action.accept(e);
+            }
+        }
+    }
+
+    @Override
+    public ChronicleMapSpliterator<K, V, E> trySplit() {
+        if (!entryBuffer.isEmpty())
+            return null;
+        int segments = toSegment - fromSegment;
+        if (segments > 1) {
+            int midSegment = fromSegment + segments / 2;
+            ChronicleMapSpliterator<K, V, E> prefix = new ChronicleMapSpliterator<>(
+                    map, read, capacity, fromSegment, midSegment, fromSlot, toSlot);
+            fromSegment = midSegment;
+            fromSlot = 0L;
+            toSlot = capacity;
+            return prefix;
+        }
+        if (segments == 1 && toSlot - fromSlot >= 2 * MIN_SPLIT_SLOTS) {
+            long midSlot = fromSlot + (toSlot - fromSlot) / 2;
+            ChronicleMapSpliterator<K, V, E> prefix = new ChronicleMapSpliterator<>(
+                    map, read, capacity, fromSegment, toSegment, fromSlot, midSlot);
+            fromSlot = midSlot;
+            return prefix;
+        }
+        return null;
+    }
+
+    @Override
+    public long estimateSize() {
+        if (fromSegment >= toSegment)
+            return entryBuffer.size();
+        double slots = (toSegment - fromSegment - 1) * (double) capacity + (toSlot - fromSlot);
+        double totalSlots = map.actualSegments() * (double) capacity;
+        return entryBuffer.size() + (long) (map.longSize() * (slots / totalSlots));
+    }
+
+    @Override
+    public int characteristics() {
+        return CONCURRENT | DISTINCT | NONNULL;
+    }
+
+    /**
+     * Splits the spliterator down to single segments or ranges of segment's hash lookup slots,
+     * and iterates them in parallel with the contexts, locked for reading.
+     */
+    static final class ParallelForEach<K, V> extends RecursiveAction {
+        private static final long serialVersionUID = 0L;
+
+        private final ChronicleMapSpliterator<K, V, ?> spliterator;
+        private final Consumer<? super MapKeyContext<K, V>> action;
+
+        ParallelForEach(ChronicleMapSpliterator<K, V, ?> spliterator,
+                        Consumer<? super MapKeyContext<K, V>> action) {
+            this.spliterator = spliterator;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            List<ParallelForEach<K, V>> forks = new ArrayList<>();
+            ChronicleMapSpliterator<K, V, ?> prefix;
+            while ((prefix = spliterator.trySplit()) != null) {
+                ParallelForEach<K, V> fork = new ParallelForEach<>(prefix, action);
+                fork.fork();
+                forks.add(fork);
+            }
+            spliterator.forEachRemainingEntry(action);
+            for (ParallelForEach<K, V> fork : forks) {
+                fork.join();
+            }
+        }
+    }
+}
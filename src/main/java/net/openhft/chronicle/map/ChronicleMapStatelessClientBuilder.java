@@ -66,6 +66,10 @@ public final class ChronicleMapStatelessClientBuilder<K, V> implements
     private long timeoutMs = TimeUnit.SECONDS.toMillis(10);
     private String name;
     private int tcpBufferSize = (int) MemoryUnit.KILOBYTES.toBytes(64);
+    private int coalescingMaxBytes = 0;
+    private long coalescingMaxDelayNanos = 0L;
+    private int nearCacheMaxEntries = 0;
+    private int connections = 1;
 
     private final AtomicBoolean used = new AtomicBoolean(false);
 
@@ -127,10 +131,108 @@ public final class ChronicleMapStatelessClientBuilder<K, V> implements
         return tcpBufferSize;
     }
 
+    /**
+     * Configures the coalescing of the writes, which don't wait for a response from the server,
+     * i. e. {@code put()} when {@link #putReturnsNull(boolean) putReturnsNull(true)} is configured
+     * and {@code remove()} when {@link #removeReturnsNull(boolean) removeReturnsNull(true)} is
+     * configured. Such writes, made by any threads, are buffered and sent to the server in a
+     * single socket write, once {@code maxBytes} are buffered, or {@code maxDelay} has passed
+     * since the first of them, or a request which waits for a response is sent, or {@link
+     * ChronicleMap#flush()} is called, whichever happens first.
+     *
+     * <p>By default the writes are not coalesced, each write is sent as soon as possible.
+     *
+     * @param maxBytes the number of buffered bytes, which are sent without waiting for {@code
+     *                 maxDelay}
+     * @param maxDelay the maximum time to hold a write in the buffer, {@code 0} disables the
+     *                 coalescing
+     * @param units    the units of {@code maxDelay}
+     * @return this builder back
+     * @throws IllegalArgumentException if {@code maxBytes} is not positive, or {@code maxDelay}
+     * is negative
+     */
+    public ChronicleMapStatelessClientBuilder<K, V> coalesceWrites(
+            int maxBytes, long maxDelay, TimeUnit units) {
+        if (maxBytes <= 0)
+            throw new IllegalArgumentException("maxBytes should be positive, " + maxBytes +
+                    " given");
+        if (maxDelay < 0L)
+            throw new IllegalArgumentException("maxDelay should be non-negative, " + maxDelay +
+                    " given");
+        this.coalescingMaxBytes = maxBytes;
+        this.coalescingMaxDelayNanos = units.toNanos(maxDelay);
+        return this;
+    }
+
+    /**
+     * Configures the near cache of the client: up to {@code maxEntries} values, read by {@code
+     * get()}, are held on heap in the least recently used order, and returned by the subsequent
+     * {@code get()} calls of the same keys without the round trip to the server. The server
+     * pushes the invalidations of the cached keys to the client, when they are updated by any
+     * means, so the cached values are eventually coherent with the server. A separate thread
+     * receives the invalidations, while the client is connected.
+     *
+     * <p>The cached value instances are returned to the callers as they are, so they should not
+     * be modified. By default the client has no near cache.
+     *
+     * @param maxEntries the maximum number of the cached entries, {@code 0} disables the near
+     *                   cache
+     * @return this builder back
+     * @throws IllegalArgumentException if {@code maxEntries} is negative
+     */
+    public ChronicleMapStatelessClientBuilder<K, V> nearCache(int maxEntries) {
+        if (maxEntries < 0)
+            throw new IllegalArgumentException("maxEntries should be non-negative, " +
+                    maxEntries + " given");
+        this.nearCacheMaxEntries = maxEntries;
+        return this;
+    }
+
+    /**
+     * Configures the number of TCP connections to the server, opened by the client. The requests
+     * with a key are routed to the connection by the hash code of the key, so the requests with
+     * the same key are sent over the same connection, and are applied by the server in the order
+     * they are made. The requests without a key, like {@code size()} or {@code entrySet()}, are
+     * sent over the first connection.
+     *
+     * <p>Each connection has its own buffers, and its own {@linkplain #nearCache(int) near cache}
+     * and {@linkplain #coalesceWrites(int, long, TimeUnit) coalescing}, if configured. By default
+     * the client opens a single connection.
+     *
+     * @param connections the number of connections to the server
+     * @return this builder back
+     * @throws IllegalArgumentException if {@code connections} is not positive
+     */
+    public ChronicleMapStatelessClientBuilder<K, V> connections(int connections) {
+        if (connections <= 0)
+            throw new IllegalArgumentException("connections should be positive, " +
+                    connections + " given");
+        this.connections = connections;
+        return this;
+    }
+
+    int connections() {
+        return connections;
+    }
+
+    int nearCacheMaxEntries() {
+        return nearCacheMaxEntries;
+    }
+
+    int coalescingMaxBytes() {
+        return coalescingMaxBytes;
+    }
+
+    long coalescingMaxDelayNanos() {
+        return coalescingMaxDelayNanos;
+    }
+
     @Override
     public ChronicleMap<K, V> create() throws IOException {
         if (!used.getAndSet(true)) {
-            return new StatelessChronicleMap<>(this);
+            if (connections == 1)
+                return new StatelessChronicleMap<>(this);
+            return new PooledStatelessChronicleMap<>(this);
         } else {
             throw new IllegalStateException(
                     "A stateless client has already been created using this builder. " +
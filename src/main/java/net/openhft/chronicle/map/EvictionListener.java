@@ -0,0 +1,39 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+/**
+ * Notified of the entries, evicted from a {@link ChronicleMap} with {@linkplain
+ * ChronicleMapBuilder#eviction(boolean) eviction} configured, to make room for new entries.
+ *
+ * @param <K> the key type of the map
+ * @param <V> the value type of the map
+ * @see ChronicleMapBuilder#evictionListener(EvictionListener)
+ */
+public interface EvictionListener<K, V> {
+
+    /**
+     * Called for each evicted entry, in the thread, which puts the entry, that didn't fit, under
+     * the write lock of the segment. The listener should be fast and must not access the map.
+     *
+     * @param key   the key of the evicted entry
+     * @param value the value of the evicted entry
+     */
+    void onEvict(K key, V value);
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The background task, which removes the expired entries of a map, one segment at a time, so that
+ * each segment is swept once per interval, see {@link
+ * ChronicleMapBuilder#expirySweep(long, java.util.concurrent.TimeUnit)}.
+ */
+final class ExpirySweeper implements Runnable {
+    private static final Logger LOG = LoggerFactory.getLogger(ExpirySweeper.class);
+
+    private final VanillaChronicleMap<?, ?, ?, ?, ?, ?> map;
+    private final long segmentIntervalNanos;
+    private final Thread thread;
+    private volatile boolean closed = false;
+
+    ExpirySweeper(VanillaChronicleMap<?, ?, ?, ?, ?, ?> map, long intervalNanos) {
+        this.map = map;
+        this.segmentIntervalNanos = Math.max(intervalNanos / map.actualSegments, 1L);
+        thread = new Thread(this, "chronicle-map-expiry-sweeper");
+        thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        int segmentIndex = 0;
+        while (!closed) {
+            LockSupport.parkNanos(this, segmentIntervalNanos);
+            if (closed)
+                return;
+            try {
+                map.removeExpiredEntries(segmentIndex);
+            } catch (Throwable t) {
+                if (!closed)
+                    LOG.error("Sweep of the segment " + segmentIndex + " failed", t);
+            }
+            if (++segmentIndex == map.actualSegments)
+                segmentIndex = 0;
+        }
+    }
+
+    /**
+     * Stops the sweep and waits until the segment, being swept, if any, is done.
+     */
+    void close() {
+        closed = true;
+        LockSupport.unpark(thread);
+        if (thread == Thread.currentThread())
+            return;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
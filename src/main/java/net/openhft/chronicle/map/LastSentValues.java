@@ -0,0 +1,195 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.lang.io.Bytes;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * The values of the entries, last sent to a single remote node, which are the bases of delta
+ * entries: if the remote node still holds the version of the entry last sent, only the byte ranges
+ * of the value which have changed since, are sent again.
+ *
+ * <p>The values are copied on heap, by the 64-bit hash of the key, the key bytes are kept to
+ * verify the match. The total size of the values is bounded, the least recently sent values are
+ * evicted first.
+ *
+ * <p>Lookups and updates are synchronized, because the values are invalidated by the threads
+ * applying the remote updates, but {@link #diff} is called only by the replicator of the remote
+ * node.
+ */
+final class LastSentValues {
+
+    // the rough heap overhead of a value, with it's key and map entry
+    private static final long VALUE_OVERHEAD = 96L;
+    // unchanged bytes between two changed ranges, cheaper to send than to start a new range
+    private static final int MIN_GAP = 8;
+
+    static final class Value {
+        final byte[] key;
+        final byte[] value;
+        long timestamp;
+
+        Value(byte[] key, byte[] value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        long size() {
+            return key.length + value.length + VALUE_OVERHEAD;
+        }
+
+        boolean keyEquals(@NotNull Bytes entry, long keyOffset, long keySize) {
+            if (keySize != key.length)
+                return false;
+            for (int i = 0; i < key.length; i++) {
+                if (entry.readByte(keyOffset + i) != key[i])
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    private final long maxSize;
+    private long size = 0L;
+    private final LinkedHashMap<Long, Value> values = new LinkedHashMap<>(16, 0.75f, true);
+
+    // offsets and lengths of the changed ranges, found by the last diff()
+    private int[] ranges = new int[32];
+    private int rangeCount;
+
+    private long deltaEntries = 0L;
+    private long deltaBytesSaved = 0L;
+
+    LastSentValues(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the largest value, worth keeping for this cache.
+     */
+    long maxValueSize() {
+        return maxSize / 4L;
+    }
+
+    @Nullable
+    synchronized Value get(long keyHash) {
+        return values.get(keyHash);
+    }
+
+    synchronized void put(long keyHash, @NotNull Value value) {
+        Value previous = values.put(keyHash, value);
+        if (previous != null)
+            size -= previous.size();
+        size += value.size();
+        for (Iterator<Value> it = values.values().iterator(); size > maxSize && it.hasNext(); ) {
+            size -= it.next().size();
+            it.remove();
+        }
+    }
+
+    /**
+     * @return {@code true} if the value of the key was held
+     */
+    synchronized boolean remove(long keyHash) {
+        Value removed = values.remove(keyHash);
+        if (removed == null)
+            return false;
+        size -= removed.size();
+        return true;
+    }
+
+    synchronized void clear() {
+        values.clear();
+        size = 0L;
+    }
+
+    synchronized int size() {
+        return values.size();
+    }
+
+    /**
+     * Finds the ranges of {@code value} which differ from the {@code valueSize} bytes of {@code
+     * entry} from {@code valueOffset}, and which could be read via {@link #rangeOffset(int)} and
+     * {@link #rangeLength(int)} afterwards.
+     *
+     * @return the number of the ranges found
+     */
+    int diff(@NotNull Bytes entry, long valueOffset, @NotNull byte[] value) {
+        rangeCount = 0;
+        int rangeStart = -1;
+        int lastChanged = -1;
+        for (int i = 0; i < value.length; i++) {
+            if (entry.readByte(valueOffset + i) == value[i])
+                continue;
+            if (rangeStart >= 0 && i - lastChanged > MIN_GAP) {
+                addRange(rangeStart, lastChanged + 1);
+                rangeStart = -1;
+            }
+            if (rangeStart < 0)
+                rangeStart = i;
+            lastChanged = i;
+        }
+        if (rangeStart >= 0)
+            addRange(rangeStart, lastChanged + 1);
+        return rangeCount;
+    }
+
+    private void addRange(int start, int end) {
+        if (rangeCount * 2 == ranges.length) {
+            int[] newRanges = new int[ranges.length * 2];
+            System.arraycopy(ranges, 0, newRanges, 0, ranges.length);
+            ranges = newRanges;
+        }
+        ranges[rangeCount * 2] = start;
+        ranges[rangeCount * 2 + 1] = end - start;
+        rangeCount++;
+    }
+
+    int rangeOffset(int range) {
+        return ranges[range * 2];
+    }
+
+    int rangeLength(int range) {
+        return ranges[range * 2 + 1];
+    }
+
+    void onDeltaEntry(long bytesSaved) {
+        deltaEntries++;
+        deltaBytesSaved += bytesSaved;
+    }
+
+    /**
+     * The number of the entries sent as deltas.
+     */
+    long deltaEntries() {
+        return deltaEntries;
+    }
+
+    /**
+     * The number of bytes not sent, because the entries were sent as deltas.
+     */
+    long deltaBytesSaved() {
+        return deltaBytesSaved;
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.lang.io.Bytes;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * A pure Java compressor of the LZ4 block format, reading and writing {@code Bytes} at absolute
+ * offsets, so that the replication buffers are compressed without copying to the heap.
+ *
+ * <p>Not thread-safe, the hash table of the compressor is reused between blocks.
+ */
+final class Lz4BlockCompressor {
+
+    private static final int MIN_MATCH = 4;
+    // the last 5 bytes of a block are always literals
+    private static final int LAST_LITERALS = 5;
+    // the last match must start at least 12 bytes before the end of the block
+    private static final int MF_LIMIT = 12;
+    private static final int MAX_DISTANCE = 0xFFFF;
+    private static final int RUN_MASK = 15;
+    private static final int HASH_LOG = 12;
+
+    private final int[] hashTable = new int[1 << HASH_LOG];
+
+    /**
+     * Returns the largest size of the compressed form of a block of the given length.
+     */
+    static long maxCompressedLength(long length) {
+        return length + length / 255L + 16L;
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+
+    /**
+     * Compresses {@code length} bytes of {@code src} from {@code srcOffset} to {@code dst} from
+     * {@code dstOffset}, which should have at least {@link #maxCompressedLength(long)} bytes
+     * available.
+     *
+     * @return the size of the compressed block
+     */
+    long compress(@NotNull Bytes src, long srcOffset, int length,
+                  @NotNull Bytes dst, long dstOffset) {
+        long d = dstOffset;
+        int anchor = 0;
+        if (length > MF_LIMIT) {
+            Arrays.fill(hashTable, -1);
+            int matchStartLimit = length - MF_LIMIT;
+            int matchEndLimit = length - LAST_LITERALS;
+            for (int i = 0; i < matchStartLimit; ) {
+                int sequence = src.readInt(srcOffset + i);
+                int h = hash(sequence);
+                int ref = hashTable[h];
+                hashTable[h] = i;
+                if (ref < 0 || i - ref > MAX_DISTANCE ||
+                        src.readInt(srcOffset + ref) != sequence) {
+                    i++;
+                    continue;
+                }
+                int matchLength = MIN_MATCH;
+                while (i + matchLength + 8 <= matchEndLimit &&
+                        src.readLong(srcOffset + i + matchLength) ==
+                                src.readLong(srcOffset + ref + matchLength)) {
+                    matchLength += 8;
+                }
+                while (i + matchLength < matchEndLimit &&
+                        src.readByte(srcOffset + i + matchLength) ==
+                                src.readByte(srcOffset + ref + matchLength)) {
+                    matchLength++;
+                }
+                d = writeLiterals(src, srcOffset + anchor, i - anchor, matchLength,
+                        dst, d);
+                dst.writeByte(d++, i - ref);
+                dst.writeByte(d++, (i - ref) >>> 8);
+                d = writeLength(matchLength - MIN_MATCH, dst, d);
+                i += matchLength;
+                anchor = i;
+            }
+        }
+        d = writeLiterals(src, srcOffset + anchor, length - anchor, 0, dst, d);
+        return d - dstOffset;
+    }
+
+    /**
+     * Writes the token and the literals of a sequence, the match length part of the token is
+     * ignored if there is no match after the literals.
+     */
+    private static long writeLiterals(Bytes src, long literalsOffset, int literalsLength,
+                                      int matchLength, Bytes dst, long d) {
+        int matchToken = matchLength == 0 ? 0 : Math.min(matchLength - MIN_MATCH, RUN_MASK);
+        dst.writeByte(d++, (Math.min(literalsLength, RUN_MASK) << 4) | matchToken);
+        d = writeLength(literalsLength, dst, d);
+        copy(src, literalsOffset, dst, d, literalsLength);
+        return d + literalsLength;
+    }
+
+    private static long writeLength(int length, Bytes dst, long d) {
+        if (length >= RUN_MASK) {
+            length -= RUN_MASK;
+            for (; length >= 255; length -= 255) {
+                dst.writeByte(d++, 255);
+            }
+            dst.writeByte(d++, length);
+        }
+        return d;
+    }
+
+    /**
+     * Decompresses the block of {@code compressedLength} bytes of {@code src} from {@code
+     * srcOffset} to exactly {@code length} bytes of {@code dst} from {@code dstOffset}.
+     *
+     * @throws IllegalStateException if the block is malformed
+     */
+    static void decompress(@NotNull Bytes src, long srcOffset, int compressedLength,
+                           @NotNull Bytes dst, long dstOffset, int length) {
+        long s = srcOffset;
+        long srcEnd = srcOffset + compressedLength;
+        long d = dstOffset;
+        long dstEnd = dstOffset + length;
+        while (true) {
+            if (s >= srcEnd)
+                throw malformed();
+            int token = src.readUnsignedByte(s++);
+            int literalsLength = token >>> 4;
+            if (literalsLength == RUN_MASK) {
+                int b;
+                do {
+                    if (s >= srcEnd)
+                        throw malformed();
+                    b = src.readUnsignedByte(s++);
+                    literalsLength += b;
+                } while (b == 255);
+            }
+            if (s + literalsLength > srcEnd || d + literalsLength > dstEnd)
+                throw malformed();
+            copy(src, s, dst, d, literalsLength);
+            s += literalsLength;
+            d += literalsLength;
+            if (s == srcEnd) {
+                if (d != dstEnd)
+                    throw malformed();
+                return;
+            }
+            if (s + 2 > srcEnd)
+                throw malformed();
+            int distance = src.readUnsignedByte(s) | (src.readUnsignedByte(s + 1) << 8);
+            s += 2;
+            int matchLength = token & RUN_MASK;
+            if (matchLength == RUN_MASK) {
+                int b;
+                do {
+                    if (s >= srcEnd)
+                        throw malformed();
+                    b = src.readUnsignedByte(s++);
+                    matchLength += b;
+                } while (b == 255);
+            }
+            matchLength += MIN_MATCH;
+            long ref = d - distance;
+            if (distance == 0 || ref < dstOffset || d + matchLength > dstEnd)
+                throw malformed();
+            // the match could overlap the bytes being written, if the distance is short
+            if (distance >= 8) {
+                copy(dst, ref, dst, d, matchLength);
+            } else {
+                for (int i = 0; i < matchLength; i++) {
+                    dst.writeByte(d + i, dst.readByte(ref + i));
+                }
+            }
+            d += matchLength;
+        }
+    }
+
+    private static IllegalStateException malformed() {
+        return new IllegalStateException("malformed compressed replication block");
+    }
+
+    /**
+     * Copies forward by 8 bytes, hence safe for overlapping regions, if {@code dstOffset -
+     * srcOffset >= 8}.
+     */
+    static void copy(Bytes src, long srcOffset, Bytes dst, long dstOffset, long length) {
+        long i = 0L;
+        for (; i + 8L <= length; i += 8L) {
+            dst.writeLong(dstOffset + i, src.readLong(srcOffset + i));
+        }
+        for (; i < length; i++) {
+            dst.writeByte(dstOffset + i, src.readByte(srcOffset + i));
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+/**
+ * A forward-only cursor over the entries of a {@link ChronicleMap}, which doesn't copy entries
+ * on-heap. The cursor is positioned on an entry, which could be accessed via the {@link
+ * #context()} flyweight: {@link MapKeyContext#key()} and {@link MapKeyContext#get()} reuse the
+ * same key and value instances for all entries, {@link MapKeyContext#getUsing(Object)} reads the
+ * value into the given instance, and {@link MapKeyContext#entry()} with the key and value offsets
+ * and sizes give access to the raw entry bytes, without deserialization at all.
+ *
+ * <p>While the cursor is positioned on an entry, it holds the read lock of the entry's segment,
+ * so the segment couldn't be write-locked until the cursor moves to another segment, or is
+ * closed. The cursor should be used from a single thread and always closed, e. g. with
+ * try-with-resources: <pre>{@code
+ * try (MapEntryCursor<K, V> cursor = map.entryCursor()) {
+ *     while (cursor.next()) {
+ *         MapKeyContext<K, V> c = cursor.context();
+ *         process(c.key(), c.getUsing(reusableValue));
+ *     }
+ * }}</pre>
+ *
+ * @param <K> the map key type
+ * @param <V> the map value type
+ * @see ChronicleMap#entryCursor()
+ */
+public interface MapEntryCursor<K, V> extends AutoCloseable {
+
+    /**
+     * Moves the cursor to the next entry.
+     *
+     * @return {@code true} if the cursor is positioned on the next entry, {@code false} if there
+     * are no more entries
+     */
+    boolean next();
+
+    /**
+     * Returns the context of the entry, the cursor is positioned on. The context (and the objects
+     * obtained from it) is valid until the next call to {@link #next()} or {@link #close()}. The
+     * context is locked for reading only, entries couldn't be updated or removed via this context.
+     *
+     * @return the context of the current entry
+     * @throws IllegalStateException if the cursor is not positioned on an entry
+     */
+    MapKeyContext<K, V> context();
+
+    /**
+     * Releases the segment lock, held by the cursor, if any.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * The bounded LRU cache of the values, read by a stateless client, kept coherent with the server
+ * by the invalidations of slots of keys, see {@link NearCacheSubscriptions}.
+ *
+ * <p>A value read from the server is cached only if no write was made via the same client since
+ * the read request was sent, because the write could be applied by the server after the read, and
+ * the invalidation of the key could be received before the value is cached.
+ */
+final class NearCache<K, V> {
+
+    static final class Entry<V> {
+        @Nullable
+        final V value;
+        final int slot;
+
+        Entry(@Nullable V value, int slot) {
+            this.value = value;
+            this.slot = slot;
+        }
+    }
+
+    /**
+     * The entries in the access order, evicting the least recently used entry when the cache is
+     * full. Never serialized, the near cache is not.
+     */
+    private static final class Entries<K, V> extends LinkedHashMap<K, Entry<V>> {
+        private static final long serialVersionUID = 0L;
+
+        private final transient NearCache<K, V> cache;
+
+        Entries(NearCache<K, V> cache) {
+            super(16, 0.75f, true);
+            this.cache = cache;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+            if (size() <= cache.maxEntries)
+                return false;
+            cache.removeFromSlot(eldest.getKey(), eldest.getValue().slot);
+            return true;
+        }
+    }
+
+    private final int maxEntries;
+    private final Entries<K, V> entries;
+    // the cached keys by slot, to drop them when the slot is invalidated
+    private final Map<Integer, List<K>> keysBySlot = new HashMap<>();
+    // the number of the writes, made via the client
+    private long writes;
+    private long hits;
+    private long misses;
+
+    NearCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        entries = new Entries<>(this);
+    }
+
+    /**
+     * @return the cached entry, the value of which could be {@code null} if the key is absent in
+     * the map, or {@code null} if the key is not cached
+     */
+    @Nullable
+    synchronized Entry<V> get(@NotNull K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return entry;
+    }
+
+    /**
+     * @return the number of writes to pass to {@link #put(Object, Object, int, long)}, when the
+     * response to the read request, sent now, is received
+     */
+    synchronized long writes() {
+        return writes;
+    }
+
+    /**
+     * Caches the value read from the server, if the server could track the key and no writes
+     * were made via the client since the read request was sent.
+     */
+    synchronized void put(@NotNull K key, @Nullable V value, int slot, long writesBeforeRead) {
+        if (slot < 0 || writes != writesBeforeRead)
+            return;
+        Entry<V> previous = entries.put(key, new Entry<>(value, slot));
+        if (previous != null) {
+            if (previous.slot == slot)
+                return;
+            removeFromSlot(key, previous.slot);
+        }
+        keysBySlot.computeIfAbsent(slot, s -> new ArrayList<>(1)).add(key);
+    }
+
+    /**
+     * Called before a write of the key is sent to the server.
+     */
+    synchronized void beforeWrite(@NotNull Object key) {
+        writes++;
+        Entry<V> entry = entries.remove(key);
+        if (entry != null)
+            removeFromSlot(key, entry.slot);
+    }
+
+    /**
+     * Called before a write of an unknown or many keys is sent to the server, or when the
+     * connection is lost, so that the server doesn't track the keys anymore.
+     */
+    synchronized void clear() {
+        writes++;
+        entries.clear();
+        keysBySlot.clear();
+    }
+
+    synchronized void invalidateSlot(int slot) {
+        List<K> keys = keysBySlot.remove(slot);
+        if (keys != null) {
+            for (K key : keys) {
+                entries.remove(key);
+            }
+        }
+    }
+
+    private void removeFromSlot(Object key, int slot) {
+        List<K> keys = keysBySlot.get(slot);
+        if (keys != null) {
+            keys.remove(key);
+            if (keys.isEmpty())
+                keysBySlot.remove(slot);
+        }
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized long hits() {
+        return hits;
+    }
+
+    synchronized long misses() {
+        return misses;
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.lang.io.Bytes;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
+
+/**
+ * The keys, cached by the near cache of a stateless client, on the server side of the connection.
+ *
+ * <p>The keys are tracked by slots, a slot is a bit of the hash of the key, so the memory is
+ * bounded regardless of the number of the cached keys. The client holds the slot of each cached
+ * key, and drops all keys of the slot, when the slot is invalidated. The subscription to a slot
+ * is one-shot: when any key of the slot is changed, the slot is unsubscribed and sent to the
+ * client, the client subscribes again on the next miss.
+ *
+ * <p>{@link #accept(long)} is called by the threads updating the map, under the segment lock, so
+ * it only marks the slot invalidated and requests the replicator thread to write the
+ * invalidations via {@link #writeInvalidations(Bytes)}.
+ */
+final class NearCacheSubscriptions implements LongConsumer {
+
+    static final int SLOTS = 1 << 16;
+    // the size of the invalidation message, besides 4 bytes per slot
+    static final int INVALIDATION_HEADER_SIZE = 4 + 8 + 1 + 4;
+    static final int MIN_INVALIDATION_SIZE = INVALIDATION_HEADER_SIZE + 64 * 4;
+
+    private final ReplicatedChronicleMap<?, ?, ?, ?, ?, ?> map;
+    // requests the replicator thread to write the invalidations, returns false if the connection
+    // is closed
+    private final BooleanSupplier writeRequester;
+    private final AtomicLongArray subscribed = new AtomicLongArray(SLOTS / 64);
+    private final AtomicLongArray invalidated = new AtomicLongArray(SLOTS / 64);
+    private final AtomicBoolean hasInvalidations = new AtomicBoolean();
+
+    NearCacheSubscriptions(@NotNull ReplicatedChronicleMap<?, ?, ?, ?, ?, ?> map,
+                           @NotNull BooleanSupplier writeRequester) {
+        this.map = map;
+        this.writeRequester = writeRequester;
+        map.addKeyChangeListener(this);
+    }
+
+    static int slot(long keyHash) {
+        return (int) (keyHash ^ (keyHash >>> 32)) & (SLOTS - 1);
+    }
+
+    void subscribe(int slot) {
+        final int word = slot >>> 6;
+        final long bit = 1L << slot;
+        for (long w; ((w = subscribed.get(word)) & bit) == 0L; ) {
+            if (subscribed.compareAndSet(word, w, w | bit))
+                return;
+        }
+    }
+
+    @Override
+    public void accept(long keyHash) {
+        final int slot = slot(keyHash);
+        final int word = slot >>> 6;
+        final long bit = 1L << slot;
+        for (long w; ((w = subscribed.get(word)) & bit) != 0L; ) {
+            if (subscribed.compareAndSet(word, w, w & ~bit)) {
+                for (long i; ((i = invalidated.get(word)) & bit) == 0L; ) {
+                    if (invalidated.compareAndSet(word, i, i | bit))
+                        break;
+                }
+                if (!hasInvalidations.getAndSet(true) && !writeRequester.getAsBoolean())
+                    close();
+                return;
+            }
+        }
+    }
+
+    boolean hasInvalidations() {
+        return hasInvalidations.get();
+    }
+
+    /**
+     * Writes the invalidated slots to the stateless client, as a message with the {@link
+     * StatelessChronicleMap#NEAR_CACHE_INVALIDATION_TRANSACTION_ID}. As many slots are written,
+     * as fit the remaining of the buffer, the rest are left for the next call.
+     *
+     * @param out the buffer to write the message to, with at least {@link
+     *            #MIN_INVALIDATION_SIZE} bytes remaining
+     */
+    void writeInvalidations(@NotNull Bytes out) {
+        // cleared first, so that the slots invalidated concurrently request another write
+        if (!hasInvalidations.getAndSet(false))
+            return;
+        assert out.remaining() >= MIN_INVALIDATION_SIZE;
+        final long maxSlots = (out.remaining() - INVALIDATION_HEADER_SIZE) / 4L;
+        final long sizeLocation = out.position();
+        out.skip(4L);
+        out.writeLong(StatelessChronicleMap.NEAR_CACHE_INVALIDATION_TRANSACTION_ID);
+        out.writeBoolean(false); // isException
+        final long countLocation = out.position();
+        out.skip(4L);
+        int count = 0;
+        for (int word = 0; word < SLOTS / 64; word++) {
+            if (invalidated.get(word) == 0L)
+                continue;
+            if (count + 64 > maxSlots) {
+                hasInvalidations.set(true);
+                break;
+            }
+            long slots = invalidated.getAndSet(word, 0L);
+            for (; slots != 0L; slots &= slots - 1L) {
+                out.writeInt((word << 6) + Long.numberOfTrailingZeros(slots));
+                count++;
+            }
+        }
+        out.writeInt(countLocation, count);
+        out.writeInt(sizeLocation, (int) (out.position() - sizeLocation));
+    }
+
+    void close() {
+        map.removeKeyChangeListener(this);
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.hash.function.SerializableFunction;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * The stateless client, which opens several connections to the server, see {@link
+ * ChronicleMapStatelessClientBuilder#connections(int)}.
+ *
+ * <p>The requests with a key are routed to the connection by the hash code of the key, so the
+ * requests with the same key are applied by the server in order. The requests without a key are
+ * sent over the first connection.
+ */
+final class PooledStatelessChronicleMap<K, V> implements ChronicleMap<K, V> {
+
+    @NotNull
+    private final List<StatelessChronicleMap<K, V>> connections;
+
+    PooledStatelessChronicleMap(@NotNull final ChronicleMapStatelessClientBuilder<K, V> config)
+            throws IOException {
+        connections = new ArrayList<>(config.connections());
+        try {
+            for (int i = 0; i < config.connections(); i++) {
+                connections.add(new StatelessChronicleMap<>(config));
+            }
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @NotNull
+    StatelessChronicleMap<K, V> connection(@Nullable Object key) {
+        if (key == null)
+            return connections.get(0);
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        return connections.get((h & Integer.MAX_VALUE) % connections.size());
+    }
+
+    @NotNull
+    private StatelessChronicleMap<K, V> first() {
+        return connections.get(0);
+    }
+
+    @Override
+    public V get(Object key) {
+        return connection(key).get(key);
+    }
+
+    @Override
+    public V getUsing(K key, V usingValue) {
+        return connection(key).getUsing(key, usingValue);
+    }
+
+    @Override
+    public V acquireUsing(@NotNull K key, V usingValue) {
+        return connection(key).acquireUsing(key, usingValue);
+    }
+
+    @NotNull
+    @Override
+    public MapKeyContext<K, V> acquireContext(@NotNull K key, @NotNull V usingValue) {
+        return connection(key).acquireContext(key, usingValue);
+    }
+
+    @Override
+    public MapKeyContext<K, V> context(K key) {
+        return connection(key).context(key);
+    }
+
+    @NotNull
+    @Override
+    public MapEntryCursor<K, V> entryCursor() {
+        return first().entryCursor();
+    }
+
+    @Override
+    public <R> R getMapped(K key, @NotNull SerializableFunction<? super V, R> function) {
+        return connection(key).getMapped(key, function);
+    }
+
+    @Override
+    public V putMapped(K key, @NotNull UnaryOperator<V> unaryOperator) {
+        return connection(key).putMapped(key, unaryOperator);
+    }
+
+    @Override
+    public void getAll(Collection<K> keys, Map<K, V> out) {
+        for (Map.Entry<StatelessChronicleMap<K, V>, List<K>> group :
+                groupByConnection(keys).entrySet()) {
+            group.getKey().getAll(group.getValue(), out);
+        }
+    }
+
+    private Map<StatelessChronicleMap<K, V>, List<K>> groupByConnection(Collection<K> keys) {
+        Map<StatelessChronicleMap<K, V>, List<K>> groups = new IdentityHashMap<>();
+        for (K key : keys) {
+            groups.computeIfAbsent(connection(key), c -> new ArrayList<>()).add(key);
+        }
+        return groups;
+    }
+
+    @Override
+    public CompletableFuture<V> getAsync(K key) {
+        return connection(key).getAsync(key);
+    }
+
+    @Override
+    public CompletableFuture<V> putAsync(K key, V value) {
+        return connection(key).putAsync(key, value);
+    }
+
+    @Override
+    public CompletableFuture<V> removeAsync(K key) {
+        return connection(key).removeAsync(key);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> containsKeyAsync(K key) {
+        return connection(key).containsKeyAsync(key);
+    }
+
+    @Override
+    public void flush() {
+        for (StatelessChronicleMap<K, V> connection : connections) {
+            connection.flush();
+        }
+    }
+
+    @Override
+    public void getAll(File toFile) throws IOException {
+        first().getAll(toFile);
+    }
+
+    @Override
+    public void putAll(File fromFile) throws IOException {
+        first().putAll(fromFile);
+    }
+
+    @Override
+    public V newValueInstance() {
+        return first().newValueInstance();
+    }
+
+    @Override
+    public K newKeyInstance() {
+        return first().newKeyInstance();
+    }
+
+    @Override
+    public Class<V> valueClass() {
+        return first().valueClass();
+    }
+
+    @Override
+    public File file() {
+        return first().file();
+    }
+
+    @Override
+    public long longSize() {
+        return first().longSize();
+    }
+
+    @Override
+    public Class<K> keyClass() {
+        return first().keyClass();
+    }
+
+    @Override
+    public boolean forEachEntryWhile(Predicate<? super MapKeyContext<K, V>> predicate) {
+        return first().forEachEntryWhile(predicate);
+    }
+
+    @Override
+    public void forEachEntry(Consumer<? super MapKeyContext<K, V>> action) {
+        first().forEachEntry(action);
+    }
+
+    @Override
+    public void close() {
+        for (StatelessChronicleMap<K, V> connection : connections) {
+            connection.close();
+        }
+    }
+
+    @Override
+    public V putIfAbsent(@NotNull K key, V value) {
+        return connection(key).putIfAbsent(key, value);
+    }
+
+    @Override
+    public boolean remove(@NotNull Object key, Object value) {
+        return connection(key).remove(key, value);
+    }
+
+    @Override
+    public boolean replace(@NotNull K key, @NotNull V oldValue, @NotNull V newValue) {
+        return connection(key).replace(key, oldValue, newValue);
+    }
+
+    @Override
+    public V replace(@NotNull K key, @NotNull V value) {
+        return connection(key).replace(key, value);
+    }
+
+    @Override
+    public int size() {
+        return first().size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return first().isEmpty();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return connection(key).containsKey(key);
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        return first().containsValue(value);
+    }
+
+    @Override
+    public V put(K key, V value) {
+        return connection(key).put(key, value);
+    }
+
+    @Override
+    public V remove(Object key) {
+        return connection(key).remove(key);
+    }
+
+    @Override
+    public void putAll(@NotNull Map<? extends K, ? extends V> m) {
+        Map<StatelessChronicleMap<K, V>, Map<K, V>> groups = new IdentityHashMap<>();
+        for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
+            groups.computeIfAbsent(connection(e.getKey()), c -> new LinkedHashMap<>())
+                    .put(e.getKey(), e.getValue());
+        }
+        for (Map.Entry<StatelessChronicleMap<K, V>, Map<K, V>> group : groups.entrySet()) {
+            group.getKey().putAll(group.getValue());
+        }
+    }
+
+    /**
+     * Clears the map via the first connection, then the near caches of the other connections, so
+     * that the values read before the map is cleared are not cached.
+     */
+    @Override
+    public void clear() {
+        first().clear();
+        for (int i = 1; i < connections.size(); i++) {
+            if (connections.get(i).nearCache != null)
+                connections.get(i).nearCache.clear();
+        }
+    }
+
+    @NotNull
+    @Override
+    public Set<K> keySet() {
+        return first().keySet();
+    }
+
+    @NotNull
+    @Override
+    public Collection<V> values() {
+        return first().values();
+    }
+
+    @NotNull
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return first().entrySet();
+    }
+
+    @Override
+    public boolean equals(@Nullable Object object) {
+        return this == object || first().equals(object);
+    }
+
+    @Override
+    public int hashCode() {
+        return first().hashCode();
+    }
+
+    @NotNull
+    @Override
+    public String toString() {
+        return first().toString();
+    }
+}
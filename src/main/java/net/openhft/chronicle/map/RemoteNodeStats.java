@@ -0,0 +1,141 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * The snapshot of the replication statistics of a single remote node, as seen by this node.
+ *
+ * <p>The accessors follow the JavaBeans convention, so that the snapshots are exported via JMX as
+ * composite data.
+ *
+ * @see ReplicationStats#remoteNode(byte)
+ */
+public final class RemoteNodeStats {
+
+    private final byte remoteIdentifier;
+    private final boolean connected;
+    private final long pendingChanges;
+    private final long coalescedUpdates;
+    private final long queuedBytes;
+    private final long lastModificationTime;
+    private final long lastAcknowledgedTime;
+    private final long replicationLagMillis;
+    private final long roundTripNanos;
+
+    @ConstructorProperties({"remoteIdentifier", "connected", "pendingChanges",
+            "coalescedUpdates", "queuedBytes", "lastModificationTime", "lastAcknowledgedTime",
+            "replicationLagMillis", "roundTripNanos"})
+    public RemoteNodeStats(byte remoteIdentifier, boolean connected, long pendingChanges,
+                           long coalescedUpdates, long queuedBytes, long lastModificationTime,
+                           long lastAcknowledgedTime, long replicationLagMillis,
+                           long roundTripNanos) {
+        this.remoteIdentifier = remoteIdentifier;
+        this.connected = connected;
+        this.pendingChanges = pendingChanges;
+        this.coalescedUpdates = coalescedUpdates;
+        this.queuedBytes = queuedBytes;
+        this.lastModificationTime = lastModificationTime;
+        this.lastAcknowledgedTime = lastAcknowledgedTime;
+        this.replicationLagMillis = replicationLagMillis;
+        this.roundTripNanos = roundTripNanos;
+    }
+
+    public byte getRemoteIdentifier() {
+        return remoteIdentifier;
+    }
+
+    /**
+     * Returns {@code true} if this node is connected to the remote node via TCP.
+     */
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Returns the number of the changed entries, which are not sent to the remote node yet.
+     */
+    public long getPendingChanges() {
+        return pendingChanges;
+    }
+
+    /**
+     * Returns the number of the updates of the entries, merged with the previous updates of the
+     * same entries, which were not sent to the remote node yet.
+     */
+    public long getCoalescedUpdates() {
+        return coalescedUpdates;
+    }
+
+    /**
+     * Returns the number of bytes, written to the buffer of the connection with the remote node,
+     * but not to the socket yet.
+     */
+    public long getQueuedBytes() {
+        return queuedBytes;
+    }
+
+    /**
+     * Returns the latest timestamp of the updates, received from the remote node.
+     */
+    public long getLastModificationTime() {
+        return lastModificationTime;
+    }
+
+    /**
+     * Returns the latest timestamp of the updates of this node, the remote node has acknowledged
+     * to hold, or {@code 0}, if it has acknowledged none.
+     */
+    public long getLastAcknowledgedTime() {
+        return lastAcknowledgedTime;
+    }
+
+    /**
+     * Returns how long ago the latest update of this node, acknowledged by the remote node, was
+     * made, in milliseconds, if there are changes pending to send to the remote node, or {@code
+     * 0}, if the remote node is up to date.
+     */
+    public long getReplicationLagMillis() {
+        return replicationLagMillis;
+    }
+
+    /**
+     * Returns the last measured round trip time of the acknowledgements, exchanged with the remote
+     * node, in nanoseconds, or {@code -1}, if it's not measured yet.
+     */
+    public long getRoundTripNanos() {
+        return roundTripNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "RemoteNodeStats{" +
+                "remoteIdentifier=" + remoteIdentifier +
+                ", connected=" + connected +
+                ", pendingChanges=" + pendingChanges +
+                ", coalescedUpdates=" + coalescedUpdates +
+                ", queuedBytes=" + queuedBytes +
+                ", lastModificationTime=" + lastModificationTime +
+                ", lastAcknowledgedTime=" + lastAcknowledgedTime +
+                ", replicationLagMillis=" + replicationLagMillis +
+                ", roundTripNanos=" + roundTripNanos +
+                '}';
+    }
+}
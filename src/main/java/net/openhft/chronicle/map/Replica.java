@@ -20,6 +20,7 @@ package net.openhft.chronicle.map;
 
 import net.openhft.lang.io.Bytes;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.Closeable;
 
@@ -71,6 +72,18 @@ interface Replica extends Closeable {
      */
     long lastModificationTime(byte remoteIdentifier);
 
+    /**
+     * Returns the digests of the segments of this Replica, the digest of a segment is equal on two
+     * nodes if they hold the same versions of the entries in this segment. Used to resync only the
+     * segments which differ, when a remote node connects.
+     *
+     * @return the digest of each segment, or {@code null} if the digests are not maintained
+     */
+    @Nullable
+    default long[] segmentDigests() {
+        return null;
+    }
+
     /**
      * notifies when there is a changed to the modification iterator
      */
@@ -110,6 +123,23 @@ interface Replica extends Closeable {
          */
         boolean nextEntry(@NotNull final EntryCallback callback, final int chronicleId);
 
+        /**
+         * A non-blocking call that provides changed entries of a single segment to {@code
+         * callback.onEntry()}, acquiring the segment lock once for the whole batch. The batch ends
+         * when there are no more changed entries in the segment, {@code callback.onEntry()} doesn't
+         * accept an entry, or {@code callback.hasRoomForNextEntry()} returns {@code false}.
+         *
+         * <p>Default implementation provides a single entry via {@link #nextEntry(EntryCallback,
+         * int) nextEntry()}.
+         *
+         * @param callback    a callback which will be called for each changed entry
+         * @param chronicleId only assigned when using chronicle channels
+         * @return the number of entries, accepted by the {@code callback.onEntry()} method
+         */
+        default int nextEntries(@NotNull final EntryCallback callback, final int chronicleId) {
+            return nextEntry(callback, chronicleId) ? 1 : 0;
+        }
+
         /**
          * Dirties all entries with a modification time equal to {@code fromTimeStamp} or newer. It
          * means all these entries will be considered as "new" by this ModificationIterator and
@@ -119,6 +149,21 @@ interface Replica extends Closeable {
          * @param fromTimeStamp the timestamp from which all entries should be dirty
          */
         void dirtyEntries(long fromTimeStamp);
+
+        /**
+         * Dirties the entries of the segments from {@code fromSegment}, inclusive, to {@code
+         * toSegment}, exclusive, with a modification time equal to {@code fromTimeStamp} or newer.
+         * The segment indexes correspond to the {@link Replica#segmentDigests()}.
+         *
+         * <p>Default implementation dirties the entries of all segments.
+         *
+         * @param fromTimeStamp the timestamp from which all entries should be dirty
+         * @param fromSegment   the index of the first segment to dirty the entries of
+         * @param toSegment     the index after the last segment to dirty the entries of
+         */
+        default void dirtyEntries(long fromTimeStamp, int fromSegment, int toSegment) {
+            dirtyEntries(fromTimeStamp);
+        }
     }
 
     /**
@@ -158,6 +203,21 @@ interface Replica extends Closeable {
         void writeExternalEntry(@NotNull Bytes entry, @NotNull Bytes destination, int
                 chronicleId);
 
+        /**
+         * Writes the entry to be sent to the remote node with the given identifier, which allows
+         * to write only the difference from the version of the entry, previously sent to that
+         * node. Writes the whole entry by default.
+         *
+         * @param entry            the byte location of the entry to be stored
+         * @param destination      a buffer the entry will be written to
+         * @param chronicleId      is the channel id used to identify the canonical map or queue
+         * @param remoteIdentifier the identifier of the remote node, the entry is sent to
+         */
+        default void writeExternalEntry(@NotNull Bytes entry, @NotNull Bytes destination,
+                                        int chronicleId, byte remoteIdentifier) {
+            writeExternalEntry(entry, destination, chronicleId);
+        }
+
         /**
          * The map implements this method to restore its contents. This method must read the values
          * in the same sequence and with the same types as were written by {@code
@@ -243,6 +303,15 @@ interface Replica extends Closeable {
          * @return {@code true} if this entry should be ignored
          */
         public abstract boolean shouldBeIgnored(final Bytes entry, final int chronicleId);
+
+        /**
+         * Called by {@link ModificationIterator#nextEntries(EntryCallback, int)} before each entry
+         * of the batch, but the first, {@code false} ends the batch, e. g. when the byte budget of
+         * the destination buffer is exhausted. Always {@code true} by default.
+         */
+        public boolean hasRoomForNextEntry() {
+            return true;
+        }
     }
 
 
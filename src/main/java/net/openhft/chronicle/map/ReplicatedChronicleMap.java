@@ -32,18 +32,25 @@ import net.openhft.chronicle.hash.serialization.internal.MetaBytesInterop;
 import net.openhft.lang.Maths;
 import net.openhft.lang.collection.ATSDirectBitSet;
 import net.openhft.lang.collection.SingleThreadedDirectBitSet;
+import net.openhft.lang.io.ByteBufferBytes;
+import net.openhft.lang.io.IByteBufferBytes;
 import net.openhft.lang.io.Bytes;
 import net.openhft.lang.threadlocal.ThreadLocalCopies;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
 
 import static net.openhft.lang.MemoryUnit.*;
 import static net.openhft.lang.collection.DirectBitSet.NOT_FOUND;
@@ -96,6 +103,14 @@ final class ReplicatedChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? supe
     private static final long serialVersionUID = 0L;
     private static final Logger LOG = LoggerFactory.getLogger(ReplicatedChronicleMap.class);
     private static final long LAST_UPDATED_HEADER_SIZE = 128L * 8L;
+    // the kinds of the external entries, PUT and REMOVE are compatible with the former
+    // isDeleted flag
+    static final byte PUT_ENTRY = 0;
+    static final byte REMOVE_ENTRY = 1;
+    static final byte DELTA_ENTRY = 2;
+    // smaller values are always sent whole, the delta would hardly save anything
+    static final long MIN_DELTA_VALUE_SIZE = 64L;
+    private static final LongHashFunction DELTA_KEY_HASH = LongHashFunction.city_1_1();
     private final TimeProvider timeProvider;
     private final byte localIdentifier;
     transient Set<Closeable> closeables;
@@ -104,7 +119,17 @@ final class ReplicatedChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? supe
     private transient ATSDirectBitSet modIterSet;
     private transient AtomicReferenceArray<ModificationIterator> modificationIterators;
     private transient long startOfModificationIterators;
+    private transient Bytes segmentDigests;
+    // false, if the map is mapped from the file, created by the version, which didn't maintain
+    // the segment digests, then they are not stored in the header, as the layout of the file
+    // is fixed
+    private boolean segmentDigestsInHeader;
     private boolean bootstrapOnlyLocalEntries;
+    private boolean deltaReplication;
+    private long deltaReplicationCacheSize;
+    private transient long deltaMismatches;
+    // notified of the hash of the key of each updated entry, see SegmentDigests.keyHash()
+    private transient CopyOnWriteArrayList<LongConsumer> keyChangeListeners;
 
     public ReplicatedChronicleMap(@NotNull ChronicleMapBuilder<K, V> builder,
                                   AbstractReplication replication)
@@ -114,6 +139,9 @@ final class ReplicatedChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? supe
 
         this.localIdentifier = replication.identifier();
         this.bootstrapOnlyLocalEntries = replication.bootstrapOnlyLocalEntries();
+        this.deltaReplication = replication.deltaReplication();
+        this.deltaReplicationCacheSize = replication.deltaReplicationCacheSize();
+        this.segmentDigestsInHeader = true;
 
         if (localIdentifier == -1) {
             throw new IllegalStateException("localIdentifier should not be -1");
@@ -134,6 +162,7 @@ final class ReplicatedChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? supe
         modificationIterators =
                 new AtomicReferenceArray<>(127 + RESERVED_MOD_ITER);
         closeables = new CopyOnWriteArraySet<>();
+        keyChangeListeners = new CopyOnWriteArrayList<>();
     }
 
     private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
@@ -152,11 +181,15 @@ final class ReplicatedChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? supe
         return Maths.nextPower2(actualChunksPerSegment, 128L * 8L);
     }
 
+    private long segmentDigestsSizeInBytes() {
+        return segmentDigestsInHeader ? CACHE_LINES.align(actualSegments * 8L, BYTES) : 0L;
+    }
+
     @Override
     public long mapHeaderInnerSize() {
         return super.mapHeaderInnerSize() + LAST_UPDATED_HEADER_SIZE +
                 (modIterBitSetSizeInBytes() * (128 + RESERVED_MOD_ITER)) +
-                assignedModIterBitSetSizeInBytes();
+                assignedModIterBitSetSizeInBytes() + segmentDigestsSizeInBytes();
     }
 
     void setLastModificationTime(byte identifier, long timestamp) {
@@ -188,6 +221,32 @@ final class ReplicatedChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? supe
         offset += assignedModIterBitSetSizeInBytes();
         startOfModificationIterators = offset;
         modIterSet = new ATSDirectBitSet(modDelBytes);
+        offset += modIterBitSetSizeInBytes() * (128 + RESERVED_MOD_ITER);
+
+        // not zeroed out, the digests of the persisted entries are persisted too
+        if (segmentDigestsInHeader)
+            segmentDigests = ms.bytes(offset, segmentDigestsSizeInBytes());
+    }
+
+    /**
+     * Should be called under the update lock of the segment.
+     */
+    void addToSegmentDigest(int segmentIndex, long entryDigestDelta) {
+        if (segmentDigests == null)
+            return;
+        long offset = segmentIndex * 8L;
+        segmentDigests.writeOrderedLong(offset, segmentDigests.readLong(offset) + entryDigestDelta);
+    }
+
+    @Override
+    public long[] segmentDigests() {
+        if (segmentDigests == null)
+            return null;
+        long[] digests = new long[actualSegments];
+        for (int i = 0; i < actualSegments; i++) {
+            digests[i] = segmentDigests.readVolatileLong(i * 8L);
+        }
+        return digests;
     }
 
     @Override
@@ -195,6 +254,16 @@ final class ReplicatedChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? supe
         forEachEntry(KeyContext::remove);
     }
 
+    /**
+     * In-place updates of the value bytes don't update the timestamp and the modification bits of
+     * the entry, and couldn't be replicated.
+     */
+    @Override
+    long acquireValueField(VanillaContext<K, KI, MKI, V, VI, MVI> c, long offset, int size) {
+        throw new UnsupportedOperationException(
+                "Atomic updates of value fields are not supported by replicated maps");
+    }
+
     void addCloseable(Closeable closeable) {
         closeables.add(closeable);
     }
@@ -242,6 +311,50 @@ final class ReplicatedChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? supe
         }
     }
 
+    /**
+     * @return the modification iterator for the remote node, or {@code null} if it was never
+     * acquired
+     */
+    @Nullable
+    ModificationIterator modificationIterator(byte remoteIdentifier) {
+        return remoteIdentifier >= 0 && remoteIdentifier < modificationIterators.length() ?
+                modificationIterators.get(remoteIdentifier) : null;
+    }
+
+    long currentTime() {
+        return timeProvider.currentTime();
+    }
+
+    @Override
+    public ReplicationStats replicationStats() {
+        return new ReplicatedMapStats(this);
+    }
+
+    /**
+     * Adds the listener, notified of the key hash of each entry updated, locally or by a remote
+     * node, while the segment is locked.
+     */
+    void addKeyChangeListener(@NotNull LongConsumer listener) {
+        keyChangeListeners.add(listener);
+    }
+
+    void removeKeyChangeListener(@NotNull LongConsumer listener) {
+        keyChangeListeners.remove(listener);
+    }
+
+    void notifyKeyChange(@NotNull Bytes entry, long keyOffset, long keySize) {
+        if (keyChangeListeners.isEmpty())
+            return;
+        final long keyHash = SegmentDigests.keyHash(entry, keyOffset, keySize);
+        for (LongConsumer listener : keyChangeListeners) {
+            try {
+                listener.accept(keyHash);
+            } catch (Exception e) {
+                LOG.error("", e);
+            }
+        }
+    }
+
     void raiseChange(long segmentIndex, long pos) {
         for (long next = modIterSet.nextSetBit(0L); next > 0L;
              next = modIterSet.nextSetBit(next + 1L)) {
@@ -264,6 +377,21 @@ final class ReplicatedChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? supe
         }
     }
 
+    /**
+     * Moves the pending changes of the entry, moved within the segment by compaction, to its new
+     * position, so that the entry is still shipped to the remote nodes.
+     */
+    void moveChange(long segmentIndex, long oldPos, long newPos) {
+        for (long next = modIterSet.nextSetBit(0L); next > 0L;
+             next = modIterSet.nextSetBit(next + 1L)) {
+            try {
+                modificationIterators.get((int) next).moveChange(segmentIndex, oldPos, newPos);
+            } catch (Exception e) {
+                LOG.error("", e);
+            }
+        }
+    }
+
     public boolean identifierCheck(@NotNull Bytes entry, int chronicleId) {
         long start = entry.position();
         try {
@@ -402,10 +530,23 @@ final class ReplicatedChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? supe
         }
 
         void writeReplicationBytes() {
+            updateSegmentDigest();
             entry.writeLong(replicationBytesOffset, newTimestamp);
             entry.writeByte(replicationBytesOffset + 8L, newIdentifier);
         }
 
+        /**
+         * Replaces the digest of the previous version of the entry, if any, with the digest of
+         * the version being written, in the digest of the segment.
+         */
+        void updateSegmentDigest() {
+            long keyHash = SegmentDigests.keyHash(entry, keyOffset0(), keySize0());
+            long delta = SegmentDigests.entryDigest(keyHash, newTimestamp, newIdentifier);
+            if (searchStatePresent())
+                delta -= SegmentDigests.entryDigest(keyHash, timestamp, identifier);
+            rm().addToSegmentDigest(segmentIndex, delta);
+        }
+
         void writeDeleted() {
             entry.writeBoolean(replicationBytesOffset + 9L, true);
         }
@@ -449,6 +590,11 @@ final class ReplicatedChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? supe
             rm().dropChange(segmentIndex, pos);
         }
 
+        @Override
+        public void onEntryMoved(long oldPos, long newPos) {
+            rm().moveChange(segmentIndex, oldPos, newPos);
+        }
+
         @Override
         void initPutDependencies() {
             super.initPutDependencies();
@@ -534,6 +680,7 @@ final class ReplicatedChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? supe
             } else {
                 rm().raiseChange(segmentIndex, pos);
             }
+            rm().notifyKeyChange(entry, keyOffset0(), keySize0());
         }
 
         @Override
@@ -661,6 +808,44 @@ final class ReplicatedChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? supe
         public Bytes getUsing(Bytes usingValue) {
             return getBytesUsing(usingValue);
         }
+
+        // the copy of the value, the delta entries are applied to
+        private IByteBufferBytes deltaValue;
+
+        /**
+         * Reads the changed ranges of the value from the source, and applies them to a copy of the
+         * current value, if the entry holds the version the delta has been made against.
+         *
+         * @return the updated value, or {@code null} if the entry holds another version
+         * @throws IllegalStateException if the delta is malformed
+         */
+        @Nullable
+        Bytes applyDelta(@NotNull Bytes source, long valueSize) {
+            final long baseTimestamp = source.readStopBit();
+            if (!containsKey() || timestamp != baseTimestamp || identifier != newIdentifier)
+                return null;
+            initValueBytes();
+            if (this.valueSize != valueSize)
+                return null;
+            if (deltaValue == null || deltaValue.capacity() < valueSize) {
+                deltaValue = ByteBufferBytes.wrap(
+                        ByteBuffer.allocateDirect((int) Maths.nextPower2(valueSize, 64L)));
+            }
+            Lz4BlockCompressor.copy(entry, valueOffset, deltaValue, 0L, valueSize);
+            final long ranges = source.readStopBit();
+            for (long i = 0L; i < ranges; i++) {
+                final long offset = source.readStopBit();
+                final long length = source.readStopBit();
+                if (offset < 0L || length < 0L || offset + length > valueSize ||
+                        length > source.remaining())
+                    throw new IllegalStateException("malformed delta of the replicated entry");
+                Lz4BlockCompressor.copy(source, source.position(), deltaValue, offset, length);
+                source.skip(length);
+            }
+            deltaValue.position(0L);
+            deltaValue.limit(valueSize);
+            return deltaValue;
+        }
     }
 
     enum BytesReplicatedContextFactory implements ContextFactory<BytesReplicatedContext> {
@@ -777,6 +962,25 @@ final class ReplicatedChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? supe
     public void writeExternalEntry(@NotNull Bytes entry,
                                    @NotNull Bytes destination,
                                    int chronicleId) {
+        writeExternalEntry0(entry, destination, null);
+    }
+
+    /**
+     * This method does not set a segment lock, A segment lock should be obtained before calling
+     * this method, especially when being used in a multi threaded context.
+     */
+    @Override
+    public void writeExternalEntry(@NotNull Bytes entry,
+                                   @NotNull Bytes destination,
+                                   int chronicleId, byte remoteIdentifier) {
+        ModificationIterator modIter = remoteIdentifier > 0 ?
+                modificationIterators.get(remoteIdentifier) : null;
+        writeExternalEntry0(entry, destination, modIter != null ? modIter.lastSentValues : null);
+    }
+
+    private void writeExternalEntry0(@NotNull Bytes entry,
+                                     @NotNull Bytes destination,
+                                     @Nullable LastSentValues lastSentValues) {
         final long initialLimit = entry.limit();
 
         final long keySize = keySizeMarshaller.readSize(entry);
@@ -802,12 +1006,44 @@ final class ReplicatedChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? supe
 
         final long valuePosition = entry.position();
 
+        // find the value last sent to the remote node, to send only the changed ranges against
+        long keyHash = 0L;
+        long valueOffset = 0L;
+        LastSentValues.Value lastSent = null;
+        int deltaRanges = -1;
+        if (lastSentValues != null) {
+            keyHash = DELTA_KEY_HASH.hashBytes(entry, keyPosition, keySize);
+            if (isDeleted || valueSize < MIN_DELTA_VALUE_SIZE ||
+                    valueSize > lastSentValues.maxValueSize()) {
+                lastSentValues.remove(keyHash);
+                lastSentValues = null;
+            } else {
+                alignment.alignPositionAddr(entry);
+                valueOffset = entry.position();
+                lastSent = lastSentValues.get(keyHash);
+                if (lastSent != null && lastSent.keyEquals(entry, keyPosition, keySize) &&
+                        lastSent.value.length == valueSize) {
+                    int ranges = lastSentValues.diff(entry, valueOffset, lastSent.value);
+                    long deltaSize = 0L;
+                    for (int i = 0; i < ranges; i++) {
+                        // two stop bit encoded ints, the offset and the length of the range
+                        deltaSize += lastSentValues.rangeLength(i) + 4L;
+                    }
+                    if (deltaSize * 2L <= valueSize)
+                        deltaRanges = ranges;
+                } else {
+                    lastSent = null;
+                }
+            }
+        }
+
         keySizeMarshaller.writeSize(destination, keySize);
         valueSizeMarshaller.writeSize(destination, valueSize);
         destination.writeStopBit(timeStamp);
 
         destination.writeByte(identifier);
-        destination.writeBoolean(isDeleted);
+        destination.writeByte(isDeleted ? REMOVE_ENTRY :
+                (deltaRanges >= 0 ? DELTA_ENTRY : PUT_ENTRY));
 
         // write the key
         entry.position(keyPosition);
@@ -834,12 +1070,41 @@ final class ReplicatedChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? supe
         entry.position(valuePosition);
         // skipping the alignment, as alignment wont work when we send the data over the wire.
         alignment.alignPositionAddr(entry);
+        valueOffset = entry.position();
+
+        if (deltaRanges >= 0) {
+            // the version of the value, the ranges should be applied to
+            final long deltaStart = destination.position();
+            destination.writeStopBit(lastSent.timestamp);
+            destination.writeStopBit(deltaRanges);
+            for (int i = 0; i < deltaRanges; i++) {
+                int offset = lastSentValues.rangeOffset(i);
+                int length = lastSentValues.rangeLength(i);
+                destination.writeStopBit(offset);
+                destination.writeStopBit(length);
+                destination.write(entry, valueOffset + offset, length);
+            }
+            lastSentValues.onDeltaEntry(valueSize - (destination.position() - deltaStart));
+        } else {
+            // writes the value
+            entry.limit(entry.position() + valueSize);
+            destination.write(entry, entry.position(), entry.remaining());
+        }
 
-        // writes the value
-        entry.limit(entry.position() + valueSize);
-        destination.write(entry, entry.position(), entry.remaining());
+        if (lastSentValues != null) {
+            if (lastSent == null) {
+                byte[] key = new byte[(int) keySize];
+                entry.readFully(keyPosition, key, 0, key.length);
+                lastSent = new LastSentValues.Value(key, new byte[(int) valueSize]);
+                lastSentValues.put(keyHash, lastSent);
+            }
+            entry.readFully(valueOffset, lastSent.value, 0, lastSent.value.length);
+            lastSent.timestamp = timeStamp;
+        }
 
         if (debugEnabled) {
+            entry.position(valueOffset);
+            entry.limit(valueOffset + valueSize);
             LOG.debug(message + "value=" + entry.toString().trim() + ")");
         }
     }
@@ -859,7 +1124,8 @@ final class ReplicatedChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? supe
             final long timeStamp = source.readStopBit();
 
             final byte id = source.readByte();
-            final boolean isDeleted = source.readBoolean();
+            final byte kind = source.readByte();
+            final boolean isDeleted = kind == REMOVE_ENTRY;
 
             final byte remoteIdentifier;
 
@@ -879,6 +1145,7 @@ final class ReplicatedChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? supe
 
             final long keyPosition = source.position();
             final long keyLimit = keyPosition + keySize;
+            final long sourceLimit = source.limit();
             source.limit(keyLimit);
 
             context.metaKeyInterop = DelegatingMetaBytesInterop.instance();
@@ -888,13 +1155,17 @@ final class ReplicatedChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? supe
             boolean debugEnabled = LOG.isDebugEnabled();
 
             context.updateLock().lock();
+            // the other nodes may no longer hold the versions of the entry, last sent to them
+            final boolean lastSentInvalidated = deltaReplication &&
+                    invalidateLastSentValues(source, keyPosition, keySize);
             if (isDeleted) {
                 if (debugEnabled) {
                     LOG.debug("READING FROM SOURCE -  into local-id={}, remote={}, remove(key={})",
                             localIdentifier, remoteIdentifier, source.toString().trim()
                     );
                 }
-                context.remove();
+                if (!context.remove() && lastSentInvalidated)
+                    resendEntry(context);
                 setLastModificationTime(remoteIdentifier, timeStamp);
                 return;
             }
@@ -912,24 +1183,78 @@ final class ReplicatedChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? supe
             // compute hash => segment and locate the entry
             context.containsKey();
 
+            final Bytes value;
+            if (kind == DELTA_ENTRY) {
+                source.limit(sourceLimit);
+                source.position(valuePosition);
+                value = context.applyDelta(source, valueSize);
+                if (value == null) {
+                    // the entry was updated by another node since, the delta is dropped
+                    deltaMismatches++;
+                    if (debugEnabled) {
+                        LOG.debug(message + "delta against another version of the value)");
+                    }
+                    return;
+                }
+            } else {
+                source.limit(valueLimit);
+                source.position(valuePosition);
+                value = source;
+            }
+
             context.metaValueInterop = DelegatingMetaBytesInterop.instance();
             context.newValueSize = valueSize;
-            source.limit(valueLimit);
-            source.position(valuePosition);
-            context.initNewBytesValue00(source);
+            context.initNewBytesValue00(value);
 
             context.initPutDependencies();
-            context.put0();
+            if (!context.put0() && lastSentInvalidated)
+                resendEntry(context);
             setLastModificationTime(remoteIdentifier, timeStamp);
 
             if (debugEnabled) {
-                LOG.debug(message + "value=" + source.toString().trim() + ")");
+                LOG.debug(message + "value=" + value.toString().trim() + ")");
             }
         } finally {
             context.closeHash();
         }
     }
 
+    /**
+     * Removes the values of the key, last sent to the remote nodes, so that the next update of the
+     * entry is sent whole.
+     *
+     * @return {@code true} if a value was sent to any remote node
+     */
+    private boolean invalidateLastSentValues(Bytes source, long keyPosition, long keySize) {
+        long keyHash = DELTA_KEY_HASH.hashBytes(source, keyPosition, keySize);
+        boolean invalidated = false;
+        for (long next = modIterSet.nextSetBit(0L); next > 0L;
+             next = modIterSet.nextSetBit(next + 1L)) {
+            LastSentValues lastSentValues = modificationIterators.get((int) next).lastSentValues;
+            if (lastSentValues != null && lastSentValues.remove(keyHash))
+                invalidated = true;
+        }
+        return invalidated;
+    }
+
+    /**
+     * If the remote update of the entry is ignored, because the local version is newer, the
+     * remote nodes may have been sent a delta against the version they didn't hold, send the
+     * local version whole again.
+     */
+    private void resendEntry(ReplicatedContext<?, ?, ?, ?, ?, ?> context) {
+        if (context.pos >= 0L)
+            raiseChange(context.segmentIndex, context.pos);
+    }
+
+    /**
+     * The number of delta entries received, which were dropped because the local entry was of
+     * other version, than the delta had been made against.
+     */
+    long deltaMismatches() {
+        return deltaMismatches;
+    }
+
     @Override
     public K key(@NotNull Bytes entry, K usingKey) {
         final long start = entry.position();
@@ -1001,8 +1326,9 @@ final class ReplicatedChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? supe
         private final SingleThreadedDirectBitSet changesForUpdates;
         // to getVolatile when reading changes bits, because we iterate when without lock.
         // hardly this is needed on x86, probably on other architectures too.
-        // Anyway getVolatile is cheap.
-        private final ATSDirectBitSet changesForIteration;
+        // Anyway getVolatile is cheap. The summary of the non-empty words lets the iteration
+        // skip the empty regions of the bit set.
+        private final SummarizedDirectBitSet changesForIteration;
         private final int segmentIndexShift;
         private final long posMask;
         private final ReplicatedContext<K, KI, MKI, V, VI, MVI> context =
@@ -1011,6 +1337,16 @@ final class ReplicatedChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? supe
         // records the current position of the cursor in the bitset
         private long position = -1L;
 
+        // batch drain metrics
+        private long lockAcquisitions = 0L;
+        private long entriesShipped = 0L;
+        // changes of the entries, still not shipped, incremented by the updating threads
+        private final LongAdder coalescedUpdates = new LongAdder();
+
+        // the bases of the delta entries, null if delta replication is off
+        @Nullable
+        final LastSentValues lastSentValues;
+
         /**
          * @param bytes                the back the bitset, used to mark which entries have changed
          * @param modificationNotifier called when ever there is a change applied
@@ -1022,7 +1358,9 @@ final class ReplicatedChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? supe
             segmentIndexShift = Long.numberOfTrailingZeros(bitsPerSegment);
             posMask = bitsPerSegment - 1L;
             changesForUpdates = new SingleThreadedDirectBitSet(bytes);
-            changesForIteration = new ATSDirectBitSet(bytes);
+            changesForIteration = new SummarizedDirectBitSet(bytes);
+            lastSentValues = deltaReplication ?
+                    new LastSentValues(deltaReplicationCacheSize) : null;
         }
 
         /**
@@ -1038,7 +1376,14 @@ final class ReplicatedChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? supe
         }
 
         void raiseChange(long segmentIndex, long pos) {
-            changesForUpdates.set(combine(segmentIndex, pos));
+            long index = combine(segmentIndex, pos);
+            if (changesForUpdates.get(index)) {
+                // the entry is not shipped yet, only it's latest version will be
+                coalescedUpdates.increment();
+            } else {
+                changesForUpdates.set(index);
+                changesForIteration.onSet(index);
+            }
             modificationNotifier.onChange();
         }
 
@@ -1046,6 +1391,21 @@ final class ReplicatedChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? supe
             changesForUpdates.clear(combine(segmentIndex, pos));
         }
 
+        /**
+         * Called under the segment write lock, the entries are moved in the ascending order of
+         * their positions toward the start of the segment, so the new position is never a
+         * pending position of another entry, which is not moved yet.
+         */
+        void moveChange(long segmentIndex, long oldPos, long newPos) {
+            long oldIndex = combine(segmentIndex, oldPos);
+            if (changesForUpdates.get(oldIndex)) {
+                changesForUpdates.clear(oldIndex);
+                long newIndex = combine(segmentIndex, newPos);
+                changesForUpdates.set(newIndex);
+                changesForIteration.onSet(newIndex);
+            }
+        }
+
         /**
          * you can continue to poll hasNext() until data becomes available. If are are in the middle
          * of processing an entry via {@code nextEntry}, hasNext will return true until the bit is
@@ -1081,14 +1441,9 @@ final class ReplicatedChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? supe
                 }
 
                 this.position = position;
-                int segmentIndex = (int) (position >>> segmentIndexShift);
-                if (context.segmentIndex != segmentIndex) {
-                    context.closeSegmentIndex();
-                    context.segmentIndex = segmentIndex;
-                    context.initLocks();
-                    context.initSegment();
-                }
+                initSegment((int) (position >>> segmentIndexShift));
                 context.updateLock().lock();
+                lockAcquisitions++;
                 try {
                     if (changesForUpdates.get(position)) {
 
@@ -1108,8 +1463,10 @@ final class ReplicatedChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? supe
                         boolean success = entryCallback.onEntry(context.entry, chronicleId);
                         entryCallback.onAfterEntry();
 
-                        if (success)
+                        if (success) {
                             changesForUpdates.clear(position);
+                            entriesShipped++;
+                        }
 
                         return success;
                     }
@@ -1122,13 +1479,136 @@ final class ReplicatedChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? supe
             }
         }
 
+        private void initSegment(int segmentIndex) {
+            if (context.segmentIndex != segmentIndex) {
+                context.closeSegmentIndex();
+                context.segmentIndex = segmentIndex;
+                context.initLocks();
+                context.initSegment();
+            }
+        }
+
+        /**
+         * Drains changed entries of the next segment with changes under a single update lock
+         * acquisition, rather than locking the segment for each entry, like {@link
+         * #nextEntry(EntryCallback, int)} does.
+         */
+        @Override
+        public int nextEntries(@NotNull EntryCallback entryCallback, int chronicleId) {
+            long position = this.position;
+            while (true) {
+                long oldPosition = position;
+                position = changesForIteration.nextSetBit(oldPosition + 1L);
+
+                if (position == NOT_FOUND) {
+                    if (oldPosition == NOT_FOUND) {
+                        this.position = NOT_FOUND;
+                        return 0;
+                    }
+                    continue;
+                }
+
+                int segmentIndex = (int) (position >>> segmentIndexShift);
+                long segmentEnd = ((long) segmentIndex + 1L) << segmentIndexShift;
+                initSegment(segmentIndex);
+                int entries = 0;
+                context.updateLock().lock();
+                lockAcquisitions++;
+                try {
+                    for (; position != NOT_FOUND && position < segmentEnd;
+                         position = changesForIteration.nextSetBit(position + 1L)) {
+                        if (!changesForUpdates.get(position)) {
+                            // cleared by another thread, while we were trying to obtain
+                            // the segment lock
+                            continue;
+                        }
+                        if (entries > 0 && !entryCallback.hasRoomForNextEntry()) {
+                            // start from this entry next time
+                            this.position = position - 1L;
+                            return entries;
+                        }
+                        this.position = position;
+
+                        entryCallback.onBeforeEntry();
+                        context.reuse(position & posMask);
+
+                        if (entryCallback.shouldBeIgnored(context.entry, chronicleId)) {
+                            changesForUpdates.clear(position);
+                            continue;
+                        }
+
+                        // it may not be successful if the buffer can not be re-sized, process
+                        // the entry later by NOT clearing the change bit
+                        boolean success = entryCallback.onEntry(context.entry, chronicleId);
+                        entryCallback.onAfterEntry();
+                        if (!success)
+                            return entries;
+
+                        changesForUpdates.clear(position);
+                        entries++;
+                    }
+                } finally {
+                    context.updateLock().unlock();
+                    entriesShipped += entries;
+                }
+                if (entries > 0)
+                    return entries;
+                // no changes left in this segment, go to the next one
+                position = this.position = segmentEnd - 1L;
+            }
+        }
+
+        /**
+         * The number of segment lock acquisitions, made by this iterator to ship entries.
+         */
+        long lockAcquisitions() {
+            return lockAcquisitions;
+        }
+
+        /**
+         * The number of entries, shipped by this iterator.
+         */
+        long entriesShipped() {
+            return entriesShipped;
+        }
+
+        /**
+         * The average number of entries, shipped per segment lock acquisition.
+         */
+        double entriesPerLock() {
+            return lockAcquisitions == 0L ? 0.0 : entriesShipped / (double) lockAcquisitions;
+        }
+
+        /**
+         * The number of changes of the entries, merged with the previous changes of the same
+         * entries, which were not shipped yet.
+         */
+        long coalescedUpdates() {
+            return coalescedUpdates.sum();
+        }
+
+        /**
+         * The number of the changed entries, waiting to be shipped to the remote node.
+         */
+        long pendingChanges() {
+            return changesForIteration.cardinality();
+        }
+
         @Override
         public void dirtyEntries(long fromTimeStamp) {
+            dirtyEntries(fromTimeStamp, 0, actualSegments);
+        }
+
+        @Override
+        public void dirtyEntries(long fromTimeStamp, int fromSegment, int toSegment) {
+            // the remote node is bootstrapping, it may hold none of the values sent before
+            if (lastSentValues != null)
+                lastSentValues.clear();
             try (ReplicatedContext<K, KI, MKI, V, VI, MVI> context =
                          (ReplicatedContext<K, KI, MKI, V, VI, MVI>) mapContext()) {
-                // iterate over all the segments and mark bit in the modification iterator
+                // iterate over the segments and mark bit in the modification iterator
                 // that correspond to entries with an older timestamp
-                for (int i = 0; i < actualSegments; i++) {
+                for (int i = fromSegment; i < toSegment; i++) {
                     context.segmentIndex = i;
                     context.initSegment();
                     try {
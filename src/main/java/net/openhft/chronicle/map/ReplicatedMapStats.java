@@ -0,0 +1,109 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@link ReplicationStats} of a {@link ReplicatedChronicleMap}: the changes pending for each
+ * remote node are counted by the modification iterators of the map, the state of the connections
+ * is read from the TCP replicator of the map, if there is one.
+ */
+final class ReplicatedMapStats implements ReplicationStats {
+
+    @NotNull
+    private final ReplicatedChronicleMap<?, ?, ?, ?, ?, ?> map;
+
+    ReplicatedMapStats(@NotNull ReplicatedChronicleMap<?, ?, ?, ?, ?, ?> map) {
+        this.map = map;
+    }
+
+    @Nullable
+    private TcpReplicator<?, ?> tcpReplicator() {
+        for (Closeable closeable : map.closeables) {
+            if (closeable instanceof TcpReplicator)
+                return (TcpReplicator<?, ?>) closeable;
+        }
+        return null;
+    }
+
+    @Override
+    public byte identifier() {
+        return map.identifier();
+    }
+
+    @Override
+    public long throttleWaitMillis() {
+        long throttleWaitMillis = 0L;
+        for (Closeable closeable : map.closeables) {
+            if (closeable instanceof AbstractChannelReplicator)
+                throttleWaitMillis += ((AbstractChannelReplicator) closeable).throttleWaitMillis();
+        }
+        return throttleWaitMillis;
+    }
+
+    @NotNull
+    @Override
+    public List<RemoteNodeStats> remoteNodes() {
+        final TcpReplicator<?, ?> tcpReplicator = tcpReplicator();
+        final List<RemoteNodeStats> remoteNodes = new ArrayList<>();
+        for (byte remoteIdentifier = 0; remoteIdentifier >= 0; remoteIdentifier++) {
+            final RemoteNodeStats remoteNode = remoteNode(remoteIdentifier, tcpReplicator);
+            if (remoteNode != null)
+                remoteNodes.add(remoteNode);
+        }
+        return remoteNodes;
+    }
+
+    @Nullable
+    @Override
+    public RemoteNodeStats remoteNode(byte remoteIdentifier) {
+        return remoteNode(remoteIdentifier, tcpReplicator());
+    }
+
+    @Nullable
+    private RemoteNodeStats remoteNode(byte remoteIdentifier,
+                                       @Nullable TcpReplicator<?, ?> tcpReplicator) {
+        if (remoteIdentifier == map.identifier())
+            return null;
+        final ReplicatedChronicleMap<?, ?, ?, ?, ?, ?>.ModificationIterator modIter =
+                map.modificationIterator(remoteIdentifier);
+        if (modIter == null)
+            return null;
+        final long pendingChanges = modIter.pendingChanges();
+        final long acknowledgedTime = tcpReplicator != null ?
+                tcpReplicator.acknowledgedTimestamp(remoteIdentifier) : 0L;
+        final long replicationLagMillis = pendingChanges > 0L && acknowledgedTime > 0L ?
+                Math.max(0L, map.currentTime() - acknowledgedTime) : 0L;
+        return new RemoteNodeStats(remoteIdentifier,
+                tcpReplicator != null && tcpReplicator.isConnected(remoteIdentifier),
+                pendingChanges,
+                modIter.coalescedUpdates(),
+                tcpReplicator != null ? tcpReplicator.queuedBytes(remoteIdentifier) : 0L,
+                map.lastModificationTime(remoteIdentifier),
+                acknowledgedTime,
+                replicationLagMillis,
+                tcpReplicator != null ? tcpReplicator.roundTripNanos(remoteIdentifier) : -1L);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/**
+ * The view of how far behind each remote node is in the replication of a {@link ChronicleMap},
+ * obtained via {@link ChronicleMap#replicationStats()}.
+ *
+ * <p>The statistics are read without synchronization with the replication threads, hence they are
+ * approximate, but never stale by more than the interval of acknowledgements, exchanged by the
+ * nodes (the heartbeat interval, or a second, whichever is shorter).
+ */
+public interface ReplicationStats {
+
+    /**
+     * Returns the identifier of this node.
+     */
+    byte identifier();
+
+    /**
+     * Returns the total time the writes of the replicator were suspended by the {@linkplain
+     * net.openhft.chronicle.hash.replication.ThrottlingConfig throttling}, in milliseconds. The
+     * throttling is shared by all the connections of the replicator.
+     */
+    long throttleWaitMillis();
+
+    /**
+     * Returns the snapshots of the statistics of all remote nodes, this node has replicated to.
+     */
+    @NotNull
+    List<RemoteNodeStats> remoteNodes();
+
+    /**
+     * Returns the snapshot of the statistics of the remote node with the given identifier, or
+     * {@code null}, if this node has never replicated to it.
+     */
+    @Nullable
+    RemoteNodeStats remoteNode(byte remoteIdentifier);
+
+    /**
+     * Registers the {@link ReplicationStatsMXBean} view of these statistics with the platform
+     * {@link MBeanServer}, under the name {@code
+     * net.openhft.chronicle.map:type=ReplicationStats,name=<name>,identifier=<identifier>}.
+     *
+     * @param name the name of the map, to distinguish it from other maps in the same JVM
+     * @return the token to unregister the MBean with, when it is closed
+     * @throws JMException if the MBean couldn't be registered, e. g. if the name is already used
+     */
+    default Closeable registerMBean(@NotNull String name) throws JMException {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName objectName = new ObjectName(
+                "net.openhft.chronicle.map:type=ReplicationStats,name=" + ObjectName.quote(name) +
+                        ",identifier=" + identifier());
+        server.registerMBean(new ReplicationStatsMXBean.Adapter(this), objectName);
+        return () -> {
+            try {
+                server.unregisterMBean(objectName);
+            } catch (JMException e) {
+                // already unregistered
+            }
+        };
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * The JMX view of {@link ReplicationStats}, registered via {@link
+ * ReplicationStats#registerMBean(String)}. The remote nodes are exposed as an array of composite
+ * data, with an item per getter of {@link RemoteNodeStats}.
+ */
+public interface ReplicationStatsMXBean {
+
+    byte getIdentifier();
+
+    long getThrottleWaitMillis();
+
+    RemoteNodeStats[] getRemoteNodes();
+
+    final class Adapter implements ReplicationStatsMXBean {
+        private final ReplicationStats stats;
+
+        Adapter(@NotNull ReplicationStats stats) {
+            this.stats = stats;
+        }
+
+        @Override
+        public byte getIdentifier() {
+            return stats.identifier();
+        }
+
+        @Override
+        public long getThrottleWaitMillis() {
+            return stats.throttleWaitMillis();
+        }
+
+        @Override
+        public RemoteNodeStats[] getRemoteNodes() {
+            List<RemoteNodeStats> remoteNodes = stats.remoteNodes();
+            return remoteNodes.toArray(new RemoteNodeStats[remoteNodes.size()]);
+        }
+    }
+}
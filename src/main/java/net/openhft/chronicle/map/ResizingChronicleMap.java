@@ -0,0 +1,625 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.hash.function.SerializableFunction;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Predicate;
+
+import static java.util.Collections.emptyList;
+
+/**
+ * {@code ChronicleMap}, which is being resized online: entries of the source map are migrated
+ * to the target map, usually having more segments, segment by segment in a background thread,
+ * while reads and writes through this map continue. Created via {@link
+ * ChronicleMapBuilder#createResizing(ChronicleMap)} or {@link
+ * ChronicleMapBuilder#createResizingPersistedTo(ChronicleMap, File)}.
+ *
+ * <p>Operations with keys, which fall into already migrated segments of the source map, go to
+ * the target map directly. Operations with keys of the segment being migrated wait until the
+ * migration of the segment is completed. Operations with keys of the segments which are not
+ * migrated yet go to the source map.
+ *
+ * <p>Bulk operations and views ({@link #entrySet()}, {@link #keySet()}, {@link #values()},
+ * {@link #forEachEntry(Consumer)}, etc.) pause the migration while they run. Until the resize
+ * is completed, {@link #entrySet()}, {@link #keySet()} and {@link #values()} return unmodifiable
+ * snapshots, {@link #context(Object)}, {@link #acquireContext(Object, Object)}, {@link
+ * #entryCursor()}, and the per-segment statistics, {@link #fragmentation()} and {@link
+ * #cacheStats()}, are not supported. {@link #compact()} and {@link #removeExpiredEntries()} process
+ * the segments of the source map, which are not migrated yet, and then the target map. After
+ * completion, all operations are delegated to the target map.
+ *
+ * <p>Entries keep their expiry time, when they are migrated, if the expiry of entries is configured
+ * for both maps.
+ *
+ * <p>Segments are guarded by on-heap locks, hence the source map shouldn't be accessed directly
+ * or from other processes during the resize. The source map is closed when the resize is
+ * completed.
+ *
+ * @param <K> the map key type
+ * @param <V> the map value type
+ */
+public final class ResizingChronicleMap<K, V> implements ChronicleMap<K, V> {
+    private static final Logger LOG = LoggerFactory.getLogger(ResizingChronicleMap.class);
+
+    private final VanillaChronicleMap<K, ?, ?, V, ?, ?> source;
+    private final ChronicleMap<K, V> target;
+    private final int sourceSegments;
+    private final boolean migrateExpiryTime;
+    private final ReentrantReadWriteLock[] segmentGuards;
+    private final CompletableFuture<ChronicleMap<K, V>> completion = new CompletableFuture<>();
+    private final Thread migrationThread;
+
+    /**
+     * All source segments with lesser indices are already migrated to the target map
+     */
+    private volatile int migratedSegments = 0;
+    private volatile boolean closed = false;
+
+    ResizingChronicleMap(ChronicleMap<K, V> source, ChronicleMap<K, V> target) {
+        if (!(source instanceof VanillaChronicleMap)) {
+            throw new IllegalArgumentException("Only maps, created by ChronicleMapBuilder, " +
+                    "could be resized, " + source.getClass() + " given");
+        }
+        this.source = (VanillaChronicleMap<K, ?, ?, V, ?, ?>) source;
+        this.target = target;
+        sourceSegments = this.source.actualSegments();
+        migrateExpiryTime = this.source.entryExpiry && target instanceof VanillaChronicleMap &&
+                ((VanillaChronicleMap<?, ?, ?, ?, ?, ?>) target).entryExpiry;
+        segmentGuards = new ReentrantReadWriteLock[sourceSegments];
+        for (int i = 0; i < sourceSegments; i++) {
+            segmentGuards[i] = new ReentrantReadWriteLock();
+        }
+        migrationThread = new Thread(this::migrate, "chronicle-map-resize");
+        migrationThread.setDaemon(true);
+        migrationThread.start();
+    }
+
+    private void migrate() {
+        try {
+            for (int segmentIndex = 0; segmentIndex < sourceSegments; segmentIndex++) {
+                if (closed)
+                    return;
+                Lock guard = segmentGuards[segmentIndex].writeLock();
+                guard.lock();
+                try {
+                    source.forEachEntryInSegmentWhile(segmentIndex, c -> {
+                        migrateEntry(c);
+                        return true;
+                    });
+                    migratedSegments = segmentIndex + 1;
+                } finally {
+                    guard.unlock();
+                }
+            }
+            source.close();
+            completion.complete(target);
+        } catch (Throwable t) {
+            LOG.error("Resize of ChronicleMap failed, " + migratedSegments + " of " +
+                    sourceSegments + " segments are migrated", t);
+            completion.completeExceptionally(t);
+        }
+    }
+
+    private void migrateEntry(MapKeyContext<K, V> c) {
+        if (migrateExpiryTime) {
+            K key = c.key();
+            V value = c.get();
+            long timeToLive = ((VanillaContext<?, ?, ?, ?, ?, ?>) c).expiryTime() -
+                    source.expiryTimeProvider.currentTime();
+            // the entry might expire after it is checked by the iteration
+            if (timeToLive > 0L)
+                target.put(key, value, timeToLive, TimeUnit.MICROSECONDS);
+        } else {
+            target.put(c.key(), c.get());
+        }
+    }
+
+    /**
+     * @return the fraction of the source map segments, already migrated to the target map,
+     * from 0.0 to 1.0
+     */
+    public double resizeProgress() {
+        return migratedSegments * 1.0 / sourceSegments;
+    }
+
+    public boolean isResizeCompleted() {
+        return migratedSegments == sourceSegments;
+    }
+
+    /**
+     * Returns the future, which is completed with the target map when all entries are migrated,
+     * or exceptionally, if the migration fails. After the completion this map could be replaced
+     * with the target map in the application code, but this map should still be closed.
+     *
+     * @return the future of the resize completion
+     */
+    public CompletableFuture<ChronicleMap<K, V>> resizeCompletion() {
+        return completion;
+    }
+
+    /**
+     * @return the source segment index for the given key, if the segment is not migrated yet,
+     * or -1 if the key should be accessed directly in the target map
+     */
+    @SuppressWarnings("unchecked")
+    private int guardedSegment(Object key) {
+        int migrated = migratedSegments;
+        if (migrated == sourceSegments)
+            return -1;
+        int segmentIndex = source.segmentIndex((K) key);
+        return segmentIndex < migrated ? -1 : segmentIndex;
+    }
+
+    private <R> R apply(Object key, Function<ChronicleMap<K, V>, R> action) {
+        int segmentIndex = guardedSegment(key);
+        if (segmentIndex < 0)
+            return action.apply(target);
+        Lock guard = segmentGuards[segmentIndex].readLock();
+        guard.lock();
+        try {
+            return action.apply(segmentIndex < migratedSegments ? target : source);
+        } finally {
+            guard.unlock();
+        }
+    }
+
+    /**
+     * Acquires the guard of the first not migrated segment, that pauses the migration.
+     *
+     * @return the acquired guard, or {@code null} if the resize is completed
+     */
+    private Lock pauseMigration() {
+        while (true) {
+            int migrated = migratedSegments;
+            if (migrated == sourceSegments)
+                return null;
+            Lock guard = segmentGuards[migrated].readLock();
+            guard.lock();
+            if (migratedSegments == migrated)
+                return guard;
+            guard.unlock();
+        }
+    }
+
+    private Map<K, V> snapshot() {
+        Map<K, V> snapshot = new LinkedHashMap<>();
+        forEach(snapshot::put);
+        return snapshot;
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        forEachEntry(c -> action.accept(c.key(), c.get()));
+    }
+
+    @Override
+    public V get(Object key) {
+        return apply(key, m -> m.get(key));
+    }
+
+    @Override
+    public V getUsing(K key, V usingValue) {
+        return apply(key, m -> m.getUsing(key, usingValue));
+    }
+
+    @Override
+    public V acquireUsing(@NotNull K key, V usingValue) {
+        return apply(key, m -> m.acquireUsing(key, usingValue));
+    }
+
+    @NotNull
+    @Override
+    public MapKeyContext<K, V> acquireContext(@NotNull K key, @NotNull V usingValue) {
+        checkResizeCompleted("acquireContext()");
+        return target.acquireContext(key, usingValue);
+    }
+
+    @Override
+    public MapKeyContext<K, V> context(K key) {
+        checkResizeCompleted("context()");
+        return target.context(key);
+    }
+
+    @NotNull
+    @Override
+    public MapEntryCursor<K, V> entryCursor() {
+        checkResizeCompleted("entryCursor()");
+        return target.entryCursor();
+    }
+
+    private void checkResizeCompleted(String operation) {
+        if (!isResizeCompleted()) {
+            throw new UnsupportedOperationException(operation +
+                    " is not supported until the resize is completed");
+        }
+    }
+
+    @Override
+    public <R> R getMapped(K key, @NotNull SerializableFunction<? super V, R> function) {
+        return apply(key, m -> m.getMapped(key, function));
+    }
+
+    @Override
+    public V putMapped(K key, @NotNull UnaryOperator<V> unaryOperator) {
+        return apply(key, m -> m.putMapped(key, unaryOperator));
+    }
+
+    @Override
+    public void getAll(Collection<K> keys, Map<K, V> out) {
+        if (isResizeCompleted()) {
+            target.getAll(keys, out);
+            return;
+        }
+        List<K> targetKeys = new ArrayList<>();
+        SortedMap<Integer, List<K>> sourceSegmentKeys = new TreeMap<>();
+        for (K key : keys) {
+            int segmentIndex = guardedSegment(key);
+            if (segmentIndex < 0) {
+                targetKeys.add(key);
+            } else {
+                sourceSegmentKeys.computeIfAbsent(segmentIndex, i -> new ArrayList<>()).add(key);
+            }
+        }
+        if (!targetKeys.isEmpty())
+            target.getAll(targetKeys, out);
+        for (Map.Entry<Integer, List<K>> group : sourceSegmentKeys.entrySet()) {
+            int segmentIndex = group.getKey();
+            Lock guard = segmentGuards[segmentIndex].readLock();
+            guard.lock();
+            try {
+                (segmentIndex < migratedSegments ? target : source).getAll(group.getValue(), out);
+            } finally {
+                guard.unlock();
+            }
+        }
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return apply(key, m -> m.containsKey(key));
+    }
+
+    @Override
+    public V put(K key, V value) {
+        return apply(key, m -> m.put(key, value));
+    }
+
+    @Override
+    public V put(K key, V value, long timeToLive, TimeUnit unit) {
+        return apply(key, m -> m.put(key, value, timeToLive, unit));
+    }
+
+    @Override
+    public V putIfAbsent(@NotNull K key, V value) {
+        return apply(key, m -> m.putIfAbsent(key, value));
+    }
+
+    @Override
+    public V remove(Object key) {
+        return apply(key, m -> m.remove(key));
+    }
+
+    @Override
+    public boolean remove(@NotNull Object key, Object value) {
+        return apply(key, m -> m.remove(key, value));
+    }
+
+    @Override
+    public V replace(@NotNull K key, @NotNull V value) {
+        return apply(key, m -> m.replace(key, value));
+    }
+
+    @Override
+    public boolean replace(@NotNull K key, @NotNull V oldValue, @NotNull V newValue) {
+        return apply(key, m -> m.replace(key, oldValue, newValue));
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> m) {
+        m.forEach(this::put);
+    }
+
+    @Override
+    public long addAndGetLong(K key, long offset, long delta) {
+        return apply(key, m -> m.addAndGetLong(key, offset, delta));
+    }
+
+    @Override
+    public long getAndAddLong(K key, long offset, long delta) {
+        return apply(key, m -> m.getAndAddLong(key, offset, delta));
+    }
+
+    @Override
+    public boolean compareAndSwapLong(K key, long offset, long expected, long x) {
+        return apply(key, m -> m.compareAndSwapLong(key, offset, expected, x));
+    }
+
+    @Override
+    public int addAndGetInt(K key, long offset, int delta) {
+        return apply(key, m -> m.addAndGetInt(key, offset, delta));
+    }
+
+    @Override
+    public int getAndAddInt(K key, long offset, int delta) {
+        return apply(key, m -> m.getAndAddInt(key, offset, delta));
+    }
+
+    @Override
+    public boolean compareAndSwapInt(K key, long offset, int expected, int x) {
+        return apply(key, m -> m.compareAndSwapInt(key, offset, expected, x));
+    }
+
+    @Override
+    public boolean forEachEntryWhile(Predicate<? super MapKeyContext<K, V>> predicate) {
+        Lock guard = pauseMigration();
+        if (guard == null)
+            return target.forEachEntryWhile(predicate);
+        try {
+            if (!target.forEachEntryWhile(predicate))
+                return false;
+            for (int segmentIndex = migratedSegments; segmentIndex < sourceSegments;
+                 segmentIndex++) {
+                if (!source.forEachEntryInSegmentWhile(segmentIndex, predicate))
+                    return false;
+            }
+            return true;
+        } finally {
+            guard.unlock();
+        }
+    }
+
+    @Override
+    public void forEachEntry(Consumer<? super MapKeyContext<K, V>> action) {
+        forEachEntryWhile(c -> {
+            action.accept(c);
+            return true;
+        });
+    }
+
+    @Override
+    public long longSize() {
+        Lock guard = pauseMigration();
+        if (guard == null)
+            return target.longSize();
+        try {
+            long size = target.longSize();
+            long[] sourceSegmentSizes = source.segmentSizes();
+            for (int segmentIndex = migratedSegments; segmentIndex < sourceSegments;
+                 segmentIndex++) {
+                size += sourceSegmentSizes[segmentIndex];
+            }
+            return size;
+        } finally {
+            guard.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        long size = longSize();
+        return size > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return longSize() == 0L;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean containsValue(Object value) {
+        return !forEachEntryWhile(c -> !c.valueEqualTo((V) value));
+    }
+
+    @Override
+    public void clear() {
+        Lock guard = pauseMigration();
+        if (guard == null) {
+            target.clear();
+            return;
+        }
+        try {
+            // clear the source first, so that the migration of the rest segments is cheap
+            for (int segmentIndex = migratedSegments; segmentIndex < sourceSegments;
+                 segmentIndex++) {
+                source.forEachEntryInSegmentWhile(segmentIndex, c -> {
+                    c.remove();
+                    return true;
+                });
+            }
+            target.clear();
+        } finally {
+            guard.unlock();
+        }
+    }
+
+    @Override
+    public List<SegmentFragmentation> fragmentation() {
+        checkResizeCompleted("fragmentation()");
+        return target.fragmentation();
+    }
+
+    @Override
+    public List<SegmentCacheStats> cacheStats() {
+        checkResizeCompleted("cacheStats()");
+        return target.cacheStats();
+    }
+
+    @Override
+    public long compact() {
+        // the source segments first, so that the entries migrated meanwhile are compacted
+        // in the target map
+        long moved = forEachSourceSegment(source::compactSegment);
+        return moved + target.compact();
+    }
+
+    @Override
+    public long removeExpiredEntries() {
+        // expired entries of the segments migrated meanwhile are skipped by the migration
+        long removed = forEachSourceSegment(source::removeExpiredEntries);
+        return removed + target.removeExpiredEntries();
+    }
+
+    /**
+     * Applies the action to each source segment, which is not migrated yet, under the segment
+     * guard. Segments are processed from the last one, so that they are mostly processed before
+     * the migration reaches them, and only the segment being migrated is waited for.
+     *
+     * @return the sum of the action results
+     */
+    private long forEachSourceSegment(IntUnaryOperator action) {
+        long sum = 0L;
+        for (int segmentIndex = sourceSegments - 1; segmentIndex >= migratedSegments;
+             segmentIndex--) {
+            Lock guard = segmentGuards[segmentIndex].readLock();
+            guard.lock();
+            try {
+                if (segmentIndex >= migratedSegments)
+                    sum += action.applyAsInt(segmentIndex);
+            } finally {
+                guard.unlock();
+            }
+        }
+        return sum;
+    }
+
+    @NotNull
+    @Override
+    public Set<K> keySet() {
+        if (isResizeCompleted())
+            return target.keySet();
+        return Collections.unmodifiableSet(snapshot().keySet());
+    }
+
+    @NotNull
+    @Override
+    public Collection<V> values() {
+        if (isResizeCompleted())
+            return target.values();
+        return Collections.unmodifiableCollection(snapshot().values());
+    }
+
+    @NotNull
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        if (isResizeCompleted())
+            return target.entrySet();
+        return Collections.unmodifiableSet(snapshot().entrySet());
+    }
+
+    @Override
+    public void getAll(File toFile) throws IOException {
+        synchronized (this) {
+            JsonSerializer.getAll(toFile, this, emptyList());
+        }
+    }
+
+    @Override
+    public void putAll(File fromFile) throws IOException {
+        synchronized (this) {
+            JsonSerializer.putAll(fromFile, this, emptyList());
+        }
+    }
+
+    @Override
+    public V newValueInstance() {
+        return target.newValueInstance();
+    }
+
+    @Override
+    public K newKeyInstance() {
+        return target.newKeyInstance();
+    }
+
+    @Override
+    public Class<K> keyClass() {
+        return target.keyClass();
+    }
+
+    @Override
+    public Class<V> valueClass() {
+        return target.valueClass();
+    }
+
+    @Override
+    public File file() {
+        return target.file();
+    }
+
+    /**
+     * Stops the migration, if it is still in progress, and closes both the source and
+     * the target maps.
+     */
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        // close() might be called from a resize completion callback in the migration thread
+        if (Thread.currentThread() != migrationThread) {
+            try {
+                migrationThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (!isResizeCompleted()) {
+            source.close();
+            completion.completeExceptionally(
+                    new IllegalStateException("The map is closed before the resize completion"));
+        }
+        target.close();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this)
+            return true;
+        if (isResizeCompleted())
+            return target.equals(o);
+        return snapshot().equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        if (isResizeCompleted())
+            return target.hashCode();
+        return snapshot().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        if (isResizeCompleted())
+            return target.toString();
+        return snapshot().toString();
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+/**
+ * The snapshot of the cache statistics of a {@link ChronicleMap} segment with {@linkplain
+ * ChronicleMapBuilder#eviction(boolean) eviction} configured. The counters are stored in the
+ * map memory, so they are shared by all processes, accessing the same persisted map, and
+ * survive reopening of the map. Hits and misses are counted without synchronization, so they are
+ * approximate, when the segment is read concurrently.
+ *
+ * @see ChronicleMap#cacheStats()
+ */
+public final class SegmentCacheStats {
+
+    private final int segmentIndex;
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+
+    SegmentCacheStats(int segmentIndex, long hits, long misses, long evictions) {
+        this.segmentIndex = segmentIndex;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+    }
+
+    /**
+     * Returns the index of the segment.
+     */
+    public int segmentIndex() {
+        return segmentIndex;
+    }
+
+    /**
+     * Returns the number of {@link ChronicleMap#get(Object) get()} and {@link
+     * ChronicleMap#getUsing(Object, Object) getUsing()} calls, which found the key in the segment.
+     */
+    public long hits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of {@link ChronicleMap#get(Object) get()} and {@link
+     * ChronicleMap#getUsing(Object, Object) getUsing()} calls, which didn't find the key in the
+     * segment.
+     */
+    public long misses() {
+        return misses;
+    }
+
+    /**
+     * Returns the number of entries, evicted from the segment.
+     */
+    public long evictions() {
+        return evictions;
+    }
+
+    /**
+     * Returns the share of hits among all lookups, or {@code 0.0} if there were no lookups.
+     */
+    public double hitRate() {
+        long lookups = hits + misses;
+        return lookups > 0L ? ((double) hits) / lookups : 0.0;
+    }
+
+    @Override
+    public String toString() {
+        return "SegmentCacheStats{segmentIndex=" + segmentIndex +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                ", evictions=" + evictions +
+                ", hitRate=" + hitRate() + '}';
+    }
+}
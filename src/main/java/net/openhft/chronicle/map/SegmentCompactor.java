@@ -0,0 +1,87 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The background task, which periodically checks the fragmentation of each segment of a map, and
+ * compacts the segments, which fragmentation reached the threshold, see {@link
+ * ChronicleMapBuilder#compaction(double, long, java.util.concurrent.TimeUnit)}.
+ */
+final class SegmentCompactor implements Runnable {
+    private static final Logger LOG = LoggerFactory.getLogger(SegmentCompactor.class);
+
+    private final VanillaChronicleMap<?, ?, ?, ?, ?, ?> map;
+    private final double fragmentationThreshold;
+    private final long intervalNanos;
+    private final Thread thread;
+    private volatile boolean closed = false;
+
+    SegmentCompactor(VanillaChronicleMap<?, ?, ?, ?, ?, ?> map, double fragmentationThreshold,
+                     long intervalNanos) {
+        this.map = map;
+        this.fragmentationThreshold = fragmentationThreshold;
+        this.intervalNanos = intervalNanos;
+        thread = new Thread(this, "chronicle-map-compaction");
+        thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        while (!closed) {
+            LockSupport.parkNanos(this, intervalNanos);
+            for (int segmentIndex = 0; segmentIndex < map.actualSegments && !closed;
+                 segmentIndex++) {
+                try {
+                    SegmentFragmentation fragmentation = map.segmentFragmentation(segmentIndex);
+                    if (fragmentation.freeChunks() > 0L &&
+                            fragmentation.fragmentation() >= fragmentationThreshold) {
+                        map.compactSegment(segmentIndex);
+                    }
+                } catch (Throwable t) {
+                    if (!closed)
+                        LOG.error("Compaction of the segment " + segmentIndex + " failed", t);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops the compaction and waits until the segment, being compacted, if any, is done.
+     */
+    void close() {
+        closed = true;
+        LockSupport.unpark(thread);
+        if (thread == Thread.currentThread())
+            return;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.hash.hashing.LongHashFunction;
+import net.openhft.lang.io.Bytes;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The digests of the segments of replicated maps, which are equal on two nodes if they hold the
+ * same versions of the entries in the segment, so that the nodes resync only the segments which
+ * differ, when they reconnect.
+ *
+ * <p>The digest of a segment is the sum of the digests of it's entries, each is a hash of the key
+ * bytes, the timestamp and the identifier of the entry, hence it is updated in constant time on
+ * each change of an entry, and doesn't depend on the order of the entries in the segment. The
+ * digests of the segments are the leaves of a tree of sums, the level of at most {@link
+ * #MAX_RANGES} ranges of adjacent segments is exchanged when the nodes connect.
+ */
+final class SegmentDigests {
+
+    // 8 KB of range digests, exchanged on handshaking
+    static final int MAX_RANGES = 1024;
+    private static final LongHashFunction HASH = LongHashFunction.city_1_1();
+
+    private SegmentDigests() {
+    }
+
+    static long keyHash(@NotNull Bytes entry, long keyOffset, long keySize) {
+        return HASH.hashBytes(entry, keyOffset, keySize);
+    }
+
+    static long entryDigest(long keyHash, long timestamp, byte identifier) {
+        return HASH.hashLong(keyHash ^ HASH.hashLong(timestamp ^ ((long) identifier << 56)));
+    }
+
+    /**
+     * Returns the number of ranges, the digests of the given number of segments are folded to.
+     */
+    static int ranges(int segments) {
+        return Math.min(segments, MAX_RANGES);
+    }
+
+    /**
+     * Returns the index of the first segment of the range, or the number of segments, if {@code
+     * range == ranges}.
+     */
+    static int rangeStart(int segments, int ranges, int range) {
+        return (int) ((long) segments * range / ranges);
+    }
+
+    static long[] rangeDigests(@NotNull long[] segmentDigests, int ranges) {
+        long[] rangeDigests = new long[ranges];
+        for (int range = 0; range < ranges; range++) {
+            int end = rangeStart(segmentDigests.length, ranges, range + 1);
+            for (int i = rangeStart(segmentDigests.length, ranges, range); i < end; i++) {
+                rangeDigests[range] += segmentDigests[i];
+            }
+        }
+        return rangeDigests;
+    }
+}
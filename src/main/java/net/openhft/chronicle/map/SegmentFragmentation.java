@@ -0,0 +1,130 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import java.util.Arrays;
+
+/**
+ * The snapshot of the fragmentation of the entry space of a {@link ChronicleMap} segment: how
+ * many chunks are free and how they are split into runs of continuous free chunks. An entry of
+ * {@code n} chunks could be allocated only in a run of at least {@code n} free chunks.
+ *
+ * @see ChronicleMap#fragmentation()
+ * @see ChronicleMap#compact()
+ */
+public final class SegmentFragmentation {
+
+    private final int segmentIndex;
+    private final int tiers;
+    private final long totalChunks;
+    private long freeChunks;
+    private long largestFreeRun;
+    // runs of [2^i, 2^(i + 1)) chunks are counted in the bucket i
+    private final long[] freeRunHistogram = new long[64];
+
+    SegmentFragmentation(int segmentIndex, int tiers, long totalChunks) {
+        this.segmentIndex = segmentIndex;
+        this.tiers = tiers;
+        this.totalChunks = totalChunks;
+    }
+
+    void addFreeRun(long chunks) {
+        freeChunks += chunks;
+        largestFreeRun = Math.max(largestFreeRun, chunks);
+        freeRunHistogram[63 - Long.numberOfLeadingZeros(chunks)]++;
+    }
+
+    /**
+     * Returns the index of the segment.
+     */
+    public int segmentIndex() {
+        return segmentIndex;
+    }
+
+    /**
+     * Returns the number of tiers of the segment, {@code 1} if the segment has no extra tiers.
+     * Free runs never span tiers.
+     */
+    public int tiers() {
+        return tiers;
+    }
+
+    /**
+     * Returns the number of chunks in the entry space of all tiers of the segment.
+     */
+    public long totalChunks() {
+        return totalChunks;
+    }
+
+    /**
+     * Returns the number of free chunks in all tiers of the segment.
+     */
+    public long freeChunks() {
+        return freeChunks;
+    }
+
+    /**
+     * Returns the length of the largest run of continuous free chunks, i. e. the size of the
+     * largest entry, in chunks, which could be allocated in the segment without compaction.
+     */
+    public long largestFreeRun() {
+        return largestFreeRun;
+    }
+
+    /**
+     * Returns the number of runs of continuous free chunks, which lengths are in {@code
+     * [2^bucket, 2^(bucket + 1))} range.
+     */
+    public long freeRuns(int bucket) {
+        return freeRunHistogram[bucket];
+    }
+
+    /**
+     * Returns the histogram of the lengths of the runs of continuous free chunks, the element
+     * {@code i} of the array is {@link #freeRuns(int) freeRuns(i)}, trailing empty buckets are
+     * omitted.
+     */
+    public long[] freeRunHistogram() {
+        int buckets = freeRunHistogram.length;
+        while (buckets > 0 && freeRunHistogram[buckets - 1] == 0L) {
+            buckets--;
+        }
+        return Arrays.copyOf(freeRunHistogram, buckets);
+    }
+
+    /**
+     * Returns the share of the free chunks, which are not in the largest free run, from {@code
+     * 0.0}, if all free chunks are continuous, or there are no free chunks, to nearly {@code
+     * 1.0}, if free chunks are scattered in many short runs.
+     */
+    public double fragmentation() {
+        return freeChunks > 0L ? 1.0 - ((double) largestFreeRun) / freeChunks : 0.0;
+    }
+
+    @Override
+    public String toString() {
+        return "SegmentFragmentation{segmentIndex=" + segmentIndex +
+                ", tiers=" + tiers +
+                ", totalChunks=" + totalChunks +
+                ", freeChunks=" + freeChunks +
+                ", largestFreeRun=" + largestFreeRun +
+                ", freeRunHistogram=" + Arrays.toString(freeRunHistogram()) +
+                ", fragmentation=" + fragmentation() + '}';
+    }
+}
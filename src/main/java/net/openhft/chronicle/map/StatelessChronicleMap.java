@@ -44,9 +44,13 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.SocketChannel;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Predicate;
 
 import static java.nio.ByteBuffer.allocateDirect;
@@ -62,6 +66,9 @@ class StatelessChronicleMap<K, V> implements ChronicleMap<K, V>, Closeable, Clon
 
     private static final Logger LOG = LoggerFactory.getLogger(StatelessChronicleMap.class);
     private static final byte STATELESS_CLIENT_IDENTIFIER = (byte) -127;
+    private static final EventId[] EVENT_IDS = EventId.values();
+    private static final Runnable NOTHING = () -> {
+    };
 
     private final byte[] connectionByte = new byte[1];
     private final ByteBuffer connectionOutBuffer = ByteBuffer.wrap(connectionByte);
@@ -88,7 +95,11 @@ class StatelessChronicleMap<K, V> implements ChronicleMap<K, V>, Closeable, Clon
     private final InetSocketAddress remoteAddress;
     private final long timeoutMs;
     private final int tcpBufferSize;
-    
+    private final int coalescingMaxBytes;
+    private final long coalescingMaxDelayNanos;
+    @Nullable
+    final NearCache<K, V> nearCache;
+
     private Class<K> kClass;
     private Class<V> vClass;
     private boolean putReturnsNull;
@@ -136,9 +147,16 @@ class StatelessChronicleMap<K, V> implements ChronicleMap<K, V>, Closeable, Clon
         MAP_FOR_KEY,
         PUT_MAPPED,
         KEY_BUILDER,
-        VALUE_BUILDER
+        VALUE_BUILDER,
+        COMPRESSED_STATEFUL_UPDATES,
+        ACKNOWLEDGEMENT,
+        NEAR_CACHE_GET,
+        GET_ALL
     }
 
+    // the transaction id of the messages, pushed by the server to invalidate the near cache
+    static final long NEAR_CACHE_INVALIDATION_TRANSACTION_ID = 0L;
+
 
     //  used by the enterprise version
     private int identifier;
@@ -152,10 +170,23 @@ class StatelessChronicleMap<K, V> implements ChronicleMap<K, V>, Closeable, Clon
     @NotNull
     private final AtomicLong transactionID = new AtomicLong(0);
 
+    // the requests sent by the asynchronous methods, which responses are not received yet, by
+    // transaction id. The requests timed out are kept until their responses arrive, to be skipped
+    private final ConcurrentHashMap<Long, AsyncRequest<?>> asyncRequests =
+            new ConcurrentHashMap<>();
+
+    // guarded by this, started by the first asynchronous request and stopped on close()
+    @Nullable
+    private Thread asyncReader;
+
     StatelessChronicleMap(@NotNull final ChronicleMapStatelessClientBuilder config) {
         this.remoteAddress = config.remoteAddress();
         this.timeoutMs = config.timeoutMs();
         this.tcpBufferSize = config.tcpBufferSize();
+        this.coalescingMaxBytes = config.coalescingMaxBytes();
+        this.coalescingMaxDelayNanos = config.coalescingMaxDelayNanos();
+        this.nearCache = config.nearCacheMaxEntries() > 0 ?
+                new NearCache<>(config.nearCacheMaxEntries()) : null;
         this.name = config.name();
         this.putReturnsNull = config.putReturnsNull();
         this.removeReturnsNull = config.removeReturnsNull();
@@ -293,6 +324,9 @@ class StatelessChronicleMap<K, V> implements ChronicleMap<K, V>, Closeable, Clon
             }
         }
         clientChannel = result;
+        // the new connection is not subscribed to the invalidations of the cached keys
+        if (nearCache != null)
+            nearCache.clear();
         byte[] bytes = copyBufferBytes();
 
         long position = outBytes.position();
@@ -418,7 +452,18 @@ class StatelessChronicleMap<K, V> implements ChronicleMap<K, V>, Closeable, Clon
             closeables.closeQuietly();
         closeables = null;
         clientChannel = null;
+        if (nearCache != null)
+            nearCache.clear();
 
+        // the responses of the requests in flight will never arrive
+        failAsyncRequests(new IORuntimeException(
+                new java.nio.channels.ClosedChannelException()));
+        if (asyncReader != null)
+            LockSupport.unpark(asyncReader);
+        final Thread flusher = this.flusher;
+        this.flusher = null;
+        if (flusher != null)
+            LockSupport.unpark(flusher);
     }
 
     /**
@@ -444,6 +489,7 @@ class StatelessChronicleMap<K, V> implements ChronicleMap<K, V>, Closeable, Clon
         if (key == null || value == null)
             throw new NullPointerException();
 
+        beforeWrite(key);
         return fetchObject(vClass, PUT_IF_ABSENT, key, value);
     }
 
@@ -454,7 +500,10 @@ class StatelessChronicleMap<K, V> implements ChronicleMap<K, V>, Closeable, Clon
         if (key == null)
             throw new NullPointerException();
 
-        return value != null && fetchBoolean(REMOVE_WITH_VALUE, (K) key, (V) value);
+        if (value == null)
+            return false;
+        beforeWrite(key);
+        return fetchBoolean(REMOVE_WITH_VALUE, (K) key, (V) value);
 
     }
 
@@ -464,6 +513,7 @@ class StatelessChronicleMap<K, V> implements ChronicleMap<K, V>, Closeable, Clon
         if (key == null || oldValue == null || newValue == null)
             throw new NullPointerException();
 
+        beforeWrite(key);
         return fetchBoolean(REPLACE_WITH_OLD_AND_NEW_VALUE, key, oldValue, newValue);
     }
 
@@ -472,6 +522,7 @@ class StatelessChronicleMap<K, V> implements ChronicleMap<K, V>, Closeable, Clon
         if (key == null || value == null)
             throw new NullPointerException();
 
+        beforeWrite(key);
         return fetchObject(vClass, REPLACE, key, value);
     }
 
@@ -558,10 +609,58 @@ class StatelessChronicleMap<K, V> implements ChronicleMap<K, V>, Closeable, Clon
         throw new UnsupportedOperationException("Contexts are not supported by stateless clients");
     }
 
+    @SuppressWarnings("unchecked")
     public V get(Object key) {
+        if (nearCache != null && key != null)
+            return nearCacheGet((K) key);
         return fetchObject(vClass, GET, (K) key);
     }
 
+    /**
+     * Returns the value from the near cache, or reads it from the server subscribing to the
+     * invalidations of the key, and caches it.
+     */
+    private V nearCacheGet(@NotNull K key) {
+        assert nearCache != null;
+        final NearCache.Entry<V> cached = nearCache.get(key);
+        if (cached != null)
+            return cached.value;
+
+        final long writesBeforeRead = nearCache.writes();
+        final long startTime = System.currentTimeMillis();
+        final ThreadLocalCopies copies;
+        final long transactionId;
+
+        outBytesLock.lock();
+        try {
+            final long sizeLocation = writeEventAnSkip(NEAR_CACHE_GET);
+            copies = writeKey(key);
+            transactionId = send(sizeLocation, startTime);
+        } finally {
+            outBytesLock.unlock();
+        }
+
+        // the invalidations are received by the reader thread, while the client doesn't read
+        startAsyncReader();
+
+        inBytesLock.lock();
+        try {
+            final Bytes in = blockingFetchReadOnly(startTime + timeoutMs, transactionId);
+            final V value = readValue(copies, in);
+            // cached under inBytesLock, so that the invalidations received after the value are
+            // applied after it is cached
+            nearCache.put(key, value, in.readInt(), writesBeforeRead);
+            return value;
+        } finally {
+            inBytesLock.unlock();
+        }
+    }
+
+    private void beforeWrite(Object key) {
+        if (nearCache != null)
+            nearCache.beforeWrite(key);
+    }
+
     @Nullable
     public V getUsing(K key, V usingValue) {
 
@@ -589,6 +688,60 @@ class StatelessChronicleMap<K, V> implements ChronicleMap<K, V>, Closeable, Clon
 
     }
 
+    /**
+     * Looks up all the keys in a single request, the server reads them batched by segments, see
+     * {@link BytesChronicleMap#getAll(Bytes)}.
+     */
+    @Override
+    public void getAll(Collection<K> keys, Map<K, V> out) {
+        if (nearCache != null) {
+            ChronicleMap.super.getAll(keys, out);
+            return;
+        }
+        if (keys.isEmpty())
+            return;
+
+        final List<K> keyList = new ArrayList<>(keys);
+        final long startTime = System.currentTimeMillis();
+        final long transactionId;
+
+        outBytesLock.lock();
+        try {
+            final long sizeLocation = writeEventAnSkip(GET_ALL);
+            outBytes.writeStopBit(keyList.size());
+            ThreadLocalCopies copies = keyWriterWithSize.getCopies(null);
+            final Object keyWriter = keyWriterWithSize.writerForLoop(copies);
+            for (K key : keyList) {
+                if (key == null)
+                    throw new NullPointerException();
+                final Class<?> keyClass = key.getClass();
+                if (!kClass.isAssignableFrom(keyClass)) {
+                    throw new ClassCastException("key=" + key + " is of type=" + keyClass + " " +
+                            "and should be of type=" + kClass);
+                }
+                writeKeyInLoop(key, keyWriter, copies);
+            }
+            transactionId = send(sizeLocation, startTime);
+        } finally {
+            outBytesLock.unlock();
+        }
+
+        final BytesReader<V> valueReader = valueReaderWithSize.readerForLoop(null);
+        inBytesLock.lock();
+        try {
+            final Bytes in = blockingFetchReadOnly(startTime + timeoutMs, transactionId);
+            // the values are written in the segment order, each prefixed with the key index
+            for (int i = 0; i < keyList.size(); i++) {
+                final int keyIndex = (int) in.readStopBit();
+                final V value = valueReaderWithSize.readNullableInLoop(in, valueReader);
+                if (value != null)
+                    out.put(keyList.get(keyIndex), value);
+            }
+        } finally {
+            inBytesLock.unlock();
+        }
+    }
+
     @NotNull
     public V acquireUsing(@NotNull K key, V usingValue) {
         throw new UnsupportedOperationException("acquireUsing() is not supported for stateless " +
@@ -604,15 +757,54 @@ class StatelessChronicleMap<K, V> implements ChronicleMap<K, V>, Closeable, Clon
     public V remove(Object key) {
         if (key == null)
             throw keyNotNullNPE();
+        beforeWrite(key);
         return fetchObject(vClass, removeReturnsNull ? REMOVE_WITHOUT_ACC : REMOVE, (K) key);
     }
 
     public V put(K key, V value) {
         if (key == null || value == null)
             throw new NullPointerException();
+        beforeWrite(key);
         return fetchObject(vClass, putReturnsNull ? PUT_WITHOUT_ACC : PUT, key, value);
     }
 
+    @Override
+    public CompletableFuture<V> getAsync(K key) {
+        if (key == null)
+            throw keyNotNullNPE();
+        if (nearCache != null) {
+            final NearCache.Entry<V> cached = nearCache.get(key);
+            if (cached != null)
+                return CompletableFuture.completedFuture(cached.value);
+        }
+        return sendAsync(GET, key, null, this::readAsyncValue);
+    }
+
+    @Override
+    public CompletableFuture<V> putAsync(K key, V value) {
+        if (key == null || value == null)
+            throw new NullPointerException();
+        beforeWrite(key);
+        return sendAsync(putReturnsNull ? PUT_WITHOUT_ACC : PUT, key, value,
+                this::readAsyncValue);
+    }
+
+    @Override
+    public CompletableFuture<V> removeAsync(K key) {
+        if (key == null)
+            throw keyNotNullNPE();
+        beforeWrite(key);
+        return sendAsync(removeReturnsNull ? REMOVE_WITHOUT_ACC : REMOVE, key, null,
+                this::readAsyncValue);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> containsKeyAsync(K key) {
+        if (key == null)
+            throw keyNotNullNPE();
+        return sendAsync(CONTAINS_KEY, key, null, Bytes::readBoolean);
+    }
+
     @Nullable
     public <R> R getMapped(@Nullable K key, @NotNull SerializableFunction<? super V, R> function) {
         if (key == null)
@@ -626,6 +818,7 @@ class StatelessChronicleMap<K, V> implements ChronicleMap<K, V>, Closeable, Clon
     public V putMapped(@Nullable K key, @NotNull UnaryOperator<V> unaryOperator) {
         if (key == null)
             throw keyNotNullNPE();
+        beforeWrite(key);
         return fetchObject(PUT_MAPPED, key, unaryOperator);
     }
 
@@ -719,6 +912,8 @@ class StatelessChronicleMap<K, V> implements ChronicleMap<K, V>, Closeable, Clon
     }
 
     public void clear() {
+        if (nearCache != null)
+            nearCache.clear();
         fetchVoid(CLEAR);
     }
 
@@ -875,6 +1070,9 @@ class StatelessChronicleMap<K, V> implements ChronicleMap<K, V>, Closeable, Clon
 
     public void putAll(@NotNull Map<? extends K, ? extends V> map) {
 
+        if (nearCache != null)
+            nearCache.clear();
+
         final long sizeLocation;
 
         outBytesLock.lock();
@@ -1103,12 +1301,25 @@ class StatelessChronicleMap<K, V> implements ChronicleMap<K, V>, Closeable, Clon
      * @return a unique transaction id
      */
     private long send(long sizeLocation, final long startTime) {
+        return send(sizeLocation, startTime, nextUniqueTransaction(startTime));
+    }
+
+    /**
+     * sends data to the server via TCP/IP, using the transaction id already generated
+     *
+     * @param sizeLocation  the position of the bit that marks the size
+     * @param startTime     the current time
+     * @param transactionId the unique transaction id of the request
+     * @return the transaction id
+     */
+    private long send(long sizeLocation, final long startTime, final long transactionId) {
 
         assert outBytesLock.isHeldByCurrentThread();
         assert !inBytesLock.isHeldByCurrentThread();
 
-        long transactionId = nextUniqueTransaction(startTime);
         final long timeoutTime = startTime + this.timeoutMs;
+        final boolean coalesce = coalescingMaxDelayNanos > 0 &&
+                eventReturnsNull(EVENT_IDS[outBytes.readByte(sizeLocation - 1)]);
         try {
 
             for (; ; ) {
@@ -1123,7 +1334,7 @@ class StatelessChronicleMap<K, V> implements ChronicleMap<K, V>, Closeable, Clon
                     writeSizeAndTransactionIdAt(sizeLocation, transactionId);
 
                     // send out all the bytes
-                    writeBytesToSocket(timeoutTime);
+                    writeBytesToSocket(timeoutTime, coalesce);
 
                     break;
 
@@ -1239,6 +1450,11 @@ class StatelessChronicleMap<K, V> implements ChronicleMap<K, V>, Closeable, Clon
                 final int remainingBytes0 = messageSize - (SIZE_OF_SIZE + SIZE_OF_TRANSACTION_ID);
                 final long transactionId0 = inBytes.readLong();
 
+                if (transactionId0 == NEAR_CACHE_INVALIDATION_TRANSACTION_ID) {
+                    receiveInvalidations(remainingBytes0, timeoutTime);
+                    continue;
+                }
+
                 // check the transaction id is reasonable
                 assert transactionId0 > 1410000000000L * TcpReplicator.TIMESTAMP_FACTOR :
                         "TransactionId too small " + transactionId0 + " messageSize " + messageSize;
@@ -1297,6 +1513,250 @@ class StatelessChronicleMap<K, V> implements ChronicleMap<K, V>, Closeable, Clon
         return remainingBytes;
     }
 
+    /**
+     * An asynchronous request, which response is not received yet.
+     *
+     * @param <R> the type of the result of the request
+     */
+    private static final class AsyncRequest<R> {
+        final CompletableFuture<R> future = new CompletableFuture<>();
+        final Function<Bytes, R> responseReader;
+        final long timeoutTime;
+
+        AsyncRequest(Function<Bytes, R> responseReader, long timeoutTime) {
+            this.responseReader = responseReader;
+            this.timeoutTime = timeoutTime;
+        }
+
+        /**
+         * Reads the response from the given bytes and returns the action completing the future,
+         * which is run once the {@code inBytesLock} is released, so that the dependent actions
+         * of the future could call the stateless client.
+         */
+        Runnable readResponse(Bytes in) {
+            try {
+                if (in.readBoolean()) {
+                    final Throwable throwable = (Throwable) in.readObject();
+                    return () -> future.completeExceptionally(throwable);
+                }
+                final R result = responseReader.apply(in);
+                return () -> future.complete(result);
+            } catch (Throwable e) {
+                return () -> future.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Sends the request without waiting for the response, which is received by the {@link
+     * #asyncReader} thread and completes the returned future.
+     */
+    private <R> CompletableFuture<R> sendAsync(@NotNull final EventId eventId, @NotNull K key,
+                                               @Nullable V value,
+                                               @NotNull Function<Bytes, R> responseReader) {
+        final long startTime = System.currentTimeMillis();
+        final AsyncRequest<R> request =
+                new AsyncRequest<>(responseReader, startTime + timeoutMs);
+        final boolean returnsNull = eventReturnsNull(eventId);
+        long transactionId = 0;
+
+        outBytesLock.lock();
+        try {
+            final long sizeLocation = writeEventAnSkip(eventId);
+
+            final ThreadLocalCopies copies = writeKey(key);
+            if (value != null)
+                writeValue(value, copies);
+
+            transactionId = nextUniqueTransaction(startTime);
+            // register before sending, the response could arrive before send() returns
+            if (!returnsNull)
+                asyncRequests.put(transactionId, request);
+            send(sizeLocation, startTime, transactionId);
+            if (!returnsNull)
+                startAsyncReader();
+        } catch (RuntimeException e) {
+            if (transactionId != 0)
+                asyncRequests.remove(transactionId);
+            request.future.completeExceptionally(e);
+            return request.future;
+        } finally {
+            outBytesLock.unlock();
+        }
+
+        if (returnsNull)
+            request.future.complete(null);
+        return request.future;
+    }
+
+    private V readAsyncValue(Bytes in) {
+        return valueReaderWithSize.readNullable(in, null, null);
+    }
+
+    private synchronized void startAsyncReader() {
+        if (asyncReader == null) {
+            asyncReader = new Thread(this::readAsyncResponses,
+                    "stateless-client-async-reader" + (name != null ? "-" + name : ""));
+            asyncReader.setDaemon(true);
+            asyncReader.start();
+        } else {
+            LockSupport.unpark(asyncReader);
+        }
+    }
+
+    /**
+     * Stops the {@link #asyncReader} if it is the current thread and there are no requests in
+     * flight, after the client is closed.
+     *
+     * @return {@code true} if the reader is stopped
+     */
+    private synchronized boolean stopAsyncReader() {
+        if (asyncReader != Thread.currentThread())
+            return true;
+        if (closeables != null || !asyncRequests.isEmpty())
+            return false;
+        asyncReader = null;
+        return true;
+    }
+
+    /**
+     * The loop of the {@link #asyncReader} thread, which receives the responses of the
+     * asynchronous requests, sharing the socket and the parking of the responses with the
+     * threads, waiting for the responses of the synchronous calls.
+     */
+    private void readAsyncResponses() {
+        while (!stopAsyncReader()) {
+            failTimedOutAsyncRequests();
+            final SocketChannel channel = clientChannel;
+            // with the near cache the connection is read all the time, to receive invalidations
+            if (channel == null || (asyncRequests.isEmpty() && nearCache == null)) {
+                LockSupport.parkNanos(timeoutMs * 1000000L);
+                continue;
+            }
+
+            Runnable completion = null;
+            IOException ioException = null;
+            inBytesLock.lock();
+            try {
+                completion = nextAsyncResponse();
+            } catch (IOException e) {
+                ioException = e;
+            } catch (RuntimeException e) {
+                ioException = new IOException(e);
+            } finally {
+                inBytesLock.unlock();
+            }
+
+            if (ioException != null) {
+                if (channel != clientChannel ||
+                        (asyncRequests.isEmpty() && nearCache == null)) {
+                    // the connection is closed by close(), all the requests are already failed
+                    continue;
+                }
+                failAsyncRequests(new IORuntimeException(ioException));
+                close();
+            } else if (completion != null) {
+                completion.run();
+            } else {
+                // the response was parked for another thread, let it take it
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * Receives the next response of an asynchronous request.
+     *
+     * @return the action completing the request, or {@code null} if the next response is for a
+     * synchronous call, it's parked then
+     */
+    @Nullable
+    private Runnable nextAsyncResponse() throws IOException {
+        assert inBytesLock.isHeldByCurrentThread();
+
+        final long transactionId;
+        final int remainingBytes;
+        if (parkedTransactionId != 0) {
+            transactionId = parkedTransactionId;
+            if (!asyncRequests.containsKey(transactionId)) {
+                // time out the old transaction id, if no thread has taken it
+                if (System.currentTimeMillis() - timeoutMs > parkedTransactionTimeStamp) {
+                    receiveBytesFromSocket(parkedRemainingBytes, Long.MAX_VALUE);
+                    clearParked();
+                }
+                return null;
+            }
+            remainingBytes = parkedRemainingBytes;
+            clearParked();
+        } else {
+            receiveBytesFromSocket(SIZE_OF_SIZE + SIZE_OF_TRANSACTION_ID, Long.MAX_VALUE);
+            remainingBytes = inBytes.readInt() - (SIZE_OF_SIZE + SIZE_OF_TRANSACTION_ID);
+            transactionId = inBytes.readLong();
+            if (transactionId == NEAR_CACHE_INVALIDATION_TRANSACTION_ID) {
+                receiveInvalidations(remainingBytes, Long.MAX_VALUE);
+                return NOTHING;
+            }
+            if (!asyncRequests.containsKey(transactionId)) {
+                parkedTransactionTimeStamp = System.currentTimeMillis();
+                parkedRemainingBytes = remainingBytes;
+                parkedTransactionId = transactionId;
+                return null;
+            }
+        }
+
+        final AsyncRequest<?> request = asyncRequests.remove(transactionId);
+        receiveMessage(remainingBytes, Long.MAX_VALUE);
+
+        // the request could be already failed with time out, then the response is just skipped
+        return request.readResponse(inBytes);
+    }
+
+    /**
+     * Receives the rest of the message, which header is already read, resizing the buffer if
+     * required.
+     */
+    private void receiveMessage(int remainingBytes, long timeoutTime) throws IOException {
+        if (inBytes.capacity() < remainingBytes)
+            resizeBufferInBuffer(remainingBytes, inBytes.position());
+        else
+            inBytes.limit(inBytes.capacity());
+        receiveBytesFromSocket(remainingBytes, timeoutTime);
+    }
+
+    /**
+     * Receives the slots of the keys, changed on the server, and drops them from the near cache.
+     */
+    private void receiveInvalidations(int remainingBytes, long timeoutTime) throws IOException {
+        receiveMessage(remainingBytes, timeoutTime);
+        inBytes.readBoolean(); // isException
+        final int slots = inBytes.readInt();
+        for (int i = 0; i < slots; i++) {
+            final int slot = inBytes.readInt();
+            if (nearCache != null)
+                nearCache.invalidateSlot(slot);
+        }
+    }
+
+    /**
+     * Fails the requests in flight, which have not received the response in {@code timeoutMs}.
+     * The requests are kept in {@link #asyncRequests} to skip their responses, if they arrive.
+     */
+    private void failTimedOutAsyncRequests() {
+        final long now = System.currentTimeMillis();
+        for (AsyncRequest<?> request : asyncRequests.values()) {
+            if (now > request.timeoutTime && !request.future.isDone())
+                request.future.completeExceptionally(new RemoteCallTimeoutException());
+        }
+    }
+
+    private void failAsyncRequests(@NotNull Throwable cause) {
+        for (Iterator<AsyncRequest<?>> it = asyncRequests.values().iterator(); it.hasNext(); ) {
+            final AsyncRequest<?> request = it.next();
+            it.remove();
+            request.future.completeExceptionally(cause);
+        }
+    }
+
     private void clearParked() {
 //        assert !outBytesLock.isHeldByCurrentThread();
         assert inBytesLock.isHeldByCurrentThread();
@@ -1355,15 +1815,45 @@ class StatelessChronicleMap<K, V> implements ChronicleMap<K, V>, Closeable, Clon
     long largestEntrySoFar = 0;
     private long limitOfLast = 0;
 
-    private void writeBytesToSocket(long timeoutTime) throws IOException {
+    // true if the bytes in the buffer were left to the next thread to write, so it should not
+    // hold them any longer, guarded by outBytesLock
+    private boolean flushRequired = false;
+    // the time of the first write held in the buffer, or 0 if no writes are held
+    private volatile long coalescedSinceNanos = 0L;
+    @Nullable
+    private volatile Thread flusher;
+
+    /**
+     * Writes the buffer to the socket.
+     *
+     * @param timeoutTime the time to give up writing
+     * @param coalesce    {@code true} if the last message doesn't wait for a response, so it could
+     *                    be held in the buffer up to {@code coalescingMaxDelayNanos}
+     * @throws IOException socket failed to write data
+     */
+    private void writeBytesToSocket(long timeoutTime, boolean coalesce) throws IOException {
 
         assert outBytesLock.isHeldByCurrentThread();
         assert !inBytesLock.isHeldByCurrentThread();
 
+        // hold the write, until the buffer is large enough, or the flusher thread sends it
+        if (coalesce && !flushRequired && outBytes.position() < coalescingMaxBytes) {
+            final boolean first = coalescedSinceNanos == 0L;
+            if (first)
+                coalescedSinceNanos = System.nanoTime();
+            final Thread flusher = this.flusher;
+            if (flusher == null)
+                startFlusher();
+            else if (first)
+                LockSupport.unpark(flusher);
+            return;
+        }
+
         // if we have other threads waiting to send and the buffer is not full, let the other threads
         // write to the buffer
         if (outBytesLock.hasQueuedThreads() &&
                 outBytes.position() + largestEntrySoFar <= tcpBufferSize) {
+            flushRequired = true;
             return;
         }
 
@@ -1394,6 +1884,7 @@ class StatelessChronicleMap<K, V> implements ChronicleMap<K, V>, Closeable, Clon
                 outBuffer.compact();
                 outBytes.limit(outBuffer.limit());
                 outBytes.position(outBuffer.position());
+                flushRequired = true;
                 return;
             }
 
@@ -1403,7 +1894,96 @@ class StatelessChronicleMap<K, V> implements ChronicleMap<K, V>, Closeable, Clon
 
         outBuffer.clear();
         outBytes.clear();
+        flushRequired = false;
+        coalescedSinceNanos = 0L;
+    }
 
+    @Override
+    public void flush() {
+        outBytesLock.lock();
+        try {
+            flushOutBytes(System.currentTimeMillis() + timeoutMs);
+        } finally {
+            outBytesLock.unlock();
+        }
+    }
+
+    /**
+     * Sends the bytes held in the buffer, if any, reconnecting if required.
+     */
+    private void flushOutBytes(long timeoutTime) {
+
+        assert outBytesLock.isHeldByCurrentThread();
+        assert !inBytesLock.isHeldByCurrentThread();
+
+        if (outBytes.position() == 0)
+            return;
+        // if other threads are queued the buffer is left to them, they should not hold it
+        flushRequired = true;
+        try {
+            for (; ; ) {
+                if (clientChannel == null)
+                    lazyConnect(timeoutMs, remoteAddress);
+                try {
+                    writeBytesToSocket(timeoutTime, false);
+                    break;
+                } catch (@NotNull java.nio.channels.ClosedChannelException | ClosedConnectionException e) {
+                    checkTimeout(timeoutTime);
+                    lazyConnect(timeoutMs, remoteAddress);
+                }
+            }
+        } catch (IOException e) {
+            close();
+            throw new IORuntimeException(e);
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private synchronized void startFlusher() {
+        if (flusher != null)
+            return;
+        final Thread flusher = new Thread(this::flushCoalescedWrites,
+                "stateless-client-flusher" + (name != null ? "-" + name : ""));
+        flusher.setDaemon(true);
+        this.flusher = flusher;
+        flusher.start();
+    }
+
+    /**
+     * The loop of the {@link #flusher} thread, which sends the coalesced writes, once they are
+     * held for {@code coalescingMaxDelayNanos}.
+     */
+    private void flushCoalescedWrites() {
+        final Thread thread = Thread.currentThread();
+        while (flusher == thread) {
+            final long coalescedSinceNanos = this.coalescedSinceNanos;
+            if (coalescedSinceNanos == 0L) {
+                LockSupport.park(this);
+                continue;
+            }
+            final long delayNanos =
+                    coalescedSinceNanos + coalescingMaxDelayNanos - System.nanoTime();
+            if (delayNanos > 0L) {
+                LockSupport.parkNanos(this, delayNanos);
+                continue;
+            }
+            outBytesLock.lock();
+            try {
+                if (this.coalescedSinceNanos != 0L)
+                    flushOutBytes(System.currentTimeMillis() + timeoutMs);
+            } catch (RuntimeException e) {
+                LOG.error("name=" + name + ", failed to send the coalesced writes, " +
+                        "they are discarded", e);
+                outBuffer.clear();
+                outBytes.clear();
+                flushRequired = false;
+                this.coalescedSinceNanos = 0L;
+            } finally {
+                outBytesLock.unlock();
+            }
+        }
     }
 
 
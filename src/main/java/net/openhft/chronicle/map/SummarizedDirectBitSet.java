@@ -0,0 +1,146 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.lang.collection.ATSDirectBitSet;
+import net.openhft.lang.io.Bytes;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static net.openhft.lang.collection.DirectBitSet.NOT_FOUND;
+
+/**
+ * The view of the bit set of the changes of a modification iterator, which keeps a summary with a
+ * bit per each 64-bit word of the bit set, so that the search of the next set bit skips 64 empty
+ * words by reading a single summary word, instead of reading each of them.
+ *
+ * <p>The summary is conservative: the bit of the word is set by {@link #onSet(long)}, after the
+ * bit is set in the underlying bit set, but cleared lazily by {@link #nextSetBit(long)}, when it
+ * finds the word empty. Bits are cleared directly in the underlying bit set, the summary is not
+ * touched on clearing.
+ */
+final class SummarizedDirectBitSet {
+
+    private final ATSDirectBitSet bits;
+    private final long words;
+    private final AtomicLongArray summary;
+
+    SummarizedDirectBitSet(@NotNull Bytes bytes) {
+        bits = new ATSDirectBitSet(bytes);
+        words = bytes.capacity() >>> 3;
+        summary = new AtomicLongArray((int) ((words + 63L) >>> 6));
+        // the bit set may be persisted, or have changes marked before
+        for (long word = 0L; word < words; word++) {
+            if (bits.getLong(word) != 0L)
+                markWord(word);
+        }
+    }
+
+    /**
+     * Should be called after the bit is set in the underlying bit set.
+     */
+    void onSet(long bitIndex) {
+        markWord(bitIndex >>> 6);
+    }
+
+    private void markWord(long word) {
+        int summaryIndex = (int) (word >>> 6);
+        long mask = 1L << word;
+        long summaryWord;
+        // CAS even if the bit is already marked: the volatile read doesn't order the preceding
+        // set of the bit in the underlying bit set before it, and a concurrent
+        // unmarkWordIfEmpty() could read the word empty and unmark it after this read. The CAS
+        // is a full fence, so either this thread sees the summary bit cleared and marks it
+        // again, or the unmarking thread sees the bit set and re-marks the word
+        do {
+            summaryWord = summary.get(summaryIndex);
+        } while (!summary.compareAndSet(summaryIndex, summaryWord, summaryWord | mask));
+    }
+
+    private void unmarkWordIfEmpty(long word) {
+        int summaryIndex = (int) (word >>> 6);
+        long mask = 1L << word;
+        long summaryWord;
+        while (((summaryWord = summary.get(summaryIndex)) & mask) != 0L) {
+            if (summary.compareAndSet(summaryIndex, summaryWord, summaryWord & ~mask))
+                break;
+        }
+        // a bit could be set after the word was read, but before it was unmarked
+        if (bits.getLong(word) != 0L)
+            markWord(word);
+    }
+
+    /**
+     * @see net.openhft.lang.collection.DirectBitSet#nextSetBit(long)
+     */
+    long nextSetBit(long fromIndex) {
+        long fromWord = fromIndex >>> 6;
+        if (fromWord >= words)
+            return NOT_FOUND;
+        int summaryIndex = (int) (fromWord >>> 6);
+        long summaryWord = summary.get(summaryIndex) & (-1L << fromWord);
+        while (true) {
+            while (summaryWord != 0L) {
+                long markedWord = ((long) summaryIndex << 6) +
+                        Long.numberOfTrailingZeros(summaryWord);
+                long wordBits = bits.getLong(markedWord);
+                if (wordBits == 0L) {
+                    unmarkWordIfEmpty(markedWord);
+                } else {
+                    if (markedWord == fromWord)
+                        wordBits &= -1L << fromIndex;
+                    if (wordBits != 0L)
+                        return (markedWord << 6) + Long.numberOfTrailingZeros(wordBits);
+                }
+                summaryWord &= summaryWord - 1L;
+            }
+            if (++summaryIndex == summary.length())
+                return NOT_FOUND;
+            summaryWord = summary.get(summaryIndex);
+        }
+    }
+
+    /**
+     * Returns the number of set bits, reading only the words marked in the summary.
+     */
+    long cardinality() {
+        long cardinality = 0L;
+        for (int summaryIndex = 0; summaryIndex < summary.length(); summaryIndex++) {
+            for (long summaryWord = summary.get(summaryIndex); summaryWord != 0L;
+                 summaryWord &= summaryWord - 1L) {
+                long markedWord = ((long) summaryIndex << 6) +
+                        Long.numberOfTrailingZeros(summaryWord);
+                cardinality += Long.bitCount(bits.getLong(markedWord));
+            }
+        }
+        return cardinality;
+    }
+
+    /**
+     * Returns the number of words marked in the summary, some of which may be empty already.
+     */
+    long markedWords() {
+        long markedWords = 0L;
+        for (int summaryIndex = 0; summaryIndex < summary.length(); summaryIndex++) {
+            markedWords += Long.bitCount(summary.get(summaryIndex));
+        }
+        return markedWords;
+    }
+}
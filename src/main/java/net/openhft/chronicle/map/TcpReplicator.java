@@ -28,6 +28,7 @@ import net.openhft.chronicle.hash.serialization.BytesReader;
 import net.openhft.chronicle.hash.impl.util.BuildVersion;
 import net.openhft.lang.io.AbstractBytes;
 import net.openhft.lang.io.ByteBufferBytes;
+import net.openhft.lang.io.IByteBufferBytes;
 import net.openhft.lang.io.Bytes;
 import net.openhft.lang.threadlocal.ThreadLocalCopies;
 import org.jetbrains.annotations.NotNull;
@@ -46,13 +47,17 @@ import java.nio.channels.*;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 import static java.nio.channels.SelectionKey.*;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static net.openhft.chronicle.map.AbstractChannelReplicator.SIZE_OF_SIZE;
 import static net.openhft.chronicle.map.AbstractChannelReplicator.SIZE_OF_TRANSACTION_ID;
 import static net.openhft.chronicle.hash.impl.util.BuildVersion.version;
+import static net.openhft.chronicle.map.StatelessChronicleMap.EventId.ACKNOWLEDGEMENT;
+import static net.openhft.chronicle.map.StatelessChronicleMap.EventId.COMPRESSED_STATEFUL_UPDATES;
 import static net.openhft.chronicle.map.StatelessChronicleMap.EventId.HEARTBEAT;
+import static net.openhft.chronicle.map.StatelessChronicleMap.EventId.STATEFUL_UPDATE;
 
 interface Work {
 
@@ -76,6 +81,19 @@ final class TcpReplicator<K, V> extends AbstractChannelReplicator implements Clo
     private static final byte NOT_SET = (byte) HEARTBEAT.ordinal();
     private static final Logger LOG = LoggerFactory.getLogger(TcpReplicator.class.getName());
     private static final int BUFFER_SIZE = 0x100000; // 1MB
+    // entries smaller than this are sent uncompressed, even if the compression is enabled
+    private static final int MIN_COMPRESSION_LENGTH = 64;
+    // the nodes acknowledge the received updates at least this often, or every heartbeat
+    // interval, whichever is shorter
+    private static final long MAX_ACKNOWLEDGEMENT_INTERVAL_MILLIS = 1000L;
+    private static final int ACKNOWLEDGEMENT_SIZE = 32;
+    // the optional extensions of the hand shaking, each node advertises the extensions it
+    // supports in the padding of it's version, see writeServerVersion(). The fields of an
+    // extension are sent and expected only if both nodes support it, so the nodes, not aware of
+    // the extensions, are still able to replicate with this node
+    static final int COMPRESSION_CAPABILITY = 1;
+    static final int SEGMENT_DIGESTS_CAPABILITY = 2;
+    private static final int CAPABILITIES = COMPRESSION_CAPABILITY | SEGMENT_DIGESTS_CAPABILITY;
 
     public static final long SPIN_LOOP_TIME_IN_NONOSECONDS = TimeUnit.MICROSECONDS.toNanos(500);
     private final SelectionKey[] selectionKeysStore = new SelectionKey[Byte.MAX_VALUE + 1];
@@ -85,8 +103,21 @@ final class TcpReplicator<K, V> extends AbstractChannelReplicator implements Clo
             new KeyInterestUpdater(OP_WRITE, selectionKeysStore);
     private final BitSet activeKeys = new BitSet(selectionKeysStore.length);
     private final long heartBeatIntervalMillis;
+    private final long acknowledgementIntervalMillis;
     private long largestEntrySoFar = 128;
 
+    // compression statistics, updated by the replicator thread only
+    private volatile long bytesBeforeCompression;
+    private volatile long bytesAfterCompression;
+    private volatile long compressionNanos;
+    private volatile long bytesBeforeDecompression;
+    private volatile long bytesAfterDecompression;
+    private volatile long decompressionNanos;
+
+    // segment digests statistics, updated by the replicator thread only
+    private volatile long segmentRangesCompared;
+    private volatile long segmentRangesResynced;
+
     @NotNull
     private final Replica replica;
     private final byte localIdentifier;
@@ -139,6 +170,8 @@ final class TcpReplicator<K, V> extends AbstractChannelReplicator implements Clo
         long throttleBucketInterval = throttlingConfig.bucketInterval(MILLISECONDS);
 
         heartBeatIntervalMillis = replicationConfig.heartBeatInterval(MILLISECONDS);
+        acknowledgementIntervalMillis =
+                Math.min(heartBeatIntervalMillis, MAX_ACKNOWLEDGEMENT_INTERVAL_MILLIS);
 
         selectorTimeout = Math.min(heartBeatIntervalMillis / 4, throttleBucketInterval);
 
@@ -153,6 +186,129 @@ final class TcpReplicator<K, V> extends AbstractChannelReplicator implements Clo
         start();
     }
 
+    /**
+     * @return the number of bytes of entries, which were compressed before sending
+     */
+    long bytesBeforeCompression() {
+        return bytesBeforeCompression;
+    }
+
+    /**
+     * @return the number of bytes, sent for the entries which were compressed, including the
+     * entries which were sent as they are, because they didn't compress
+     */
+    long bytesAfterCompression() {
+        return bytesAfterCompression;
+    }
+
+    /**
+     * @return the ratio of bytes before the compression to bytes after, or 1.0 if nothing was
+     * compressed yet
+     */
+    double compressionRatio() {
+        long after = bytesAfterCompression;
+        return after == 0L ? 1.0 : bytesBeforeCompression / (double) after;
+    }
+
+    /**
+     * @return the compression throughput, in bytes of entries per second
+     */
+    double compressionThroughput() {
+        long nanos = compressionNanos;
+        return nanos == 0L ? 0.0 : bytesBeforeCompression * 1e9 / nanos;
+    }
+
+    /**
+     * @return the number of ranges of the segments, which digests were compared with the digests
+     * of the remote nodes, when they connected
+     */
+    long segmentRangesCompared() {
+        return segmentRangesCompared;
+    }
+
+    /**
+     * @return the number of ranges of the segments, which entries were resent to the remote nodes
+     * when they connected, because the digests differ
+     */
+    long segmentRangesResynced() {
+        return segmentRangesResynced;
+    }
+
+    /**
+     * @return the number of bytes of compressed blocks received
+     */
+    long bytesBeforeDecompression() {
+        return bytesBeforeDecompression;
+    }
+
+    /**
+     * @return the number of bytes of entries, decompressed from the received blocks
+     */
+    long bytesAfterDecompression() {
+        return bytesAfterDecompression;
+    }
+
+    /**
+     * @return the decompression throughput, in bytes of entries per second
+     */
+    double decompressionThroughput() {
+        long nanos = decompressionNanos;
+        return nanos == 0L ? 0.0 : bytesAfterDecompression * 1e9 / nanos;
+    }
+
+    @Nullable
+    private Attached<?, ?> attached(byte remoteIdentifier) {
+        if (remoteIdentifier < 0)
+            return null;
+        final SelectionKey key = selectionKeysStore[remoteIdentifier];
+        return key != null ? attachment(key) : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Attached<K, V> attachment(@NotNull SelectionKey key) {
+        // the keys are attached by this replicator only
+        return (Attached<K, V>) key.attachment();
+    }
+
+    /**
+     * @return {@code true} if the remote node is connected and has completed the handshake
+     */
+    boolean isConnected(byte remoteIdentifier) {
+        final SelectionKey key = remoteIdentifier >= 0 ? selectionKeysStore[remoteIdentifier] : null;
+        if (key == null || !key.isValid())
+            return false;
+        final Attached<?, ?> attached = attachment(key);
+        return attached != null && attached.isHandShakingComplete();
+    }
+
+    /**
+     * @return the number of bytes, written to the buffer of the connection with the remote node,
+     * but not to the socket yet
+     */
+    long queuedBytes(byte remoteIdentifier) {
+        final Attached<?, ?> attached = attached(remoteIdentifier);
+        final TcpSocketChannelEntryWriter writer = attached != null ? attached.entryWriter : null;
+        return writer != null ? writer.in().position() : 0L;
+    }
+
+    /**
+     * @return the latest timestamp of the updates of this node, the remote node has acknowledged,
+     * or 0 if none
+     */
+    long acknowledgedTimestamp(byte remoteIdentifier) {
+        final Attached<?, ?> attached = attached(remoteIdentifier);
+        return attached != null ? attached.acknowledgedTimestamp : 0L;
+    }
+
+    /**
+     * @return the last round trip time of the acknowledgements, exchanged with the remote node, in
+     * nanoseconds, or -1 if not measured yet
+     */
+    long roundTripNanos(byte remoteIdentifier) {
+        final Attached<?, ?> attached = attached(remoteIdentifier);
+        return attached != null ? attached.roundTripNanos : -1L;
+    }
+
     @Override
     void processEvent() throws IOException {
         try {
@@ -317,6 +473,7 @@ final class TcpReplicator<K, V> extends AbstractChannelReplicator implements Clo
                     continue;
 
                 try {
+                    sendAcknowledgementIfRequired(approxTime, key);
                     sendHeartbeatIfRequired(approxTime, key);
                 } catch (Exception e) {
                     if (LOG.isDebugEnabled())
@@ -358,6 +515,27 @@ final class TcpReplicator<K, V> extends AbstractChannelReplicator implements Clo
         }
     }
 
+    /**
+     * sends the timestamp of the latest update received from the remote node, and measures the
+     * round trip time, every acknowledgement interval. The acknowledgement is a heartbeat too.
+     *
+     * @param approxTime the current time ( approximately )
+     * @param key        nio selection key
+     */
+    private void sendAcknowledgementIfRequired(final long approxTime,
+                                               @NotNull final SelectionKey key) {
+        final Attached<?, ?> attachment = attachment(key);
+
+        if (attachment.isHandShakingComplete() && attachment.lastAcknowledgementSent +
+                acknowledgementIntervalMillis < approxTime) {
+            attachment.lastAcknowledgementSent = approxTime;
+            attachment.entryWriter.lastSentTime = approxTime;
+            attachment.entryWriter.writeAcknowledgementToBuffer(attachment);
+
+            enableOpWrite(key);
+        }
+    }
+
     private void enableOpWrite(@NotNull SelectionKey key) {
         int ops = key.interestOps();
         if ((ops & (OP_CONNECT | OP_ACCEPT)) == 0)
@@ -579,7 +757,7 @@ final class TcpReplicator<K, V> extends AbstractChannelReplicator implements Clo
     private void doHandShaking(@NotNull final SelectionKey key,
                                @NotNull SocketChannel socketChannel)
             throws IOException {
-        final Attached attached = (Attached) key.attachment();
+        final Attached<K, V> attached = attachment(key);
         final TcpSocketChannelEntryWriter writer = attached.entryWriter;
         final TcpSocketChannelEntryReader reader = attached.entryReader;
 
@@ -631,6 +809,7 @@ final class TcpReplicator<K, V> extends AbstractChannelReplicator implements Clo
 
             attached.remoteModificationIterator =
                     replica.acquireModificationIterator(remoteIdentifier, attached);
+            writer.entryCallback.remoteIdentifier = remoteIdentifier;
 
             writer.writeRemoteBootstrapTimestamp(replica.lastModificationTime(remoteIdentifier));
 
@@ -648,7 +827,7 @@ final class TcpReplicator<K, V> extends AbstractChannelReplicator implements Clo
 
         if (attached.serverVersion == null) {
             try {
-                attached.serverVersion = reader.readRemoteServerVersion();
+                attached.serverVersion = reader.readRemoteServerVersion(attached);
             } catch (IllegalStateException e1) {
                 socketChannel.close();
             }
@@ -663,6 +842,17 @@ final class TcpReplicator<K, V> extends AbstractChannelReplicator implements Clo
             }
 
             checkVersions(attached);
+
+            // the extensions follow the heartbeat interval, written above
+            if (attached.supports(COMPRESSION_CAPABILITY)) {
+                // whether we would like the replication stream to be compressed
+                writer.writeCompression(replicationConfig.compression());
+            }
+
+            if (attached.supports(SEGMENT_DIGESTS_CAPABILITY)) {
+                // and what we hold, so that only the segments which differ are resent
+                writer.writeSegmentDigests(replica.segmentDigests());
+            }
         }
 
         if (!attached.hasRemoteHeartbeatInterval) {
@@ -688,14 +878,84 @@ final class TcpReplicator<K, V> extends AbstractChannelReplicator implements Clo
                 LOG.info("");
 
             attached.hasRemoteHeartbeatInterval = true;
+        }
+
+        if (!attached.hasRemoteCompression && !attached.supports(COMPRESSION_CAPABILITY)) {
+            attached.compression = false;
+            attached.hasRemoteCompression = true;
+        }
+
+        if (!attached.hasRemoteCompression) {
+            final byte remoteCompression = reader.readRemoteCompressionFromBuffer();
+
+            if (remoteCompression == Byte.MIN_VALUE)
+                return;
+
+            // compress the entries only if both nodes agree
+            attached.compression = replicationConfig.compression() && remoteCompression != 0;
+            attached.hasRemoteCompression = true;
+        }
+
+        if (!attached.hasRemoteSegmentDigests) {
+            // all the segments are resent, if the remote node doesn't send the digests
+            if (attached.supports(SEGMENT_DIGESTS_CAPABILITY) &&
+                    !reader.readRemoteSegmentDigestsFromBuffer(attached))
+                return;
+
+            attached.hasRemoteSegmentDigests = true;
 
             // now we're finished we can get on with reading the entries
             attached.handShakingComplete = true;
-            attached.remoteModificationIterator.dirtyEntries(attached.remoteBootstrapTimestamp);
+            dirtyEntries(attached);
             reader.entriesFromBuffer(attached, key);
         }
     }
 
+    /**
+     * Dirties the entries to be sent to the remote node which has just connected: only of the
+     * ranges of the segments which digests differ from the remote ones, if both nodes maintain
+     * the digests of the same number of segments, or of all the segments otherwise.
+     */
+    private void dirtyEntries(@NotNull final Attached<?, ?> attached) {
+        final Replica.ModificationIterator modIter = attached.remoteModificationIterator;
+        final long[] remoteDigests = attached.remoteSegmentRangeDigests;
+        final long[] segmentDigests = remoteDigests != null ? replica.segmentDigests() : null;
+        if (segmentDigests == null || segmentDigests.length != attached.remoteSegments) {
+            modIter.dirtyEntries(attached.remoteBootstrapTimestamp);
+            return;
+        }
+
+        final int segments = segmentDigests.length;
+        final int ranges = remoteDigests.length;
+        final long[] rangeDigests = SegmentDigests.rangeDigests(segmentDigests, ranges);
+        int resynced = 0;
+        for (int range = 0; range < ranges; range++) {
+            if (rangeDigests[range] != remoteDigests[range]) {
+                modIter.dirtyEntries(attached.remoteBootstrapTimestamp,
+                        SegmentDigests.rangeStart(segments, ranges, range),
+                        SegmentDigests.rangeStart(segments, ranges, range + 1));
+                resynced++;
+            }
+        }
+        segmentRangesCompared += ranges;
+        segmentRangesResynced += resynced;
+
+        if (LOG.isDebugEnabled())
+            LOG.debug("resyncing {} of {} segment ranges with remoteIdentifier={}",
+                    resynced, ranges, attached.remoteIdentifier);
+    }
+
+    /**
+     * Sets OP_WRITE on the key in the replicator thread, could be called from any thread.
+     */
+    void opWriteLater(@NotNull final SelectionKey key) {
+        addPendingRegistration(() -> {
+            if (key.isValid())
+                key.interestOps(key.interestOps() | OP_WRITE);
+        });
+        selector.wakeup();
+    }
+
     /**
      * called when the selector receives a OP_WRITE message
      */
@@ -720,8 +980,14 @@ final class TcpReplicator<K, V> extends AbstractChannelReplicator implements Clo
             if (completed)
                 entryWriter.workCompleted();
 
-        } else if (attached.remoteModificationIterator != null)
+        } else if (attached.remoteModificationIterator != null &&
+                attached.isHandShakingComplete()) {
+            // the entries are not written until the hand shaking fields, which depend on the
+            // fields received from the remote node, are written
             entryWriter.entriesToBuffer(attached.remoteModificationIterator, key);
+        } else if (entryWriter.statelessServer != null) {
+            entryWriter.statelessServer.invalidationsToBuffer(entryWriter);
+        }
 
         try {
             final int len = entryWriter.writeBufferToSocket(socketChannel,
@@ -733,7 +999,13 @@ final class TcpReplicator<K, V> extends AbstractChannelReplicator implements Clo
             if (len > 0)
                 contemplateThrottleWrites(len);
 
-            if (!entryWriter.hasBytesToWrite() && !entryWriter.isWorkIncomplete())
+            // keep OP_WRITE on while there are changes left, which didn't fit into the buffer
+            if (!entryWriter.hasBytesToWrite() && !entryWriter.isWorkIncomplete() &&
+                    (attached.remoteModificationIterator == null ||
+                            !attached.isHandShakingComplete() ||
+                            !attached.remoteModificationIterator.hasNext()) &&
+                    (entryWriter.statelessServer == null ||
+                            !entryWriter.statelessServer.hasInvalidations()))
                 // TURN OP_WRITE_OFF
                 key.interestOps(key.interestOps() & ~OP_WRITE);
         } catch (IOException e) {
@@ -752,7 +1024,7 @@ final class TcpReplicator<K, V> extends AbstractChannelReplicator implements Clo
                         final long approxTime) throws IOException, InterruptedException {
 
         final SocketChannel socketChannel = (SocketChannel) key.channel();
-        final Attached attached = (Attached) key.attachment();
+        final Attached<K, V> attached = attachment(key);
 
         if (attached == null) {
             LOG.info("Closing connection " + socketChannel + ", nothing attached");
@@ -1007,16 +1279,40 @@ final class TcpReplicator<K, V> extends AbstractChannelReplicator implements Clo
         public long remoteBootstrapTimestamp = Long.MIN_VALUE;
         public byte remoteIdentifier = Byte.MIN_VALUE;
         public boolean hasRemoteHeartbeatInterval;
+        public boolean hasRemoteCompression;
+        // true if the entries sent to the remote node are compressed
+        public boolean compression;
+        public boolean hasRemoteSegmentDigests;
+        public int remoteSegments;
+        // null if the remote node doesn't maintain the digests of it's segments
+        @Nullable
+        public long[] remoteSegmentRangeDigests;
         // true if its socket is a ServerSocket
         public boolean isServer;        // the frequency the remote node will send a heartbeat
         public boolean handShakingComplete;
         public String serverVersion;
+        // the hand shaking extensions, supported by the remote node
+        public int remoteCapabilities;
         public long remoteHeartbeatInterval = heartBeatIntervalMillis;
 
+        // the acknowledgements exchange, see sendAcknowledgementIfRequired()
+        public long lastAcknowledgementSent;
+        // the System.nanoTime() of the remote node, received with it's last acknowledgement,
+        // to be echoed back, and the local System.nanoTime() when it was received
+        public long remotePingNanos;
+        public long remotePingReceivedNanos = Long.MIN_VALUE;
+        // read by the replication statistics
+        public volatile long acknowledgedTimestamp;
+        public volatile long roundTripNanos = -1L;
+
         boolean isHandShakingComplete() {
             return handShakingComplete;
         }
 
+        boolean supports(int capability) {
+            return (remoteCapabilities & capability) != 0;
+        }
+
         /**
          * called whenever there is a change to the modification iterator
          */
@@ -1041,16 +1337,41 @@ final class TcpReplicator<K, V> extends AbstractChannelReplicator implements Clo
         public Work uncompletedWork;
         private long lastSentTime;
         StatelessServerConnector statelessServer;
+        private final Lz4BlockCompressor compressor = new Lz4BlockCompressor();
+        @Nullable
+        private IByteBufferBytes compressed;
 
         private TcpSocketChannelEntryWriter() {
-            entryCallback = new EntryCallback(externalizable, replicationConfig.tcpBufferSize());
+            entryCallback = new EntryCallback(externalizable, replicationConfig.tcpBufferSize()) {
+
+                private long entryStart;
+
+                @Override
+                public void onBeforeEntry() {
+                    entryStart = in().position();
+                }
+
+                @Override
+                public void onAfterEntry() {
+                    long entrySize = in().position() - entryStart;
+                    if (entrySize > largestEntrySoFar)
+                        largestEntrySoFar = entrySize;
+                }
+
+                @Override
+                public boolean hasRoomForNextEntry() {
+                    return in().remaining() > largestEntrySoFar &&
+                            in().position() <= replicationConfig.tcpBufferSize();
+                }
+            };
 
             if (statelessClientParameters != null)
                 statelessServer = new StatelessServerConnector(
                         statelessClientParameters.map, entryCallback,
                         replicationConfig.tcpBufferSize(),
                         statelessClientParameters.keySerializationBuilder,
-                        statelessClientParameters.valueSerializationBuilder);
+                        statelessClientParameters.valueSerializationBuilder,
+                        (Consumer<SelectionKey>) TcpReplicator.this::opWriteLater);
         }
 
         public boolean isWorkIncomplete() {
@@ -1114,7 +1435,12 @@ final class TcpReplicator<K, V> extends AbstractChannelReplicator implements Clo
         }
 
         void writeServerVersion() {
-            in().write(String.format("%1$" + 64 + "s", version()).toCharArray());
+            char[] version = String.format("%1$" + 64 + "s", version()).toCharArray();
+            // a control character in the padding is trimmed by the nodes, not aware of the
+            // hand shaking extensions
+            if (version[0] == ' ')
+                version[0] = (char) CAPABILITIES;
+            in().write(version);
         }
 
         /**
@@ -1133,26 +1459,22 @@ final class TcpReplicator<K, V> extends AbstractChannelReplicator implements Clo
             // this can occur when new map are added to a channel
             final boolean handShakingComplete = attached.isHandShakingComplete();
 
+            final long entriesStart = in().position();
             int entriesWritten = 0;
+            int batches = 0;
             try {
-                for (; ; entriesWritten++) {
-
-                    long start = in().position();
-
-                    boolean success = modificationIterator.nextEntry(entryCallback, 0);
-
-                    // if not success this is most likely due to the next entry not fitting into
-                    // the buffer and the buffer can not be re-sized above Integer.max_value, in
-                    // this case success will return false, so we return so that we can send to
-                    // the socket what we have.
-                    if (!success)
-                        return;
+                for (; ; batches++) {
 
-                    long entrySize = in().position() - start;
-
-                    if (entrySize > largestEntrySoFar)
-                        largestEntrySoFar = entrySize;
+                    // ships the changed entries of a single segment, under one segment lock
+                    int entries = modificationIterator.nextEntries(entryCallback, 0);
 
+                    // if no entries are written this is either because there are no changes,
+                    // or most likely due to the next entry not fitting into the buffer and the
+                    // buffer can not be re-sized above Integer.max_value, in this case we return
+                    // so that we can send to the socket what we have.
+                    if (entries == 0)
+                        break;
+                    entriesWritten += entries;
 
                     if (!modificationIterator.hasNext()) {
                         // if we have no more data to write to the socket then we will
@@ -1164,17 +1486,61 @@ final class TcpReplicator<K, V> extends AbstractChannelReplicator implements Clo
 
                     // we've filled up the buffer lets give another channel a chance to send
                     // some data
-                    if (in().remaining() <= largestEntrySoFar || in().position() >
-                            replicationConfig.tcpBufferSize())
-                        return;
+                    if (!entryCallback.hasRoomForNextEntry())
+                        break;
 
                     // if we have space in the buffer to write more data and we just wrote data
                     // into the buffer then let try and write some more
                 }
+
+                if (attached.compression && entriesWritten > 0)
+                    compressEntries(entriesStart);
             } finally {
                 if (LOG.isDebugEnabled())
-                    LOG.debug("Entries written: {}", entriesWritten);
+                    LOG.debug("Entries written: {} in {} batches", entriesWritten, batches);
+            }
+        }
+
+        /**
+         * replaces the entries written to the buffer from the given position with a single
+         * compressed block, unless they are too small or don't compress
+         *
+         * @param entriesStart the position of the first entry in the buffer
+         */
+        private void compressEntries(final long entriesStart) {
+            final Bytes in = in();
+            final long length = in.position() - entriesStart;
+            if (length < MIN_COMPRESSION_LENGTH)
+                return;
+
+            final long maxCompressedLength = Lz4BlockCompressor.maxCompressedLength(length);
+            if (compressed == null || compressed.capacity() < maxCompressedLength) {
+                if (maxCompressedLength > Integer.MAX_VALUE)
+                    return;
+                compressed = ByteBufferBytes.wrap(
+                        ByteBuffer.allocateDirect((int) maxCompressedLength));
             }
+
+            final long start = System.nanoTime();
+            final long compressedLength =
+                    compressor.compress(in, entriesStart, (int) length, compressed, 0L);
+            compressionNanos += System.nanoTime() - start;
+            final long blockSize = 1 + SIZE_OF_SIZE + 4 + compressedLength;
+
+            bytesBeforeCompression += length;
+            if (blockSize >= length) {
+                // doesn't compress, send the entries as they are
+                bytesAfterCompression += length;
+                return;
+            }
+            bytesAfterCompression += blockSize;
+
+            in.writeByte(entriesStart, COMPRESSED_STATEFUL_UPDATES.ordinal());
+            in.writeInt(entriesStart + 1, (int) (4 + compressedLength));
+            in.writeInt(entriesStart + 1 + SIZE_OF_SIZE, (int) length);
+            Lz4BlockCompressor.copy(compressed, 0L, in, entriesStart + 1 + SIZE_OF_SIZE + 4,
+                    compressedLength);
+            in.position(entriesStart + blockSize);
         }
 
         /**
@@ -1231,10 +1597,50 @@ final class TcpReplicator<K, V> extends AbstractChannelReplicator implements Clo
             in().writeInt(0);
         }
 
+        /**
+         * writes the timestamp of the latest update received from the remote node, the local
+         * System.nanoTime() for the remote node to echo back, and the echo of the last received
+         * remote nanoTime, with the time it was held for
+         */
+        private void writeAcknowledgementToBuffer(@NotNull final Attached<?, ?> attached) {
+            ensureBufferSize(1 + SIZE_OF_SIZE + ACKNOWLEDGEMENT_SIZE);
+            in().writeByte(ACKNOWLEDGEMENT.ordinal());
+            in().writeInt(ACKNOWLEDGEMENT_SIZE);
+            final long now = System.nanoTime();
+            in().writeLong(now);
+            in().writeLong(attached.remotePingNanos);
+            in().writeLong(attached.remotePingReceivedNanos == Long.MIN_VALUE ? -1L :
+                    now - attached.remotePingReceivedNanos);
+            in().writeLong(replica.lastModificationTime(attached.remoteIdentifier));
+        }
+
         private void writeRemoteHeartbeatInterval(long localHeartbeatInterval) {
             in().writeLong(localHeartbeatInterval);
         }
 
+        private void writeCompression(boolean compression) {
+            in().writeByte(compression ? 1 : 0);
+        }
+
+        /**
+         * writes the number of the segments and the digests of the ranges of the segments, no
+         * ranges if the digests are not maintained
+         */
+        private void writeSegmentDigests(@Nullable long[] segmentDigests) {
+            if (segmentDigests == null) {
+                in().writeInt(0);
+                in().writeInt(0);
+                return;
+            }
+            final int ranges = SegmentDigests.ranges(segmentDigests.length);
+            ensureBufferSize(8L + ranges * 8L);
+            in().writeInt(segmentDigests.length);
+            in().writeInt(ranges);
+            for (long rangeDigest : SegmentDigests.rangeDigests(segmentDigests, ranges)) {
+                in().writeLong(rangeDigest);
+            }
+        }
+
         /**
          * removes back in the OP_WRITE from the selector, otherwise it'll spin loop. The OP_WRITE
          * will get added back in as soon as we have data to write
@@ -1279,6 +1685,8 @@ final class TcpReplicator<K, V> extends AbstractChannelReplicator implements Clo
         ByteBufferBytes out;
         private long sizeInBytes;
         private byte state;
+        @Nullable
+        private IByteBufferBytes decompressed;
 
         private TcpSocketChannelEntryReader() {
             in = ByteBuffer.allocateDirect(replicationConfig.tcpBufferSize());
@@ -1340,7 +1748,7 @@ final class TcpReplicator<K, V> extends AbstractChannelReplicator implements Clo
          * @param key
          * @throws InterruptedException
          */
-        void entriesFromBuffer(@NotNull Attached attached, @NotNull SelectionKey key) {
+        void entriesFromBuffer(@NotNull Attached<?, ?> attached, @NotNull SelectionKey key) {
             int entriesRead = 0;
             try {
                 for (; ; entriesRead++) {
@@ -1383,7 +1791,11 @@ final class TcpReplicator<K, V> extends AbstractChannelReplicator implements Clo
 
                     boolean isStatelessClient = (state != 1);
 
-                    if (isStatelessClient) {
+                    if (state == COMPRESSED_STATEFUL_UPDATES.ordinal()) {
+                        compressedEntriesFromBuffer(nextEntryPos);
+                    } else if (state == ACKNOWLEDGEMENT.ordinal()) {
+                        acknowledgementFromBuffer(attached);
+                    } else if (isStatelessClient) {
 
                         final StatelessServerConnector statelessServerConnector = attached
                                 .entryWriter.statelessServer;
@@ -1396,7 +1808,7 @@ final class TcpReplicator<K, V> extends AbstractChannelReplicator implements Clo
 
                             final Work futureWork =
                                     statelessServerConnector.processStatelessEvent(state,
-                                            attached.entryWriter, attached.entryReader.out);
+                                            attached.entryWriter, attached.entryReader.out, key);
 
                             // turn the OP_WRITE on
                             key.interestOps(key.interestOps() | OP_WRITE);
@@ -1433,6 +1845,57 @@ final class TcpReplicator<K, V> extends AbstractChannelReplicator implements Clo
             }
         }
 
+        /**
+         * decompresses the block of entries, compressed by {@link
+         * TcpSocketChannelEntryWriter#compressEntries(long)}, and reads the entries
+         *
+         * @param blockEnd the position of the end of the compressed block in the buffer
+         */
+        private void compressedEntriesFromBuffer(final long blockEnd) {
+            final int length = out.readInt();
+            if (decompressed == null || decompressed.capacity() < length) {
+                decompressed = ByteBufferBytes.wrap(ByteBuffer.allocateDirect(length));
+            }
+
+            final long start = System.nanoTime();
+            final int compressedLength = (int) (blockEnd - out.position());
+            Lz4BlockCompressor.decompress(out, out.position(), compressedLength,
+                    decompressed, 0L, length);
+            decompressionNanos += System.nanoTime() - start;
+            bytesBeforeDecompression += 1 + SIZE_OF_SIZE + 4 + compressedLength;
+            bytesAfterDecompression += length;
+
+            decompressed.position(0L);
+            decompressed.limit(length);
+            while (decompressed.remaining() > 0) {
+                final byte entryState = decompressed.readByte();
+                final long entrySize = decompressed.readInt();
+                if (entryState != STATEFUL_UPDATE.ordinal())
+                    throw new IllegalStateException("unexpected event in a compressed block, " +
+                            "eventId=" + entryState);
+                final long nextEntryPos = decompressed.position() + entrySize;
+                decompressed.limit(nextEntryPos);
+                externalizable.readExternalEntry(context, decompressed);
+                decompressed.limit(length);
+                decompressed.position(nextEntryPos);
+            }
+        }
+
+        /**
+         * reads the acknowledgement, written by {@link
+         * TcpSocketChannelEntryWriter#writeAcknowledgementToBuffer(Attached)}
+         */
+        private void acknowledgementFromBuffer(@NotNull final Attached<?, ?> attached) {
+            final long now = System.nanoTime();
+            attached.remotePingNanos = out.readLong();
+            attached.remotePingReceivedNanos = now;
+            final long echoedPingNanos = out.readLong();
+            final long echoHeldNanos = out.readLong();
+            if (echoHeldNanos >= 0L)
+                attached.roundTripNanos = now - echoedPingNanos - echoHeldNanos;
+            attached.acknowledgedTimestamp = out.readLong();
+        }
+
         /**
          * compacts the buffer and updates the {@code in} and {@code out} accordingly
          */
@@ -1471,10 +1934,11 @@ final class TcpReplicator<K, V> extends AbstractChannelReplicator implements Clo
         /**
          * @return the timestamp or -1 if unsuccessful
          */
-        String readRemoteServerVersion() {
+        String readRemoteServerVersion(@NotNull Attached<?, ?> attached) {
             if (out.remaining() >= 64) {
                 char[] chars = new char[64];
                 out.readFully(chars, 0, chars.length);
+                attached.remoteCapabilities = chars[0] < ' ' ? chars[0] : 0;
                 return new String(chars).trim();
             } else
                 return null;
@@ -1484,6 +1948,44 @@ final class TcpReplicator<K, V> extends AbstractChannelReplicator implements Clo
         public long readRemoteHeartbeatIntervalFromBuffer() {
             return (out.remaining() >= 8) ? out.readLong() : Long.MIN_VALUE;
         }
+
+        /**
+         * @return 1 if the remote node would like the entries to be compressed, 0 if not, or
+         * {@code Byte.MIN_VALUE} if unsuccessful
+         */
+        byte readRemoteCompressionFromBuffer() {
+            return (out.remaining() >= 1) ? out.readByte() : Byte.MIN_VALUE;
+        }
+
+        /**
+         * reads the number of the remote segments and the digests of their ranges into the {@code
+         * attached}
+         *
+         * @return {@code false} if unsuccessful
+         */
+        boolean readRemoteSegmentDigestsFromBuffer(@NotNull Attached<?, ?> attached) {
+            if (out.remaining() < 8)
+                return false;
+            final int segments = out.readInt(out.position());
+            final int ranges = out.readInt(out.position() + 4L);
+            if (ranges < 0 || ranges > segments)
+                throw new IllegalStateException("malformed segment digests, segments=" +
+                        segments + ", ranges=" + ranges);
+            final long size = 8L + ranges * 8L;
+            if (out.remaining() < size) {
+                if (out.capacity() < size)
+                    resizeBuffer(size + HEADROOM);
+                return false;
+            }
+            out.skip(8L);
+            final long[] rangeDigests = new long[ranges];
+            for (int i = 0; i < ranges; i++) {
+                rangeDigests[i] = out.readLong();
+            }
+            attached.remoteSegments = segments;
+            attached.remoteSegmentRangeDigests = ranges > 0 ? rangeDigests : null;
+            return true;
+        }
     }
 }
 
@@ -1518,14 +2020,22 @@ class StatelessServerConnector<K, V> {
     private final SerializationBuilder<K> keySerializationBuilder;
     private final SerializationBuilder<V> valueSerializationBuilder;
     private final int tcpBufferSize;
+    // sets OP_WRITE on the connection from the threads, which update the map
+    @NotNull
+    private final Consumer<SelectionKey> opWriteLater;
+    // created on the first NEAR_CACHE_GET
+    @Nullable
+    private NearCacheSubscriptions nearCache;
 
 
     StatelessServerConnector(
             @NotNull VanillaChronicleMap<K, ?, ?, V, ?, ?> map,
             @NotNull final BufferResizer bufferResizer, int tcpBufferSize,
             final SerializationBuilder<K> keySerializationBuilder,
-            final SerializationBuilder<V> valueSerializationBuilder) {
+            final SerializationBuilder<V> valueSerializationBuilder,
+            @NotNull Consumer<SelectionKey> opWriteLater) {
         this.tcpBufferSize = tcpBufferSize;
+        this.opWriteLater = opWriteLater;
 
         this.keySerializationBuilder = keySerializationBuilder;
         this.valueSerializationBuilder = valueSerializationBuilder;
@@ -1540,7 +2050,8 @@ class StatelessServerConnector<K, V> {
     @Nullable
     Work processStatelessEvent(final byte eventId,
                                @NotNull final TcpReplicator.TcpSocketChannelEntryWriter writer,
-                               @NotNull final ByteBufferBytes reader) {
+                               @NotNull final ByteBufferBytes reader,
+                               @NotNull final SelectionKey key) {
         final StatelessChronicleMap.EventId event = VALUES[eventId];
 
         long transactionId = reader.readLong();
@@ -1595,6 +2106,12 @@ class StatelessServerConnector<K, V> {
             case GET:
                 return get(reader, writer, sizeLocation, timestamp);
 
+            case GET_ALL:
+                return getAll(reader, writer, sizeLocation);
+
+            case NEAR_CACHE_GET:
+                return nearCacheGet(reader, writer, sizeLocation, key);
+
             case PUT:
                 return put(reader, writer, sizeLocation, timestamp, identifier);
 
@@ -1904,6 +2421,74 @@ class StatelessServerConnector<K, V> {
         return null;
     }
 
+    @Nullable
+    private Work getAll(Bytes reader, TcpReplicator.TcpSocketChannelEntryWriter writer,
+                        final long sizeLocation) {
+        bytesMap.output = writer;
+        try {
+            bytesMap.getAll(reader);
+        } catch (Throwable e) {
+            return sendException(writer, sizeLocation, e);
+        } finally {
+            bytesMap.output = null;
+        }
+        writeSizeAndFlags(sizeLocation, false, writer.in());
+        return null;
+    }
+
+    /**
+     * Like {@link #get}, but subscribes the connection to the invalidations of the key, before
+     * the value is read, and writes the slot of the key after the value, or {@code -1} if the
+     * map is not replicated, then the client doesn't cache the value.
+     */
+    @Nullable
+    private Work nearCacheGet(Bytes reader, TcpReplicator.TcpSocketChannelEntryWriter writer,
+                              final long sizeLocation, @NotNull final SelectionKey key) {
+        int slot = -1;
+        bytesMap.output = writer;
+        try {
+            if (map instanceof ReplicatedChronicleMap) {
+                if (nearCache == null) {
+                    nearCache = new NearCacheSubscriptions((ReplicatedChronicleMap) map, () -> {
+                        if (!key.isValid())
+                            return false;
+                        opWriteLater.accept(key);
+                        return true;
+                    });
+                }
+                final long keyPosition = reader.position();
+                final long keySize = map.keySizeMarshaller.readSize(reader);
+                slot = NearCacheSubscriptions.slot(
+                        SegmentDigests.keyHash(reader, reader.position(), keySize));
+                reader.position(keyPosition);
+                nearCache.subscribe(slot);
+            }
+            bytesMap.get(reader);
+        } catch (Throwable e) {
+            return sendException(writer, sizeLocation, e);
+        } finally {
+            bytesMap.output = null;
+        }
+        writer.ensureBufferSize(4L);
+        writer.in().writeInt(slot);
+        writeSizeAndFlags(sizeLocation, false, writer.in());
+        return null;
+    }
+
+    boolean hasInvalidations() {
+        return nearCache != null && nearCache.hasInvalidations();
+    }
+
+    /**
+     * Writes the near cache invalidations, pending for the stateless client, if any.
+     */
+    void invalidationsToBuffer(@NotNull TcpReplicator.TcpSocketChannelEntryWriter writer) {
+        if (nearCache == null || !nearCache.hasInvalidations())
+            return;
+        writer.ensureBufferSize(NearCacheSubscriptions.MIN_INVALIDATION_SIZE);
+        nearCache.writeInvalidations(writer.in());
+    }
+
     @SuppressWarnings("SameReturnValue")
     @Nullable
     private Work put(Bytes reader, long timestamp, byte id) {
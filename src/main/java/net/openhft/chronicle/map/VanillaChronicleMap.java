@@ -35,10 +35,16 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
 import static net.openhft.chronicle.map.ChronicleMapBuilder.greatestCommonDivisor;
+import static net.openhft.lang.io.NativeBytes.UNSAFE;
 
 class VanillaChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
         V, VI, MVI extends MetaBytesInterop<V, ? super VI>>
@@ -83,6 +89,13 @@ class VanillaChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
 
     transient Set<Map.Entry<K, V>> entrySet;
 
+    // started by the builder, if the background compaction is configured
+    transient SegmentCompactor compactor;
+    // started by the builder, if the background sweep of expired entries is configured
+    transient ExpirySweeper expirySweeper;
+    // set by the builder, each process, accessing the map, could have own listener
+    transient EvictionListener<K, V> evictionListener;
+
     public VanillaChronicleMap(ChronicleMapBuilder<K, V> builder, boolean replicated)
             throws IOException {
         super(builder, replicated);
@@ -192,6 +205,251 @@ class VanillaChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
         return actualSegments;
     }
 
+    /**
+     * @return index of the segment, the given key falls into
+     */
+    final int segmentIndex(K key) {
+        try (VanillaContext<K, KI, MKI, V, VI, MVI> c = context(key)) {
+            c.initSegmentIndex();
+            return c.segmentIndex;
+        }
+    }
+
+    final boolean forEachEntryInSegmentWhile(
+            int segmentIndex, Predicate<? super MapKeyContext<K, V>> predicate) {
+        try (VanillaContext<K, KI, MKI, V, VI, MVI> c = mapContext()) {
+            return AbstractChronicleMap.forEachSegmentEntryWhile(c, segmentIndex,
+                    new AbstractChronicleMap.ForEachWhilePredicate<>(c, predicate));
+        }
+    }
+
+
+    @Override
+    public List<SegmentFragmentation> fragmentation() {
+        List<SegmentFragmentation> fragmentation = new ArrayList<>(actualSegments);
+        for (int i = 0; i < actualSegments; i++) {
+            fragmentation.add(segmentFragmentation(i));
+        }
+        return fragmentation;
+    }
+
+    final SegmentFragmentation segmentFragmentation(int segmentIndex) {
+        try (VanillaContext<K, KI, MKI, V, VI, MVI> c = mapContext()) {
+            c.segmentIndex = segmentIndex;
+            try {
+                c.readLock().lock();
+                c.initSegment();
+                int tiers = 1;
+                while (c.hasTier(tiers)) {
+                    tiers++;
+                }
+                SegmentFragmentation fragmentation = new SegmentFragmentation(
+                        segmentIndex, tiers, tiers * actualChunksPerSegment);
+                for (int tier = 0; tier < tiers; tier++) {
+                    c.initTier(tier);
+                    c.forEachFreeRun(fragmentation::addFreeRun);
+                }
+                return fragmentation;
+            } finally {
+                c.closeSegmentIndex();
+            }
+        }
+    }
+
+    @Override
+    public long compact() {
+        long moved = 0L;
+        for (int i = 0; i < actualSegments; i++) {
+            moved += compactSegment(i);
+        }
+        return moved;
+    }
+
+    /**
+     * Compacts all tiers of the segment under the segment's write lock.
+     *
+     * @return the number of moved entries
+     */
+    final int compactSegment(int segmentIndex) {
+        // entries are moved by whole chunks, if the chunk size is not a multiple of the value
+        // alignment, an entry could be moved only by some number of chunks
+        int alignment = this.alignment.alignment();
+        int posAlignment = couldNotDetermineAlignmentBeforeAllocation ?
+                alignment / greatestCommonDivisor((int) chunkSize, alignment) : 1;
+        try (VanillaContext<K, KI, MKI, V, VI, MVI> c = mapContext()) {
+            c.segmentIndex = segmentIndex;
+            try {
+                c.writeLock().lock();
+                c.initSegment();
+                int moved = 0;
+                for (int tier = 0; c.hasTier(tier); tier++) {
+                    c.initTier(tier);
+                    moved += c.compactTier(posAlignment);
+                }
+                return moved;
+            } finally {
+                c.closeSegmentIndex();
+            }
+        }
+    }
+
+    final void startCompaction(double fragmentationThreshold, long intervalNanos) {
+        compactor = new SegmentCompactor(this, fragmentationThreshold, intervalNanos);
+        compactor.start();
+    }
+
+    @Override
+    public V put(K key, V value, long timeToLive, TimeUnit unit) {
+        if (!entryExpiry)
+            throw new IllegalStateException("Expiry of entries is not configured for this map");
+        if (timeToLive <= 0L)
+            throw new IllegalArgumentException("timeToLive should be positive, " + timeToLive +
+                    " given");
+        try (VanillaContext<K, KI, MKI, V, VI, MVI> c = context(key)) {
+            c.updateLock().lock();
+            V prevValue = prevValueOnPut(c);
+            c.timeToLive = Math.max(unit.toMicros(timeToLive), 1L);
+            try {
+                c.put(value);
+            } finally {
+                c.timeToLive = 0L;
+            }
+            return prevValue;
+        }
+    }
+
+    @Override
+    public long removeExpiredEntries() {
+        if (!entryExpiry)
+            return 0L;
+        long removed = 0L;
+        for (int i = 0; i < actualSegments; i++) {
+            removed += removeExpiredEntries(i);
+        }
+        return removed;
+    }
+
+    /**
+     * Removes the expired entries from all tiers of the segment under the segment's update lock,
+     * upgraded to the write lock, if any entry has expired.
+     *
+     * @return the number of removed entries
+     */
+    final int removeExpiredEntries(int segmentIndex) {
+        try (VanillaContext<K, KI, MKI, V, VI, MVI> c = mapContext()) {
+            c.segmentIndex = segmentIndex;
+            try {
+                c.updateLock().lock();
+                c.initSegment();
+                int removed = 0;
+                for (int tier = 0; c.hasTier(tier); tier++) {
+                    c.initTier(tier);
+                    removed += c.removeExpiredEntries();
+                }
+                return removed;
+            } finally {
+                c.closeSegmentIndex();
+            }
+        }
+    }
+
+    @Override
+    public long addAndGetLong(K key, long offset, long delta) {
+        try (VanillaContext<K, KI, MKI, V, VI, MVI> c = context(key)) {
+            return UNSAFE.getAndAddLong(null, acquireValueField(c, offset, 8), delta) + delta;
+        }
+    }
+
+    @Override
+    public long getAndAddLong(K key, long offset, long delta) {
+        try (VanillaContext<K, KI, MKI, V, VI, MVI> c = context(key)) {
+            return UNSAFE.getAndAddLong(null, acquireValueField(c, offset, 8), delta);
+        }
+    }
+
+    @Override
+    public boolean compareAndSwapLong(K key, long offset, long expected, long x) {
+        try (VanillaContext<K, KI, MKI, V, VI, MVI> c = context(key)) {
+            return UNSAFE.compareAndSwapLong(null, acquireValueField(c, offset, 8), expected, x);
+        }
+    }
+
+    @Override
+    public int addAndGetInt(K key, long offset, int delta) {
+        try (VanillaContext<K, KI, MKI, V, VI, MVI> c = context(key)) {
+            return UNSAFE.getAndAddInt(null, acquireValueField(c, offset, 4), delta) + delta;
+        }
+    }
+
+    @Override
+    public int getAndAddInt(K key, long offset, int delta) {
+        try (VanillaContext<K, KI, MKI, V, VI, MVI> c = context(key)) {
+            return UNSAFE.getAndAddInt(null, acquireValueField(c, offset, 4), delta);
+        }
+    }
+
+    @Override
+    public boolean compareAndSwapInt(K key, long offset, int expected, int x) {
+        try (VanillaContext<K, KI, MKI, V, VI, MVI> c = context(key)) {
+            return UNSAFE.compareAndSwapInt(null, acquireValueField(c, offset, 4), expected, x);
+        }
+    }
+
+    /**
+     * Locks the segment for an atomic update of the field of the value, mapped to the key of the
+     * context: the read lock is enough, if the key is present, otherwise the default value is put
+     * under the update lock, as by {@link #acquireUsing(Object, Object)}.
+     *
+     * @return the address of the field
+     */
+    long acquireValueField(VanillaContext<K, KI, MKI, V, VI, MVI> c, long offset, int size) {
+        if (c.readLock().tryLock()) {
+            if (c.containsKey())
+                return c.valueFieldAddress(offset, size);
+            upgradeReadToUpdateLockWithUnlockingIfNeeded(c);
+            // the update lock doesn't exclude readers, so another thread could put the entry
+            // with this key after the search under the read lock, even if the lock is upgraded
+            // without unlocking. Search again under the update lock
+            c.closeKeySearch();
+        } else {
+            c.updateLock().lock();
+        }
+        if (!c.containsKey())
+            putDefaultValue(c);
+        return c.valueFieldAddress(offset, size);
+    }
+
+    @Override
+    public List<SegmentCacheStats> cacheStats() {
+        if (!eviction)
+            return Collections.emptyList();
+        List<SegmentCacheStats> stats = new ArrayList<>(actualSegments);
+        for (int i = 0; i < actualSegments; i++) {
+            stats.add(new SegmentCacheStats(i, segmentHits(i), segmentMisses(i),
+                    segmentEvictions(i)));
+        }
+        return stats;
+    }
+
+    final void startExpirySweep(long intervalNanos) {
+        expirySweeper = new ExpirySweeper(this, intervalNanos);
+        expirySweeper.start();
+    }
+
+    @Override
+    public void close() {
+        SegmentCompactor compactor = this.compactor;
+        if (compactor != null) {
+            this.compactor = null;
+            compactor.close();
+        }
+        ExpirySweeper expirySweeper = this.expirySweeper;
+        if (expirySweeper != null) {
+            this.expirySweeper = null;
+            expirySweeper.close();
+        }
+        super.close();
+    }
 
     VanillaContext<K, KI, MKI, V, VI, MVI> rawContext() {
         return VanillaContext.get(VanillaContext.VanillaChronicleMapContextFactory.INSTANCE);
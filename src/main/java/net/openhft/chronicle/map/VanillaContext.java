@@ -20,11 +20,15 @@ import net.openhft.chronicle.hash.impl.ContextFactory;
 import net.openhft.chronicle.hash.impl.HashContext;
 import net.openhft.chronicle.hash.impl.hashlookup.EntryConsumer;
 import net.openhft.chronicle.hash.serialization.BytesReader;
+import net.openhft.chronicle.hash.serialization.internal.ByteableMarshaller;
 import net.openhft.chronicle.hash.serialization.internal.BytesBytesInterop;
 import net.openhft.chronicle.hash.serialization.internal.DelegatingMetaBytesInterop;
 import net.openhft.chronicle.hash.serialization.internal.MetaBytesInterop;
 import net.openhft.lang.io.Bytes;
+import net.openhft.lang.io.DirectBytes;
+import net.openhft.lang.io.DirectStore;
 import net.openhft.lang.io.MultiStoreBytes;
+import net.openhft.lang.model.Byteable;
 
 import static net.openhft.lang.io.NativeBytes.UNSAFE;
 
@@ -158,8 +162,28 @@ class VanillaContext<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
         valueOffset = entry.position();
     }
 
+    /**
+     * Returns the address of the field of the given size at the given offset within the value
+     * bytes of the present entry, for atomic updates of the field, which don't need the write
+     * lock.
+     */
+    long valueFieldAddress(long offset, int size) {
+        initValueBytes();
+        if (offset < 0L || offset + size > valueSize) {
+            throw new IllegalArgumentException("offset should be in [0, " + (valueSize - size) +
+                    "] bounds for " + size + "-byte field in " + valueSize + "-byte value, " +
+                    offset + " given");
+        }
+        long address = entry.address() + valueOffset + offset;
+        if ((address & (size - 1)) != 0L) {
+            throw new IllegalStateException(size + "-byte field at offset " + offset +
+                    " is not aligned, configure entryAndValueAlignment()");
+        }
+        return address;
+    }
+
     void initValueSizeOffset0() {
-        valueSizeOffset = keyOffset0() + keySize0();
+        valueSizeOffset = keyOffset0() + keySize0() + m().extraBytesAfterKey;
     }
 
     void closeValueBytes() {
@@ -276,6 +300,75 @@ class VanillaContext<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
         value = valueReader.read(entry, valueSize, usingValue);
     }
 
+    /**
+     * Tries to read the value without locking the segment: searches the key and copies the value
+     * bytes, then validates that the segment version stamp hasn't changed, i. e. the segment
+     * wasn't write-locked in the meantime, and only then deserializes the value from the copy, so
+     * that the value reader never sees torn bytes. Should be called on a context, which holds no
+     * locks yet.
+     *
+     * @return {@code true} if the read is consistent, then the read value ({@code null} if the key
+     * is absent) is in the {@link #value} field, {@code false} if the read should be retried
+     * under read lock
+     */
+    boolean optimisticGetUsing(V usingValue) {
+        // Byteable values are read as references to the value bytes, rather than copied, they
+        // shouldn't point to the copy
+        if (usingValue instanceof Byteable || m().originalValueReader instanceof ByteableMarshaller)
+            return false;
+        long version = segmentVersion();
+        if ((version & 1L) != 0L)
+            return false; // write-locked
+        Bytes valueCopy = null;
+        try {
+            initHashLookup();
+            initKeySearch0();
+            if (containsKey0()) {
+                initValueBytes();
+                // the size is bounded by the entry space of the segment, torn sizes couldn't
+                // make the copy read beyond it
+                if (valueSize < 0L || valueSize > entry.limit() - valueOffset) {
+                    closeKeySearch();
+                    return false;
+                }
+                valueCopy = optimisticValueCopy(valueSize);
+                valueCopy.write(entry, valueOffset, valueSize);
+                valueCopy.flip();
+            }
+        } catch (RuntimeException | AssertionError e) {
+            // torn reads could break any invariant, the read is retried under lock
+            closeKeySearch();
+            return false;
+        }
+        UNSAFE.loadFence();
+        if (segmentVersion() != version) {
+            closeKeySearch();
+            return false;
+        }
+        if (valueCopy != null) {
+            initValueReader();
+            value = valueReader.read(valueCopy, valueSize, usingValue);
+        }
+        return true;
+    }
+
+    DirectBytes optimisticValueCopy;
+
+    private Bytes optimisticValueCopy(long size) {
+        DirectBytes copy;
+        if ((copy = optimisticValueCopy) == null) {
+            copy = new DirectStore(entry.objectSerializer(), Math.max(1L, size), false).bytes();
+        } else if (size > copy.capacity()) {
+            DirectStore store = (DirectStore) copy.store();
+            store.resize(size, false);
+            copy = store.bytes();
+        }
+        optimisticValueCopy = copy;
+        copy.clear();
+        copy.limit(size);
+        return copy;
+    }
+
     void closeValue() {
         if (!valueInit())
             return;
@@ -414,6 +507,31 @@ class VanillaContext<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
         entrySizeInChunks = m().inChunks(valueOffset + valueSize);
     }
 
+    @Override
+    public int evictedEntrySizeInChunks(Bytes entry, long keyOffset, long keySize) {
+        entry.position(keyOffset + keySize + m().extraBytesAfterKey);
+        long valueSize = m().readValueSize(entry);
+        m().alignment.alignPositionAddr(entry);
+        return m().inChunks(entry.position() + valueSize);
+    }
+
+    @Override
+    public void onEvicted(Bytes entry, long keyOffset, long keySize) {
+        EvictionListener<K, V> listener = m().evictionListener;
+        if (listener == null)
+            return;
+        // the context readers are not used, as the bytes contexts read keys and values as bytes
+        entry.position(keyOffset);
+        K key = m().keyReaderProvider.get(copies, m().originalKeyReader)
+                .read(entry, keySize, null);
+        entry.position(keyOffset + keySize + m().extraBytesAfterKey);
+        long valueSize = m().readValueSize(entry);
+        m().alignment.alignPositionAddr(entry);
+        V value = m().valueReaderProvider.get(copies, m().originalValueReader)
+                .read(entry, valueSize, null);
+        listener.onEvict(key, value);
+    }
+
 
     /////////////////////////////////////////////////
     // Put
@@ -442,6 +560,8 @@ class VanillaContext<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
         } else {
             initValueBytes();
             putValue();
+            if (m().entryExpiry)
+                writeExpiryTime();
         }
         return true;
     }
@@ -479,9 +599,9 @@ class VanillaContext<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
                             "entry takes " + newSizeInChunks + " chunks, " +
                             m().maxChunksPerEntry + " is maximum.");
                 }
-                if (freeList.allClear(pos + entrySizeInChunks, pos + newSizeInChunks)) {
+                if (freeListAllClear(pos + entrySizeInChunks, pos + newSizeInChunks)) {
                     long setFrom = searchStatePresent() ? pos + entrySizeInChunks : pos;
-                    freeList.set(setFrom, pos + newSizeInChunks);
+                    freeListSet(setFrom, pos + newSizeInChunks);
                     break newValueDoesNotFit;
                 }
                 // RELOCATION
@@ -498,7 +618,7 @@ class VanillaContext<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
             } else if (newSizeInChunks < entrySizeInChunks) {
                 // Freeing extra chunks
                 if (searchStatePresent())
-                    freeList.clear(pos + newSizeInChunks, pos + entrySizeInChunks);
+                    freeListClear(pos + newSizeInChunks, pos + entrySizeInChunks);
                 lesserChunks = newSizeInChunks;
                 // Do NOT reset nextPosToSearchFrom, because if value
                 // once was larger it could easily became larger again,
@@ -533,7 +653,7 @@ class VanillaContext<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
         }
         writeNewValueAndSwitch();
         if (!searchStatePresent()) {
-            freeList.set(pos, pos + entrySizeInChunks);
+            freeListSet(pos, pos + entrySizeInChunks);
             entries(entries() + 1L);
             commitEntryAllocation();
         }
@@ -580,6 +700,7 @@ class VanillaContext<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
     long sizeOfEverythingBeforeValue(long keySize, long valueSize) {
         return m().metaDataBytes +
                 m().keySizeMarshaller.sizeEncodingSize(keySize) + keySize +
+                m().extraBytesAfterKey +
                 m().valueSizeMarshaller.sizeEncodingSize(valueSize);
     }
 
@@ -20,6 +20,8 @@ package net.openhft.chronicle.set;
 
 import net.openhft.chronicle.hash.ChronicleHashBuilder;
 import net.openhft.chronicle.hash.ChronicleHashInstanceBuilder;
+import net.openhft.chronicle.hash.EntryAllocation;
+import net.openhft.chronicle.hash.locks.SegmentLocking;
 import net.openhft.chronicle.hash.replication.SingleChronicleHashReplication;
 import net.openhft.chronicle.hash.replication.TcpTransportAndNetworkConfig;
 import net.openhft.chronicle.hash.replication.TimeProvider;
@@ -153,6 +155,24 @@ public final class ChronicleSetBuilder<K>
         return this;
     }
 
+    @Override
+    public ChronicleSetBuilder<K> maxBloatFactor(double maxBloatFactor) {
+        chronicleMapBuilder.maxBloatFactor(maxBloatFactor);
+        return this;
+    }
+
+    @Override
+    public ChronicleSetBuilder<K> segmentLocking(@NotNull SegmentLocking segmentLocking) {
+        chronicleMapBuilder.segmentLocking(segmentLocking);
+        return this;
+    }
+
+    @Override
+    public ChronicleSetBuilder<K> entryAllocation(@NotNull EntryAllocation entryAllocation) {
+        chronicleMapBuilder.entryAllocation(entryAllocation);
+        return this;
+    }
+
     @Override
     public ChronicleSetBuilder<K> entries(long entries) {
         chronicleMapBuilder.entries(entries);
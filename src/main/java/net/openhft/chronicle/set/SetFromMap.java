@@ -29,6 +29,8 @@ import java.util.AbstractSet;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 
@@ -75,6 +77,11 @@ class SetFromMap<E> extends AbstractSet<E>
         return s.iterator();
     }
 
+    @Override
+    public Spliterator<E> spliterator() {
+        return s.spliterator();
+    }
+
     public Object[] toArray() {
         return s.toArray();
     }
@@ -143,6 +150,11 @@ class SetFromMap<E> extends AbstractSet<E>
         m.forEachEntry(action);
     }
 
+    @Override
+    public void forEachEntryParallel(ForkJoinPool pool, Consumer<? super KeyContext<E>> action) {
+        m.forEachEntryParallel(pool, action);
+    }
+
     @Override
     public File file() {
         return m.file();
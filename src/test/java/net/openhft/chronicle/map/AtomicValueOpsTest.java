@@ -0,0 +1,196 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.hash.replication.SingleChronicleHashReplication;
+import net.openhft.lang.io.NativeBytes;
+import net.openhft.lang.values.IntValue;
+import net.openhft.lang.values.LongValue;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class AtomicValueOpsTest {
+
+    /**
+     * The default value of data value interfaces is zero, and values are aligned by the size of
+     * the first field.
+     */
+    private static ChronicleMapBuilder<Integer, LongValue> longBuilder() {
+        return ChronicleMapBuilder.of(Integer.class, LongValue.class).entries(1000);
+    }
+
+    @Test
+    public void absentKeyIsPutWithDefaultValue() {
+        try (ChronicleMap<Integer, LongValue> map = longBuilder().create()) {
+            assertEquals(5L, map.addAndGetLong(1, 0, 5L));
+            assertEquals(5L, map.getAndAddLong(1, 0, 7L));
+            assertEquals(12L, map.addAndGetLong(1, 0, 0L));
+            assertEquals(12L, map.get(1).getValue());
+            assertEquals(1, map.size());
+
+            assertEquals(0L, map.getAndAddLong(2, 0, -3L));
+            assertEquals(-3L, map.get(2).getValue());
+            assertEquals(2, map.size());
+        }
+    }
+
+    @Test
+    public void compareAndSwapLong() {
+        try (ChronicleMap<Integer, LongValue> map = longBuilder().create()) {
+            map.addAndGetLong(1, 0, 10L);
+            assertFalse(map.compareAndSwapLong(1, 0, 9L, 20L));
+            assertEquals(10L, map.get(1).getValue());
+            assertTrue(map.compareAndSwapLong(1, 0, 10L, 20L));
+            assertEquals(20L, map.get(1).getValue());
+            // absent key is compared with the default value
+            assertTrue(map.compareAndSwapLong(2, 0, 0L, 1L));
+            assertEquals(1L, map.get(2).getValue());
+        }
+    }
+
+    @Test
+    public void intFields() {
+        try (ChronicleMap<Integer, IntValue> ints =
+                     ChronicleMapBuilder.of(Integer.class, IntValue.class).entries(100).create()) {
+            assertEquals(0, ints.getAndAddInt(1, 0, 4));
+            assertEquals(8, ints.addAndGetInt(1, 0, 4));
+            assertTrue(ints.compareAndSwapInt(1, 0, 8, 100));
+            assertFalse(ints.compareAndSwapInt(1, 0, 8, 200));
+            assertEquals(100, ints.get(1).getValue());
+        }
+    }
+
+    @Test
+    public void concurrentIncrementsAreNotLost() throws Exception {
+        int threads = 4, keys = 16, increments = 50_000;
+        try (ChronicleMap<Integer, LongValue> map = longBuilder().actualSegments(2).create()) {
+            // the keys are put beforehand, so that the increments race under the read lock,
+            // the race of absent key insertions is checked by absentKeyPutConcurrentlyIsFound()
+            for (int key = 0; key < keys; key++) {
+                map.addAndGetLong(key, 0, 0L);
+            }
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    futures.add(executor.submit(() -> {
+                        for (int i = 0; i < increments; i++) {
+                            map.addAndGetLong(i % keys, 0, 1L);
+                        }
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } finally {
+                executor.shutdown();
+            }
+            assertEquals(keys, map.size());
+            for (int key = 0; key < keys; key++) {
+                assertEquals((long) threads * increments / keys, map.get(key).getValue());
+            }
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void absentKeyPutConcurrentlyIsFound() throws Exception {
+        try (ChronicleMap<Integer, LongValue> map = longBuilder().create()) {
+            VanillaChronicleMap vanillaMap = (VanillaChronicleMap) map;
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            try (VanillaContext c = vanillaMap.context(1)) {
+                // the key is found absent under the read lock
+                c.readLock().lock();
+                assertFalse(c.containsKey());
+                // the update lock of another thread doesn't wait for readers to put a new entry
+                executor.submit(() -> map.addAndGetLong(1, 0, 10L)).get();
+                // the read lock is upgraded without unlocking, the key should be searched again
+                long address = vanillaMap.acquireValueField(c, 0, 8);
+                assertEquals(10L, NativeBytes.UNSAFE.getLong(address));
+            } finally {
+                executor.shutdown();
+            }
+            assertEquals(1, map.size());
+            assertEquals(10L, map.get(1).getValue());
+        }
+    }
+
+    @Test
+    public void persistedValuesAreUpdated() throws IOException {
+        File file = File.createTempFile("atomic-value-ops", ".dat");
+        file.deleteOnExit();
+        file.delete();
+        try (ChronicleMap<Integer, LongValue> map = longBuilder().createPersistedTo(file)) {
+            map.addAndGetLong(1, 0, 42L);
+        }
+        try (ChronicleMap<Integer, LongValue> map = longBuilder().createPersistedTo(file)) {
+            assertEquals(42L, map.get(1).getValue());
+            assertEquals(43L, map.addAndGetLong(1, 0, 1L));
+        }
+        file.delete();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void fieldShouldBeWithinValue() {
+        try (ChronicleMap<Integer, LongValue> map = longBuilder().create()) {
+            map.addAndGetLong(1, 4, 1L);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void offsetShouldBeNonNegative() {
+        try (ChronicleMap<Integer, LongValue> map = longBuilder().create()) {
+            map.addAndGetInt(1, -4, 1);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void fieldShouldBeAligned() {
+        try (ChronicleMap<Integer, LongValue> map = longBuilder().create()) {
+            // values are 8-byte aligned, so the int field at offset 2 is not 4-byte aligned
+            map.addAndGetInt(1, 2, 1);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void absentKeyRequiresDefaultValue() {
+        try (ChronicleMap<Integer, Long> map = ChronicleMapBuilder.of(Integer.class, Long.class)
+                .entries(100).create()) {
+            map.addAndGetLong(1, 0, 1L);
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void replicatedMapsDontSupportAtomicUpdates() {
+        try (ChronicleMap<Integer, LongValue> map = longBuilder()
+                .replication(SingleChronicleHashReplication.builder().createWithId((byte) 1))
+                .create()) {
+            map.addAndGetLong(1, 0, 1L);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.lang.io.Bytes;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BatchedReplicationDrainTest {
+
+    private static class CountingCallback extends Replica.EntryCallback {
+        int entries;
+        int batchLimit = Integer.MAX_VALUE;
+        int entriesInBatch;
+
+        @Override
+        public boolean onEntry(Bytes entry, int chronicleId) {
+            entries++;
+            entriesInBatch++;
+            return true;
+        }
+
+        @Override
+        public boolean shouldBeIgnored(Bytes entry, int chronicleId) {
+            return false;
+        }
+
+        @Override
+        public boolean hasRoomForNextEntry() {
+            return entriesInBatch < batchLimit;
+        }
+    }
+
+    private static ChronicleMap<Integer, Integer> replicatedMap() {
+        return ChronicleMapBuilder.of(Integer.class, Integer.class)
+                .entries(10_000)
+                .actualSegments(4)
+                .replication((byte) 1)
+                .create();
+    }
+
+    @Test
+    public void drainsEachSegmentUnderSingleLock() {
+        try (ChronicleMap<Integer, Integer> map = replicatedMap()) {
+            ReplicatedChronicleMap.ModificationIterator it =
+                    (ReplicatedChronicleMap.ModificationIterator)
+                            ((Replica) map).acquireModificationIterator(
+                                    (byte) 2, Replica.ModificationNotifier.NOP);
+            for (int i = 0; i < 1000; i++) {
+                map.put(i, i);
+            }
+            CountingCallback callback = new CountingCallback();
+            int batches = 0;
+            int batchEntries;
+            while ((batchEntries = it.nextEntries(callback, 0)) > 0) {
+                batches++;
+                assertEquals(batchEntries, callback.entriesInBatch);
+                callback.entriesInBatch = 0;
+            }
+            assertEquals(1000, callback.entries);
+            assertEquals(4, batches);
+            assertEquals(1000, it.entriesShipped());
+            assertEquals(250.0, it.entriesPerLock(), 100.0);
+            assertFalse(it.hasNext());
+        }
+    }
+
+    @Test
+    public void batchIsLimitedByCallbackRoom() {
+        try (ChronicleMap<Integer, Integer> map = replicatedMap()) {
+            ReplicatedChronicleMap.ModificationIterator it =
+                    (ReplicatedChronicleMap.ModificationIterator)
+                            ((Replica) map).acquireModificationIterator(
+                                    (byte) 2, Replica.ModificationNotifier.NOP);
+            for (int i = 0; i < 1000; i++) {
+                map.put(i, i);
+            }
+            CountingCallback callback = new CountingCallback();
+            callback.batchLimit = 10;
+            int batchEntries;
+            while ((batchEntries = it.nextEntries(callback, 0)) > 0) {
+                assertTrue(batchEntries <= 10);
+                callback.entriesInBatch = 0;
+            }
+            // no entry is lost or shipped twice, when a batch is cut short
+            assertEquals(1000, callback.entries);
+            assertEquals(1000, it.entriesShipped());
+            assertTrue(it.lockAcquisitions() >= 100);
+
+            map.put(1, 2);
+            assertTrue(it.hasNext());
+            assertEquals(1, it.nextEntries(callback, 0));
+            assertEquals(1001, callback.entries);
+        }
+    }
+}
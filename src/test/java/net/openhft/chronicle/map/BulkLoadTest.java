@@ -0,0 +1,144 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public class BulkLoadTest {
+
+    private static ChronicleMapBuilder<Integer, CharSequence> builder() {
+        return ChronicleMapBuilder.of(Integer.class, CharSequence.class)
+                .entries(20_000)
+                .actualSegments(8);
+    }
+
+    @Test
+    public void bulkLoadedFileIsMappedAndReopened() throws IOException {
+        File file = Builder.getPersistenceFile();
+        try {
+            try (ChronicleMap<Integer, CharSequence> map = builder().createBulkLoadedPersistedTo(
+                    file, IntStream.range(0, 10_000)
+                            .<Map.Entry<Integer, CharSequence>>mapToObj(
+                                    i -> new SimpleEntry<>(i, "v" + i))
+                            .spliterator(), 4)) {
+                assertEquals(10_000, map.size());
+                assertEquals("v42", map.get(42).toString());
+                map.put(10_000, "new");
+            }
+            assertEquals(0, stagingFiles(file).length);
+            try (ChronicleMap<Integer, CharSequence> map = builder().createPersistedTo(file)) {
+                assertEquals(10_001, map.size());
+                for (int i = 0; i < 10_000; i++) {
+                    assertEquals("v" + i, map.get(i).toString());
+                }
+                assertEquals("new", map.get(10_000).toString());
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static File[] stagingFiles(File file) {
+        File absoluteFile = file.getAbsoluteFile();
+        return absoluteFile.getParentFile().listFiles((dir, name) ->
+                name.startsWith(absoluteFile.getName()) && name.endsWith(".bulk"));
+    }
+
+    @Test
+    public void entriesAreLoadedInSeveralBatches() throws IOException {
+        File file = Builder.getPersistenceFile();
+        int entries = ChronicleMapBuilder.BULK_LOAD_BATCH * 2 + 1_000;
+        try {
+            try (ChronicleMap<Integer, CharSequence> map = builder()
+                    .entries(entries)
+                    .createBulkLoadedPersistedTo(file, IntStream.range(0, entries)
+                            .<Map.Entry<Integer, CharSequence>>mapToObj(
+                                    i -> new SimpleEntry<>(i, "v" + i))
+                            .iterator(), 4)) {
+                assertEquals(entries, map.size());
+                for (int i = 0; i < entries; i++) {
+                    assertEquals("v" + i, map.get(i).toString());
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void leftoverStagingFileIsNotMerged() throws IOException {
+        File file = Builder.getPersistenceFile();
+        // as if left by a crashed bulk load
+        File leftover = new File(file.getAbsolutePath() + ".bulk");
+        try {
+            try (ChronicleMap<Integer, CharSequence> stale = builder().createPersistedTo(leftover)) {
+                stale.put(-1, "stale");
+            }
+            try (ChronicleMap<Integer, CharSequence> map = builder().createBulkLoadedPersistedTo(
+                    file, IntStream.range(0, 100)
+                            .<Map.Entry<Integer, CharSequence>>mapToObj(
+                                    i -> new SimpleEntry<>(i, "v" + i))
+                            .iterator(), 2)) {
+                assertEquals(100, map.size());
+                assertNull(map.get(-1));
+            }
+        } finally {
+            file.delete();
+            leftover.delete();
+        }
+    }
+
+    @Test
+    public void laterDuplicatesOverrideEarlier() throws IOException {
+        File file = Builder.getPersistenceFile();
+        try {
+            try (ChronicleMap<Integer, CharSequence> map = builder().createBulkLoadedPersistedTo(
+                    file, IntStream.range(0, 2_000)
+                            .<Map.Entry<Integer, CharSequence>>mapToObj(
+                                    i -> new SimpleEntry<>(i % 1_000, "v" + i))
+                            .iterator(), 1)) {
+                assertEquals(1_000, map.size());
+                assertEquals("v1999", map.get(999).toString());
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void existingFileIsRejected() throws IOException {
+        File file = Builder.getPersistenceFile();
+        try {
+            builder().createPersistedTo(file).close();
+            builder().createBulkLoadedPersistedTo(file,
+                    new HashMap<Integer, CharSequence>().entrySet().iterator(), 1);
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.lang.collection.SingleThreadedDirectBitSet;
+import net.openhft.lang.io.ByteBufferBytes;
+import net.openhft.lang.io.Bytes;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.Random;
+
+import static net.openhft.lang.collection.DirectBitSet.NOT_FOUND;
+import static org.junit.Assert.*;
+
+public class CoalescedReplicationChangesTest {
+
+    private static class CountingCallback extends Replica.EntryCallback {
+        int entries;
+
+        @Override
+        public boolean onEntry(Bytes entry, int chronicleId) {
+            entries++;
+            return true;
+        }
+
+        @Override
+        public boolean shouldBeIgnored(Bytes entry, int chronicleId) {
+            return false;
+        }
+    }
+
+    @Test
+    public void repeatedUpdatesOfHotKeyAreCoalesced() {
+        try (ChronicleMap<Integer, Integer> map = ChronicleMapBuilder.of(Integer.class, Integer.class)
+                .entries(10_000)
+                .actualSegments(16)
+                .replication((byte) 1)
+                .create()) {
+            ReplicatedChronicleMap.ModificationIterator it =
+                    (ReplicatedChronicleMap.ModificationIterator)
+                            ((Replica) map).acquireModificationIterator(
+                                    (byte) 2, Replica.ModificationNotifier.NOP);
+            for (int i = 0; i < 1000; i++) {
+                map.put(1, i);
+            }
+            map.put(2, 2);
+            assertEquals(2, it.pendingChanges());
+            assertEquals(999, it.coalescedUpdates());
+
+            CountingCallback callback = new CountingCallback();
+            while (it.nextEntry(callback, 0)) ;
+            assertEquals(2, callback.entries);
+            assertEquals(0, it.pendingChanges());
+            assertFalse(it.hasNext());
+
+            map.put(1, 1000);
+            assertEquals(1, it.pendingChanges());
+            assertEquals(999, it.coalescedUpdates());
+        }
+    }
+
+    @Test
+    public void summarizedBitSetFindsSameBitsAsPlainBitSet() {
+        int size = 64 * 64 * 10;
+        Bytes bytes = new ByteBufferBytes(ByteBuffer.allocateDirect(size / 8));
+        SingleThreadedDirectBitSet updates = new SingleThreadedDirectBitSet(bytes);
+        // a bit set before the summary is created
+        updates.set(size - 1);
+        SummarizedDirectBitSet summarized = new SummarizedDirectBitSet(bytes);
+        BitSet expected = new BitSet(size);
+        expected.set(size - 1);
+        Random random = new Random(1);
+        for (int round = 0; round < 100; round++) {
+            for (int i = 0; i < 50; i++) {
+                int bit = random.nextInt(size);
+                if (random.nextBoolean()) {
+                    updates.set(bit);
+                    summarized.onSet(bit);
+                    expected.set(bit);
+                } else {
+                    updates.clear(bit);
+                    expected.clear(bit);
+                }
+            }
+            int from = random.nextInt(size);
+            int expectedBit = expected.nextSetBit(from);
+            assertEquals(expectedBit < 0 ? NOT_FOUND : expectedBit, summarized.nextSetBit(from));
+            assertEquals(expected.cardinality(), summarized.cardinality());
+        }
+
+        for (int bit = expected.nextSetBit(0); bit >= 0; bit = expected.nextSetBit(bit + 1)) {
+            updates.clear(bit);
+        }
+        assertTrue(summarized.markedWords() > 0);
+        assertEquals(NOT_FOUND, summarized.nextSetBit(0));
+        // the empty words are unmarked by the search
+        assertEquals(0, summarized.markedWords());
+        assertEquals(NOT_FOUND, summarized.nextSetBit(size));
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.hash.replication.SingleChronicleHashReplication;
+import net.openhft.chronicle.hash.replication.TcpTransportAndNetworkConfig;
+import net.openhft.lang.io.ByteBufferBytes;
+import net.openhft.lang.io.Bytes;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DeltaReplicationTest {
+
+    static int s_port = 16050;
+    private static final int VALUE_SIZE = 4096;
+
+    private static ChronicleMap<Integer, byte[]> deltaReplicatedMap(byte identifier) {
+        return ChronicleMapBuilder.of(Integer.class, byte[].class)
+                .entries(1000)
+                .averageValueSize(VALUE_SIZE)
+                .replication(SingleChronicleHashReplication.builder()
+                        .deltaReplication(true)
+                        .createWithId(identifier))
+                .create();
+    }
+
+    private static ReplicatedChronicleMap.ModificationIterator modIter(
+            ChronicleMap<?, ?> map, byte remoteIdentifier) {
+        return (ReplicatedChronicleMap.ModificationIterator) ((Replica) map)
+                .acquireModificationIterator(remoteIdentifier, Replica.ModificationNotifier.NOP);
+    }
+
+    /**
+     * Drains the changes of the map, as the replicator would write them for the remote node.
+     */
+    private static Bytes drain(ChronicleMap<?, ?> map, byte remoteIdentifier) {
+        final Replica.EntryExternalizable externalizable = (Replica.EntryExternalizable) map;
+        final Bytes destination = new ByteBufferBytes(ByteBuffer.allocateDirect(64 * 1024));
+        Replica.EntryCallback callback = new Replica.EntryCallback() {
+            @Override
+            public boolean onEntry(Bytes entry, int chronicleId) {
+                externalizable.writeExternalEntry(entry, destination, chronicleId,
+                        remoteIdentifier);
+                return true;
+            }
+
+            @Override
+            public boolean shouldBeIgnored(Bytes entry, int chronicleId) {
+                return false;
+            }
+        };
+        ReplicatedChronicleMap.ModificationIterator it = modIter(map, remoteIdentifier);
+        while (it.nextEntry(callback, 0)) ;
+        destination.flip();
+        return destination;
+    }
+
+    private static void apply(ChronicleMap<?, ?> map, Bytes source) {
+        ((Replica.EntryExternalizable) map).readExternalEntry(
+                VanillaContext.get(ReplicatedChronicleMap.BytesReplicatedContextFactory.INSTANCE),
+                source);
+    }
+
+    private static byte[] randomValue() {
+        byte[] value = new byte[VALUE_SIZE];
+        new Random(1).nextBytes(value);
+        return value;
+    }
+
+    @Test
+    public void onlyChangedRangesAreSent() {
+        try (ChronicleMap<Integer, byte[]> map1 = deltaReplicatedMap((byte) 1);
+             ChronicleMap<Integer, byte[]> map2 = deltaReplicatedMap((byte) 2)) {
+            modIter(map1, (byte) 2);
+            byte[] value = randomValue();
+            map1.put(1, value);
+            Bytes entry = drain(map1, (byte) 2);
+            assertTrue(entry.remaining() > VALUE_SIZE);
+            apply(map2, entry);
+            assertArrayEquals(value, map2.get(1));
+
+            // 8 bytes changed in place
+            for (int i = 1000; i < 1008; i++) {
+                value[i]++;
+            }
+            map1.put(1, value);
+            Bytes delta = drain(map1, (byte) 2);
+            assertTrue("delta size=" + delta.remaining(), delta.remaining() < 64);
+            apply(map2, delta);
+            assertArrayEquals(value, map2.get(1));
+
+            // a value of another size is sent whole
+            byte[] longerValue = Arrays.copyOf(value, VALUE_SIZE + 1);
+            map1.put(1, longerValue);
+            Bytes whole = drain(map1, (byte) 2);
+            assertTrue(whole.remaining() > VALUE_SIZE);
+            apply(map2, whole);
+            assertArrayEquals(longerValue, map2.get(1));
+
+            LastSentValues lastSentValues = modIter(map1, (byte) 2).lastSentValues;
+            assertEquals(1L, lastSentValues.deltaEntries());
+            assertTrue(lastSentValues.deltaBytesSaved() > VALUE_SIZE - 64);
+
+            // removes are never deltas, and drop the value last sent
+            map1.remove(1);
+            apply(map2, drain(map1, (byte) 2));
+            assertNull(map2.get(1));
+            assertEquals(0, lastSentValues.size());
+        }
+    }
+
+    @Test
+    public void deltaAgainstAnotherVersionIsDropped() {
+        try (ChronicleMap<Integer, byte[]> map1 = deltaReplicatedMap((byte) 1);
+             ChronicleMap<Integer, byte[]> map3 = deltaReplicatedMap((byte) 3)) {
+            modIter(map1, (byte) 2);
+            byte[] value = randomValue();
+            map1.put(1, value);
+            drain(map1, (byte) 2);
+            value[0]++;
+            map1.put(1, value);
+            // the node 3 has never received the version of the entry, the delta is made against
+            apply(map3, drain(map1, (byte) 2));
+            assertNull(map3.get(1));
+            assertEquals(1L, ((ReplicatedChronicleMap) map3).deltaMismatches());
+        }
+    }
+
+    @Test
+    public void ignoredConcurrentUpdateResendsWholeEntry() {
+        try (ChronicleMap<Integer, byte[]> map1 = deltaReplicatedMap((byte) 1);
+             ChronicleMap<Integer, byte[]> map2 = deltaReplicatedMap((byte) 2)) {
+            modIter(map1, (byte) 2);
+            modIter(map2, (byte) 1);
+            byte[] value = randomValue();
+            map1.put(1, value);
+            apply(map2, drain(map1, (byte) 2));
+
+            // concurrent updates, the node 1 has the newer version
+            byte[] value2 = value.clone();
+            value2[0]++;
+            map2.put(1, value2);
+            byte[] value3 = value.clone();
+            value3[1]++;
+            map1.put(1, value3);
+            value3[2]++;
+            map1.put(1, value3);
+
+            // the delta is made against the version, the node 2 doesn't hold
+            apply(map2, drain(map1, (byte) 2));
+            assertEquals(1L, ((ReplicatedChronicleMap) map2).deltaMismatches());
+            assertArrayEquals(value2, map2.get(1));
+
+            // the update of the node 2 is ignored by the node 1, which sends it's version again
+            apply(map1, drain(map2, (byte) 1));
+            assertArrayEquals(value3, map1.get(1));
+            Bytes whole = drain(map1, (byte) 2);
+            assertTrue(whole.remaining() > VALUE_SIZE);
+            apply(map2, whole);
+            assertArrayEquals(value3, map2.get(1));
+        }
+    }
+
+    @Test
+    public void deltasAreReplicatedOverTcp() throws IOException, InterruptedException {
+        int port = s_port;
+        s_port += 2;
+        try (ChronicleMap<Integer, byte[]> map1 = ChronicleMapBuilder.of(Integer.class, byte[].class)
+                .entries(1000)
+                .averageValueSize(VALUE_SIZE)
+                .replication(SingleChronicleHashReplication.builder()
+                        .tcpTransportAndNetwork(TcpTransportAndNetworkConfig
+                                .of(port, new InetSocketAddress("localhost", port + 1)))
+                        .deltaReplication(true)
+                        .createWithId((byte) 1))
+                .create();
+             ChronicleMap<Integer, byte[]> map2 = ChronicleMapBuilder.of(Integer.class, byte[].class)
+                     .entries(1000)
+                     .averageValueSize(VALUE_SIZE)
+                     .replication(SingleChronicleHashReplication.builder()
+                             .tcpTransportAndNetwork(TcpTransportAndNetworkConfig.of(port + 1))
+                             .deltaReplication(true)
+                             .createWithId((byte) 2))
+                     .create()) {
+            byte[] value = randomValue();
+            for (int i = 0; i < 100; i++) {
+                map1.put(i, value);
+            }
+            waitTillEqual(map1, map2);
+
+            for (int i = 0; i < 100; i++) {
+                value[i]++;
+                map1.put(i, value);
+            }
+            waitTillEqual(map1, map2);
+
+            LastSentValues lastSentValues = modIter(map1, (byte) 2).lastSentValues;
+            assertTrue(lastSentValues.deltaEntries() > 0L);
+            assertEquals(0L, ((ReplicatedChronicleMap) map2).deltaMismatches());
+        }
+    }
+
+    private static void waitTillEqual(ChronicleMap<Integer, byte[]> map1,
+                                      ChronicleMap<Integer, byte[]> map2)
+            throws InterruptedException {
+        for (int t = 0; t < 5000 && !contentEquals(map1, map2); t++) {
+            Thread.sleep(1);
+        }
+        assertTrue(contentEquals(map1, map2));
+    }
+
+    private static boolean contentEquals(ChronicleMap<Integer, byte[]> map1,
+                                         ChronicleMap<Integer, byte[]> map2) {
+        if (map1.size() != map2.size())
+            return false;
+        for (Integer key : map1.keySet()) {
+            if (!Arrays.equals(map1.get(key), map2.get(key)))
+                return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.hash.EntryAllocation;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares latencies of inserts into a mostly full segment with entries of mixed sizes, with each
+ * {@link EntryAllocation} strategy. Usage: {@code [fillPercent]}, default is 85.
+ */
+public class EntryAllocationMain {
+    static final int CHUNKS = 1 << 18;
+    static final int MAX_VALUE_LENGTH = 120;
+    static final int OPS = 2_000_000;
+
+    public static void main(String... args) {
+        int fillPercent = args.length > 0 ? Integer.parseInt(args[0]) : 85;
+        for (int run = 0; run < 3; run++) {
+            for (EntryAllocation entryAllocation : EntryAllocation.values()) {
+                run(entryAllocation, fillPercent);
+            }
+            System.out.println();
+        }
+    }
+
+    static void run(EntryAllocation entryAllocation, int fillPercent) {
+        // with 16-byte chunks, an entry takes 1 to 9 chunks, 5 on average
+        int keys = CHUNKS / 5 * fillPercent / 100;
+        try (ChronicleMap<Integer, String> map = ChronicleMapBuilder.of(Integer.class, String.class)
+                .actualSegments(1)
+                .entriesPerSegment(keys)
+                .actualChunksPerSegment(CHUNKS)
+                .actualChunkSize(16)
+                .entryAllocation(entryAllocation)
+                .create()) {
+            Random random = new Random(1);
+            String[] values = new String[MAX_VALUE_LENGTH];
+            for (int i = 0; i < values.length; i++) {
+                char[] chars = new char[i + 1];
+                Arrays.fill(chars, 'x');
+                values[i] = new String(chars);
+            }
+            for (int key = 0; key < keys; key++) {
+                map.put(key, values[random.nextInt(MAX_VALUE_LENGTH)]);
+            }
+            Histogram times = new Histogram();
+            long start = System.nanoTime();
+            for (int i = 0; i < OPS; i++) {
+                int key = random.nextInt(keys);
+                String value = values[random.nextInt(MAX_VALUE_LENGTH)];
+                map.remove(key);
+                long putStart = System.nanoTime();
+                map.put(key, value);
+                times.sample(System.nanoTime() - putStart);
+            }
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            System.out.printf("%-14s fill=%d%% keys=%,d time=%,d ms%n",
+                    entryAllocation, fillPercent, keys, millis);
+            System.out.print("  put : ");
+            times.printPercentiles(" micro-seconds.");
+        }
+    }
+}
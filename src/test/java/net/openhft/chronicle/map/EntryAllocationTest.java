@@ -0,0 +1,162 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.hash.EntryAllocation;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+@RunWith(value = Parameterized.class)
+public class EntryAllocationTest {
+
+    @Parameterized.Parameters
+    public static Collection<Object[]> data() {
+        List<Object[]> data = new ArrayList<>();
+        for (EntryAllocation entryAllocation : EntryAllocation.values()) {
+            data.add(new Object[] {entryAllocation});
+        }
+        return data;
+    }
+
+    private final EntryAllocation entryAllocation;
+
+    public EntryAllocationTest(EntryAllocation entryAllocation) {
+        this.entryAllocation = entryAllocation;
+    }
+
+    private ChronicleMapBuilder<Integer, String> builder() {
+        return ChronicleMapBuilder.of(Integer.class, String.class)
+                .actualSegments(1)
+                .entriesPerSegment(1000)
+                .actualChunksPerSegment(4000)
+                .actualChunkSize(16)
+                .entryAllocation(entryAllocation);
+    }
+
+    private static String value(Random random) {
+        char[] chars = new char[1 + random.nextInt(60)];
+        Arrays.fill(chars, (char) ('a' + random.nextInt(26)));
+        return new String(chars);
+    }
+
+    /**
+     * Keeps the segment mostly full, while entries of different sizes are removed, inserted and
+     * relocated.
+     */
+    private static void churn(ChronicleMap<Integer, String> map, Map<Integer, String> expected,
+                              Random random, int ops) {
+        for (int i = 0; i < ops; i++) {
+            Integer key = random.nextInt(700);
+            switch (random.nextInt(3)) {
+                case 0:
+                    assertEquals(expected.remove(key), map.remove(key));
+                    break;
+                default:
+                    String value = value(random);
+                    assertEquals(expected.put(key, value), map.put(key, value));
+            }
+        }
+        assertEquals(expected, map);
+    }
+
+    @Test
+    public void entriesOfDifferentSizesAreReallocated() {
+        try (ChronicleMap<Integer, String> map = builder().create()) {
+            assertEquals(entryAllocation, ((VanillaChronicleMap) map).entryAllocation);
+            Map<Integer, String> expected = new HashMap<>();
+            Random random = new Random(1);
+            churn(map, expected, random, 50_000);
+            for (Map.Entry<Integer, String> e : expected.entrySet()) {
+                assertEquals(e.getValue(), map.get(e.getKey()));
+            }
+            map.compact();
+            churn(map, expected, random, 10_000);
+            map.clear();
+            assertTrue(map.isEmpty());
+            expected.clear();
+            churn(map, expected, random, 10_000);
+        }
+    }
+
+    @Test
+    public void fullSegmentIsReusedAfterRemoves() {
+        try (ChronicleMap<Integer, String> map = builder().create()) {
+            Map<Integer, String> expected = new HashMap<>();
+            Random random = new Random(2);
+            // fill the segment until the allocation fails
+            int key = 0;
+            try {
+                for (; ; key++) {
+                    String value = value(random);
+                    map.put(key, value);
+                    expected.put(key, value);
+                }
+            } catch (IllegalStateException e) {
+                // the segment is full
+            }
+            assertEquals(expected, map);
+            for (int round = 0; round < 10; round++) {
+                List<Integer> keys = new ArrayList<>(expected.keySet());
+                Collections.shuffle(keys, random);
+                for (Integer removed : keys.subList(0, keys.size() / 10)) {
+                    String value = expected.remove(removed);
+                    assertEquals(value, map.remove(removed));
+                    // an entry of the same size fits the freed chunks
+                    char[] chars = new char[value.length()];
+                    Arrays.fill(chars, 'z');
+                    map.put(key, new String(chars));
+                    expected.put(key++, new String(chars));
+                }
+                assertEquals(expected, map);
+            }
+        }
+    }
+
+    @Test
+    public void persistedMapKeepsEntryAllocation() throws IOException {
+        File file = File.createTempFile("entry-allocation", ".dat");
+        file.deleteOnExit();
+        file.delete();
+        EntryAllocation other = entryAllocation == EntryAllocation.FIRST_FIT ?
+                EntryAllocation.SIZE_CLASSES : EntryAllocation.FIRST_FIT;
+        Map<Integer, String> expected = new HashMap<>();
+        try (ChronicleMap<Integer, String> map = builder().createPersistedTo(file)) {
+            churn(map, expected, new Random(3), 5_000);
+        }
+        try (ChronicleMap<Integer, String> map =
+                     builder().entryAllocation(other).createPersistedTo(file)) {
+            assertEquals(entryAllocation, ((VanillaChronicleMap) map).entryAllocation);
+            assertEquals(expected, map);
+            churn(map, expected, new Random(4), 5_000);
+        }
+        file.delete();
+    }
+
+    @Test
+    public void builderToStringContainsEntryAllocation() {
+        assertTrue(builder().toString().contains("entryAllocation=" + entryAllocation));
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.map.fromdocs.BondVOInterface;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+public class EntryCursorTest {
+
+    @Test
+    public void cursorVisitsEachEntryOnce() {
+        try (ChronicleMap<Long, Long> map = ChronicleMapBuilder.of(Long.class, Long.class)
+                .entries(10_000).actualSegments(8).create()) {
+            for (long i = 0; i < 10_000; i++) {
+                map.put(i, i * 3);
+            }
+            Set<Long> keys = new HashSet<>();
+            try (MapEntryCursor<Long, Long> cursor = map.entryCursor()) {
+                while (cursor.next()) {
+                    MapKeyContext<Long, Long> c = cursor.context();
+                    long key = c.key();
+                    assertTrue(keys.add(key));
+                    assertEquals(key * 3, (long) c.get());
+                }
+                assertFalse(cursor.next());
+            }
+            assertEquals(10_000, keys.size());
+        }
+    }
+
+    @Test
+    public void cursorVisitsEntriesInExtraTiers() {
+        try (ChronicleMap<Long, Long> map = ChronicleMapBuilder.of(Long.class, Long.class)
+                .actualSegments(1)
+                .entriesPerSegment(1000)
+                .actualChunksPerSegment(1000)
+                .maxBloatFactor(3.0)
+                .create()) {
+            for (long i = 0; i < 2500; i++) {
+                map.put(i, i);
+            }
+            int count = 0;
+            try (MapEntryCursor<Long, Long> cursor = map.entryCursor()) {
+                while (cursor.next()) {
+                    MapKeyContext<Long, Long> c = cursor.context();
+                    assertEquals(c.key(), c.get());
+                    count++;
+                }
+            }
+            assertEquals(2500, count);
+        }
+    }
+
+    @Test
+    public void getUsingReusesTheValueInstance() {
+        try (ChronicleMap<Long, BondVOInterface> map = ChronicleMapBuilder
+                .of(Long.class, BondVOInterface.class)
+                .entries(1000).create()) {
+            for (long i = 0; i < 100; i++) {
+                BondVOInterface bond = map.acquireUsing(i, map.newValueInstance());
+                bond.setCoupon(i);
+            }
+            BondVOInterface using = map.newValueInstance();
+            double sum = 0;
+            try (MapEntryCursor<Long, BondVOInterface> cursor = map.entryCursor()) {
+                while (cursor.next()) {
+                    assertSame(using, cursor.context().getUsing(using));
+                    sum += using.getCoupon();
+                }
+            }
+            assertEquals(99 * 100 / 2, sum, 0.0);
+        }
+    }
+
+    @Test
+    public void cursorHoldsSegmentReadLockUntilClosed() throws Exception {
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        try (ChronicleMap<Long, Long> map = ChronicleMapBuilder.of(Long.class, Long.class)
+                .entries(100).actualSegments(1).create()) {
+            map.put(1L, 1L);
+            Callable<Boolean> tryWriteLock = () -> {
+                try (MapKeyContext<Long, Long> c = map.context(1L)) {
+                    return c.writeLock().tryLock();
+                }
+            };
+            Callable<Boolean> tryUpdateLock = () -> {
+                try (MapKeyContext<Long, Long> c = map.context(1L)) {
+                    return c.updateLock().tryLock();
+                }
+            };
+            MapEntryCursor<Long, Long> cursor = map.entryCursor();
+            assertTrue(cursor.next());
+            assertFalse(writer.submit(tryWriteLock).get());
+            // the read lock doesn't block updaters
+            assertTrue(writer.submit(tryUpdateLock).get());
+            cursor.close();
+            assertTrue(writer.submit(tryWriteLock).get());
+        } finally {
+            writer.shutdownNow();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void contextRequiresPositionedCursor() {
+        try (ChronicleMap<Long, Long> map = ChronicleMapBuilder.of(Long.class, Long.class)
+                .entries(100).create();
+             MapEntryCursor<Long, Long> cursor = map.entryCursor()) {
+            cursor.context();
+        }
+    }
+}
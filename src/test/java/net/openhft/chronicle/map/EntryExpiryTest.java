@@ -0,0 +1,236 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.hash.replication.SingleChronicleHashReplication;
+import net.openhft.chronicle.hash.replication.TimeProvider;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import static java.util.concurrent.TimeUnit.*;
+import static org.junit.Assert.*;
+
+public class EntryExpiryTest {
+
+    static volatile long now;
+
+    static class TestTimeProvider extends TimeProvider {
+        private static final long serialVersionUID = 0L;
+
+        @Override
+        public long currentTime() {
+            return now;
+        }
+    }
+
+    @Before
+    public void resetTime() {
+        now = 1_000_000L;
+    }
+
+    private static void advance(long time, java.util.concurrent.TimeUnit unit) {
+        now += unit.toMicros(time);
+    }
+
+    private static ChronicleMapBuilder<Integer, String> builder() {
+        return ChronicleMapBuilder.of(Integer.class, String.class)
+                .actualSegments(2)
+                .entriesPerSegment(1000)
+                .actualChunksPerSegment(2000)
+                .actualChunkSize(16)
+                .timeProvider(new TestTimeProvider())
+                .timeToLive(10, SECONDS);
+    }
+
+    private static long freeChunks(ChronicleMap<?, ?> map) {
+        return map.fragmentation().stream().mapToLong(SegmentFragmentation::freeChunks).sum();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void timeToLiveShouldBePositive() {
+        ChronicleMapBuilder.of(Integer.class, String.class).timeToLive(0, SECONDS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sweepIntervalShouldBePositive() {
+        ChronicleMapBuilder.of(Integer.class, String.class).expirySweep(-1, SECONDS);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void replicatedMapsDontSupportExpiry() {
+        builder().replication(SingleChronicleHashReplication.builder().createWithId((byte) 1))
+                .create();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void timeToLiveOnPutRequiresExpiry() {
+        try (ChronicleMap<Integer, String> map =
+                     ChronicleMapBuilder.of(Integer.class, String.class).create()) {
+            map.put(1, "a", 1, SECONDS);
+        }
+    }
+
+    @Test
+    public void expiredEntriesAreAbsent() {
+        try (ChronicleMap<Integer, String> map = builder().create()) {
+            for (int i = 0; i < 100; i++)
+                map.put(i, "v" + i);
+            advance(5, SECONDS);
+            for (int i = 0; i < 50; i++)
+                map.put(i, "w" + i);
+            advance(5, SECONDS);
+
+            Map<Integer, String> expected = new HashMap<>();
+            for (int i = 0; i < 50; i++)
+                expected.put(i, "w" + i);
+            for (int i = 0; i < 100; i++) {
+                assertEquals(expected.get(i), map.get(i));
+                assertEquals(expected.containsKey(i), map.containsKey(i));
+            }
+            assertEquals(expected, new HashMap<>(map));
+            assertEquals(expected.keySet(), new HashSet<>(map.keySet()));
+            // expired entries are counted until they are reclaimed
+            assertEquals(100, map.size());
+
+            assertNull(map.putIfAbsent(50, "x"));
+            assertEquals("x", map.get(50));
+            assertNull(map.remove(51));
+            assertNull(map.put(52, "y"));
+            // the expired entries of 50 and 52 are reused, 51 is reclaimed on remove
+            assertEquals(99, map.size());
+
+            assertEquals(47, map.removeExpiredEntries());
+            assertEquals(52, map.size());
+            assertEquals(0, map.removeExpiredEntries());
+
+            advance(10, SECONDS);
+            assertTrue(new HashMap<>(map).isEmpty());
+            assertEquals(52, map.removeExpiredEntries());
+            assertEquals(0, map.size());
+            assertEquals(4000, freeChunks(map));
+        }
+    }
+
+    @Test
+    public void expiredEntryIsReclaimedOnPut() {
+        try (ChronicleMap<Integer, String> map = builder().create()) {
+            map.put(1, "a");
+            long freeChunks = freeChunks(map);
+            advance(10, SECONDS);
+            assertNull(map.put(1, "b"));
+            assertEquals("b", map.get(1));
+            assertEquals(1, map.size());
+            assertEquals(freeChunks, freeChunks(map));
+            advance(9, SECONDS);
+            assertEquals("b", map.get(1));
+        }
+    }
+
+    @Test
+    public void timeToLiveGivenOnPut() {
+        try (ChronicleMap<Integer, String> map = builder().timeToLive(Long.MAX_VALUE, SECONDS)
+                .create()) {
+            map.put(1, "forever");
+            assertNull(map.put(2, "short", 100, MILLISECONDS));
+            assertNull(map.put(3, "long", 1, HOURS));
+            advance(100, MILLISECONDS);
+            assertEquals("forever", map.get(1));
+            assertNull(map.get(2));
+            assertEquals("long", map.get(3));
+            advance(1, HOURS);
+            assertNull(map.get(3));
+            assertEquals(2, map.removeExpiredEntries());
+            advance(Long.MAX_VALUE / 2, MICROSECONDS);
+            assertEquals("forever", map.get(1));
+            assertEquals(1, map.size());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void timeToLiveOnPutShouldBePositive() {
+        try (ChronicleMap<Integer, String> map = builder().create()) {
+            map.put(1, "a", 0, SECONDS);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void backgroundSweep() throws InterruptedException {
+        try (ChronicleMap<Integer, String> map = builder().expirySweep(10, MILLISECONDS)
+                .create()) {
+            for (int i = 0; i < 100; i++)
+                map.put(i, "v" + i);
+            long freeChunks = freeChunks(map);
+            Thread.sleep(50);
+            assertEquals(100, map.size());
+            advance(10, SECONDS);
+            while (map.size() > 0)
+                Thread.sleep(1);
+            assertTrue(freeChunks(map) > freeChunks);
+            assertEquals(4000, freeChunks(map));
+        }
+    }
+
+    @Test
+    public void persistedMapKeepsExpiry() throws IOException {
+        File file = File.createTempFile("entry-expiry", ".dat");
+        file.deleteOnExit();
+        file.delete();
+        try (ChronicleMap<Integer, String> map = builder().createPersistedTo(file)) {
+            map.put(1, "a");
+            map.put(2, "b", 1, HOURS);
+        }
+        advance(10, SECONDS);
+        try (ChronicleMap<Integer, String> map = ChronicleMapBuilder
+                .of(Integer.class, String.class).createPersistedTo(file)) {
+            assertNull(map.get(1));
+            assertEquals("b", map.get(2));
+        }
+        file.delete();
+    }
+
+    @Test
+    public void systemTimeProviderCountsMicroseconds() throws InterruptedException {
+        long before = System.currentTimeMillis() * 1000L;
+        long time = TimeProvider.SYSTEM.currentTime();
+        assertTrue(time >= before && time <= System.currentTimeMillis() * 1000L);
+        try (ChronicleMap<Integer, String> map = ChronicleMapBuilder
+                .of(Integer.class, String.class)
+                .timeToLive(1, HOURS)
+                .create()) {
+            map.put(1, "a");
+            map.put(2, "b", 20, MILLISECONDS);
+            Thread.sleep(50);
+            assertEquals("a", map.get(1));
+            assertNull(map.get(2));
+        }
+    }
+
+    @Test
+    public void builderToStringContainsExpiry() {
+        String s = builder().expirySweep(1, SECONDS).toString();
+        assertTrue(s.contains("timeToLiveMicros=10000000"));
+        assertTrue(s.contains("expirySweepIntervalNanos=1000000000"));
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.hash.EntryAllocation;
+import net.openhft.chronicle.hash.replication.SingleChronicleHashReplication;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.*;
+
+public class EvictionTest {
+
+    private static ChronicleMapBuilder<Integer, String> builder() {
+        return ChronicleMapBuilder.of(Integer.class, String.class)
+                .actualSegments(1)
+                .entriesPerSegment(1000)
+                .actualChunksPerSegment(1000)
+                .actualChunkSize(16)
+                .eviction(true);
+    }
+
+    private static String value(int key, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        sb.append(key);
+        while (sb.length() < length)
+            sb.append('x');
+        return sb.toString();
+    }
+
+    private static long evictions(ChronicleMap<?, ?> map) {
+        return map.cacheStats().stream().mapToLong(SegmentCacheStats::evictions).sum();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void replicatedMapsDontSupportEviction() {
+        builder().replication(SingleChronicleHashReplication.builder().createWithId((byte) 1))
+                .create();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void extraTiersAreNotSupported() {
+        builder().maxBloatFactor(2.0).create();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void segmentFullWithoutEviction() {
+        try (ChronicleMap<Integer, String> map = builder().eviction(false).create()) {
+            for (int i = 0; i < 1000; i++)
+                map.put(i, value(i, 20));
+        }
+    }
+
+    @Test
+    public void noCacheStatsWithoutEviction() {
+        try (ChronicleMap<Integer, String> map = builder().eviction(false).create()) {
+            assertTrue(map.cacheStats().isEmpty());
+        }
+    }
+
+    @Test
+    public void entriesAreEvictedWhenSegmentIsFull() {
+        Map<Integer, String> evicted = new HashMap<>();
+        try (ChronicleMap<Integer, String> map = builder()
+                .evictionListener((k, v) -> assertNull(evicted.put(k, v)))
+                .create()) {
+            Random random = new Random(1);
+            Map<Integer, String> put = new HashMap<>();
+            for (int i = 0; i < 10_000; i++) {
+                String value = value(i, 1 + random.nextInt(60));
+                map.put(i, value);
+                put.put(i, value);
+                // the new entry is never evicted by its own put
+                assertEquals(value, map.get(i));
+            }
+            assertTrue(map.size() < 1000);
+            assertEquals(10_000, map.size() + evicted.size());
+            assertEquals(evicted.size(), evictions(map));
+            for (Map.Entry<Integer, String> e : put.entrySet()) {
+                String value = map.get(e.getKey());
+                if (value != null) {
+                    assertEquals(e.getValue(), value);
+                    assertFalse(evicted.containsKey(e.getKey()));
+                } else {
+                    assertEquals(e.getValue(), evicted.get(e.getKey()));
+                }
+            }
+            assertEquals(map.size(), new HashMap<>(map).size());
+        }
+    }
+
+    @Test
+    public void recentlyAccessedEntriesAreKept() {
+        try (ChronicleMap<Integer, String> map = builder().create()) {
+            int hot = 50;
+            int hotMisses = 0;
+            for (int i = hot; i < 10_000; i++) {
+                map.put(i, value(i, 20));
+                // each hot entry is accessed more often than the hand goes round,
+                // but the first round clears the access bytes of all entries
+                int hotKey = i % hot;
+                if (map.get(hotKey) == null) {
+                    map.put(hotKey, value(hotKey, 20));
+                    if (i >= 5_000)
+                        hotMisses++;
+                }
+            }
+            assertEquals(0, hotMisses);
+            for (int i = 0; i < hot; i++)
+                assertEquals(value(i, 20), map.get(i));
+            assertTrue(evictions(map) > 9_000);
+        }
+    }
+
+    @Test
+    public void relocatedEntriesOfFullSegment() {
+        for (EntryAllocation entryAllocation : EntryAllocation.values()) {
+            try (ChronicleMap<Integer, String> map =
+                         builder().entryAllocation(entryAllocation).create()) {
+                Random random = new Random(2);
+                for (int i = 0; i < 20_000; i++) {
+                    int key = random.nextInt(2_000);
+                    String value = value(key, 1 + random.nextInt(100));
+                    if (random.nextInt(4) == 0) {
+                        map.remove(key);
+                    } else {
+                        map.put(key, value);
+                        assertEquals(value, map.get(key));
+                    }
+                }
+                assertEquals(map.size(), new HashMap<>(map).size());
+                for (Map.Entry<Integer, String> e : new HashMap<>(map).entrySet())
+                    assertEquals(value(e.getKey(), e.getValue().length()), e.getValue());
+            }
+        }
+    }
+
+    @Test
+    public void expiredEntriesAreEvictedFirst() {
+        EntryExpiryTest.now = 1_000_000L;
+        try (ChronicleMap<Integer, String> map = builder()
+                .timeProvider(new EntryExpiryTest.TestTimeProvider())
+                .timeToLive(Long.MAX_VALUE, SECONDS)
+                .create()) {
+            int entries = 0;
+            while (evictions(map) == 0L) {
+                map.put(entries, value(entries, 20), entries % 2 == 0 ? 1 : 1000, SECONDS);
+                entries++;
+            }
+            EntryExpiryTest.now += SECONDS.toMicros(10);
+            // the first eviction has cleared the access bytes
+            List<Integer> kept = new ArrayList<>();
+            for (int i = 1; i < entries; i += 2) {
+                if (map.get(i) != null)
+                    kept.add(i);
+            }
+            assertTrue(kept.size() > entries / 4);
+            for (int i = 0; i < entries / 4; i++)
+                map.put(entries + i, value(entries + i, 20));
+            // though kept entries are accessed, only expired entries are evicted
+            for (int i : kept)
+                assertEquals(value(i, 20), map.get(i));
+        }
+    }
+
+    @Test
+    public void cacheStatsAreCounted() throws IOException {
+        File file = File.createTempFile("eviction", ".dat");
+        file.deleteOnExit();
+        file.delete();
+        try (ChronicleMap<Integer, String> map = builder().createPersistedTo(file)) {
+            for (int i = 0; i < 10; i++)
+                map.put(i, value(i, 20));
+            for (int i = 0; i < 15; i++)
+                map.get(i);
+            SegmentCacheStats stats = map.cacheStats().get(0);
+            assertEquals(10, stats.hits());
+            assertEquals(5, stats.misses());
+            assertEquals(0, stats.evictions());
+            assertEquals(10.0 / 15, stats.hitRate(), 1e-9);
+        }
+        try (ChronicleMap<Integer, String> map = ChronicleMapBuilder
+                .of(Integer.class, String.class).createPersistedTo(file)) {
+            assertEquals(10, map.cacheStats().get(0).hits());
+            for (int i = 10; i < 1000; i++)
+                map.put(i, value(i, 20));
+            assertTrue(map.cacheStats().get(0).evictions() > 0);
+        }
+        file.delete();
+    }
+
+    @Test
+    public void builderToStringContainsEviction() {
+        assertTrue(builder().toString().contains("eviction=true"));
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.hash.replication.TcpTransportAndNetworkConfig;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class GetAllTest {
+
+    @Test
+    public void getAllGroupsKeysBySegments() {
+        try (ChronicleMap<Integer, String> map = ChronicleMapBuilder
+                .of(Integer.class, String.class)
+                .entries(1000)
+                .actualSegments(8)
+                .create()) {
+            for (int i = 0; i < 1000; i++) {
+                map.put(i, "value" + i);
+            }
+            List<Integer> keys = new ArrayList<>();
+            for (int i = 0; i < 2000; i += 3) {
+                keys.add(i);
+            }
+            Map<Integer, String> out = new HashMap<>();
+            map.getAll(keys, out);
+
+            Map<Integer, String> expected = new HashMap<>();
+            for (Integer key : keys) {
+                String value = map.get(key);
+                if (value != null)
+                    expected.put(key, value);
+            }
+            assertEquals(expected, out);
+            assertEquals(334, out.size());
+        }
+    }
+
+    @Test
+    public void getAllFromSegmentWithExtraTiers() {
+        try (ChronicleMap<Long, Long> map = ChronicleMapBuilder.of(Long.class, Long.class)
+                .actualSegments(1)
+                .entriesPerSegment(1000)
+                .actualChunksPerSegment(1000)
+                .maxBloatFactor(3.0)
+                .create()) {
+            List<Long> keys = new ArrayList<>();
+            for (long i = 0; i < 2500; i++) {
+                map.put(i, i);
+                keys.add(i);
+            }
+            Map<Long, Long> out = new HashMap<>();
+            map.getAll(keys, out);
+            assertEquals(2500, out.size());
+            for (long i = 0; i < 2500; i++) {
+                assertEquals((Long) i, out.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void getAllOfNoKeys() {
+        try (ChronicleMap<Integer, Integer> map = ChronicleMapBuilder
+                .of(Integer.class, Integer.class)
+                .create()) {
+            Map<Integer, Integer> out = new HashMap<>();
+            map.getAll(new ArrayList<Integer>(), out);
+            assertEquals(0, out.size());
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void statelessClientGetsAllInOneRequest() throws IOException {
+        int port = 8731;
+        try (ChronicleMap<Integer, String> serverMap = ChronicleMapBuilder
+                .of(Integer.class, String.class)
+                .entries(1000)
+                .actualSegments(8)
+                .replication((byte) 1, TcpTransportAndNetworkConfig.of(port))
+                .create()) {
+            for (int i = 0; i < 1000; i++) {
+                serverMap.put(i, "value" + i);
+            }
+            try (ChronicleMap<Integer, String> client = ChronicleMapBuilder
+                    .of(Integer.class, String.class, new InetSocketAddress("localhost", port))
+                    .create()) {
+                List<Integer> keys = new ArrayList<>();
+                for (int i = 0; i < 2000; i += 3) {
+                    keys.add(i);
+                }
+                Map<Integer, String> out = new HashMap<>();
+                client.getAll(keys, out);
+
+                assertEquals(334, out.size());
+                for (Integer key : keys) {
+                    assertEquals(serverMap.get(key), out.get(key));
+                }
+            }
+        }
+    }
+}
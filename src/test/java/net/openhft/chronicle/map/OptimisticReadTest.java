@@ -0,0 +1,229 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.lang.io.Bytes;
+import net.openhft.lang.io.serialization.BytesMarshaller;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class OptimisticReadTest {
+
+    private static ChronicleMapBuilder<Long, CharSequence> builder() {
+        return ChronicleMapBuilder.of(Long.class, CharSequence.class)
+                .entries(1000).averageValueSize(50).actualSegments(2).optimisticReads(true);
+    }
+
+    @Test
+    public void getAndGetUsing() {
+        try (ChronicleMap<Long, CharSequence> map = builder().create()) {
+            assertNull(map.get(1L));
+            map.put(1L, "one");
+            assertEquals("one", map.get(1L).toString());
+            StringBuilder using = new StringBuilder();
+            assertSame(using, map.getUsing(1L, using));
+            assertEquals("one", using.toString());
+            map.remove(1L);
+            assertNull(map.get(1L));
+        }
+    }
+
+    @Test
+    public void versionIsOddWhileWriteLocked() {
+        try (ChronicleMap<Long, CharSequence> map = builder().create();
+             VanillaContext<Long, ?, ?, CharSequence, ?, ?> c =
+                     ((AbstractChronicleMap<Long, CharSequence>) map).context(1L)) {
+            long version = c.segmentVersion();
+            assertEquals(0L, version & 1L);
+            c.updateLock().lock();
+            assertEquals(version, c.segmentVersion());
+            c.writeLock().lock();
+            assertEquals(version + 1L, c.segmentVersion());
+            c.writeLock().unlock();
+            assertEquals(version + 2L, c.segmentVersion());
+        }
+    }
+
+    @Test
+    public void readsAreConsistentUnderConcurrentWrites() throws Exception {
+        try (ChronicleMap<Long, CharSequence> map = builder().create()) {
+            checkConsistentReads(map, map);
+        }
+    }
+
+    @Test
+    public void readsAreConsistentAcrossMapInstances() throws Exception {
+        File file = File.createTempFile("optimistic-read", ".dat");
+        file.delete();
+        file.deleteOnExit();
+        try (ChronicleMap<Long, CharSequence> writerMap = builder().createPersistedTo(file);
+             ChronicleMap<Long, CharSequence> readerMap = builder().createPersistedTo(file)) {
+            checkConsistentReads(writerMap, readerMap);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void valueReaderDoesntSeeTornBytes() throws Exception {
+        try (ChronicleMap<Long, CharSequence> map = builder()
+                .valueMarshaller(TornReadCheckingMarshaller.INSTANCE).create()) {
+            AtomicBoolean stop = new AtomicBoolean();
+            ExecutorService executor = Executors.newFixedThreadPool(2);
+            try {
+                // few keys and a random char in each write, so that in-place updates tear values
+                Future<?> writer = executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (!stop.get()) {
+                        char[] chars = new char[1 + random.nextInt(100)];
+                        Arrays.fill(chars, (char) ('a' + random.nextInt(26)));
+                        map.put((long) random.nextInt(4), new String(chars));
+                    }
+                    return null;
+                });
+                Future<?> reader = executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (!stop.get()) {
+                        map.get((long) random.nextInt(4));
+                    }
+                    return null;
+                });
+                Thread.sleep(1000);
+                stop.set(true);
+                writer.get(10, TimeUnit.SECONDS);
+                reader.get(10, TimeUnit.SECONDS);
+            } finally {
+                stop.set(true);
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Throws an {@code Error}, like a reader allocating by a torn size would do, if the bytes
+     * are inconsistent.
+     */
+    enum TornReadCheckingMarshaller implements BytesMarshaller<CharSequence> {
+        INSTANCE;
+
+        @Override
+        public void write(Bytes bytes, CharSequence cs) {
+            bytes.writeStopBit(cs.length());
+            for (int i = 0; i < cs.length(); i++) {
+                bytes.writeByte(cs.charAt(i));
+            }
+        }
+
+        @Override
+        public CharSequence read(Bytes bytes) {
+            return read(bytes, null);
+        }
+
+        @Override
+        public CharSequence read(Bytes bytes, CharSequence using) {
+            long length = bytes.readStopBit();
+            // widens the window for a concurrent write to tear the value
+            Thread.yield();
+            if (length <= 0 || length > bytes.remaining())
+                throw new Error("Torn size: " + length);
+            char[] chars = new char[(int) length];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = (char) bytes.readByte();
+                if (chars[i] != chars[0])
+                    throw new Error("Torn value");
+            }
+            return new String(chars);
+        }
+    }
+
+    /**
+     * Each value consists of a single char, repeated a random number of times, so a torn read
+     * is visible as a value of mixed chars.
+     */
+    private static void checkConsistentReads(ChronicleMap<Long, CharSequence> writerMap,
+                                             ChronicleMap<Long, CharSequence> readerMap)
+            throws Exception {
+        int keys = 100;
+        AtomicBoolean stop = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int w = 0; w < 2; w++) {
+                futures.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (!stop.get()) {
+                        long key = random.nextInt(keys);
+                        if (random.nextInt(10) == 0) {
+                            writerMap.remove(key);
+                        } else {
+                            writerMap.put(key, value(key, 1 + random.nextInt(100)));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (int r = 0; r < 2; r++) {
+                futures.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    StringBuilder using = new StringBuilder();
+                    long reads = 0;
+                    while (!stop.get()) {
+                        long key = random.nextInt(keys);
+                        CharSequence value = readerMap.getUsing(key, using);
+                        if (value != null)
+                            checkValue(key, value);
+                        reads++;
+                    }
+                    assertTrue(reads > 0);
+                    return null;
+                }));
+            }
+            Thread.sleep(1000);
+            stop.set(true);
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            stop.set(true);
+            executor.shutdownNow();
+        }
+    }
+
+    private static String value(long key, int length) {
+        char[] chars = new char[length];
+        Arrays.fill(chars, (char) ('a' + key % 26));
+        return new String(chars);
+    }
+
+    private static void checkValue(long key, CharSequence value) {
+        assertTrue(value.length() > 0);
+        char expected = (char) ('a' + key % 26);
+        for (int i = 0; i < value.length(); i++) {
+            assertEquals(expected, value.charAt(i));
+        }
+    }
+}
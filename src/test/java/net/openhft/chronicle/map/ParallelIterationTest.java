@@ -0,0 +1,95 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class ParallelIterationTest {
+
+    private static ChronicleMap<Long, Long> newMap(int segments, int entries) {
+        ChronicleMap<Long, Long> map = ChronicleMapBuilder.of(Long.class, Long.class)
+                .entries(entries)
+                .actualSegments(segments)
+                .create();
+        for (long i = 0; i < entries; i++) {
+            map.put(i, i * 2);
+        }
+        return map;
+    }
+
+    @Test
+    public void parallelStreamsSeeEachEntryOnce() {
+        try (ChronicleMap<Long, Long> map = newMap(16, 50_000)) {
+            Map<Long, Long> copy = map.entrySet().parallelStream()
+                    .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+            assertEquals(50_000, copy.size());
+            for (long i = 0; i < 50_000; i++) {
+                assertEquals((Long) (i * 2), copy.get(i));
+            }
+            assertEquals(50_000, map.keySet().parallelStream().distinct().count());
+            assertEquals(50_000L * 49_999L,
+                    map.values().parallelStream().mapToLong(Long::longValue).sum());
+        }
+    }
+
+    @Test
+    public void singleSegmentIsSplitByHashLookupRanges() {
+        try (ChronicleMap<Long, Long> map = newMap(1, 50_000)) {
+            Spliterator<Long> spliterator = map.keySet().spliterator();
+            Spliterator<Long> prefix = spliterator.trySplit();
+            assertNotNull(prefix);
+            Set<Long> keys = ConcurrentHashMap.newKeySet();
+            prefix.forEachRemaining(k -> assertTrue(keys.add(k)));
+            spliterator.forEachRemaining(k -> assertTrue(keys.add(k)));
+            assertEquals(50_000, keys.size());
+        }
+    }
+
+    @Test
+    public void forEachEntryParallel() {
+        try (ChronicleMap<Long, Long> map = newMap(8, 50_000)) {
+            LongAdder count = new LongAdder();
+            LongAdder sum = new LongAdder();
+            Set<Thread> threads = ConcurrentHashMap.newKeySet();
+            ForkJoinPool pool = new ForkJoinPool(4);
+            try {
+                map.forEachEntryParallel(pool, c -> {
+                    count.increment();
+                    sum.add(c.get());
+                    threads.add(Thread.currentThread());
+                });
+            } finally {
+                pool.shutdown();
+            }
+            assertEquals(50_000, count.sum());
+            assertEquals(50_000L * 49_999L, sum.sum());
+            assertFalse(threads.isEmpty());
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PutAllTest {
+
+    private static ChronicleMap<Integer, CharSequence> newMap() {
+        return ChronicleMapBuilder.of(Integer.class, CharSequence.class)
+                .entries(10_000)
+                .actualSegments(16)
+                .create();
+    }
+
+    private static Map<Integer, CharSequence> source(int from, int to) {
+        Map<Integer, CharSequence> m = new HashMap<>();
+        for (int i = from; i < to; i++) {
+            m.put(i, "v" + i);
+        }
+        return m;
+    }
+
+    @Test
+    public void putAllGroupedBySegments() {
+        try (ChronicleMap<Integer, CharSequence> map = newMap()) {
+            map.put(1, "old");
+            map.putAll(source(0, 5000));
+            assertEquals(5000, map.size());
+            for (int i = 0; i < 5000; i++) {
+                assertEquals("v" + i, map.get(i).toString());
+            }
+        }
+    }
+
+    @Test
+    public void parallelPutAllReportsPerSegmentStats() {
+        try (ChronicleMap<Integer, CharSequence> map = newMap()) {
+            BulkLoadStats stats = map.putAll(source(0, 5000), 4);
+            assertEquals(16, stats.segments());
+            assertEquals(5000, stats.totalEntries());
+            long entries = 0;
+            for (int i = 0; i < stats.segments(); i++) {
+                assertTrue(stats.entries(i) > 0);
+                assertTrue(stats.entriesPerSecond(i) > 0);
+                entries += stats.entries(i);
+            }
+            assertEquals(5000, entries);
+            assertEquals(5000, map.size());
+            for (int i = 0; i < 5000; i++) {
+                assertEquals("v" + i, map.get(i).toString());
+            }
+        }
+    }
+
+    @Test
+    public void emptyPutAll() {
+        try (ChronicleMap<Integer, CharSequence> map = newMap()) {
+            assertEquals(0, map.putAll(new HashMap<>(), 2).totalEntries());
+            assertEquals(0, map.size());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nonPositiveParallelismIsRejected() {
+        try (ChronicleMap<Integer, CharSequence> map = newMap()) {
+            map.putAll(source(0, 10), 0);
+        }
+    }
+}
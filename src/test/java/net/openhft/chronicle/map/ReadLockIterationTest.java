@@ -0,0 +1,135 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class ReadLockIterationTest {
+
+    private static ChronicleMap<Integer, CharSequence> newMap() {
+        ChronicleMap<Integer, CharSequence> map = ChronicleMapBuilder
+                .of(Integer.class, CharSequence.class)
+                .entries(1000)
+                .actualSegments(1)
+                .create();
+        for (int i = 0; i < 100; i++) {
+            map.put(i, "v" + i);
+        }
+        return map;
+    }
+
+    @Test
+    public void iterationDoesNotBlockUpdaters() throws Exception {
+        ExecutorService updater = Executors.newSingleThreadExecutor();
+        try (ChronicleMap<Integer, CharSequence> map = newMap()) {
+            Iterator<Integer> it = map.keySet().iterator();
+            it.next();
+            assertTrue(updater.submit(() -> {
+                try (MapKeyContext<Integer, CharSequence> other = map.context(-1)) {
+                    return other.updateLock().tryLock();
+                }
+            }).get());
+        } finally {
+            updater.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void mutatingForEachEntryDoesNotDeadLockWithUpdaters() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try (ChronicleMap<Integer, CharSequence> map = newMap()) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 2; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 200; i++) {
+                        map.forEachEntry(c -> c.put("u" + c.key()));
+                    }
+                }));
+            }
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 20_000; i++) {
+                    map.put(i % 100, "p" + i);
+                }
+            }));
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            assertEquals(100, map.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void forEachEntryUpgradesToRemove() {
+        try (ChronicleMap<Integer, CharSequence> map = newMap()) {
+            map.forEachEntry(c -> {
+                if (c.key() % 2 == 0)
+                    c.remove();
+            });
+            assertEquals(50, map.size());
+            for (int i = 0; i < 100; i++) {
+                assertEquals(i % 2 == 0 ? null : "v" + i,
+                        map.get(i) == null ? null : map.get(i).toString());
+            }
+            // the segment is not left locked
+            map.put(1000, "new");
+            assertEquals("new", map.get(1000).toString());
+        }
+    }
+
+    @Test
+    public void forEachEntryUpgradesForNestedUpdate() {
+        try (ChronicleMap<Integer, CharSequence> map = newMap()) {
+            map.forEachEntry(c -> {
+                int key = c.key();
+                map.put(key, "value" + key);
+            });
+            for (int i = 0; i < 100; i++) {
+                assertEquals("value" + i, map.get(i).toString());
+            }
+            map.remove(0);
+            assertEquals(99, map.size());
+        }
+    }
+
+    @Test
+    public void iteratorRemove() {
+        try (ChronicleMap<Integer, CharSequence> map = newMap()) {
+            Iterator<Map.Entry<Integer, CharSequence>> it = map.entrySet().iterator();
+            while (it.hasNext()) {
+                if (it.next().getKey() < 50)
+                    it.remove();
+            }
+            assertEquals(50, map.size());
+            assertNull(map.get(0));
+            assertEquals("v50", map.get(50).toString());
+        }
+    }
+}
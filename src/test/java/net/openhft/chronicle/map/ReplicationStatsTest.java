@@ -0,0 +1,135 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.hash.replication.SingleChronicleHashReplication;
+import net.openhft.chronicle.hash.replication.TcpTransportAndNetworkConfig;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.*;
+
+public class ReplicationStatsTest {
+
+    static int s_port = 19050;
+
+    @Test
+    public void notReplicatedMapHasNoStats() {
+        try (ChronicleMap<Integer, Integer> map = ChronicleMapBuilder
+                .of(Integer.class, Integer.class).create()) {
+            assertNull(map.replicationStats());
+        }
+    }
+
+    @Test
+    public void pendingChangesAreCountedPerRemoteNode() {
+        try (ChronicleMap<Integer, Integer> map = ChronicleMapBuilder
+                .of(Integer.class, Integer.class)
+                .replication((byte) 1)
+                .create()) {
+            ReplicationStats stats = map.replicationStats();
+            assertEquals(1, stats.identifier());
+            assertTrue(stats.remoteNodes().isEmpty());
+
+            ((Replica) map).acquireModificationIterator((byte) 2,
+                    Replica.ModificationNotifier.NOP);
+            map.put(1, 1);
+            map.put(1, 2);
+            map.put(2, 2);
+            RemoteNodeStats remoteNode = stats.remoteNode((byte) 2);
+            assertEquals(2, remoteNode.getRemoteIdentifier());
+            assertFalse(remoteNode.isConnected());
+            assertEquals(2, remoteNode.getPendingChanges());
+            assertEquals(1, remoteNode.getCoalescedUpdates());
+            assertEquals(0, remoteNode.getLastAcknowledgedTime());
+            assertEquals(-1, remoteNode.getRoundTripNanos());
+            assertEquals(1, stats.remoteNodes().size());
+            assertNull(stats.remoteNode((byte) 3));
+            assertEquals(0, stats.throttleWaitMillis());
+        }
+    }
+
+    @Test
+    public void acknowledgementsAndRoundTripAreExchangedOverTcp() throws Exception {
+        int port = s_port;
+        s_port += 2;
+        try (ChronicleMap<Integer, Integer> map1 = ChronicleMapBuilder
+                .of(Integer.class, Integer.class)
+                .replication(SingleChronicleHashReplication.builder()
+                        .tcpTransportAndNetwork(TcpTransportAndNetworkConfig
+                                .of(port, new InetSocketAddress("localhost", port + 1))
+                                .heartBeatInterval(100, MILLISECONDS))
+                        .createWithId((byte) 1))
+                .create();
+             ChronicleMap<Integer, Integer> map2 = ChronicleMapBuilder
+                     .of(Integer.class, Integer.class)
+                     .replication(SingleChronicleHashReplication.builder()
+                             .tcpTransportAndNetwork(TcpTransportAndNetworkConfig.of(port + 1)
+                                     .heartBeatInterval(100, MILLISECONDS))
+                             .createWithId((byte) 2))
+                     .create()) {
+            map1.put(1, 1);
+            map2.put(2, 2);
+
+            ReplicationStats stats1 = map1.replicationStats();
+            ReplicationStats stats2 = map2.replicationStats();
+            for (int t = 0; t < 5000 && (!map1.equals(map2) ||
+                    stats1.remoteNode((byte) 2) == null ||
+                    stats1.remoteNode((byte) 2).getLastAcknowledgedTime() == 0 ||
+                    stats1.remoteNode((byte) 2).getRoundTripNanos() < 0 ||
+                    stats2.remoteNode((byte) 1) == null ||
+                    stats2.remoteNode((byte) 1).getLastAcknowledgedTime() == 0); t++) {
+                Thread.sleep(1);
+            }
+            assertEquals(map1, map2);
+
+            RemoteNodeStats remoteNode = stats1.remoteNode((byte) 2);
+            assertTrue(remoteNode.isConnected());
+            assertEquals(0, remoteNode.getPendingChanges());
+            assertEquals(0, remoteNode.getReplicationLagMillis());
+            assertTrue(remoteNode.getRoundTripNanos() >= 0);
+            // map2 acknowledges the update of map1
+            assertEquals(((Replica) map2).lastModificationTime((byte) 1),
+                    remoteNode.getLastAcknowledgedTime());
+            assertTrue(remoteNode.getLastModificationTime() > 0);
+            assertEquals(remoteNode.getLastModificationTime(),
+                    stats2.remoteNode((byte) 1).getLastAcknowledgedTime());
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("net.openhft.chronicle.map:type=ReplicationStats," +
+                    "name=\"map\",identifier=1");
+            try (Closeable registration = stats1.registerMBean("map")) {
+                assertEquals((byte) 1, server.getAttribute(name, "Identifier"));
+                CompositeData[] remoteNodes =
+                        (CompositeData[]) server.getAttribute(name, "RemoteNodes");
+                assertEquals(1, remoteNodes.length);
+                assertEquals((byte) 2, remoteNodes[0].get("remoteIdentifier"));
+                assertEquals(true, remoteNodes[0].get("connected"));
+            }
+            assertFalse(server.isRegistered(name));
+        }
+    }
+}
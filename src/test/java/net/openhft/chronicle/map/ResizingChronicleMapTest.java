@@ -0,0 +1,224 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.hash.replication.TimeProvider;
+import net.openhft.lang.io.Bytes;
+import net.openhft.lang.io.serialization.BytesMarshaller;
+import net.openhft.lang.values.LongValue;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.concurrent.TimeUnit.*;
+import static org.junit.Assert.*;
+
+public class ResizingChronicleMapTest {
+
+    static volatile long now;
+    static volatile CountDownLatch migrationBlocked;
+    static volatile CountDownLatch migrationResumed;
+
+    static class TestTimeProvider extends TimeProvider {
+        private static final long serialVersionUID = 0L;
+
+        @Override
+        public long currentTime() {
+            return now;
+        }
+    }
+
+    /**
+     * Blocks the migration thread on the first key read, i. e. in the first source segment, until
+     * {@link #migrationResumed} is counted down.
+     */
+    enum MigrationBlockingKeyMarshaller implements BytesMarshaller<Integer> {
+        INSTANCE;
+
+        @Override
+        public void write(Bytes bytes, Integer key) {
+            bytes.writeInt(key);
+        }
+
+        @Override
+        public Integer read(Bytes bytes) {
+            return read(bytes, null);
+        }
+
+        @Override
+        public Integer read(Bytes bytes, Integer using) {
+            if (Thread.currentThread().getName().equals("chronicle-map-resize")) {
+                migrationBlocked.countDown();
+                try {
+                    migrationResumed.await();
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+            }
+            return bytes.readInt();
+        }
+    }
+
+    private static ChronicleMapBuilder<Integer, LongValue> expiringBuilder() {
+        return ChronicleMapBuilder.of(Integer.class, LongValue.class)
+                .keyMarshaller(MigrationBlockingKeyMarshaller.INSTANCE)
+                .constantKeySizeBySample(0)
+                .entries(1000)
+                .timeProvider(new TestTimeProvider())
+                .timeToLive(1, HOURS);
+    }
+
+    @Test
+    public void entriesAreMigratedWhileMapIsUsed() throws Exception {
+        ChronicleMap<Integer, Integer> source = ChronicleMapBuilder.of(Integer.class, Integer.class)
+                .entries(100_000)
+                .actualSegments(2)
+                .create();
+        for (int i = 0; i < 50_000; i++) {
+            source.put(i, i);
+        }
+        try (ResizingChronicleMap<Integer, Integer> map =
+                     ChronicleMapBuilder.of(Integer.class, Integer.class)
+                             .entries(1_000_000)
+                             .actualSegments(64)
+                             .createResizing(source)) {
+            // reads and writes continue during the migration
+            for (int i = 0; i < 50_000; i++) {
+                assertEquals((Integer) i, map.get(i));
+                map.put(i + 50_000, i + 50_000);
+                if (i % 2 == 0)
+                    assertEquals((Integer) i, map.remove(i));
+            }
+
+            ChronicleMap<Integer, Integer> target =
+                    map.resizeCompletion().get(30, TimeUnit.SECONDS);
+            assertTrue(map.isResizeCompleted());
+            assertEquals(1.0, map.resizeProgress(), 0.0);
+            assertEquals(64, ((VanillaChronicleMap) target).actualSegments());
+
+            assertEquals(75_000, map.size());
+            assertEquals(75_000, target.size());
+            for (int i = 0; i < 100_000; i++) {
+                assertEquals(i < 50_000 && i % 2 == 0 ? null : (Integer) i, target.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void sizeAndIterationAreConsistentDuringMigration() {
+        ChronicleMap<Integer, Integer> source = ChronicleMapBuilder.of(Integer.class, Integer.class)
+                .entries(10_000)
+                .actualSegments(8)
+                .create();
+        for (int i = 0; i < 10_000; i++) {
+            source.put(i, i);
+        }
+        try (ResizingChronicleMap<Integer, Integer> map =
+                     ChronicleMapBuilder.of(Integer.class, Integer.class)
+                             .entries(10_000)
+                             .actualSegments(32)
+                             .createResizing(source)) {
+            while (!map.isResizeCompleted()) {
+                assertEquals(10_000, map.size());
+                int[] count = {0};
+                map.forEachEntry(c -> count[0]++);
+                assertEquals(10_000, count[0]);
+            }
+            assertEquals(10_000, map.entrySet().size());
+        }
+    }
+
+    @Test
+    public void operationsWithNotMigratedSegmentsGoToSource() throws Exception {
+        now = 1_000_000L;
+        migrationBlocked = new CountDownLatch(1);
+        migrationResumed = new CountDownLatch(1);
+        ChronicleMap<Integer, LongValue> source = expiringBuilder().actualSegments(4).create();
+        VanillaChronicleMap sourceMap = (VanillaChronicleMap) source;
+        // the migration is blocked in the segment 0, use the keys of other segments
+        List<Integer> presentKeys = new ArrayList<>();
+        List<Integer> absentKeys = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            if (i < 100)
+                source.addAndGetLong(i, 0, i);
+            if (sourceMap.segmentIndex(i) != 0)
+                (i < 100 ? presentKeys : absentKeys).add(i);
+        }
+        int present = presentKeys.get(0), absent = absentKeys.get(0);
+        try (ResizingChronicleMap<Integer, LongValue> map =
+                     expiringBuilder().actualSegments(16).createResizing(source)) {
+            try {
+                assertTrue(migrationBlocked.await(10, SECONDS));
+
+                assertEquals(present + 5L, map.addAndGetLong(present, 0, 5L));
+                assertTrue(map.compareAndSwapLong(present, 0, present + 5L, 7L));
+                assertEquals(7L, source.get(present).getValue());
+
+                LongValue value = map.newValueInstance();
+                value.setValue(42L);
+                assertNull(map.put(absent, value, 150, MINUTES));
+                assertEquals(42L, source.get(absent).getValue());
+
+                Map<Integer, LongValue> out = new HashMap<>();
+                map.getAll(Arrays.asList(present, absent, absentKeys.get(1)), out);
+                assertEquals(2, out.size());
+                assertEquals(7L, out.get(present).getValue());
+                assertEquals(42L, out.get(absent).getValue());
+
+                try {
+                    map.fragmentation();
+                    fail("fragmentation() shouldn't be supported during the resize");
+                } catch (UnsupportedOperationException expected) {
+                }
+                try {
+                    map.cacheStats();
+                    fail("cacheStats() shouldn't be supported during the resize");
+                } catch (UnsupportedOperationException expected) {
+                }
+
+                // all entries, except put with the longer time to live, expire
+                now += HOURS.toMicros(2);
+                FutureTask<Long> removal = new FutureTask<>(map::removeExpiredEntries);
+                Thread remover = new Thread(removal);
+                remover.start();
+                // the segments, which are not migrated yet, are processed before the migration
+                // reaches them, then the remover waits for the segment 0 to be migrated
+                while (remover.isAlive() && remover.getState() != Thread.State.WAITING) {
+                    Thread.yield();
+                }
+                migrationResumed.countDown();
+                assertEquals(presentKeys.size(), (long) removal.get(10, SECONDS));
+            } finally {
+                migrationResumed.countDown();
+            }
+
+            ChronicleMap<Integer, LongValue> target =
+                    map.resizeCompletion().get(30, SECONDS);
+            // the expired entries of the segment 0 are not migrated
+            assertEquals(1, target.size());
+            assertEquals(42L, map.get(absent).getValue());
+            // the expiry time is kept by the migration
+            now += MINUTES.toMicros(40);
+            assertNull(map.get(absent));
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.hash.replication.SingleChronicleHashReplication;
+import net.openhft.lang.io.ByteBufferBytes;
+import net.openhft.lang.io.Bytes;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.*;
+
+public class SegmentCompactionTest {
+
+    private static ChronicleMapBuilder<Long, String> smallSegmentBuilder() {
+        return ChronicleMapBuilder.of(Long.class, String.class)
+                .actualSegments(1)
+                .entriesPerSegment(1000)
+                .actualChunksPerSegment(1000)
+                .actualChunkSize(16);
+    }
+
+    private static String value(long key, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        sb.append(key);
+        while (sb.length() < length)
+            sb.append('x');
+        return sb.toString();
+    }
+
+    private static SegmentFragmentation fragmentation(ChronicleMap<?, ?> map) {
+        return map.fragmentation().get(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void thresholdShouldBeWithinBounds() {
+        ChronicleMapBuilder.of(Long.class, Long.class).compaction(1.5, 1, MILLISECONDS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void intervalShouldBePositive() {
+        ChronicleMapBuilder.of(Long.class, Long.class).compaction(0.5, 0, MILLISECONDS);
+    }
+
+    @Test
+    public void compactionJoinsFreeChunksIntoSingleRun() {
+        try (ChronicleMap<Long, String> map = smallSegmentBuilder().create()) {
+            SegmentFragmentation empty = fragmentation(map);
+            assertEquals(1, empty.tiers());
+            assertEquals(1000, empty.totalChunks());
+            assertEquals(1000, empty.freeChunks());
+            assertEquals(1000, empty.largestFreeRun());
+            assertEquals(0.0, empty.fragmentation(), 0.0);
+
+            map.put(0L, value(0, 20));
+            long entryChunks = 1000 - fragmentation(map).freeChunks();
+            long entries = 1000 / entryChunks;
+            for (long i = 1; i < entries; i++)
+                map.put(i, value(i, 20));
+            for (long i = 0; i < entries; i += 2)
+                map.remove(i);
+
+            SegmentFragmentation fragmented = fragmentation(map);
+            long freeChunks = fragmented.freeChunks();
+            assertTrue(fragmented.largestFreeRun() < 3 * entryChunks);
+            assertTrue(fragmented.fragmentation() > 0.9);
+            assertTrue(fragmented.freeRuns(
+                    63 - Long.numberOfLeadingZeros(entryChunks)) > entries / 4);
+
+            assertTrue(map.compact() > 0);
+            SegmentFragmentation compacted = fragmentation(map);
+            assertEquals(freeChunks, compacted.freeChunks());
+            assertEquals(freeChunks, compacted.largestFreeRun());
+            assertEquals(0.0, compacted.fragmentation(), 0.0);
+            assertEquals(1, compacted.freeRunHistogram().length -
+                    (int) Arrays.stream(compacted.freeRunHistogram())
+                            .filter(runs -> runs == 0L).count());
+            // already compact
+            assertEquals(0, map.compact());
+
+            for (long i = 1; i < entries; i += 2)
+                assertEquals(value(i, 20), map.get(i));
+            assertEquals(entries / 2, map.size());
+
+            // a value, which didn't fit any free run before the compaction
+            int largeLength = (int) (fragmented.largestFreeRun() * 16 + 16);
+            map.put(-1L, value(-1, largeLength));
+            assertEquals(value(-1, largeLength), map.get(-1L));
+            for (long i = 1; i < entries; i += 2)
+                assertEquals(value(i, 20), map.get(i));
+        }
+    }
+
+    @Test
+    public void relocatedEntriesAreCompacted() {
+        try (ChronicleMap<Long, String> map = smallSegmentBuilder().create()) {
+            Map<Long, String> expected = new HashMap<>();
+            for (long i = 0; i < 100; i++) {
+                map.put(i, value(i, 10));
+                expected.put(i, value(i, 10));
+            }
+            for (int round = 1; round <= 3; round++) {
+                for (long i = round; i < 100; i += 3) {
+                    map.put(i, value(i, 10 + round * 30));
+                    expected.put(i, value(i, 10 + round * 30));
+                }
+            }
+            assertTrue(fragmentation(map).fragmentation() > 0.0);
+            map.compact();
+            assertEquals(0.0, fragmentation(map).fragmentation(), 0.0);
+            assertEquals(expected, map);
+            for (long i = 0; i < 100; i++)
+                assertEquals(expected.get(i), map.get(i));
+        }
+    }
+
+    @Test
+    public void segmentTiersAreCompacted() {
+        try (ChronicleMap<Long, String> map = smallSegmentBuilder().maxBloatFactor(2.0)
+                .create()) {
+            for (long i = 0; i < 300; i++)
+                map.put(i, value(i, 40));
+            SegmentFragmentation full = fragmentation(map);
+            assertEquals(2, full.tiers());
+            assertEquals(2000, full.totalChunks());
+            for (long i = 0; i < 300; i += 2)
+                map.remove(i);
+            long freeChunks = fragmentation(map).freeChunks();
+            assertTrue(map.compact() > 0);
+            SegmentFragmentation compacted = fragmentation(map);
+            assertEquals(freeChunks, compacted.freeChunks());
+            // free runs never span tiers, so the tail of each tier is a separate run
+            assertEquals(2L, Arrays.stream(compacted.freeRunHistogram()).sum());
+            for (long i = 1; i < 300; i += 2)
+                assertEquals(value(i, 40), map.get(i));
+            assertEquals(150, map.size());
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void backgroundCompaction() throws InterruptedException {
+        try (ChronicleMap<Long, String> map = smallSegmentBuilder()
+                .compaction(0.5, 1, MILLISECONDS)
+                .create()) {
+            for (long i = 0; i < 200; i++)
+                map.put(i, value(i, 20));
+            for (long i = 0; i < 200; i += 2)
+                map.remove(i);
+            while (fragmentation(map).fragmentation() > 0.5)
+                Thread.sleep(1);
+            for (long i = 1; i < 200; i += 2)
+                assertEquals(value(i, 20), map.get(i));
+        }
+    }
+
+    @Test
+    public void pendingReplicationChangesFollowMovedEntries() {
+        try (ChronicleMap<Long, String> map1 = replicatedSmallSegmentMap((byte) 1);
+             ChronicleMap<Long, String> map2 = replicatedSmallSegmentMap((byte) 2)) {
+            ReplicatedChronicleMap.ModificationIterator it =
+                    (ReplicatedChronicleMap.ModificationIterator) ((Replica) map1)
+                            .acquireModificationIterator((byte) 2,
+                                    Replica.ModificationNotifier.NOP);
+            for (long i = 0; i < 100; i++)
+                map1.put(i, value(i, 10));
+            for (long i = 0; i < 100; i += 2)
+                map1.put(i, value(i, 100));
+            assertTrue(map1.compact() > 0);
+
+            Bytes destination = new ByteBufferBytes(ByteBuffer.allocateDirect(64 * 1024));
+            Replica.EntryCallback callback = new Replica.EntryCallback() {
+                @Override
+                public boolean onEntry(Bytes entry, int chronicleId) {
+                    ((Replica.EntryExternalizable) map1).writeExternalEntry(entry, destination,
+                            chronicleId, (byte) 2);
+                    return true;
+                }
+
+                @Override
+                public boolean shouldBeIgnored(Bytes entry, int chronicleId) {
+                    return false;
+                }
+            };
+            while (it.nextEntry(callback, 0)) {
+                destination.flip();
+                ((Replica.EntryExternalizable) map2).readExternalEntry(
+                        VanillaContext.get(
+                                ReplicatedChronicleMap.BytesReplicatedContextFactory.INSTANCE),
+                        destination);
+                destination.clear();
+            }
+            assertEquals(100, map2.size());
+            assertEquals(map1, map2);
+        }
+    }
+
+    private static ChronicleMap<Long, String> replicatedSmallSegmentMap(byte identifier) {
+        return smallSegmentBuilder()
+                .replication(SingleChronicleHashReplication.builder().createWithId(identifier))
+                .create();
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.hash.replication.SingleChronicleHashReplication;
+import net.openhft.chronicle.hash.replication.TcpTransportAndNetworkConfig;
+import net.openhft.lang.io.ByteBufferBytes;
+import net.openhft.lang.io.Bytes;
+import net.openhft.lang.io.NativeBytes;
+import org.junit.Test;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static net.openhft.chronicle.map.Builder.getPersistenceFile;
+import static org.junit.Assert.*;
+
+public class SegmentDigestsTest {
+
+    static int s_port = 17050;
+
+    private static ChronicleMap<Integer, CharSequence> replicatedMap(byte identifier) {
+        return ChronicleMapBuilder.of(Integer.class, CharSequence.class)
+                .entries(1000)
+                .actualSegments(16)
+                .replication(identifier)
+                .create();
+    }
+
+    /**
+     * Replicates the changes of the {@code source} map to the {@code target} map, with the node
+     * identifier 2.
+     */
+    private static void replicate(ChronicleMap<?, ?> source, ChronicleMap<?, ?> target) {
+        final Replica.EntryExternalizable externalizable = (Replica.EntryExternalizable) source;
+        final List<Bytes> entries = new ArrayList<>();
+        Replica.EntryCallback callback = new Replica.EntryCallback() {
+            @Override
+            public boolean onEntry(Bytes entry, int chronicleId) {
+                Bytes destination = new ByteBufferBytes(ByteBuffer.allocateDirect(1024));
+                externalizable.writeExternalEntry(entry, destination, chronicleId);
+                destination.flip();
+                entries.add(destination);
+                return true;
+            }
+
+            @Override
+            public boolean shouldBeIgnored(Bytes entry, int chronicleId) {
+                return false;
+            }
+        };
+        Replica.ModificationIterator it = ((Replica) source).acquireModificationIterator(
+                (byte) 2, Replica.ModificationNotifier.NOP);
+        while (it.nextEntry(callback, 0)) ;
+        for (Bytes entry : entries) {
+            ((Replica.EntryExternalizable) target).readExternalEntry(
+                    VanillaContext.get(
+                            ReplicatedChronicleMap.BytesReplicatedContextFactory.INSTANCE),
+                    entry);
+        }
+    }
+
+    private static long[] digests(ChronicleMap<?, ?> map) {
+        return ((Replica) map).segmentDigests();
+    }
+
+    private static int differingSegments(ChronicleMap<?, ?> map1, ChronicleMap<?, ?> map2) {
+        long[] digests1 = digests(map1);
+        long[] digests2 = digests(map2);
+        assertEquals(digests1.length, digests2.length);
+        int differing = 0;
+        for (int i = 0; i < digests1.length; i++) {
+            if (digests1[i] != digests2[i])
+                differing++;
+        }
+        return differing;
+    }
+
+    private static long pageAlign(long size) {
+        long pageMask = NativeBytes.UNSAFE.pageSize() - 1L;
+        return (size + pageMask) & ~pageMask;
+    }
+
+    /**
+     * Rewrites the file of the replicated map, as if it was created by the version, which didn't
+     * store the segment digests in the header: without the header field and the digests.
+     */
+    private static void removeSegmentDigests(File file, long mapHeaderInnerSize, int segments)
+            throws IOException {
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        String content = new String(bytes, StandardCharsets.ISO_8859_1);
+        String field = "<segmentDigestsInHeader>true</segmentDigestsInHeader>";
+        int fieldStart = content.indexOf(field);
+        assertTrue(fieldStart > 0);
+        // keeps the length of the serialized header
+        Arrays.fill(bytes, fieldStart, fieldStart + field.length(), (byte) ' ');
+        long digestsSize = (segments * 8L + 63L) & ~63L;
+        int newHeaderSize = (int) pageAlign(mapHeaderInnerSize);
+        int oldHeaderSize = (int) pageAlign(mapHeaderInnerSize - digestsSize);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(bytes, 0, oldHeaderSize);
+            out.write(bytes, newHeaderSize, bytes.length - newHeaderSize);
+        }
+    }
+
+    @Test
+    public void filesWithoutDigestsAreMappedWithTheirLayout() throws IOException {
+        File file = getPersistenceFile();
+        // the digests of 512 segments take 4 KB, so the segments are shifted by a page
+        ChronicleMapBuilder<Integer, CharSequence> builder = ChronicleMapBuilder
+                .of(Integer.class, CharSequence.class)
+                .entries(1000)
+                .actualSegments(512)
+                .replication((byte) 1);
+        long mapHeaderInnerSize;
+        try (ChronicleMap<Integer, CharSequence> map = builder.createPersistedTo(file)) {
+            mapHeaderInnerSize = ((ReplicatedChronicleMap) map).mapHeaderInnerSize();
+            for (int i = 0; i < 1000; i++) {
+                map.put(i, "value" + i);
+            }
+        }
+        removeSegmentDigests(file, mapHeaderInnerSize, 512);
+        try (ChronicleMap<Integer, CharSequence> map = builder.createPersistedTo(file)) {
+            assertNull(digests(map));
+            assertEquals(1000, map.size());
+            for (int i = 0; i < 1000; i++) {
+                assertEquals("value" + i, map.get(i).toString());
+            }
+            map.put(1000, "value1000");
+            assertEquals("value1000", map.get(1000).toString());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void digestsAreEqualIfVersionsAreEqual() {
+        try (ChronicleMap<Integer, CharSequence> map1 = replicatedMap((byte) 1);
+             ChronicleMap<Integer, CharSequence> map2 = replicatedMap((byte) 2)) {
+            ((Replica) map1).acquireModificationIterator(
+                    (byte) 2, Replica.ModificationNotifier.NOP);
+            assertEquals(16, digests(map1).length);
+            assertEquals(0, differingSegments(map1, map2));
+
+            for (int i = 0; i < 500; i++) {
+                map1.put(i, "value" + i);
+            }
+            assertEquals(16, differingSegments(map1, map2));
+            replicate(map1, map2);
+            assertEquals(0, differingSegments(map1, map2));
+
+            // the entry is relocated, to fit the larger value
+            map1.put(7, "a value much longer than the value which was put before");
+            assertEquals(1, differingSegments(map1, map2));
+            replicate(map1, map2);
+            assertEquals(0, differingSegments(map1, map2));
+
+            map1.remove(8);
+            assertEquals(1, differingSegments(map1, map2));
+            replicate(map1, map2);
+            assertEquals(0, differingSegments(map1, map2));
+
+            // the same value, but a newer version
+            map1.put(9, "value9");
+            assertEquals(1, differingSegments(map1, map2));
+        }
+    }
+
+    @Test
+    public void rangesCoverAllSegments() {
+        long[] segmentDigests = new long[3000];
+        long sum = 0L;
+        for (int i = 0; i < segmentDigests.length; i++) {
+            segmentDigests[i] = i * 0x9E3779B97F4A7C15L;
+            sum += segmentDigests[i];
+        }
+        int ranges = SegmentDigests.ranges(segmentDigests.length);
+        assertEquals(SegmentDigests.MAX_RANGES, ranges);
+        assertEquals(segmentDigests.length,
+                SegmentDigests.rangeStart(segmentDigests.length, ranges, ranges));
+        long rangesSum = 0L;
+        for (long rangeDigest : SegmentDigests.rangeDigests(segmentDigests, ranges)) {
+            rangesSum += rangeDigest;
+        }
+        assertEquals(sum, rangesSum);
+        assertEquals(7, SegmentDigests.ranges(7));
+    }
+
+    private static TcpReplicator tcpReplicator(ChronicleMap<?, ?> map) {
+        for (Closeable closeable : ((ReplicatedChronicleMap<?, ?, ?, ?, ?, ?>) map).closeables) {
+            if (closeable instanceof TcpReplicator)
+                return (TcpReplicator) closeable;
+        }
+        throw new AssertionError("no tcp replicator");
+    }
+
+    @Test
+    public void onlyDifferingSegmentsAreResyncedOnReconnect()
+            throws IOException, InterruptedException {
+        int port = s_port;
+        s_port += 2;
+        ChronicleMapBuilder<Integer, CharSequence> builder2 =
+                ChronicleMapBuilder.of(Integer.class, CharSequence.class)
+                        .entries(1000)
+                        .actualSegments(64)
+                        .replication(SingleChronicleHashReplication.builder()
+                                .tcpTransportAndNetwork(TcpTransportAndNetworkConfig.of(port + 1))
+                                .createWithId((byte) 2));
+        File file2 = getPersistenceFile();
+        try (ChronicleMap<Integer, CharSequence> map1 =
+                     ChronicleMapBuilder.of(Integer.class, CharSequence.class)
+                             .entries(1000)
+                             .actualSegments(64)
+                             .replication(SingleChronicleHashReplication.builder()
+                                     .tcpTransportAndNetwork(TcpTransportAndNetworkConfig
+                                             .of(port, new InetSocketAddress("localhost", port + 1))
+                                             .heartBeatInterval(1, TimeUnit.SECONDS))
+                                     .createWithId((byte) 1))
+                             .create()) {
+            try (ChronicleMap<Integer, CharSequence> map2 = builder2.createPersistedTo(file2)) {
+                for (int i = 0; i < 500; i++) {
+                    map1.put(i, "value" + i);
+                }
+                waitTillEqual(map1, map2);
+            }
+            TcpReplicator replicator = tcpReplicator(map1);
+            long compared = replicator.segmentRangesCompared();
+            long resynced = replicator.segmentRangesResynced();
+
+            map1.put(5, "changed while disconnected");
+
+            // the restarted node doesn't know what it has received from map1, so without the
+            // digests all the entries would be resent
+            try (ChronicleMap<Integer, CharSequence> map2 = builder2.createPersistedTo(file2)) {
+                waitTillEqual(map1, map2);
+                assertEquals("changed while disconnected", map2.get(5).toString());
+                for (int t = 0; t < 5000 && replicator.segmentRangesCompared() == compared; t++) {
+                    Thread.sleep(1);
+                }
+                assertEquals(compared + 64, replicator.segmentRangesCompared());
+                assertTrue(replicator.segmentRangesResynced() - resynced <= 1);
+            }
+        }
+    }
+
+    private static void waitTillEqual(ChronicleMap<Integer, CharSequence> map1,
+                                      ChronicleMap<Integer, CharSequence> map2)
+            throws InterruptedException {
+        for (int t = 0; t < 5000 && !map1.equals(map2); t++) {
+            Thread.sleep(1);
+        }
+        assertEquals(map1, map2);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.hash.locks.SegmentLocking;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Compares latencies of the map operations under write-heavy contention on a few segments, with
+ * each {@link SegmentLocking} implementation. Usage: {@code [threads] [writePercent]}, defaults
+ * are the number of available processors and 90.
+ */
+public class SegmentLockingLatencyMain {
+    static final int KEYS = 10_000;
+    static final int SEGMENTS = 2;
+    static final int OPS_PER_THREAD = 2_000_000;
+
+    public static void main(String... args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) :
+                Runtime.getRuntime().availableProcessors();
+        int writePercent = args.length > 1 ? Integer.parseInt(args[1]) : 90;
+        for (int run = 0; run < 3; run++) {
+            for (SegmentLocking segmentLocking : SegmentLocking.values()) {
+                run(segmentLocking, threads, writePercent);
+            }
+            System.out.println();
+        }
+    }
+
+    static void run(SegmentLocking segmentLocking, int threads, int writePercent)
+            throws InterruptedException {
+        try (ChronicleMap<Long, Long> map = ChronicleMapBuilder.of(Long.class, Long.class)
+                .entries(KEYS).actualSegments(SEGMENTS).segmentLocking(segmentLocking).create()) {
+            for (long i = 0; i < KEYS; i++) {
+                map.put(i, i);
+            }
+            Histogram[] histograms = new Histogram[threads];
+            Thread[] workers = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                Histogram times = histograms[t] = new Histogram();
+                workers[t] = new Thread(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < OPS_PER_THREAD; i++) {
+                        long key = random.nextInt(KEYS);
+                        long start = System.nanoTime();
+                        if (random.nextInt(100) < writePercent) {
+                            map.put(key, start);
+                        } else {
+                            map.get(key);
+                        }
+                        times.sample(System.nanoTime() - start);
+                    }
+                });
+            }
+            long start = System.nanoTime();
+            for (Thread worker : workers) {
+                worker.start();
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            System.out.printf("%-16s threads=%d writes=%d%% time=%,d ms%n",
+                    segmentLocking, threads, writePercent, millis);
+            for (int t = 0; t < threads; t++) {
+                System.out.printf("  thread %d : ", t);
+                histograms[t].printPercentiles(" micro-seconds.");
+            }
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.hash.locks.SegmentLocking;
+import net.openhft.lang.io.NativeBytes;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+@RunWith(value = Parameterized.class)
+public class SegmentLockingTest {
+
+    @Parameterized.Parameters
+    public static Collection<Object[]> data() {
+        List<Object[]> data = new ArrayList<>();
+        for (SegmentLocking segmentLocking : SegmentLocking.values()) {
+            data.add(new Object[] {segmentLocking});
+        }
+        return data;
+    }
+
+    private final SegmentLocking segmentLocking;
+
+    public SegmentLockingTest(SegmentLocking segmentLocking) {
+        this.segmentLocking = segmentLocking;
+    }
+
+    private ChronicleMapBuilder<Integer, Long> builder() {
+        return ChronicleMapBuilder.of(Integer.class, Long.class)
+                .entries(100).actualSegments(1).segmentLocking(segmentLocking);
+    }
+
+    @Test
+    public void concurrentWritesAreNotLost() throws Exception {
+        int threads = 4, keys = 10, increments = 20_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (ChronicleMap<Integer, Long> map = builder().optimisticReads(true).create()) {
+            for (int k = 0; k < keys; k++) {
+                map.put(k, 0L);
+            }
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                boolean writeLock = t % 2 == 0;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < increments; i++) {
+                        try (MapKeyContext<Integer, Long> c = map.context(i % keys)) {
+                            if (writeLock) {
+                                c.writeLock().lock();
+                            } else {
+                                c.updateLock().lock();
+                            }
+                            c.put(c.get() + 1);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+            long sum = 0;
+            for (int k = 0; k < keys; k++) {
+                sum += map.get(k);
+            }
+            assertEquals((long) threads * increments, sum);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void writeLockExcludesOtherParties() throws Exception {
+        ExecutorService other = Executors.newSingleThreadExecutor();
+        try (ChronicleMap<Integer, Long> map = builder().create()) {
+            map.put(1, 1L);
+            Callable<Boolean> tryReadLock = () -> {
+                try (MapKeyContext<Integer, Long> c = map.context(1)) {
+                    return c.readLock().tryLock();
+                }
+            };
+            Callable<Boolean> tryUpdateLock = () -> {
+                try (MapKeyContext<Integer, Long> c = map.context(1)) {
+                    return c.updateLock().tryLock();
+                }
+            };
+            try (MapKeyContext<Integer, Long> c = map.context(1)) {
+                c.writeLock().lock();
+                assertFalse(other.submit(tryReadLock).get());
+                assertFalse(other.submit(tryUpdateLock).get());
+            }
+            assertTrue(other.submit(tryReadLock).get());
+            assertTrue(other.submit(tryUpdateLock).get());
+        } finally {
+            other.shutdownNow();
+        }
+    }
+
+    @Test
+    public void segmentLockingIsStoredWithPersistedMap() throws Exception {
+        File file = File.createTempFile("segment-locking", ".dat");
+        file.delete();
+        file.deleteOnExit();
+        try (ChronicleMap<Integer, Long> map = builder().createPersistedTo(file)) {
+            map.put(1, 1L);
+        }
+        try (ChronicleMap<Integer, Long> map = ChronicleMapBuilder.of(Integer.class, Long.class)
+                .entries(100).actualSegments(1).createPersistedTo(file)) {
+            assertEquals(segmentLocking, ((VanillaChronicleMap) map).segmentLocking);
+            assertEquals(1L, (long) map.get(1));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void lockInterruptiblyIsInterrupted() throws Exception {
+        assumeTrue(segmentLocking == SegmentLocking.FAIR);
+        ExecutorService other = Executors.newFixedThreadPool(2);
+        try (ChronicleMap<Integer, Long> map = builder().create()) {
+            map.put(1, 1L);
+            CountDownLatch locked = new CountDownLatch(1), release = new CountDownLatch(1);
+            Future<?> holder = other.submit(() -> {
+                try (MapKeyContext<Integer, Long> c = map.context(1)) {
+                    c.writeLock().lock();
+                    locked.countDown();
+                    release.await();
+                }
+                return null;
+            });
+            locked.await();
+            Thread main = Thread.currentThread();
+            Future<?> interrupt = other.submit(() -> {
+                Thread.sleep(100);
+                main.interrupt();
+                return null;
+            });
+            long start = System.nanoTime();
+            try (MapKeyContext<Integer, Long> c = map.context(1)) {
+                c.readLock().lockInterruptibly();
+                fail("lockInterruptibly() should be interrupted");
+            } catch (InterruptedException expected) {
+                // expected
+            }
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+            interrupt.get();
+            release.countDown();
+            holder.get();
+            // the turn is passed, the lock could be acquired
+            try (MapKeyContext<Integer, Long> c = map.context(1)) {
+                assertTrue(c.writeLock().tryLock(1, TimeUnit.SECONDS));
+            }
+        } finally {
+            other.shutdownNow();
+        }
+    }
+
+    @Test
+    public void turnOfDeadPartyIsPassed() throws Exception {
+        assumeTrue(segmentLocking == SegmentLocking.FAIR);
+        try (ChronicleMap<Integer, Long> map = builder().create()) {
+            map.put(1, 1L);
+            // simulate a party, which took a ticket and died before its turn is passed
+            VanillaChronicleMap vanillaMap = (VanillaChronicleMap) map;
+            long segmentHeaderAddress = vanillaMap.ms.address() + vanillaMap.segmentHeaderOffset(0);
+            Field nextTicketOffset = Class.forName(
+                    "net.openhft.chronicle.hash.impl.FairSegmentHeader")
+                    .getDeclaredField("NEXT_TICKET_OFFSET");
+            nextTicketOffset.setAccessible(true);
+            NativeBytes.UNSAFE.getAndAddInt(
+                    null, segmentHeaderAddress + nextTicketOffset.getLong(null), 1);
+
+            long start = System.nanoTime();
+            try (MapKeyContext<Integer, Long> c = map.context(1)) {
+                c.updateLock().lock();
+                c.put(2L);
+            }
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+            assertEquals(2L, (long) map.get(1));
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class SegmentTiersTest {
+
+    private static ChronicleMapBuilder<Long, Long> smallSegmentBuilder(double maxBloatFactor) {
+        return ChronicleMapBuilder.of(Long.class, Long.class)
+                .actualSegments(1)
+                .entriesPerSegment(1000)
+                .actualChunksPerSegment(1000)
+                .maxBloatFactor(maxBloatFactor);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void fullSegmentWithoutExtraTiersFails() {
+        try (ChronicleMap<Long, Long> map = smallSegmentBuilder(1.0).create()) {
+            for (long i = 0; i < 2000; i++) {
+                map.put(i, i);
+            }
+        }
+    }
+
+    @Test
+    public void segmentGrowsIntoExtraTiers() {
+        try (ChronicleMap<Long, Long> map = smallSegmentBuilder(4.0).create()) {
+            for (long i = 0; i < 3500; i++) {
+                map.put(i, i);
+            }
+            assertEquals(3500, map.size());
+            assertEquals(3L, ((VanillaChronicleMap) map).allocatedExtraTiers());
+            for (long i = 0; i < 3500; i++) {
+                assertEquals((Long) i, map.get(i));
+            }
+
+            for (long i = 0; i < 3500; i += 2) {
+                assertEquals((Long) i, map.remove(i));
+            }
+            assertEquals(1750, map.size());
+            Set<Long> keys = new HashSet<>();
+            for (Map.Entry<Long, Long> e : map.entrySet()) {
+                assertEquals(e.getKey(), e.getValue());
+                assertTrue(keys.add(e.getKey()));
+            }
+            assertEquals(1750, keys.size());
+            long[] count = {0};
+            map.forEachEntry(c -> count[0]++);
+            assertEquals(1750, count[0]);
+
+            // freed chunks in all tiers are reused, no more extra tiers required
+            for (long i = 3500; i < 5250; i++) {
+                map.put(i, i);
+            }
+            assertEquals(3500, map.size());
+            assertEquals(3L, ((VanillaChronicleMap) map).allocatedExtraTiers());
+
+            map.clear();
+            assertEquals(0, map.size());
+            for (long i = 0; i < 3500; i++) {
+                map.put(i, i);
+            }
+            assertEquals(3500, map.size());
+            assertEquals(3L, ((VanillaChronicleMap) map).allocatedExtraTiers());
+        }
+    }
+
+    @Test
+    public void growingValuesAreRelocatedBetweenTiers() {
+        try (ChronicleMap<Integer, String> map = ChronicleMapBuilder.of(Integer.class, String.class)
+                .actualSegments(1)
+                .entriesPerSegment(500)
+                .actualChunkSize(16)
+                .actualChunksPerSegment(1000)
+                .maxBloatFactor(6.0)
+                .create()) {
+            for (int i = 0; i < 500; i++) {
+                map.put(i, "v" + i);
+            }
+            StringBuilder sb = new StringBuilder();
+            for (int size = 1; size <= 4; size++) {
+                sb.append("0123456789abcdef");
+                for (int i = 0; i < 500; i++) {
+                    map.put(i, sb + "v" + i);
+                }
+            }
+            assertEquals(500, map.size());
+            for (int i = 0; i < 500; i++) {
+                assertEquals(sb + "v" + i, map.get(i));
+            }
+            assertTrue(((VanillaChronicleMap) map).allocatedExtraTiers() > 0L);
+        }
+    }
+
+    @Test
+    public void extraTiersPoolIsExhausted() {
+        try (ChronicleMap<Long, Long> map = smallSegmentBuilder(2.0).create()) {
+            for (long i = 0; i < 2000; i++) {
+                map.put(i, i);
+            }
+            try {
+                map.put(2000L, 2000L);
+                fail("extra tiers pool should be exhausted");
+            } catch (IllegalStateException expected) {
+                // expected
+            }
+            assertEquals(2000, map.size());
+        }
+    }
+
+    @Test
+    public void extraTiersArePersisted() throws IOException {
+        File file = Builder.getPersistenceFile();
+        try {
+            try (ChronicleMap<Long, Long> map = smallSegmentBuilder(3.0).createPersistedTo(file)) {
+                for (long i = 0; i < 2500; i++) {
+                    map.put(i, i);
+                }
+            }
+            try (ChronicleMap<Long, Long> map = smallSegmentBuilder(3.0).createPersistedTo(file)) {
+                assertEquals(2500, map.size());
+                for (long i = 0; i < 2500; i++) {
+                    assertEquals((Long) i, map.get(i));
+                }
+                assertEquals(2L, ((VanillaChronicleMap) map).allocatedExtraTiers());
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxBloatFactorLessThanOneIsRejected() {
+        ChronicleMapBuilder.of(Long.class, Long.class).maxBloatFactor(0.5);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.hash.replication.TcpTransportAndNetworkConfig;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static net.openhft.chronicle.map.ChronicleMapStatelessClientBuilder.createClientOf;
+import static org.junit.Assert.*;
+
+public class StatelessClientAsyncTest {
+
+    static int s_port = 20050;
+
+    @Test
+    public void localMapCompletesImmediately() throws Exception {
+        try (ChronicleMap<Integer, Integer> map = ChronicleMapBuilder
+                .of(Integer.class, Integer.class).create()) {
+            assertNull(map.putAsync(1, 1).get());
+            assertEquals((Integer) 1, map.getAsync(1).get());
+            assertTrue(map.containsKeyAsync(1).get());
+            assertEquals((Integer) 1, map.removeAsync(1).get());
+            assertFalse(map.containsKeyAsync(1).get());
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void manyRequestsInFlight() throws IOException, InterruptedException,
+            ExecutionException {
+        int port = s_port++;
+        try (ChronicleMap<Integer, Integer> serverMap = ChronicleMapBuilder
+                .of(Integer.class, Integer.class)
+                .entries(1000)
+                .replication((byte) 2, TcpTransportAndNetworkConfig.of(port))
+                .create();
+             ChronicleMap<Integer, Integer> client =
+                     createClientOf(new InetSocketAddress("localhost", port))) {
+
+            List<CompletableFuture<Integer>> puts = new ArrayList<>();
+            for (int i = 0; i < 500; i++)
+                puts.add(client.putAsync(i, i));
+            for (CompletableFuture<Integer> put : puts)
+                assertNull(put.get());
+            assertEquals(500, serverMap.size());
+
+            // asynchronous and synchronous calls share the connection
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            try {
+                List<Future<?>> tasks = new ArrayList<>();
+                for (int t = 0; t < 4; t++) {
+                    final int thread = t;
+                    tasks.add(executor.submit(() -> {
+                        List<CompletableFuture<Integer>> gets = new ArrayList<>();
+                        for (int i = thread; i < 500; i += 4) {
+                            gets.add(client.getAsync(i));
+                            if (i % 3 == 0)
+                                assertEquals((Integer) i, client.get(i));
+                        }
+                        for (int i = thread, j = 0; i < 500; i += 4, j++)
+                            assertEquals((Integer) i, gets.get(j).join());
+                        return null;
+                    }));
+                }
+                for (Future<?> task : tasks)
+                    task.get();
+            } finally {
+                executor.shutdown();
+            }
+
+            assertTrue(client.containsKeyAsync(7).get());
+            assertEquals((Integer) 7, client.removeAsync(7).get());
+            assertFalse(client.containsKeyAsync(7).get());
+            assertNull(client.getAsync(7).get());
+            assertEquals(499, serverMap.size());
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void pendingRequestsFailOnClose() throws IOException, InterruptedException {
+        int port = s_port++;
+        try (ChronicleMap<Integer, Integer> serverMap = ChronicleMapBuilder
+                .of(Integer.class, Integer.class)
+                .replication((byte) 2, TcpTransportAndNetworkConfig.of(port))
+                .create()) {
+            ChronicleMap<Integer, Integer> client =
+                    createClientOf(new InetSocketAddress("localhost", port));
+            serverMap.put(1, 1);
+            CompletableFuture<Integer> get = client.getAsync(1);
+            client.close();
+            try {
+                assertEquals((Integer) 1, get.join());
+            } catch (CompletionException e) {
+                // the response didn't arrive before close
+                assertTrue(e.getCause() instanceof IORuntimeException);
+            }
+        }
+    }
+}
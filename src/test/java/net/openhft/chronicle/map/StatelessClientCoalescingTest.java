@@ -0,0 +1,150 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.hash.replication.TcpTransportAndNetworkConfig;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StatelessClientCoalescingTest {
+
+    static int s_port = 20100;
+
+    private static ChronicleMap<Integer, Integer> serverMap(int port) throws IOException {
+        return ChronicleMapBuilder.of(Integer.class, Integer.class)
+                .entries(1000)
+                .replication((byte) 2, TcpTransportAndNetworkConfig.of(port))
+                .create();
+    }
+
+    private static ChronicleMap<Integer, Integer> client(int port, int maxBytes, long maxDelay,
+                                                         TimeUnit units)
+            throws IOException {
+        return ChronicleMapStatelessClientBuilder
+                .<Integer, Integer>of(new InetSocketAddress("localhost", port))
+                .putReturnsNull(true)
+                .removeReturnsNull(true)
+                .coalesceWrites(maxBytes, maxDelay, units)
+                .create();
+    }
+
+    private static void waitForSize(ChronicleMap<?, ?> map, int size) throws InterruptedException {
+        for (int t = 0; t < 5000 && map.size() != size; t++)
+            Thread.sleep(1);
+        assertEquals(size, map.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxBytesShouldBePositive() {
+        ChronicleMapStatelessClientBuilder.of(new InetSocketAddress("localhost", 1))
+                .coalesceWrites(0, 1, MILLISECONDS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxDelayShouldBeNonNegative() {
+        ChronicleMapStatelessClientBuilder.of(new InetSocketAddress("localhost", 1))
+                .coalesceWrites(1024, -1, MILLISECONDS);
+    }
+
+    @Test(timeout = 20000)
+    public void writesAreHeldUntilFlush() throws IOException, InterruptedException {
+        int port = s_port++;
+        try (ChronicleMap<Integer, Integer> serverMap = serverMap(port);
+             ChronicleMap<Integer, Integer> client = client(port, 1 << 20, 1, HOURS)) {
+            for (int i = 0; i < 100; i++)
+                client.put(i, i);
+            client.remove(0);
+            Thread.sleep(100);
+            assertEquals(0, serverMap.size());
+
+            client.flush();
+            waitForSize(serverMap, 99);
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void requestWithResponseSendsHeldWrites() throws IOException {
+        int port = s_port++;
+        try (ChronicleMap<Integer, Integer> serverMap = serverMap(port);
+             ChronicleMap<Integer, Integer> client = client(port, 1 << 20, 1, HOURS)) {
+            client.put(1, 1);
+            client.put(2, 2);
+            // the writes are sent ahead of the request, in the same socket write
+            assertEquals((Integer) 2, client.get(2));
+            assertEquals(2, serverMap.size());
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void writesAreSentAfterMaxDelayOrMaxBytes() throws IOException, InterruptedException {
+        int port = s_port++;
+        try (ChronicleMap<Integer, Integer> serverMap = serverMap(port);
+             ChronicleMap<Integer, Integer> client = client(port, 1 << 20, 5, MILLISECONDS)) {
+            client.put(1, 1);
+            waitForSize(serverMap, 1);
+        }
+
+        port = s_port++;
+        try (ChronicleMap<Integer, Integer> serverMap = serverMap(port);
+             ChronicleMap<Integer, Integer> client = client(port, 256, 1, HOURS)) {
+            for (int i = 0; i < 100; i++)
+                client.put(i, i);
+            // all but the writes after the last full batch are sent without flush()
+            for (int t = 0; t < 5000 && serverMap.size() < 90; t++)
+                Thread.sleep(1);
+            assertTrue(serverMap.size() >= 90);
+            client.flush();
+            waitForSize(serverMap, 100);
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void writesFromManyThreadsAreCoalesced() throws Exception {
+        int port = s_port++;
+        try (ChronicleMap<Integer, Integer> serverMap = serverMap(port);
+             ChronicleMap<Integer, Integer> client = client(port, 4096, 1, SECONDS)) {
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                final int thread = t;
+                threads.add(new Thread(() -> {
+                    for (int i = thread; i < 800; i += 4)
+                        client.put(i, i);
+                }));
+            }
+            threads.forEach(Thread::start);
+            for (Thread thread : threads)
+                thread.join();
+            client.flush();
+            waitForSize(serverMap, 800);
+            for (int i = 0; i < 800; i++)
+                assertEquals((Integer) i, serverMap.get(i));
+        }
+    }
+}
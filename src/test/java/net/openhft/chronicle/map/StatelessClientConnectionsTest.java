@@ -0,0 +1,119 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.hash.replication.TcpTransportAndNetworkConfig;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+public class StatelessClientConnectionsTest {
+
+    static int s_port = 20200;
+
+    private static ChronicleMap<Integer, Integer> serverMap(int port) throws IOException {
+        return ChronicleMapBuilder.of(Integer.class, Integer.class)
+                .entries(1000)
+                .replication((byte) 2, TcpTransportAndNetworkConfig.of(port))
+                .create();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void connectionsShouldBePositive() {
+        ChronicleMapStatelessClientBuilder.of(new InetSocketAddress("localhost", 1))
+                .connections(0);
+    }
+
+    @Test(timeout = 20000)
+    public void singleConnectionByDefault() throws IOException {
+        int port = s_port++;
+        try (ChronicleMap<Integer, Integer> serverMap = serverMap(port);
+             ChronicleMap<Integer, Integer> client = ChronicleMapStatelessClientBuilder
+                     .<Integer, Integer>of(new InetSocketAddress("localhost", port))
+                     .create()) {
+            assertTrue(client instanceof StatelessChronicleMap);
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void requestsAreRoutedByKey() throws Exception {
+        int port = s_port++;
+        try (ChronicleMap<Integer, Integer> serverMap = serverMap(port);
+             ChronicleMap<Integer, Integer> client = ChronicleMapStatelessClientBuilder
+                     .<Integer, Integer>of(new InetSocketAddress("localhost", port))
+                     .connections(4)
+                     .create()) {
+            PooledStatelessChronicleMap<Integer, Integer> pooled =
+                    (PooledStatelessChronicleMap<Integer, Integer>) client;
+            Set<StatelessChronicleMap<Integer, Integer>> used =
+                    Collections.newSetFromMap(new IdentityHashMap<>());
+            for (int i = 0; i < 100; i++) {
+                used.add(pooled.connection(i));
+                assertSame(pooled.connection(i), pooled.connection(i));
+            }
+            assertEquals(4, used.size());
+
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                final int thread = t;
+                threads.add(new Thread(() -> {
+                    for (int i = thread; i < 400; i += 4) {
+                        client.put(i, i);
+                        client.put(i, i + 1);
+                    }
+                }));
+            }
+            threads.forEach(Thread::start);
+            for (Thread thread : threads)
+                thread.join();
+            assertEquals(400, client.size());
+            for (int i = 0; i < 400; i++)
+                assertEquals((Integer) (i + 1), client.get(i));
+
+            List<CompletableFuture<Integer>> removes = new ArrayList<>();
+            for (int i = 0; i < 200; i++)
+                removes.add(client.removeAsync(i));
+            for (int i = 0; i < 200; i++)
+                assertEquals((Integer) (i + 1), removes.get(i).get());
+            assertEquals(200, serverMap.size());
+
+            Map<Integer, Integer> batch = new HashMap<>();
+            for (int i = 0; i < 200; i++)
+                batch.put(i, -i);
+            client.putAll(batch);
+            Map<Integer, Integer> out = new HashMap<>();
+            client.getAll(Arrays.asList(0, 1, 199, 200, 399), out);
+            assertEquals((Integer) 0, out.get(0));
+            assertEquals((Integer) (-199), out.get(199));
+            assertEquals((Integer) 400, out.get(399));
+            assertEquals(5, out.size());
+            assertEquals(400, serverMap.size());
+            assertEquals(serverMap, client);
+
+            client.clear();
+            assertTrue(serverMap.isEmpty());
+            assertTrue(client.isEmpty());
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.hash.replication.TcpTransportAndNetworkConfig;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+import static org.junit.Assert.*;
+
+public class StatelessClientNearCacheTest {
+
+    static int s_port = 20150;
+
+    private static ChronicleMap<Integer, Integer> serverMap(int port) throws IOException {
+        return ChronicleMapBuilder.of(Integer.class, Integer.class)
+                .entries(1000)
+                .replication((byte) 2, TcpTransportAndNetworkConfig.of(port))
+                .create();
+    }
+
+    private static ChronicleMap<Integer, Integer> client(int port, int maxEntries)
+            throws IOException {
+        return ChronicleMapStatelessClientBuilder
+                .<Integer, Integer>of(new InetSocketAddress("localhost", port))
+                .nearCache(maxEntries)
+                .create();
+    }
+
+    private static NearCache<?, ?> nearCache(ChronicleMap<?, ?> client) {
+        return ((StatelessChronicleMap<?, ?>) client).nearCache;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxEntriesShouldBeNonNegative() {
+        ChronicleMapStatelessClientBuilder.of(new InetSocketAddress("localhost", 1))
+                .nearCache(-1);
+    }
+
+    @Test(timeout = 20000)
+    public void hitsAreServedFromTheNearCache() throws IOException {
+        int port = s_port++;
+        try (ChronicleMap<Integer, Integer> serverMap = serverMap(port);
+             ChronicleMap<Integer, Integer> client = client(port, 100)) {
+            serverMap.put(1, 1);
+            assertEquals((Integer) 1, client.get(1));
+            assertNull(client.get(2));
+            assertEquals(0, nearCache(client).hits());
+            assertEquals(2, nearCache(client).misses());
+
+            for (int i = 0; i < 10; i++) {
+                assertEquals((Integer) 1, client.get(1));
+                assertNull(client.get(2));
+            }
+            assertEquals(20, nearCache(client).hits());
+            assertEquals(2, nearCache(client).misses());
+            assertEquals((Integer) 1, client.getAsync(1).join());
+            assertEquals(21, nearCache(client).hits());
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void serverUpdatesInvalidateTheNearCache() throws IOException, InterruptedException {
+        int port = s_port++;
+        try (ChronicleMap<Integer, Integer> serverMap = serverMap(port);
+             ChronicleMap<Integer, Integer> client = client(port, 100)) {
+            serverMap.put(1, 1);
+            assertEquals((Integer) 1, client.get(1));
+            assertNull(client.get(2));
+
+            serverMap.put(1, 10);
+            serverMap.put(2, 20);
+            for (int t = 0; t < 5000 && !Integer.valueOf(10).equals(client.get(1)); t++)
+                Thread.sleep(1);
+            assertEquals((Integer) 10, client.get(1));
+            for (int t = 0; t < 5000 && client.get(2) == null; t++)
+                Thread.sleep(1);
+            assertEquals((Integer) 20, client.get(2));
+
+            serverMap.remove(1);
+            for (int t = 0; t < 5000 && client.get(1) != null; t++)
+                Thread.sleep(1);
+            assertNull(client.get(1));
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void clientWritesAreReadBack() throws IOException {
+        int port = s_port++;
+        try (ChronicleMap<Integer, Integer> serverMap = serverMap(port);
+             ChronicleMap<Integer, Integer> client = client(port, 100)) {
+            assertNull(client.get(1));
+            client.put(1, 1);
+            assertEquals((Integer) 1, client.get(1));
+            client.replace(1, 2);
+            assertEquals((Integer) 2, client.get(1));
+            client.remove(1);
+            assertNull(client.get(1));
+            client.put(2, 2);
+            assertEquals((Integer) 2, client.get(2));
+            client.clear();
+            assertNull(client.get(2));
+            assertEquals(0, serverMap.size());
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void leastRecentlyUsedEntriesAreEvicted() throws IOException {
+        int port = s_port++;
+        try (ChronicleMap<Integer, Integer> serverMap = serverMap(port);
+             ChronicleMap<Integer, Integer> client = client(port, 10)) {
+            for (int i = 0; i < 20; i++)
+                serverMap.put(i, i);
+            for (int i = 0; i < 20; i++) {
+                assertEquals((Integer) i, client.get(i));
+                // keeps the key 0 recently used
+                assertEquals((Integer) 0, client.get(0));
+            }
+            assertEquals(10, nearCache(client).size());
+            long misses = nearCache(client).misses();
+            assertEquals((Integer) 0, client.get(0));
+            assertEquals((Integer) 19, client.get(19));
+            assertEquals(misses, nearCache(client).misses());
+            assertEquals((Integer) 1, client.get(1));
+            assertEquals(misses + 1, nearCache(client).misses());
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.hash.replication.TcpTransportAndNetworkConfig;
+import net.openhft.lang.io.ByteBufferBytes;
+import net.openhft.lang.io.Bytes;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TcpReplicationCompressionTest {
+
+    static int s_port = 14050;
+    private ChronicleMap<Integer, CharSequence> map1;
+    private ChronicleMap<Integer, CharSequence> map2;
+
+    private static Bytes bytes(int capacity) {
+        return new ByteBufferBytes(ByteBuffer.allocateDirect(capacity));
+    }
+
+    private static void assertRoundTrip(byte[] data) {
+        Bytes src = bytes(data.length + 1);
+        src.write(data);
+        Bytes compressed = bytes((int) Lz4BlockCompressor.maxCompressedLength(data.length));
+        long compressedLength =
+                new Lz4BlockCompressor().compress(src, 0L, data.length, compressed, 0L);
+        assertTrue(compressedLength <= Lz4BlockCompressor.maxCompressedLength(data.length));
+        Bytes decompressed = bytes(data.length + 1);
+        Lz4BlockCompressor.decompress(compressed, 0L, (int) compressedLength,
+                decompressed, 0L, data.length);
+        byte[] result = new byte[data.length];
+        decompressed.readFully(0L, result, 0, result.length);
+        assertArrayEquals(data, result);
+    }
+
+    private static String json(int i) {
+        return "{\"id\":" + i + ",\"name\":\"instrument-" + i + "\",\"currency\":\"USD\"," +
+                "\"exchange\":\"NYSE\",\"status\":\"ACTIVE\",\"tags\":[\"equity\",\"listed\"]}";
+    }
+
+    @Test
+    public void compressorRoundTrips() {
+        Random rnd = new Random(1);
+        for (int length : new int[]{0, 1, 12, 13, 64, 1000, 70_000, 300_000}) {
+            byte[] random = new byte[length];
+            rnd.nextBytes(random);
+            assertRoundTrip(random);
+
+            byte[] repetitive = new byte[length];
+            for (int i = 0; i < length; i++) {
+                repetitive[i] = (byte) "abcabcabd".charAt(i % 9);
+            }
+            assertRoundTrip(repetitive);
+
+            // long runs of the same byte, decompressed as overlapping matches
+            byte[] runs = new byte[length];
+            for (int i = 0; i < length; i++) {
+                runs[i] = (byte) (i / 1000);
+            }
+            assertRoundTrip(runs);
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append(json(i));
+        }
+        assertRoundTrip(sb.toString().getBytes());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void malformedBlockIsRejected() {
+        Bytes compressed = bytes(16);
+        // literals length of 15, followed by a truncated block
+        compressed.writeByte(0L, 0xF0);
+        Lz4BlockCompressor.decompress(compressed, 0L, 3, bytes(64), 0L, 64);
+    }
+
+    private void createMaps(boolean compression1, boolean compression2) throws IOException {
+        int port = s_port;
+        s_port += 2;
+        map1 = ChronicleMapBuilder.of(Integer.class, CharSequence.class)
+                .entries(Builder.SIZE)
+                .averageValueSize(150)
+                .replication((byte) 1, TcpTransportAndNetworkConfig
+                        .of(port, new InetSocketAddress("localhost", port + 1))
+                        .compression(compression1))
+                .create();
+        map2 = ChronicleMapBuilder.of(Integer.class, CharSequence.class)
+                .entries(Builder.SIZE)
+                .averageValueSize(150)
+                .replication((byte) 2, TcpTransportAndNetworkConfig.of(port + 1)
+                        .compression(compression2))
+                .create();
+    }
+
+    @After
+    public void tearDown() {
+        for (final Closeable closeable : new Closeable[]{map1, map2}) {
+            try {
+                if (closeable != null)
+                    closeable.close();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static TcpReplicator tcpReplicator(ChronicleMap<?, ?> map) {
+        for (Closeable closeable : ((ReplicatedChronicleMap<?, ?, ?, ?, ?, ?>) map).closeables) {
+            if (closeable instanceof TcpReplicator)
+                return (TcpReplicator) closeable;
+        }
+        throw new AssertionError("no tcp replicator");
+    }
+
+    /**
+     * Waits until both nodes complete the hand shaking, so that the entries are put after the
+     * nodes have agreed on the compression, and are not raced with the bootstrap.
+     */
+    private void waitTillConnected() throws InterruptedException {
+        TcpReplicator replicator1 = tcpReplicator(map1);
+        TcpReplicator replicator2 = tcpReplicator(map2);
+        for (int t = 0; t < 10_000 &&
+                !(replicator1.isConnected((byte) 2) && replicator2.isConnected((byte) 1)); t++) {
+            Thread.sleep(1);
+        }
+        assertTrue(replicator1.isConnected((byte) 2));
+        assertTrue(replicator2.isConnected((byte) 1));
+    }
+
+    private void putAndWaitTillEqual() throws InterruptedException {
+        waitTillConnected();
+        for (int i = 0; i < 1000; i++) {
+            map1.put(i, json(i));
+        }
+        for (int t = 0; t < 5000 && !map1.equals(map2); t++) {
+            Thread.sleep(1);
+        }
+        assertEquals(map1, map2);
+    }
+
+    @Test
+    public void compressedEntriesAreReplicated() throws IOException, InterruptedException {
+        createMaps(true, true);
+        putAndWaitTillEqual();
+
+        TcpReplicator sender = tcpReplicator(map1);
+        assertTrue(sender.bytesBeforeCompression() > 0L);
+        assertTrue("compression ratio=" + sender.compressionRatio(),
+                sender.compressionRatio() > 2.0);
+        assertTrue(sender.compressionThroughput() > 0.0);
+
+        TcpReplicator receiver = tcpReplicator(map2);
+        assertTrue(receiver.bytesAfterDecompression() > receiver.bytesBeforeDecompression());
+    }
+
+    @Test
+    public void compressionIsUsedOnlyIfBothNodesAgree() throws IOException, InterruptedException {
+        createMaps(true, false);
+        putAndWaitTillEqual();
+
+        assertEquals(0L, tcpReplicator(map1).bytesBeforeCompression());
+        assertEquals(0L, tcpReplicator(map2).bytesAfterDecompression());
+    }
+}